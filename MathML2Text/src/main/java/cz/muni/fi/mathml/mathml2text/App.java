@@ -1,10 +1,12 @@
 package cz.muni.fi.mathml.mathml2text;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.cli.BasicParser;
@@ -21,9 +23,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import cz.muni.fi.mathml.mathml2text.converter.ConverterSettings;
-import cz.muni.fi.mathml.mathml2text.input.XmlParser;
-import cz.muni.fi.mathml.mathml2text.input.XmlParserDOM;
-import cz.muni.fi.mathml.mathml2text.input.XmlParserStAX;
+import cz.muni.fi.mathml.mathml2text.converter.OutputFormat;
+import cz.muni.fi.mathml.mathml2text.input.AbstractXmlParser;
+import cz.muni.fi.mathml.mathml2text.input.ParserBenchmark;
+import cz.muni.fi.mathml.mathml2text.input.ParserImplementation;
+import cz.muni.fi.mathml.mathml2text.input.ParserProfile;
+import cz.muni.fi.mathml.mathml2text.input.StreamPool;
+import cz.muni.fi.mathml.mathml2text.input.XmlParserAuto;
 
 /**
  * Class containing runnable main method.
@@ -85,6 +91,38 @@ public class App {
                     logger.warn("Could not convert thread count [" + optionValue + "] to integer.");
                 }
             }
+            if (line.hasOption("formula-threads")) {
+                String optionValue = line.getOptionValue("formula-threads");
+                try {
+                    ConverterSettings.getInstance().setFormulaThreadCount(Integer.parseInt(optionValue));
+                } catch (final NumberFormatException ex) {
+                    logger.warn("Could not convert formula thread count [" + optionValue + "] to integer.");
+                }
+            }
+            if (line.hasOption("map-threshold")) {
+                String optionValue = line.getOptionValue("map-threshold");
+                try {
+                    ConverterSettings.getInstance().setMappingThreshold(Long.parseLong(optionValue));
+                } catch (final NumberFormatException ex) {
+                    logger.warn("Could not convert mapping threshold [" + optionValue + "] to number.");
+                }
+            }
+            if (line.hasOption("prefetch")) {
+                String optionValue = line.getOptionValue("prefetch");
+                try {
+                    ConverterSettings.getInstance().setPrefetchBudget(Long.parseLong(optionValue));
+                } catch (final NumberFormatException ex) {
+                    logger.warn("Could not convert prefetch budget [" + optionValue + "] to number.");
+                }
+            }
+            if (line.hasOption("memory-budget")) {
+                String optionValue = line.getOptionValue("memory-budget");
+                try {
+                    ConverterSettings.getInstance().setMemoryBudget(Long.parseLong(optionValue));
+                } catch (final NumberFormatException ex) {
+                    logger.warn("Could not convert memory budget [" + optionValue + "] to number.");
+                }
+            }
             if (line.hasOption("output")) {
                 String outputDirectoryPath = line.getOptionValue("output");
                 if (outputDirectoryPath != null) {
@@ -98,29 +136,74 @@ public class App {
             if (line.hasOption("parser")) {
                 parserImplementation = line.getOptionValue("parser");
             }
+            String parserProfilePath = null;
+            if (line.hasOption("parser-profile")) {
+                parserProfilePath = line.getOptionValue("parser-profile");
+            }
             if (line.hasOption("content-markup")) {
                 ConverterSettings.getInstance().setUseContentMarkup(true);
             }
+            if (line.hasOption("splice")) {
+                ConverterSettings.getInstance().setSpliceOutput(true);
+            }
+            if (line.hasOption("prescan")) {
+                ConverterSettings.getInstance().setPrescan(true);
+            }
+            if (line.hasOption("rewrite-archives")) {
+                ConverterSettings.getInstance().setRewriteArchives(true);
+            }
+            if (line.hasOption("gzip")) {
+                ConverterSettings.getInstance().setCompressOutput(true);
+            }
+            if (line.hasOption("gzip-background")) {
+                ConverterSettings.getInstance().setCompressOutput(true);
+                ConverterSettings.getInstance().setBackgroundCompression(true);
+            }
+            if (line.hasOption("write-behind")) {
+                ConverterSettings.getInstance().setWriteBehind(true);
+            }
+            if (line.hasOption("pipeline")) {
+                ConverterSettings.getInstance().setPipeline(true);
+                setStageThreadCounts(line.getOptionValue("pipeline"));
+            }
+            if (line.hasOption("copy-math-free")) {
+                ConverterSettings.getInstance().setCopyMathFree(true);
+            }
+            if (line.hasOption("skip-math-free")) {
+                ConverterSettings.getInstance().setSkipMathFree(true);
+            }
+            if (line.hasOption("speed-profile")) {
+                ConverterSettings.getInstance().setSpeedProfile(true);
+            }
+            if (line.hasOption("async-input")) {
+                ConverterSettings.getInstance().setAsyncInput(true);
+            }
+            if (line.hasOption("format")) {
+                final String optionValue = line.getOptionValue("format");
+                try {
+                    ConverterSettings.getInstance().setOutputFormat(OutputFormat.valueOf(optionValue.toUpperCase(Locale.ENGLISH)));
+                } catch (final IllegalArgumentException ex) {
+                    System.err.println("Unknown output format.");
+                    System.exit(1);
+                }
+            }
             String[] fileNames = line.getArgs();
             final List<File> inputFiles = new ArrayList<File>(fileNames.length);
             for (final String fileName : fileNames) {
                 inputFiles.add(new File(fileName));
             }
+            if (line.hasOption("benchmark")) {
+                printComparison(ParserBenchmark.compare(inputFiles));
+                return;
+            }
             final Instant start = Instant.now();
 
-            final XmlParser parser;
-            if ("stax".equals(parserImplementation)) {
-                setUpForStAX();
-                parser = new XmlParserStAX(); 
-            } else if ("dom".equals(parserImplementation)) {
-                setUpForDOM();
-                parser = new XmlParserDOM();
-            } else if ("aalto".equals(parserImplementation)) {
-                setUpForAalto();
-                parser = new XmlParserStAX();
-            } else if ("woodstox".equals(parserImplementation)) {
-                setUpForWoodstox();
-                parser = new XmlParserStAX(false);
+            final AbstractXmlParser parser;
+            final ParserImplementation implementation = ParserImplementation.forName(parserImplementation);
+            if ("auto".equals(parserImplementation)) {
+                parser = new XmlParserAuto(getParserProfile(parserProfilePath));
+            } else if (implementation != null && implementation.isAvailable()) {
+                parser = implementation.createParser();
             } else {
                 System.err.println("Unknown parser implementation");
                 parser = null;
@@ -132,6 +215,17 @@ public class App {
             final Instant end = Instant.now();
             final Duration duration = new Duration(start, end);
             System.out.println("\n" + duration.getMillis() + " ms");
+            if (parser.getMathFreeFileCount() > 0) {
+                System.out.println(String.format("%1$d of %2$d files without math %3$s", 
+                        parser.getMathFreeFileCount(), parser.getFileCount(),
+                        ConverterSettings.getInstance().isSkipMathFree() ? "skipped" : "copied"));
+            }
+            if (ConverterSettings.getInstance().isSpeedProfile()) {
+                System.out.println(StreamPool.getStatistics());
+            }
+            if (parser instanceof XmlParserAuto) {
+                System.out.println("Converted documents per parser: " + ((XmlParserAuto) parser).getStatistics());
+            }
         } catch (ParseException ex) {
             System.err.println("Error while parsing command line arguments: " + ex.getMessage());
             System.exit(1);
@@ -159,48 +253,140 @@ public class App {
                 .hasArg()//
                 .withArgName("NUMBER")//
                 .create("t"));
+        options.addOption(OptionBuilder.withLongOpt("formula-threads")//
+                .withDescription("specify number of threads converting math elements of a single document in parallel (StAX parsers with splice or prescan only), 0 converts them on the parsing thread (defaults to 0)")//
+                .hasArg()//
+                .withArgName("NUMBER")//
+                .create("ft"));
         options.addOption(OptionBuilder.withLongOpt("output")//
                 .withDescription("output directory path")//
                 .hasArg()//
                 .withArgName("PATH")//
                 .create("o"));
+        options.addOption(OptionBuilder.withLongOpt("map-threshold")//
+                .withDescription("minimal size of input file in bytes that is mapped into memory, 0 disables mapping (defaults to 33554432)")//
+                .hasArg()//
+                .withArgName("BYTES")//
+                .create("m"));
+        options.addOption(OptionBuilder.withLongOpt("prefetch")//
+                .withDescription("total size of input files in bytes that are read ahead while earlier files are converted, 0 disables reading ahead (defaults to 0)")//
+                .hasArg()//
+                .withArgName("BYTES")//
+                .create("pf"));
+        options.addOption(OptionBuilder.withLongOpt("memory-budget")//
+                .withDescription("total memory in bytes estimated for documents converted at once, workers wait while it is exceeded, 0 disables the limit (defaults to 0)")//
+                .hasArg()//
+                .withArgName("BYTES")//
+                .create("mb"));
+        options.addOption(OptionBuilder.withLongOpt("pipeline")//
+                .withDescription("convert files by a pipeline of stages [read|unzip|canonicalize|parse|convert|write] with their own threads and bounded queues, argument sets numbers of threads of stages, e.g. read=2,parse=4,write=2 (unlisted parse and convert stages use --threads and --formula-threads, others 1 thread)")//
+                .hasArg()//
+                .withArgName("STAGES")//
+                .create("pl"));
         options.addOption(OptionBuilder.withLongOpt("parser")//
-                .withDescription("choose parser implementation [dom|stax|aalto|woodstox], defaults to woodstox")//
+                .withDescription("choose parser implementation [dom|sax|stax|aalto|woodstox|auto], defaults to woodstox, auto chooses implementation for every file")//
                 .hasArg()//
                 .withArgName("PARSER")//
                 .create("p"));
+        options.addOption(OptionBuilder.withLongOpt("parser-profile")//
+                .withDescription("properties file with rules for auto parser, it is created by a benchmark if it does not exist (without this option the benchmark runs on every start)")//
+                .hasArg()//
+                .withArgName("PATH")//
+                .create("pp"));
+        options.addOption(OptionBuilder.withLongOpt("format")//
+                .withDescription("format of output documents written by DOM parser [pretty|compact|raw], defaults to pretty")//
+                .hasArg()//
+                .withArgName("FORMAT")//
+                .create("f"));
         options.addOption("c", "canonicalize", false, "canonicalize input");
         options.addOption("r", "replace-spaces", false, "replace spaces with underscores");
         options.addOption("n", "transform-numbers", false, "transform all numbers to strings");
         options.addOption("cm", "content-markup", false, "use content markup for conversion");
+        options.addOption("s", "splice", false, "copy content outside of math elements to output without re-serialization (StAX parsers only)");
+        options.addOption("ps", "prescan", false, "find math elements without XML parser and parse only them, input does not have to be well-formed (StAX parsers only)");
+        options.addOption("ra", "rewrite-archives", false, "write converted documents from zip and EPUB archives to a new archive instead of separate files");
+        options.addOption("z", "gzip", false, "compress output files with gzip (input files with suffix .gz are always decompressed)");
+        options.addOption("zb", "gzip-background", false, "compress output files with gzip on a separate thread");
+        options.addOption("wb", "write-behind", false, "write output files on a separate thread through temporary files renamed when complete");
+        options.addOption("cf", "copy-math-free", false, "copy files without math elements to output without conversion");
+        options.addOption("sf", "skip-math-free", false, "skip files without math elements");
+        options.addOption("sp", "speed-profile", false, "configure StAX parsers for speed and print usage of reader, writer and buffer pools");
+        options.addOption("ai", "async-input", false, "feed Aalto parser asynchronously from input read ahead by I/O threads, documents can not declare DTD (aalto only)");
+        options.addOption("b", "benchmark", false, "measure all parser implementations on input files instead of converting them, no output is written");
         return options;
     }
     
-    private static void setUpForDOM() {
-        System.setProperty("javax.xml.stream.XMLInputFactory", "com.sun.xml.internal.stream.XMLInputFactoryImpl");
-        System.setProperty("javax.xml.stream.XMLOutputFactory", "com.sun.xml.internal.stream.XMLOutputFactoryImpl");
-        System.setProperty("javax.xml.stream.XMLEventFactory", "com.sun.xml.internal.stream.events.XMLEventFactoryImpl");
-        System.setProperty("javax.xml.parsers.SAXParserFactory", "com.sun.org.apache.xerces.internal.jaxp.SAXParserFactoryImpl");
-    }
-    
-    private static void setUpForStAX() {
-        System.setProperty("javax.xml.stream.XMLInputFactory", "com.sun.xml.internal.stream.XMLInputFactoryImpl");
-        System.setProperty("javax.xml.stream.XMLOutputFactory", "com.sun.xml.internal.stream.XMLOutputFactoryImpl");
-        System.setProperty("javax.xml.stream.XMLEventFactory", "com.sun.xml.internal.stream.events.XMLEventFactoryImpl");
-        System.setProperty("javax.xml.parsers.SAXParserFactory", "com.sun.org.apache.xerces.internal.jaxp.SAXParserFactoryImpl");
+    /**
+     * Sets numbers of threads of pipeline stages.
+     * @param stages Comma separated pairs <code>stage=number</code>.
+     */
+    private static void setStageThreadCounts(final String stages) {
+        final ConverterSettings settings = ConverterSettings.getInstance();
+        for (final String stage : StringUtils.split(stages, ',')) {
+            final String name = StringUtils.substringBefore(stage, "=").trim();
+            final String optionValue = StringUtils.substringAfter(stage, "=").trim();
+            final int threadCount;
+            try {
+                threadCount = Integer.parseInt(optionValue);
+            } catch (final NumberFormatException ex) {
+                logger.warn("Could not convert thread count [" + optionValue + "] of stage [" + name + "] to integer.");
+                continue;
+            }
+            if ("read".equals(name)) {
+                settings.setReadThreadCount(threadCount);
+            } else if ("unzip".equals(name)) {
+                settings.setUnzipThreadCount(threadCount);
+            } else if ("canonicalize".equals(name)) {
+                settings.setCanonicalizeThreadCount(threadCount);
+            } else if ("parse".equals(name)) {
+                settings.setThreadCount(threadCount);
+            } else if ("convert".equals(name)) {
+                settings.setFormulaThreadCount(threadCount);
+            } else if ("write".equals(name)) {
+                settings.setWriteThreadCount(threadCount);
+            } else {
+                logger.warn("Unknown pipeline stage [" + name + "].");
+            }
+        }
     }
     
-    private static void setUpForAalto() {
-        System.setProperty("javax.xml.stream.XMLInputFactory", "com.fasterxml.aalto.stax.InputFactoryImpl");
-        System.setProperty("javax.xml.stream.XMLOutputFactory", "com.fasterxml.aalto.stax.OutputFactoryImpl");
-        System.setProperty("javax.xml.stream.XMLEventFactory", "com.fasterxml.aalto.stax.EventFactoryImpl");
-        System.setProperty("javax.xml.parsers.SAXParserFactory", "com.fasterxml.aalto.sax.SAXParserFactoryImpl");
+    /**
+     * Prints results of parser comparison.
+     * @param results Duration of conversion in nanoseconds for every parser implementation.
+     */
+    private static void printComparison(final Map<ParserImplementation, Long> results) {
+        for (final Map.Entry<ParserImplementation, Long> result : results.entrySet()) {
+            System.out.println(String.format("%1$-10s %2$8d ms", result.getKey().getName(), result.getValue() / 1000000));
+        }
     }
     
-    private static void setUpForWoodstox() {
-        System.setProperty("javax.xml.stream.XMLInputFactory", "com.ctc.wstx.stax.WstxInputFactory");
-        System.setProperty("javax.xml.stream.XMLOutputFactory", "com.ctc.wstx.stax.WstxOutputFactory");
-        System.setProperty("javax.xml.stream.XMLEventFactory", "com.ctc.wstx.stax.WstxEventFactory");
-        System.setProperty("javax.xml.parsers.SAXParserFactory", "com.ctc.wstx.sax.WstxSAXParserFactory");
+    /**
+     * Loads profile for auto parser. If the profile file does not exist
+     * or can not be read, the profile is calibrated by a benchmark and stored
+     * to the file.
+     * @param path Path of profile file, {@code null} if the profile should not be stored.
+     */
+    private static ParserProfile getParserProfile(final String path) {
+        final File file = path != null ? new File(path) : null;
+        if (file != null && file.isFile()) {
+            try {
+                final ParserProfile profile = ParserProfile.load(file);
+                System.out.println("Parser profile: " + profile);
+                return profile;
+            } catch (final IOException ex) {
+                logger.warn("Cannot load parser profile [" + path + "], it will be calibrated.", ex);
+            }
+        }
+        System.out.println("Calibrating parser profile...");
+        final ParserProfile profile = ParserBenchmark.calibrate();
+        System.out.println("Parser profile: " + profile);
+        if (file != null) {
+            try {
+                profile.store(file);
+            } catch (final IOException ex) {
+                logger.warn("Cannot store parser profile [" + path + "].", ex);
+            }
+        }
+        return profile;
     }
 }
@@ -0,0 +1,340 @@
+package cz.muni.fi.mathml.mathml2text.converter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cz.muni.fi.mathml.mathml2text.numbers.NumberFormat;
+import cz.muni.fi.mathml.mathml2text.numbers.NumberTransformer;
+
+/**
+ * Immutable context of conversion passed between processing classes and
+ * methods. It offers:
+ * <ul>
+ *  <li>pulling of localized messages,</li>
+ *  <li>converting numbers,</li>
+ *  <li>options of conversion.</li>
+ * </ul>
+ * Context is created by {@link Builder} and can be shared by any number of
+ * threads, contexts for different languages and options can be used at the
+ * same time. Form of numbers (cardinal or ordinal) is changed by deriving
+ * a new context (see {@link #withNumberFormat(NumberFormat)}), so that
+ * conversion of one subtree does not affect other conversions.
+ *
+ * @author agent
+ * @date 2026-10-18T00:27:16+0000
+ */
+public final class ConversionContext {
+    /**
+     * Logger.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ConversionContext.class);
+    /**
+     * Localization properties for languages, loaded when first requested.
+     */
+    private static final ConcurrentMap<String, Properties> LOCALIZATIONS = new ConcurrentHashMap<String, Properties>();
+    /**
+     * Built contexts by their language and options, contexts are immutable,
+     * so equal contexts are shared.
+     */
+    private static final ConcurrentMap<String, ConversionContext> CONTEXTS = new ConcurrentHashMap<String, ConversionContext>();
+    /**
+     * Language of conversion.
+     */
+    private final Locale language;
+    /**
+     * Localization properties of the language, they are never modified.
+     */
+    private final Properties localization;
+    /**
+     * Localized messages with replaced spaces and appended space, shared by derived contexts.
+     */
+    private final Map<String, String> messages;
+    /**
+     * Transformation of numbers, it is used only through methods that do not
+     * change its state.
+     */
+    private final NumberTransformer numberTransformer;
+    /**
+     * Form of transformed numbers.
+     */
+    private final NumberFormat numberFormat;
+    /**
+     * Indicates whether spaces in localized messages are replaced with underscores.
+     */
+    private final boolean replaceSpaces;
+    /**
+     * Indicates whether numbers are transformed to strings.
+     */
+    private final boolean transformNumbers;
+    /**
+     * Indicates whether Content MathML markup is used for conversion (if present).
+     */
+    private final boolean useContentMarkup;
+    /**
+     * Context with the other number format, {@code null} until first use.
+     */
+    private volatile ConversionContext otherFormat;
+
+    private ConversionContext(final Builder builder, final Properties localization) {
+        this.language = builder.language;
+        this.localization = localization;
+        this.numberTransformer = new NumberTransformer(builder.language);
+        this.numberFormat = NumberFormat.CARDINAL;
+        this.replaceSpaces = builder.replaceSpaces;
+        this.transformNumbers = builder.transformNumbers;
+        this.useContentMarkup = builder.useContentMarkup;
+        final Map<String, String> values = new HashMap<String, String>();
+        for (final String key : localization.stringPropertyNames()) {
+            values.put(key, this.formatMessage(localization.getProperty(key)));
+        }
+        this.messages = Collections.unmodifiableMap(values);
+    }
+
+    private ConversionContext(final ConversionContext context, final NumberFormat numberFormat) {
+        this.language = context.language;
+        this.localization = context.localization;
+        this.messages = context.messages;
+        this.numberTransformer = context.numberTransformer;
+        this.numberFormat = numberFormat;
+        this.replaceSpaces = context.replaceSpaces;
+        this.transformNumbers = context.transformNumbers;
+        this.useContentMarkup = context.useContentMarkup;
+        this.otherFormat = context;
+    }
+
+    /**
+     * Creates builder of context.
+     * @return New builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns context for given language with current options of {@link ConverterSettings}.
+     * @param language Language of conversion.
+     * @return Context.
+     */
+    public static ConversionContext forSettings(final Locale language) {
+        return builder().language(language).settings(ConverterSettings.getInstance()).build();
+    }
+
+    /**
+     * Returns language of conversion.
+     * @return Language of conversion.
+     */
+    public Locale getLanguage() {
+        return this.language;
+    }
+
+    /**
+     * Returns localized message.
+     * @param key Message key.
+     * @return Localized message followed by space.
+     */
+    public String getProperty(final String key) {
+        final String message = this.messages.get(key);
+        return message != null ? message : this.formatMessage(this.localization.getProperty(key));
+    }
+
+    /**
+     * Returns form of transformed numbers.
+     * @return Number format, {@link NumberFormat#CARDINAL} by default.
+     */
+    public NumberFormat getNumberFormat() {
+        return this.numberFormat;
+    }
+
+    /**
+     * Returns context that differs from this context only in form of transformed numbers.
+     * @param numberFormat Number format.
+     * @return Context with given number format.
+     */
+    public ConversionContext withNumberFormat(@Nonnull final NumberFormat numberFormat) {
+        if (this.numberFormat.equals(numberFormat)) {
+            return this;
+        }
+        ConversionContext context = this.otherFormat;
+        if (context == null) {
+            context = new ConversionContext(this, numberFormat);
+            this.otherFormat = context;
+        }
+        return context;
+    }
+
+    /**
+     * Converts number to its spoken form, as given by {@link #getNumberFormat() }.
+     * @param value Number.
+     * @return Spoken form of the number.
+     * @throws NumberFormatException If the value is not a valid number.
+     */
+    public String transformNumber(final String value) {
+        return this.numberTransformer.transform(value, this.numberFormat);
+    }
+
+    /**
+     * Indicates whether spaces in localized messages are replaced with underscores.
+     * @return {@code true} if spaces are replaced, {@code false} otherwise.
+     */
+    public boolean isReplaceSpaces() {
+        return this.replaceSpaces;
+    }
+
+    /**
+     * Indicates whether numbers are transformed to strings.
+     * @return {@code true}, if numbers are transformed, {@code false} otherwise.
+     */
+    public boolean isTransformNumbers() {
+        return this.transformNumbers;
+    }
+
+    /**
+     * Indicates whether Content MathML markup is used for conversion (if present).
+     * @return {@code true}, if content markup is used, {@code false} otherwise.
+     */
+    public boolean isUseContentMarkup() {
+        return this.useContentMarkup;
+    }
+
+    /**
+     * Replaces spaces of message (if required) and appends space.
+     */
+    private String formatMessage(final String value) {
+        String result = value;
+        if (this.replaceSpaces) {
+            result = result.replace(" ", "_");
+        }
+        return result + Strings.SPACE;
+    }
+
+    /**
+     * Returns localization properties for given language.
+     */
+    private static Properties getLocalization(final Locale language) {
+        final String key = language.getLanguage();
+        Properties properties = LOCALIZATIONS.get(key);
+        if (properties == null) {
+            properties = new Properties();
+            final InputStream resourceAsStream = ConversionContext.class.getResourceAsStream(String.format("%1$s.xml", key));
+            try {
+                properties.loadFromXML(resourceAsStream);
+            } catch (final IOException ex) {
+                logger.error(String.format("Cannot load properties for language [%1$s].", key), ex);
+            }
+            final Properties loaded = LOCALIZATIONS.putIfAbsent(key, properties);
+            if (loaded != null) {
+                properties = loaded;
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Builder of {@link ConversionContext}. Builder is not thread-safe,
+     * built contexts are.
+     */
+    public static final class Builder {
+        /**
+         * Language of conversion.
+         */
+        private Locale language = Locale.ENGLISH;
+        /**
+         * Indicates whether spaces in localized messages are replaced with underscores.
+         */
+        private boolean replaceSpaces;
+        /**
+         * Indicates whether numbers are transformed to strings.
+         */
+        private boolean transformNumbers;
+        /**
+         * Indicates whether Content MathML markup is used for conversion.
+         */
+        private boolean useContentMarkup;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets language of conversion, english by default.
+         * @param language Language of conversion.
+         * @return This builder.
+         */
+        public Builder language(@Nonnull final Locale language) {
+            this.language = language;
+            return this;
+        }
+
+        /**
+         * Sets whether spaces in localized messages are replaced with underscores.
+         * @param replaceSpaces Indicator whether spaces are replaced.
+         * @return This builder.
+         */
+        public Builder replaceSpaces(final boolean replaceSpaces) {
+            this.replaceSpaces = replaceSpaces;
+            return this;
+        }
+
+        /**
+         * Sets whether numbers are transformed to strings.
+         * @param transformNumbers Indicator whether numbers are transformed.
+         * @return This builder.
+         */
+        public Builder transformNumbers(final boolean transformNumbers) {
+            this.transformNumbers = transformNumbers;
+            return this;
+        }
+
+        /**
+         * Sets whether Content MathML markup is used for conversion.
+         * @param useContentMarkup Indicator whether content markup is used.
+         * @return This builder.
+         */
+        public Builder useContentMarkup(final boolean useContentMarkup) {
+            this.useContentMarkup = useContentMarkup;
+            return this;
+        }
+
+        /**
+         * Copies options of conversion from settings.
+         * @param settings Converter settings.
+         * @return This builder.
+         */
+        public Builder settings(@Nonnull final ConverterSettings settings) {
+            this.replaceSpaces = settings.isReplaceSpaces();
+            this.transformNumbers = settings.isTransformNumbers();
+            this.useContentMarkup = settings.isUseContentMarkup();
+            return this;
+        }
+
+        /**
+         * Creates context, localization of the language is loaded when it
+         * is first used. Context with the same language and options is 
+         * created only once.
+         * @return Context.
+         */
+        public ConversionContext build() {
+            final String key = String.format("%1$s:%2$b:%3$b:%4$b", this.language, this.replaceSpaces, this.transformNumbers, this.useContentMarkup);
+            ConversionContext context = CONTEXTS.get(key);
+            if (context == null) {
+                context = new ConversionContext(this, getLocalization(this.language));
+                final ConversionContext built = CONTEXTS.putIfAbsent(key, context);
+                if (built != null) {
+                    context = built;
+                }
+            }
+            return context;
+        }
+    }
+}
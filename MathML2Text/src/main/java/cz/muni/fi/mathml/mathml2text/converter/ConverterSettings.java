@@ -1,23 +1,17 @@
 package cz.muni.fi.mathml.mathml2text.converter;
 
-import java.util.Properties;
 import java.util.Set;
 
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Sets;
 
-import cz.muni.fi.mathml.mathml2text.numbers.NumberFormat;
-import cz.muni.fi.mathml.mathml2text.numbers.NumberTransformer;
-
 /**
- * Settings for {@link MathMLConverter}. 
- * Instance of this class is passed between processing classes and methods 
- * and offers:
- * <ul>
- *  <li>pulling of localized messages,</li>
- *  <li>converting numbers.</li>
- * </ul>
+ * Settings of the application, set from command line.
+ * Options of conversion are copied from these settings into an immutable
+ * {@link ConversionContext} (see {@link ConversionContext#forSettings(java.util.Locale)}),
+ * which is passed between processing classes and methods, so that changes
+ * of settings do not affect conversions that are running.
  * 
  * Default settings for conversion:
  * <ul>
@@ -29,14 +23,6 @@ import cz.muni.fi.mathml.mathml2text.numbers.NumberTransformer;
  * @date 2012-12-15T10:21:57+0100
  */
 public final class ConverterSettings {
-    /**
-     * {@link Properties} file currently used to access localized messages.
-     */
-    private Properties localization;
-    /**
-     * {@link NumberTransformer} instance.
-     */
-    private NumberTransformer numberTransformer;
     /**
      * Indicates whether spaces in strings received from localization file should
      * be replaced with underscores. (open braces -> open_braces)
@@ -50,6 +36,10 @@ public final class ConverterSettings {
      * Number of threads that will be available for parallel conversion.
      */
     private int threadCount;
+    /**
+     * Number of threads converting math elements of a single document.
+     */
+    private int formulaThreadCount;
     /**
      * Output directory path.
      */
@@ -63,94 +53,122 @@ public final class ConverterSettings {
      */
     private boolean useContentMarkup;
     /**
-     * Singleton instance.
+     * Indicates whether content outside of math elements should be copied
+     * from input to output as it is, without parsing and re-serialization.
      */
-    private static final ConverterSettings INSTANCE = new ConverterSettings();
-    
+    private boolean spliceOutput;
     /**
-     * Constructor.
-     * Inicializes this values:
-     * <ul>
-     *  <li>{@link #threadCount} to <code>1</code></li>
-     * </ul>
+     * Indicates whether input should be scanned for math elements first, 
+     * so that only these elements are parsed.
      */
-    private ConverterSettings() {
-        this.threadCount = 1;
-    }
-    
+    private boolean prescan;
     /**
-     * Instance of this singleton class.
-     * @return Instance of this singleton class.
+     * Minimal size of input file (in bytes) that is mapped into memory instead
+     * of being read through a stream.
      */
-    public static ConverterSettings getInstance() {
-        return INSTANCE;
-    }
-    
+    private long mappingThreshold;
     /**
-     * Returns current {@link Properties} file used to access localized messages.
-     * @return Current {@link Properties} file used to access localized messages.
+     * Maximal total size (in bytes) of input files read ahead of conversion.
      */
-    public Properties getLocalization() {
-        return localization;
-    }
-
+    private long prefetchBudget;
     /**
-     * Set {@link Properties} file used to access localized messages.
-     * @param localization New {@link Properties} file used to access localized messages.
+     * Maximal total memory (in bytes) estimated for documents converted at once.
      */
-    public void setLocalization(Properties localization) {
-        this.localization = localization;
-    }
-
+    private long memoryBudget;
     /**
-     * Return {@link NumberTransformer} instance.
-     * @return {@link NumberTransformer} instance.
+     * Indicates whether converted documents from an archive should be written
+     * to a new archive instead of separate files.
      */
-    public NumberTransformer getNumberTransformer() {
-        return numberTransformer;
-    }
-
+    private boolean rewriteArchives;
     /**
-     * Sets {@link NumberTransformer} instance.
-     * @param numberTransformer {@link NumberTransformer} instance.
+     * Indicates whether output files should be compressed with gzip.
      */
-    public void setNumberTransformer(NumberTransformer numberTransformer) {
-        this.numberTransformer = numberTransformer;
-    }
-
+    private boolean compressOutput;
     /**
-     * Returns current number format. Internally calls {@link NumberTransformer#getNumberFormat() }
-     * method.
-     * @return Returns current number format. 
+     * Indicates whether output should be compressed on a separate thread.
      */
-    public NumberFormat getNumberFormat() {
-        return this.getNumberTransformer().getNumberFormat();
-    }
+    private boolean backgroundCompression;
+    /**
+     * Indicates whether output files should be written on a separate thread.
+     */
+    private boolean writeBehind;
+    /**
+     * Indicates whether a batch should be converted by a pipeline of stages.
+     */
+    private boolean pipeline;
+    /**
+     * Number of threads of the pipeline reading input files.
+     */
+    private int readThreadCount;
+    /**
+     * Number of threads of the pipeline decompressing documents.
+     */
+    private int unzipThreadCount;
+    /**
+     * Number of threads of the pipeline canonicalizing documents.
+     */
+    private int canonicalizeThreadCount;
+    /**
+     * Number of threads of the pipeline writing output files.
+     */
+    private int writeThreadCount;
+    /**
+     * Indicates whether input files without math elements should be copied
+     * to output without conversion.
+     */
+    private boolean copyMathFree;
+    /**
+     * Indicates whether input files without math elements should be skipped.
+     */
+    private boolean skipMathFree;
+    /**
+     * Indicates whether StAX parsers should be configured for speed instead
+     * of for reporting details about the input (locations, small text segments).
+     */
+    private boolean speedProfile;
+    /**
+     * Indicates whether Aalto parser should be fed asynchronously from 
+     * input read ahead by I/O threads.
+     */
+    private boolean asyncInput;
+    /**
+     * Format of output documents written by DOM parser.
+     */
+    private OutputFormat outputFormat = OutputFormat.PRETTY;
+    /**
+     * Singleton instance.
+     */
+    private static final ConverterSettings INSTANCE = new ConverterSettings();
     
     /**
-     * Sets current number format. Internally calls 
-     * {@link NumberTransformer#setNumberFormat(cz.muni.fi.mathml.mathml2text.numbers.NumberFormat) }
-     * method.
-     * @param numberFormat New {@link NumberFormat} instance.
+     * Constructor.
+     * Inicializes this values:
+     * <ul>
+     *  <li>{@link #threadCount} to <code>1</code></li>
+     *  <li>{@link #mappingThreshold} to <code>32 MB</code></li>
+     *  <li>{@link #prefetchBudget} to <code>0</code> (files are not read ahead)</li>
+     *  <li>{@link #memoryBudget} to <code>0</code> (memory is not limited)</li>
+     *  <li>{@link #readThreadCount}, {@link #unzipThreadCount}, {@link #canonicalizeThreadCount}
+     *      and {@link #writeThreadCount} to <code>1</code></li>
+     * </ul>
      */
-    public void setNumberFormat(final NumberFormat numberFormat) {
-        this.getNumberTransformer().setNumberFormat(numberFormat);
+    private ConverterSettings() {
+        this.threadCount = 1;
+        this.mappingThreshold = 32L * 1024 * 1024;
+        this.readThreadCount = 1;
+        this.unzipThreadCount = 1;
+        this.canonicalizeThreadCount = 1;
+        this.writeThreadCount = 1;
     }
     
     /**
-     * Returns localized message retrieved from current localization settings 
-     * {@link #getLocalization() }.
-     * @param key Message key.
-     * @return Localized message.
+     * Instance of this singleton class.
+     * @return Instance of this singleton class.
      */
-    public String getProperty(final String key) {
-        String result = this.getLocalization().getProperty(key);
-        if (this.isReplaceSpaces()) {
-            result = result.replace(" ", "_");
-        }
-        return result + Strings.SPACE;
+    public static ConverterSettings getInstance() {
+        return INSTANCE;
     }
-
+    
     /**
      * Indicates whether spaces in strings received from localization file should
      * be replaced with underscores. (open braces -> open_braces)
@@ -210,6 +228,29 @@ public final class ConverterSettings {
         }
     }
 
+    /**
+     * Returns the number of threads converting math elements of a single 
+     * document in parallel, while the document is parsed. Parallel conversion
+     * is supported by StAX parsers with splicing or prescanning. Value lower 
+     * than <code>1</code> means that math elements are converted by the 
+     * parsing thread.
+     * @return The number of threads converting math elements.
+     */
+    public int getFormulaThreadCount() {
+        return this.formulaThreadCount;
+    }
+
+    /**
+     * Sets the number of threads converting math elements of a single document.
+     * Threads are shared by all documents, they are created with the count
+     * set before the first document is converted.
+     * @param formulaThreadCount The number of threads, value lower than 
+     *  <code>1</code> disables parallel conversion.
+     */
+    public void setFormulaThreadCount(int formulaThreadCount) {
+        this.formulaThreadCount = formulaThreadCount;
+    }
+
     /**
      * Returns the output directory path.
      * If the value is {@code null}, the output will be written to the input directory.
@@ -261,6 +302,342 @@ public final class ConverterSettings {
         this.useContentMarkup = useContentMarkup;
     }
     
+    /**
+     * Indicates whether content outside of math elements should be copied
+     * from input to output as it is, without parsing and re-serialization.
+     * @return {@code true}, if content should be copied, {@code false} otherwise.
+     */
+    public boolean isSpliceOutput() {
+        return this.spliceOutput;
+    }
+
+    /**
+     * Sets the value that indicates whether content outside of math elements 
+     * should be copied from input to output as it is.
+     * @param spliceOutput Indicator whether content should be copied.
+     */
+    public void setSpliceOutput(boolean spliceOutput) {
+        this.spliceOutput = spliceOutput;
+    }
+    
+    /**
+     * Indicates whether input should be scanned for math elements first, 
+     * so that only these elements are parsed.
+     * @return {@code true}, if input should be scanned, {@code false} otherwise.
+     */
+    public boolean isPrescan() {
+        return this.prescan;
+    }
+
+    /**
+     * Sets the value that indicates whether input should be scanned for math 
+     * elements first.
+     * @param prescan Indicator whether input should be scanned.
+     */
+    public void setPrescan(boolean prescan) {
+        this.prescan = prescan;
+    }
+    
+    /**
+     * Returns minimal size of input file (in bytes) that is mapped into memory
+     * instead of being read through a stream. Value lower than <code>1</code>
+     * means that files are never mapped.
+     * @return Minimal size of mapped input file in bytes.
+     */
+    public long getMappingThreshold() {
+        return this.mappingThreshold;
+    }
+
+    /**
+     * Sets minimal size of input file (in bytes) that is mapped into memory.
+     * @param mappingThreshold Minimal size of mapped input file in bytes, value
+     *  lower than <code>1</code> disables mapping.
+     */
+    public void setMappingThreshold(long mappingThreshold) {
+        this.mappingThreshold = mappingThreshold;
+    }
+    
+    /**
+     * Returns maximal total size (in bytes) of buffers holding input files 
+     * that are read ahead while earlier files are converted. Value lower 
+     * than <code>1</code> means that files are not read ahead.
+     * @return Byte budget of read-ahead buffers.
+     */
+    public long getPrefetchBudget() {
+        return this.prefetchBudget;
+    }
+
+    /**
+     * Sets maximal total size (in bytes) of buffers holding input files read ahead.
+     * @param prefetchBudget Byte budget of read-ahead buffers, value lower 
+     *  than <code>1</code> disables reading ahead.
+     */
+    public void setPrefetchBudget(long prefetchBudget) {
+        this.prefetchBudget = prefetchBudget;
+    }
+    
+    /**
+     * Returns maximal total memory (in bytes) estimated for documents that 
+     * are converted at the same time. A worker waits with the next document
+     * until its memory fits into the budget. Value lower than <code>1</code>
+     * means that memory is not limited.
+     * @return Memory budget of conversion in bytes.
+     */
+    public long getMemoryBudget() {
+        return this.memoryBudget;
+    }
+
+    /**
+     * Sets maximal total memory (in bytes) estimated for documents converted at once.
+     * @param memoryBudget Memory budget in bytes, value lower than <code>1</code>
+     *  disables the limit.
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+    
+    /**
+     * Indicates whether converted documents from an archive should be written
+     * to a new archive (with all other entries copied) instead of separate files.
+     * @return {@code true}, if archives should be rewritten, {@code false} otherwise.
+     */
+    public boolean isRewriteArchives() {
+        return this.rewriteArchives;
+    }
+
+    /**
+     * Sets the value that indicates whether converted documents from an archive
+     * should be written to a new archive.
+     * @param rewriteArchives Indicator whether archives should be rewritten.
+     */
+    public void setRewriteArchives(boolean rewriteArchives) {
+        this.rewriteArchives = rewriteArchives;
+    }
+    
+    /**
+     * Indicates whether output files should be compressed with gzip
+     * (suffix <code>.gz</code> is appended to their names).
+     * @return {@code true}, if output should be compressed, {@code false} otherwise.
+     */
+    public boolean isCompressOutput() {
+        return this.compressOutput;
+    }
+
+    /**
+     * Sets the value that indicates whether output files should be compressed with gzip.
+     * @param compressOutput Indicator whether output should be compressed.
+     */
+    public void setCompressOutput(boolean compressOutput) {
+        this.compressOutput = compressOutput;
+    }
+    
+    /**
+     * Indicates whether output should be compressed on a separate thread, 
+     * so that the compression runs in parallel with the conversion.
+     * @return {@code true}, if output should be compressed on a separate thread, {@code false} otherwise.
+     */
+    public boolean isBackgroundCompression() {
+        return this.backgroundCompression;
+    }
+
+    /**
+     * Sets the value that indicates whether output should be compressed on a separate thread.
+     * @param backgroundCompression Indicator whether output should be compressed on a separate thread.
+     */
+    public void setBackgroundCompression(boolean backgroundCompression) {
+        this.backgroundCompression = backgroundCompression;
+    }
+    
+    /**
+     * Indicates whether output files of a batch should be written on a separate
+     * thread, through temporary files that are renamed when they are complete.
+     * @return {@code true}, if output files should be written on a separate thread, {@code false} otherwise.
+     */
+    public boolean isWriteBehind() {
+        return this.writeBehind;
+    }
+
+    /**
+     * Sets the value that indicates whether output files should be written on a separate thread.
+     * @param writeBehind Indicator whether output files should be written on a separate thread.
+     */
+    public void setWriteBehind(boolean writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+    
+    /**
+     * Indicates whether a batch should be converted by a pipeline of stages 
+     * (read, unzip, canonicalize, parse, convert, write), every stage has its
+     * own threads and a bounded queue. Parse stage has {@link #getThreadCount()}
+     * threads, convert stage {@link #getFormulaThreadCount()} threads.
+     * @return {@code true}, if batch should be converted by a pipeline, {@code false} otherwise.
+     */
+    public boolean isPipeline() {
+        return this.pipeline;
+    }
+
+    /**
+     * Sets the value that indicates whether a batch should be converted by a pipeline of stages.
+     * @param pipeline Indicator whether batch should be converted by a pipeline.
+     */
+    public void setPipeline(boolean pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Returns the number of threads of the pipeline reading input files.
+     * @return The number of reading threads.
+     */
+    public int getReadThreadCount() {
+        return this.readThreadCount;
+    }
+
+    /**
+     * Sets the number of threads of the pipeline reading input files.
+     * @param readThreadCount The number of reading threads, minimal value is 1.
+     */
+    public void setReadThreadCount(int readThreadCount) {
+        this.readThreadCount = Math.max(1, readThreadCount);
+    }
+
+    /**
+     * Returns the number of threads of the pipeline decompressing documents
+     * (gzip files and entries of archives).
+     * @return The number of decompressing threads.
+     */
+    public int getUnzipThreadCount() {
+        return this.unzipThreadCount;
+    }
+
+    /**
+     * Sets the number of threads of the pipeline decompressing documents.
+     * @param unzipThreadCount The number of decompressing threads, minimal value is 1.
+     */
+    public void setUnzipThreadCount(int unzipThreadCount) {
+        this.unzipThreadCount = Math.max(1, unzipThreadCount);
+    }
+
+    /**
+     * Returns the number of threads of the pipeline canonicalizing documents,
+     * they are used only if input is canonicalized.
+     * @return The number of canonicalizing threads.
+     */
+    public int getCanonicalizeThreadCount() {
+        return this.canonicalizeThreadCount;
+    }
+
+    /**
+     * Sets the number of threads of the pipeline canonicalizing documents.
+     * @param canonicalizeThreadCount The number of canonicalizing threads, minimal value is 1.
+     */
+    public void setCanonicalizeThreadCount(int canonicalizeThreadCount) {
+        this.canonicalizeThreadCount = Math.max(1, canonicalizeThreadCount);
+    }
+
+    /**
+     * Returns the number of threads of the pipeline writing output files.
+     * @return The number of writing threads.
+     */
+    public int getWriteThreadCount() {
+        return this.writeThreadCount;
+    }
+
+    /**
+     * Sets the number of threads of the pipeline writing output files.
+     * @param writeThreadCount The number of writing threads, minimal value is 1.
+     */
+    public void setWriteThreadCount(int writeThreadCount) {
+        this.writeThreadCount = Math.max(1, writeThreadCount);
+    }
+    
+    /**
+     * Indicates whether input files without math elements should be copied
+     * to output as they are, without parsing.
+     * @return {@code true}, if files without math should be copied, {@code false} otherwise.
+     */
+    public boolean isCopyMathFree() {
+        return this.copyMathFree;
+    }
+
+    /**
+     * Sets the value that indicates whether input files without math elements 
+     * should be copied to output.
+     * @param copyMathFree Indicator whether files without math should be copied.
+     */
+    public void setCopyMathFree(boolean copyMathFree) {
+        this.copyMathFree = copyMathFree;
+    }
+    
+    /**
+     * Indicates whether input files without math elements should be skipped,
+     * no output file is created for them.
+     * @return {@code true}, if files without math should be skipped, {@code false} otherwise.
+     */
+    public boolean isSkipMathFree() {
+        return this.skipMathFree;
+    }
+
+    /**
+     * Sets the value that indicates whether input files without math elements 
+     * should be skipped.
+     * @param skipMathFree Indicator whether files without math should be skipped.
+     */
+    public void setSkipMathFree(boolean skipMathFree) {
+        this.skipMathFree = skipMathFree;
+    }
+    
+    /**
+     * Returns the value that indicates whether StAX parsers should be configured 
+     * for speed.
+     * @return {@code true}, if parsers should be configured for speed, {@code false} otherwise.
+     */
+    public boolean isSpeedProfile() {
+        return this.speedProfile;
+    }
+
+    /**
+     * Sets the value that indicates whether StAX parsers should be configured 
+     * for speed.
+     * @param speedProfile Indicator whether parsers should be configured for speed.
+     */
+    public void setSpeedProfile(boolean speedProfile) {
+        this.speedProfile = speedProfile;
+    }
+    
+    /**
+     * Returns the value that indicates whether Aalto parser should be fed
+     * asynchronously from input read ahead by I/O threads.
+     * @return {@code true}, if input should be fed asynchronously, {@code false} otherwise.
+     */
+    public boolean isAsyncInput() {
+        return this.asyncInput;
+    }
+
+    /**
+     * Sets the value that indicates whether Aalto parser should be fed
+     * asynchronously from input read ahead by I/O threads.
+     * @param asyncInput Indicator whether input should be fed asynchronously.
+     */
+    public void setAsyncInput(boolean asyncInput) {
+        this.asyncInput = asyncInput;
+    }
+    
+    /**
+     * Returns format of output documents written by DOM parser.
+     * @return Output format, {@link OutputFormat#PRETTY} by default.
+     */
+    public OutputFormat getOutputFormat() {
+        return this.outputFormat;
+    }
+
+    /**
+     * Sets format of output documents written by DOM parser.
+     * @param outputFormat Output format.
+     */
+    public void setOutputFormat(OutputFormat outputFormat) {
+        this.outputFormat = outputFormat;
+    }
+    
     /**
      * Returns set of language codes, that are supported by the converter.
      * @return Set of language codes, that are supported by the converter. 
@@ -1,13 +1,7 @@
 package cz.muni.fi.mathml.mathml2text.converter;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
-import java.util.Map;
-import java.util.Properties;
-
-import javax.annotation.Nonnull;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,10 +10,12 @@ import cz.muni.fi.mathml.mathml2text.converter.tree.MathMLElement;
 import cz.muni.fi.mathml.mathml2text.converter.tree.MathMLNode;
 import cz.muni.fi.mathml.mathml2text.converter.tree.MathMLType;
 import cz.muni.fi.mathml.mathml2text.converter.tree.XmlAttribute;
-import cz.muni.fi.mathml.mathml2text.numbers.NumberTransformer;
 
 /**
  * Transformer of {@link MathMLNode} trees into string representations.
+ * Converter has no state, language and options of conversion are given by
+ * {@link ConversionContext}, so a single instance can be shared by any number
+ * of threads converting in different languages.
  * 
  * @author Maros Kucbel
  * @date 2012-11-03T18:55:09+0100
@@ -30,61 +26,37 @@ public class MathMLConverter {
      */
     private static final Logger logger = LoggerFactory.getLogger(MathMLConverter.class);
     /**
-     * Localization properties for locales. 
-     */
-    @Nonnull
-    private Map<Locale, Properties> localizationMap = new HashMap<Locale, Properties>();
-    /**
-     * Transformation of numbers.
+     * Collector of unsupported operators of the tree converted on the current thread,
+     * {@code null} if they are not collected.
      */
-    private NumberTransformer numberTransformer;
-    /**
-     * Helper property for access to properties file for current localization.
-     */
-    private Properties currentLocalization;
-
+    private static final ThreadLocal<List<String>> unknownOperators = new ThreadLocal<List<String>>();
     /**
-     * Returns localization properties for given locale.
+     * Converts a MathML node into string with options of {@link ConverterSettings}.
+     * 
+     * @param node Input node.
+     * @param language Language of conversion.
+     * @return Node converted to string.
      */
-    private Properties getLocalization(final Locale locale) {
-        if (this.localizationMap.get(locale) == null) {
-            final Properties properties = new Properties();
-            final InputStream resourceAsStream = this.getClass().getResourceAsStream(String.format("%1$s.xml", locale.getLanguage()));
-            try {
-                properties.loadFromXML(resourceAsStream);
-                this.localizationMap.put(locale, properties);
-            } catch (final IOException ex) {
-                logger.error(String.format("Cannot load properties for language [%1$s].", locale.getLanguage()), ex);
-            }
-        }
-        return this.localizationMap.get(locale);
+    public String convert(final MathMLNode node, final Locale language) {
+        return this.convert(node, ConversionContext.forSettings(language));
     }
     
     /**
      * Converts a MathML node into string.
-     * If there was an error during conversion, {@code null} will be returned.
+     * If there was an error during conversion, empty string will be returned.
      * 
      * @param node Input node.
-     * @param language Language of conversion.
+     * @param context Language and options of conversion.
      * @return Node converted to string.
      */
-    public String convert(final MathMLNode node, final Locale language) {
+    public String convert(final MathMLNode node, final ConversionContext context) {
         if (!MathMLElement.MATH.equals(node.getType())) {
             throw new IllegalStateException(String.format("Expected [math] node, but got [%1$s].", node.getType().getElementName()));
         }
-        this.numberTransformer = new NumberTransformer(language);
-        this.currentLocalization = this.getLocalization(language);
-        ConverterSettings settings = ConverterSettings.getInstance();
-        if (settings.getLocalization() == null) {
-            settings.setLocalization(this.currentLocalization);
-        }
-        if (settings.getNumberTransformer() == null) {
-            settings.setNumberTransformer(this.numberTransformer);
-        }
-        MathMLNode nodeToProcess = this.getNodeForProcessing(node);
+        MathMLNode nodeToProcess = this.getNodeForProcessing(node, context.isUseContentMarkup());
         String result = null;
         try {
-            result = Node.process(nodeToProcess, settings);
+            result = Node.process(nodeToProcess, context);
         } catch (Throwable ex) {
             logger.error("Error while processing input tree.", ex);
         }
@@ -94,13 +66,85 @@ public class MathMLConverter {
         return result.trim();
     }
     
+    /**
+     * Converts a MathML node into string and collects operators that are not
+     * supported by the converter (see {@link #reportUnknownOperator(String)}).
+     * 
+     * @param node Input node.
+     * @param language Language of conversion.
+     * @param unknownOperators List to which unsupported operators are added.
+     * @return Node converted to string.
+     */
+    public String convert(final MathMLNode node, final Locale language, final List<String> unknownOperators) {
+        return this.convert(node, ConversionContext.forSettings(language), unknownOperators);
+    }
+    
+    /**
+     * Converts a MathML node into string and collects operators that are not
+     * supported by the converter (see {@link #reportUnknownOperator(String)}).
+     * 
+     * @param node Input node.
+     * @param context Language and options of conversion.
+     * @param unknownOperators List to which unsupported operators are added.
+     * @return Node converted to string.
+     */
+    public String convert(final MathMLNode node, final ConversionContext context, final List<String> unknownOperators) {
+        MathMLConverter.unknownOperators.set(unknownOperators);
+        try {
+            return this.convert(node, context);
+        } finally {
+            MathMLConverter.unknownOperators.remove();
+        }
+    }
+    
+    /**
+     * Reports operator that is not supported by the converter, it is
+     * added to unsupported operators of the tree converted on the current 
+     * thread, if they are collected.
+     * 
+     * @param operator Original value of the operator.
+     */
+    public static void reportUnknownOperator(final String operator) {
+        final List<String> operators = unknownOperators.get();
+        if (operators != null) {
+            operators.add(operator);
+        }
+    }
+    
+    /**
+     * Indicates whether content of an element will never be read by the 
+     * converter, so that parsers do not have to build its subtree. Only the
+     * node of the element itself (with attributes) is needed.
+     * If presentation markup is preferred (see {@link ConversionContext#isUseContentMarkup()}),
+     * content of <code>&lt;annotation-xml&gt;</code> is ignored, when it is a child 
+     * of <code>&lt;math&gt;</code> or <code>&lt;semantics&gt;</code> element
+     * whose first child is presentation element (see {@link #getNodeForProcessing(MathMLNode)}
+     * and {@link Node#process(MathMLNode, ConversionContext)}).
+     * 
+     * @param parent Parent node of the element, its preceding siblings are already built.
+     * @param element Type of the element.
+     * @param context Context in which the tree will be converted.
+     * @return {@code true} if children of the element are not needed, {@code false} otherwise.
+     */
+    public static boolean isContentIgnored(final MathMLNode parent, final MathMLElement element, 
+            final ConversionContext context) {
+        if (!MathMLElement.ANNOTATION_XML.equals(element) || parent == null || context.isUseContentMarkup()) {
+            return false;
+        }
+        if (!MathMLElement.MATH.equals(parent.getType()) && !MathMLElement.SEMANTICS.equals(parent.getType())) {
+            return false;
+        }
+        return !parent.getChildren().isEmpty()
+                && MathMLType.PRESENTATION.equals(parent.getChildren().get(0).getType().getType());
+    }
+    
     /**
      * Returns a node that will be converted based on some input parameters.
      * @param node Root node.
+     * @param useContentMarkup Indicates whether content markup is preferred.
      * @return A node that will be converted based on some input parameters.
      */
-    private MathMLNode getNodeForProcessing(final MathMLNode node) {
-        final boolean useContentMarkup = ConverterSettings.getInstance().isUseContentMarkup();
+    private MathMLNode getNodeForProcessing(final MathMLNode node, final boolean useContentMarkup) {
         for (final MathMLNode child : node.getChildren()) {
             if (!useContentMarkup && MathMLType.PRESENTATION.equals(child.getType().getType())) {
                 return node;
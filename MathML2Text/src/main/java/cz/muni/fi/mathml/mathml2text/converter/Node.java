@@ -31,11 +31,11 @@ public final class Node {
      * Processes given node.
      * Based on type of input node calls specific node implementations.
      * @param node Input node.
-     * @param settings Converter settings.
+     * @param context Conversion context.
      * @return Content of the input node converted to string.
      */
     public static String process(final MathMLNode node, 
-                                 final ConverterSettings settings) {
+                                 final ConversionContext context) {
         if (node.isProcessed()) {
             return Strings.EMPTY;
         }
@@ -45,19 +45,19 @@ public final class Node {
             case MATH: case SEMANTICS: {
                 // root element, iterate through children
                 for (final MathMLNode child : node.getChildren()) {
-                    builder.append(Node.process(child, settings));
+                    builder.append(Node.process(child, context));
                 }
                 break;
             }
             case ANNOTATION_XML: {
-                if (!settings.isUseContentMarkup()
+                if (!context.isUseContentMarkup()
                         && node.getParent() != null 
                         && MathMLType.PRESENTATION.equals(node.getParent().getChildren().get(0).getType().getType())) {
                     // we are processing
                     // Presentation MathML and it is time to stop                    
                 } else {
                     for (final MathMLNode child : node.getChildren()) {
-                        builder.append(Node.process(child, settings));
+                        builder.append(Node.process(child, context));
                     }
                 }
                 break;
@@ -71,74 +71,74 @@ public final class Node {
                         && !MathMLElement.MFENCED.equals(node.getParent().getType())
                         && MathMLType.PRESENTATION.equals(node.getParent().getType().getType());
                 if (enclose) {
-                    builder.append(settings.getProperty("open_braces"));
+                    builder.append(context.getProperty("open_braces"));
                 }
                 for (final MathMLNode child : node.getChildren()) {
-                    builder.append(Node.process(child, settings));
+                    builder.append(Node.process(child, context));
                 }
                 if (enclose) {
-                    builder.append(settings.getProperty("close_braces"));
+                    builder.append(context.getProperty("close_braces"));
                 }
                 break;
             }
             case MI: {
-                builder.append(Mi.process(node, settings));
+                builder.append(Mi.process(node, context));
                 break;
             }
             case MO: {
-                builder.append(Mo.process(node, settings));
+                builder.append(Mo.process(node, context));
                 break;
             }
             case MN: {
-                builder.append(Mn.process(node, settings));
+                builder.append(Mn.process(node, context));
                 break;
             }
             case MFRAC: {    
-                builder.append(Mfrac.process(node, settings));
+                builder.append(Mfrac.process(node, context));
                 break;
             }
             case MSQRT: {
-                builder.append(Msqrt.process(node, settings));
+                builder.append(Msqrt.process(node, context));
                 break;
             }
             case MROOT: {
-                builder.append(Mroot.process(node, settings));
+                builder.append(Mroot.process(node, context));
                 break;
             }    
             case MSUB: {
-                builder.append(Msub.process(node, settings));
+                builder.append(Msub.process(node, context));
                 break;
             }
             case MSUP: {
-                builder.append(Msup.process(node, settings));
+                builder.append(Msup.process(node, context));
                 break;
             }
             case MUNDER: {
-                builder.append(Munder.process(node, settings));
+                builder.append(Munder.process(node, context));
                 break;
             } 
             case MOVER: {
-                builder.append(Mover.process(node, settings));
+                builder.append(Mover.process(node, context));
                 break;
             }
             case MUNDEROVER: case MSUBSUP: {
-                builder.append(Munderover.process(node, settings));
+                builder.append(Munderover.process(node, context));
                 break;
             }
             case MFENCED: {
-                builder.append(Mfenced.process(node, settings));
+                builder.append(Mfenced.process(node, context));
                 break;
             }
             case CN: {
-                builder.append(Cn.process(node, settings));
+                builder.append(Cn.process(node, context));
                 break;
             }
             case CI: {
-                builder.append(Ci.process(node, settings));
+                builder.append(Ci.process(node, context));
                 break;
             }
             case APPLY: {
-                builder.append(Apply.process(node, settings));
+                builder.append(Apply.process(node, context));
                 break;
             }
             default: {
@@ -146,7 +146,7 @@ public final class Node {
                     builder.append(node.getValue());
                 } else {
                     for (final MathMLNode child : node.getChildren()) {
-                        builder.append(Node.process(child, settings));
+                        builder.append(Node.process(child, context));
                     }
                 }
                 break;
@@ -0,0 +1,22 @@
+package cz.muni.fi.mathml.mathml2text.converter;
+
+/**
+ * Format of output documents written by DOM parser.
+ * 
+ * @author agent
+ * @date 2026-10-17T23:58:06+0000
+ */
+public enum OutputFormat {
+    /**
+     * Elements are indented, white space of text is trimmed.
+     */
+    PRETTY,
+    /**
+     * White space of text is normalized, no indentation is added.
+     */
+    COMPACT,
+    /**
+     * Content is written as it was read, without any whitespace changes.
+     */
+    RAW;
+}
@@ -7,7 +7,8 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import cz.muni.fi.mathml.mathml2text.converter.ConverterSettings;
+import cz.muni.fi.mathml.mathml2text.converter.ConversionContext;
+import cz.muni.fi.mathml.mathml2text.converter.MathMLConverter;
 import cz.muni.fi.mathml.mathml2text.converter.Node;
 import cz.muni.fi.mathml.mathml2text.converter.Strings;
 import cz.muni.fi.mathml.mathml2text.converter.operation.Operation;
@@ -30,7 +31,7 @@ public final class Apply {
     
     private static final Logger logger = LoggerFactory.getLogger(Apply.class);
     
-    public static String process(final MathMLNode node, final ConverterSettings settings) {
+    public static String process(final MathMLNode node, final ConversionContext context) {
         final StringBuilder builder = new StringBuilder();
         // first element is function
         
@@ -42,10 +43,10 @@ public final class Apply {
         } else if (MathMLElement.APPLY.equals(firstChild.getType())) {
             // or another function can be used in apply
             //@todo maybe do not return but process other children (can there be any?)
-            builder.append(Node.process(firstChild, settings));
-            builder.append(settings.getProperty("applied_to"));
+            builder.append(Node.process(firstChild, context));
+            builder.append(context.getProperty("applied_to"));
             for (int index = 1; index < node.getChildren().size(); ++index) {
-                builder.append(Node.process(node.getChildren().get(index), settings));
+                builder.append(Node.process(node.getChildren().get(index), context));
             }
             return builder.toString();
         } else if (MathMLElement.CI.equals(firstChild.getType()) && node.getChildren().size() > 1) {
@@ -68,7 +69,7 @@ public final class Apply {
                 || MathMLElement.CI.getElementName().equals(function)) 
                 && node.getChildren().size() == 1) {
             //@todo some apply elements have only one child - cn/ci - what to do?
-            builder.append(Node.process(firstChild, settings));
+            builder.append(Node.process(firstChild, context));
             return builder.toString();
         }
         
@@ -87,20 +88,21 @@ public final class Apply {
             }
             String join = StringUtils.join(chars, ",");
             logger.info("Unknown operation [{}] [{}]", function, join);
+            MathMLConverter.reportUnknownOperator(function);
             
             // treat this function as user defined (not a well known mathematical operation)
             // all other child elements of current apply element are considered parameters of this function
             builder.append(function);
             builder.append(Strings.SPACE);
-            builder.append(settings.getProperty("with_parameters"));
+            builder.append(context.getProperty("with_parameters"));
             for (int index = 1; index < node.getChildren().size(); ++index) {
-                builder.append(Node.process(node.getChildren().get(index), settings));
+                builder.append(Node.process(node.getChildren().get(index), context));
             }
             
             return builder.toString();
         }
          
-        String functionName = settings.getProperty(operation.getKey());
+        String functionName = context.getProperty(operation.getKey());
         if (StringUtils.isBlank(functionName)) {
             logger.info("Unknown function [{}]", function);
         }
@@ -122,46 +124,46 @@ public final class Apply {
                 }
                 boolean enclose = node.getParent() != null && MathMLType.CONTENT.equals(node.getParent().getType().getType());
                 if (enclose) {
-                    builder.append(settings.getProperty("open_braces"));
+                    builder.append(context.getProperty("open_braces"));
                 }
-                builder.append(Node.process(node.getChildren().get(1), settings));
+                builder.append(Node.process(node.getChildren().get(1), context));
                 int count = node.getChildren().size();
                 for (int index = 2; index < count; ++index) {
                     builder.append(functionName);
-                    builder.append(Node.process(node.getChildren().get(index), settings));
+                    builder.append(Node.process(node.getChildren().get(index), context));
                 }
                 if (enclose) {
-                    builder.append(settings.getProperty("close_braces"));
+                    builder.append(context.getProperty("close_braces"));
                 }
                 return builder.toString();
             }
             case PREFIX: {
                 builder.append(functionName);
                 if (!functionName.endsWith("of")) {
-                    builder.append(settings.getProperty("of"));
+                    builder.append(context.getProperty("of"));
                 }
-                builder.append(Node.process(node.getChildren().get(1), settings));
+                builder.append(Node.process(node.getChildren().get(1), context));
                 return builder.toString();
             }
             case PREFIX_MULTI: {
                 builder.append(functionName);
-                builder.append(settings.getProperty("of"));
-                builder.append(Node.process(node.getChildren().get(1), settings));
+                builder.append(context.getProperty("of"));
+                builder.append(Node.process(node.getChildren().get(1), context));
                 int count = node.getChildren().size();
                 for (int index = 2; index < count; ++index) {
                     if (index == count - 1) {
-                        builder.append(settings.getProperty("and"));
+                        builder.append(context.getProperty("and"));
                     } else {
                         builder.append(", ");
                     }
-                    builder.append(Node.process(node.getChildren().get(index), settings));
+                    builder.append(Node.process(node.getChildren().get(index), context));
                 }
                 return builder.toString();
             }
             case EVERY_ARGUMENT: {
                 for (int index = 1; index < node.getChildren().size(); ++index) {
-                    builder.append(Node.process(node.getChildren().get(index), settings));
-                    builder.append(settings.getProperty("with"));
+                    builder.append(Node.process(node.getChildren().get(index), context));
+                    builder.append(context.getProperty("with"));
                     builder.append(functionName);
                 }
             }
@@ -170,21 +172,21 @@ public final class Apply {
                 // or in infix form (number > 2)
                 if (node.getChildren().size() == 2) {
                     builder.append(functionName);
-                    builder.append(Node.process(node.getChildren().get(1), settings));
+                    builder.append(Node.process(node.getChildren().get(1), context));
                     return builder.toString();
                 } else {
                     boolean enclose = node.getParent() != null && MathMLType.CONTENT.equals(node.getParent().getType().getType());
                     if (enclose) {
-                        builder.append(settings.getProperty("open_braces"));
+                        builder.append(context.getProperty("open_braces"));
                     }
-                    builder.append(Node.process(node.getChildren().get(1), settings));
+                    builder.append(Node.process(node.getChildren().get(1), context));
                     int count = node.getChildren().size();
                     for (int index = 2; index < count; ++index) {
                         builder.append(functionName);
-                        builder.append(Node.process(node.getChildren().get(index), settings));
+                        builder.append(Node.process(node.getChildren().get(index), context));
                     }
                     if (enclose) {
-                        builder.append(settings.getProperty("close_braces"));
+                        builder.append(context.getProperty("close_braces"));
                     }
                     return builder.toString();
                 }
@@ -193,48 +195,48 @@ public final class Apply {
                 final MathMLNode secondChild = node.getChildren().get(1);
                 if (node.getChildren().size() == 2) {
                     builder.append(functionName);
-                    builder.append(settings.getProperty("of"));
-                    builder.append(Node.process(secondChild, settings));
+                    builder.append(context.getProperty("of"));
+                    builder.append(Node.process(secondChild, context));
                     return builder.toString();
                 }
                 
                 if (MathMLElement.DOMAIN_OF_APPLICATION.equals(secondChild.getType())) {
                     builder.append(functionName);
-                    builder.append(settings.getProperty("over"));
-                    builder.append(settings.getProperty("domain"));
-                    builder.append(Node.process(secondChild, settings)); // domain
-                    builder.append(settings.getProperty("of"));
-                    builder.append(Node.process(node.getChildren().get(2), settings)); // function
+                    builder.append(context.getProperty("over"));
+                    builder.append(context.getProperty("domain"));
+                    builder.append(Node.process(secondChild, context)); // domain
+                    builder.append(context.getProperty("of"));
+                    builder.append(Node.process(node.getChildren().get(2), context)); // function
                 } else if (MathMLElement.BVAR.equals(secondChild.getType())) {
                     if (MathMLElement.LOWLIMIT.equals(node.getChildren().get(2).getType())) {
                         builder.append(functionName);
-                        builder.append(settings.getProperty("over"));
-                        builder.append(Node.process(secondChild, settings));
-                        builder.append(settings.getProperty("from"));
-                        builder.append(Node.process(node.getChildren().get(2), settings)); // lowlimit
-                        builder.append(settings.getProperty("to"));
-                        builder.append(Node.process(node.getChildren().get(3), settings)); // uplimit
-                        builder.append(settings.getProperty("of"));
-                        builder.append(Node.process(node.getChildren().get(4), settings)); // function
+                        builder.append(context.getProperty("over"));
+                        builder.append(Node.process(secondChild, context));
+                        builder.append(context.getProperty("from"));
+                        builder.append(Node.process(node.getChildren().get(2), context)); // lowlimit
+                        builder.append(context.getProperty("to"));
+                        builder.append(Node.process(node.getChildren().get(3), context)); // uplimit
+                        builder.append(context.getProperty("of"));
+                        builder.append(Node.process(node.getChildren().get(4), context)); // function
                     } else if (MathMLElement.CONDITION.equals(node.getChildren().get(2).getType())) {
                         builder.append(functionName);
-                        builder.append(settings.getProperty("over"));
-                        builder.append(Node.process(secondChild, settings));
-                        builder.append(settings.getProperty("where"));
-                        builder.append(Node.process(node.getChildren().get(2), settings)); // condition
-                        builder.append(settings.getProperty("of"));
-                        builder.append(Node.process(node.getChildren().get(3), settings)); // function
+                        builder.append(context.getProperty("over"));
+                        builder.append(Node.process(secondChild, context));
+                        builder.append(context.getProperty("where"));
+                        builder.append(Node.process(node.getChildren().get(2), context)); // condition
+                        builder.append(context.getProperty("of"));
+                        builder.append(Node.process(node.getChildren().get(3), context)); // function
                     } else {
                         logger.warn("Bound variable has no limits.");
                     }
                 } else if (MathMLElement.INTERVAL.equals(secondChild.getType())) {
                      builder.append(functionName);
-                     builder.append(settings.getProperty("from"));
-                     builder.append(Node.process(secondChild.getChildren().get(0), settings));
-                     builder.append(settings.getProperty("to"));
-                     builder.append(Node.process(secondChild.getChildren().get(1), settings));
-                     builder.append(settings.getProperty("of"));
-                     builder.append(Node.process(node.getChildren().get(2), settings)); // function
+                     builder.append(context.getProperty("from"));
+                     builder.append(Node.process(secondChild.getChildren().get(0), context));
+                     builder.append(context.getProperty("to"));
+                     builder.append(Node.process(secondChild.getChildren().get(1), context));
+                     builder.append(context.getProperty("of"));
+                     builder.append(Node.process(node.getChildren().get(2), context)); // function
                      
                 } else {
                     logger.warn("Unknown variable definition [{}] of [{}].", 
@@ -248,26 +250,25 @@ public final class Apply {
         // all other operations have to be processed individually
         switch (operation) {
             case SUPERSCRIPT: case SUBSCRIPT: case APPROACHES: {
-                builder.append(Node.process(node.getChildren().get(1), settings));
+                builder.append(Node.process(node.getChildren().get(1), context));
                 builder.append(functionName);
-                builder.append(Node.process(node.getChildren().get(2), settings));
+                builder.append(Node.process(node.getChildren().get(2), context));
                 return builder.toString();
             }
             case ASSIGN: {
                 builder.append(functionName);
-                builder.append(Node.process(node.getChildren().get(1), settings));
-                builder.append(settings.getProperty("value"));
-                builder.append(Node.process(node.getChildren().get(2), settings));
+                builder.append(Node.process(node.getChildren().get(1), context));
+                builder.append(context.getProperty("value"));
+                builder.append(Node.process(node.getChildren().get(2), context));
                 return builder.toString();
             }
             case EXPONENTIATION: {
-                builder.append(Node.process(node.getChildren().get(1), settings));
+                builder.append(Node.process(node.getChildren().get(1), context));
                 builder.append(functionName);
-                builder.append(Node.process(node.getChildren().get(2), settings));
+                builder.append(Node.process(node.getChildren().get(2), context));
                 return builder.toString();
             }
             case ROOT: {
-                settings.setNumberFormat(NumberFormat.ORDINAL);
                 MathMLNode degree = node.getChildren().get(1);
                 MathMLNode from;
                 if (MathMLElement.DEGREE.equals(degree.getType())) {
@@ -277,37 +278,37 @@ public final class Apply {
                     degree = node.getChildren().get(2);
                     from = node.getChildren().get(1);
                 }
-                builder.append(Node.process(degree, settings));
-                settings.setNumberFormat(NumberFormat.CARDINAL);
+                // degree is an ordinal number, radicand is not
+                builder.append(Node.process(degree, context.withNumberFormat(NumberFormat.ORDINAL)));
                 builder.append(functionName);
-                builder.append(Node.process(from, settings));
+                builder.append(Node.process(from, context.withNumberFormat(NumberFormat.CARDINAL)));
                 return builder.toString();
             }
             case LOGARITHM: {
                 builder.append(functionName);
                 MathMLNode base;
                 if (node.getChildren().size() == 2) {
-                    builder.append(settings.getNumberTransformer().transform("10"));
-                    builder.append(settings.getProperty("logarithm_from"));
-                    builder.append(Node.process(node.getChildren().get(1), settings));
+                    builder.append(context.transformNumber("10"));
+                    builder.append(context.getProperty("logarithm_from"));
+                    builder.append(Node.process(node.getChildren().get(1), context));
                 } else {
                     if (MathMLElement.LOGBASE.equals(node.getChildren().get(1).getType())) {
                         base = node.getChildren().get(1).getChildren().get(0);
                     } else {
                         base = node.getChildren().get(1);
                     }
-                    builder.append(Node.process(base, settings));
-                    builder.append(settings.getProperty("logarithm_from"));
-                    builder.append(Node.process(node.getChildren().get(2), settings));
+                    builder.append(Node.process(base, context));
+                    builder.append(context.getProperty("logarithm_from"));
+                    builder.append(Node.process(node.getChildren().get(2), context));
                 }
                 return builder.toString();
             }
             case INTERVAL: {
                 builder.append(functionName);
-                builder.append(settings.getProperty("from"));
-                builder.append(Node.process(node.getChildren().get(1), settings));
-                builder.append(settings.getProperty("to"));
-                builder.append(Node.process(node.getChildren().get(2), settings));
+                builder.append(context.getProperty("from"));
+                builder.append(Node.process(node.getChildren().get(1), context));
+                builder.append(context.getProperty("to"));
+                builder.append(Node.process(node.getChildren().get(2), context));
                 return builder.toString();
             }
             case COMPOSE: {
@@ -316,31 +317,31 @@ public final class Apply {
                     return builder.toString();
                 }
                 builder.append(functionName);
-                builder.append(Node.process(node.getChildren().get(1), settings));
+                builder.append(Node.process(node.getChildren().get(1), context));
                 for (int index = 2; index < node.getChildren().size(); ++index) {
                     if (index + 1 == node.getChildren().size()) {
-                        builder.append(settings.getProperty("and"));
+                        builder.append(context.getProperty("and"));
                     } else {
                         builder.append(", ");
                     }
-                    builder.append(Node.process(node.getChildren().get(index), settings));
+                    builder.append(Node.process(node.getChildren().get(index), context));
                 }
                 return builder.toString();
             }
             case VECTOR: {
                 builder.append(functionName);
-                builder.append(settings.getProperty("first_value"));
-                builder.append(Node.process(node.getChildren().get(1), settings));
+                builder.append(context.getProperty("first_value"));
+                builder.append(Node.process(node.getChildren().get(1), context));
                 for (int index = 2; index < node.getChildren().size(); ++index) {
-                    builder.append(settings.getProperty("next_value"));
-                    builder.append(Node.process(node.getChildren().get(index), settings));
+                    builder.append(context.getProperty("next_value"));
+                    builder.append(Node.process(node.getChildren().get(index), context));
                 }
-                builder.append(settings.getProperty("vector_end"));
+                builder.append(context.getProperty("vector_end"));
                 return builder.toString();
             }
             case UPWARDS_ARROW: case DOWNWARDS_ARROW: {
                 for (int index = 1; index < node.getChildren().size(); ++index) {
-                    builder.append(Node.process(node.getChildren().get(index), settings));
+                    builder.append(Node.process(node.getChildren().get(index), context));
                     builder.append(functionName);
                 }
                 break;
@@ -348,7 +349,7 @@ public final class Apply {
             case FUNCTION_APPLICATION: {
                 // I don't know what function application means in Content MathML
                 for (int index = 1; index < node.getChildren().size(); ++index) {
-                    builder.append(Node.process(node.getChildren().get(index), settings));
+                    builder.append(Node.process(node.getChildren().get(index), context));
                 }
                 break;
             }
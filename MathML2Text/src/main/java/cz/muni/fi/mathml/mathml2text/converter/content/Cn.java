@@ -3,7 +3,7 @@ package cz.muni.fi.mathml.mathml2text.converter.content;
 import org.slf4j.LoggerFactory;
 
 import cz.muni.fi.mathml.mathml2text.converter.Strings;
-import cz.muni.fi.mathml.mathml2text.converter.ConverterSettings;
+import cz.muni.fi.mathml.mathml2text.converter.ConversionContext;
 import cz.muni.fi.mathml.mathml2text.converter.tree.MathMLNode;
 import cz.muni.fi.mathml.mathml2text.converter.tree.XmlAttribute;
 
@@ -18,10 +18,10 @@ public final class Cn {
     /**
      * Processes input node.
      * @param node Input node.
-     * @param settings Converter settings.
+     * @param context Conversion context.
      * @return Content of the input node converted to string.
      */
-    public static String process(final MathMLNode node, final ConverterSettings settings) {
+    public static String process(final MathMLNode node, final ConversionContext context) {
         if (node.getValue() == null) {
             throw new IllegalStateException("[mi] node should have its value set.");
         }
@@ -35,12 +35,10 @@ public final class Cn {
             }
         }
         try {
-            String strippedValue = node.getValue().trim();
-            for (final Character c : Strings.VALUE_EMPTY_CHARS) {
-                strippedValue = strippedValue.replace(c.toString(), Strings.EMPTY);
-            } 
-            final String number = settings.isTransformNumbers() 
-                                  ? settings.getNumberTransformer().transform(strippedValue) 
+            // value is trimmed and stripped when the tree is built
+            final String strippedValue = node.getTokenValue().getNumber();
+            final String number = context.isTransformNumbers() 
+                                  ? context.transformNumber(strippedValue) 
                                   : strippedValue;
             return number.trim() + Strings.SPACE;
         } catch (final NumberFormatException ex) {
@@ -1,6 +1,8 @@
 package cz.muni.fi.mathml.mathml2text.converter.operation;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -710,6 +712,21 @@ public enum Operation {
      */
     EMPTY("empty", OperationType.INFIX);
     
+    /**
+     * Operations indexed by symbol, the first operation of every symbol.
+     */
+    private static final Map<String, Operation> BY_SYMBOL = new HashMap<String, Operation>();
+    
+    static {
+        for (final Operation operation : values()) {
+            for (final String symbol : operation.getSymbols()) {
+                if (!BY_SYMBOL.containsKey(symbol)) {
+                    BY_SYMBOL.put(symbol, operation);
+                }
+            }
+        }
+    }
+    
     /**
      * Localization key for this operation.
      */
@@ -761,6 +778,7 @@ public enum Operation {
     
     /**
      * Finds operation for given symbol. Returns {@code null} if there isn't one.
+     * Operations are looked up in a table, not by scanning all operations.
      * @param symbol Symbol.
      * @return Operation for symbol.
      */
@@ -768,12 +786,7 @@ public enum Operation {
         if (StringUtils.isBlank(symbol)) {
             return Operation.EMPTY;
         }
-        for (final Operation operation : Operation.values()) {
-            if (operation.getSymbols().contains(symbol)) {
-                return operation;
-            }
-        }
-        return null;
+        return BY_SYMBOL.get(symbol);
     }
     
 }
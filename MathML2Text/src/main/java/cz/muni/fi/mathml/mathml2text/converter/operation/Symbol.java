@@ -1,6 +1,8 @@
 package cz.muni.fi.mathml.mathml2text.converter.operation;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 import com.google.common.collect.ImmutableList;
 
@@ -49,6 +51,19 @@ public enum Symbol {
     CURLY_CLOSE("right_curly_bracket", "}", "&#102177;", "&#x27E9;"),
     ABS("abs", "|", "&#125;", "&#x007D;");
     
+    /** Symbols indexed by value, the first symbol of every value. */
+    private static final Map<String, Symbol> BY_VALUE = new HashMap<String, Symbol>();
+    
+    static {
+        for (final Symbol s : values()) {
+            for (final String value : s.values) {
+                if (!BY_VALUE.containsKey(value)) {
+                    BY_VALUE.put(value, s);
+                }
+            }
+        }
+    }
+    
     /** Localization key for this symbol. */
     private final String key;
     /** Values in which this symbol can be declared in XML. */
@@ -75,16 +90,12 @@ public enum Symbol {
     
     /**
      * Finds symbol for given value. Returns {@code null} if there is none.
+     * Symbols are looked up in a table, not by scanning all symbols.
      * @param value Value.
      * @return Symbol defined by the value.
      */
     public static Symbol forValue(final String value) {
-        for (final Symbol s : Symbol.values()) {
-            if (s.values.contains(value)) {
-                return s;
-            }
-        }
-        return null;
+        return BY_VALUE.get(value);
     }
     
 }
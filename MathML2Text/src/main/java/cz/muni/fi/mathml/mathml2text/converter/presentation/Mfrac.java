@@ -1,6 +1,6 @@
 package cz.muni.fi.mathml.mathml2text.converter.presentation;
 
-import cz.muni.fi.mathml.mathml2text.converter.ConverterSettings;
+import cz.muni.fi.mathml.mathml2text.converter.ConversionContext;
 import cz.muni.fi.mathml.mathml2text.converter.Node;
 import cz.muni.fi.mathml.mathml2text.converter.tree.MathMLNode;
 import cz.muni.fi.mathml.mathml2text.converter.tree.XmlAttribute;
@@ -16,10 +16,10 @@ public final class Mfrac {
     /**
      * Processes input node.
      * @param node Input node.
-     * @param settings Converter settings.
+     * @param context Conversion context.
      * @return Content of the input node converted to string.
      */
-    public static String process(final MathMLNode node, final ConverterSettings settings) {
+    public static String process(final MathMLNode node, final ConversionContext context) {
         if (node.getChildren().size() != 2) {
             throw new IllegalStateException("[mfrac] should have two children.");
         }
@@ -32,18 +32,18 @@ public final class Mfrac {
             }
         }
         if (isFraction) {
-            builder.append(settings.getProperty("fraction"));
-            builder.append(settings.getProperty("fraction_numerator"));
-            builder.append(Node.process(node.getChildren().get(0), settings));
-            builder.append(settings.getProperty("fraction_denominator"));
-            builder.append(Node.process(node.getChildren().get(1), settings));
-            builder.append(settings.getProperty("end_fraction"));
+            builder.append(context.getProperty("fraction"));
+            builder.append(context.getProperty("fraction_numerator"));
+            builder.append(Node.process(node.getChildren().get(0), context));
+            builder.append(context.getProperty("fraction_denominator"));
+            builder.append(Node.process(node.getChildren().get(1), context));
+            builder.append(context.getProperty("end_fraction"));
         } else {
-            builder.append(settings.getProperty("binomial_coefficient"));
-            builder.append(Node.process(node.getChildren().get(0), settings));
-            builder.append(settings.getProperty("choose"));
-            builder.append(Node.process(node.getChildren().get(1), settings));
-            builder.append(settings.getProperty("end_binomial_coefficient"));
+            builder.append(context.getProperty("binomial_coefficient"));
+            builder.append(Node.process(node.getChildren().get(0), context));
+            builder.append(context.getProperty("choose"));
+            builder.append(Node.process(node.getChildren().get(1), context));
+            builder.append(context.getProperty("end_binomial_coefficient"));
         }
         return builder.toString();
     }
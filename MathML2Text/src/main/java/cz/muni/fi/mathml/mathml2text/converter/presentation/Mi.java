@@ -1,12 +1,11 @@
 package cz.muni.fi.mathml.mathml2text.converter.presentation;
 
-import org.apache.commons.lang3.StringEscapeUtils;
-
 import cz.muni.fi.mathml.mathml2text.converter.Strings;
-import cz.muni.fi.mathml.mathml2text.converter.ConverterSettings;
+import cz.muni.fi.mathml.mathml2text.converter.ConversionContext;
 import cz.muni.fi.mathml.mathml2text.converter.operation.Operation;
 import cz.muni.fi.mathml.mathml2text.converter.operation.Symbol;
 import cz.muni.fi.mathml.mathml2text.converter.tree.MathMLNode;
+import cz.muni.fi.mathml.mathml2text.converter.tree.TokenValue;
 
 /**
  * Specific implementation of <code>&lt;mi&gt;</code> node.
@@ -19,23 +18,24 @@ public final class Mi {
     /**
      * Processes input node.
      * @param node Input node.
-     * @param settings Converter settings.
+     * @param context Conversion context.
      * @return Content of the input node converted to string.
      */
-    public static String process(final MathMLNode node, final ConverterSettings settings) {
+    public static String process(final MathMLNode node, final ConversionContext context) {
         if (!node.getChildren().isEmpty()) {
             throw new IllegalStateException("[mi] node should not have children.");
         }
-        final String identifier = StringEscapeUtils.escapeHtml4(node.getValue());
-        Operation operation = Operation.forSymbol(identifier);
+        // operation and symbol are resolved when the tree is built
+        final TokenValue identifier = node.getTokenValue();
+        Operation operation = identifier.getOperation();
         if (operation != null) {
-            return settings.getProperty(operation.getKey());
+            return context.getProperty(operation.getKey());
         }
         // it's not operation let's try symbol
-        Symbol symbol = Symbol.forValue(identifier);
+        Symbol symbol = identifier.getSymbol();
         if (symbol != null) {
-            return settings.getProperty(symbol.getKey());
+            return context.getProperty(symbol.getKey());
         }
-        return identifier + Strings.SPACE;
+        return identifier.getIdentifier() + Strings.SPACE;
     }
 }
\ No newline at end of file
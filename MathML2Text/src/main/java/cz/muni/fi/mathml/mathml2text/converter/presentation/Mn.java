@@ -3,7 +3,7 @@ package cz.muni.fi.mathml.mathml2text.converter.presentation;
 import org.slf4j.LoggerFactory;
 
 import cz.muni.fi.mathml.mathml2text.converter.Strings;
-import cz.muni.fi.mathml.mathml2text.converter.ConverterSettings;
+import cz.muni.fi.mathml.mathml2text.converter.ConversionContext;
 import cz.muni.fi.mathml.mathml2text.converter.tree.MathMLNode;
 
 /**
@@ -17,10 +17,10 @@ public final class Mn {
     /**
      * Processes input node.
      * @param node Input node.
-     * @param settings Converter settings.
+     * @param context Conversion context.
      * @return Content of the input node converted to string.
      */
-    public static String process(final MathMLNode node, final ConverterSettings settings) {
+    public static String process(final MathMLNode node, final ConversionContext context) {
         if (!node.getChildren().isEmpty()) {
             throw new IllegalStateException("[mi] node should not have children.");
         }
@@ -28,12 +28,10 @@ public final class Mn {
             throw new IllegalStateException("[mi] node should have its value set.");
         }
         try {
-            String strippedValue = node.getValue().trim();
-            for (final Character c : Strings.VALUE_EMPTY_CHARS) {
-                strippedValue = strippedValue.replace(c.toString(), Strings.EMPTY);
-            } 
-            final String number = settings.isTransformNumbers() 
-                                  ? settings.getNumberTransformer().transform(strippedValue) 
+            // value is trimmed and stripped when the tree is built
+            final String strippedValue = node.getTokenValue().getNumber();
+            final String number = context.isTransformNumbers() 
+                                  ? context.transformNumber(strippedValue) 
                                   : strippedValue;
             return number.trim() + Strings.SPACE;
         } catch (final NumberFormatException ex) {
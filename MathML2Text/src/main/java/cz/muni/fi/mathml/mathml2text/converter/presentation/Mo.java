@@ -1,12 +1,13 @@
 package cz.muni.fi.mathml.mathml2text.converter.presentation;
 
-import org.apache.commons.lang3.StringEscapeUtils;
 import org.slf4j.LoggerFactory;
 
-import cz.muni.fi.mathml.mathml2text.converter.ConverterSettings;
+import cz.muni.fi.mathml.mathml2text.converter.ConversionContext;
+import cz.muni.fi.mathml.mathml2text.converter.MathMLConverter;
 import cz.muni.fi.mathml.mathml2text.converter.Strings;
 import cz.muni.fi.mathml.mathml2text.converter.operation.Operation;
 import cz.muni.fi.mathml.mathml2text.converter.tree.MathMLNode;
+import cz.muni.fi.mathml.mathml2text.converter.tree.TokenValue;
 import cz.muni.fi.mathml.mathml2text.converter.util.InputValueUtils;
 
 /**
@@ -20,18 +21,19 @@ public final class Mo {
     /**
      * Processes input node.
      * @param node Input node.
-     * @param settings Converter settings.
+     * @param context Conversion context.
      * @return Content of the input node converted to string.
      */
-    public static String process(final MathMLNode node, final ConverterSettings settings) {
+    public static String process(final MathMLNode node, final ConversionContext context) {
         if (!node.getChildren().isEmpty()) {
             throw new IllegalStateException("[mo] node should not have children.");
         }
         if (node.getValue() == null) {
             throw new IllegalStateException("[mo] node should have its value set.");
         }
-        final String op = StringEscapeUtils.escapeHtml4(node.getValue());
-        final Operation operator = Operation.forSymbol(op);
+        // operation is resolved when the tree is built
+        final TokenValue op = node.getTokenValue();
+        final Operation operator = op.getOperation();
         if (operator != null) {
             if (Operation.ABSOLUTE_VALUE.equals(operator)) {
                 int absCounter = 0;
@@ -44,14 +46,15 @@ public final class Mo {
                     }
                 }
                 if (absCounter % 2 == 1) {
-                    return settings.getProperty("abs_close");
+                    return context.getProperty("abs_close");
                 }
             }
             
-            return settings.getProperty(operator.getKey());
+            return context.getProperty(operator.getKey());
         } else {
             final String htmlEntity = InputValueUtils.buildHtmlEntityCode(node.getValue());
-            LoggerFactory.getLogger(Mo.class).warn("Operation [{}] not supported. Original operator [{}].", htmlEntity, op);
+            LoggerFactory.getLogger(Mo.class).warn("Operation [{}] not supported. Original operator [{}].", htmlEntity, op.getIdentifier());
+            MathMLConverter.reportUnknownOperator(node.getValue());
             return htmlEntity + Strings.SPACE;
         }
     }
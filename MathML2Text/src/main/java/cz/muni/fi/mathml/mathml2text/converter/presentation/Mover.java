@@ -1,6 +1,6 @@
 package cz.muni.fi.mathml.mathml2text.converter.presentation;
 
-import cz.muni.fi.mathml.mathml2text.converter.ConverterSettings;
+import cz.muni.fi.mathml.mathml2text.converter.ConversionContext;
 import cz.muni.fi.mathml.mathml2text.converter.Node;
 import cz.muni.fi.mathml.mathml2text.converter.tree.MathMLNode;
 
@@ -15,18 +15,18 @@ public final class Mover {
      /**
      * Processes input node.
      * @param node Input node.
-     * @param settings Converter settings.
+     * @param context Conversion context.
      * @return Content of the input node converted to string.
      */
-    public static String process(final MathMLNode node, final ConverterSettings settings) {
+    public static String process(final MathMLNode node, final ConversionContext context) {
         if (node.getChildren().size() != 2) {
             throw new IllegalArgumentException("[munder] should have two children.");
         }
         final StringBuilder builder = new StringBuilder();
-        builder.append(Node.process(node.getChildren().get(0), settings));
-        builder.append(settings.getProperty("with"));
-        builder.append(Node.process(node.getChildren().get(1), settings));
-        builder.append(settings.getProperty("above"));
+        builder.append(Node.process(node.getChildren().get(0), context));
+        builder.append(context.getProperty("with"));
+        builder.append(Node.process(node.getChildren().get(1), context));
+        builder.append(context.getProperty("above"));
         return builder.toString();
     }
 }
\ No newline at end of file
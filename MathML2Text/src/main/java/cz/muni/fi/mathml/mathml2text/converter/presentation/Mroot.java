@@ -1,6 +1,6 @@
 package cz.muni.fi.mathml.mathml2text.converter.presentation;
 
-import cz.muni.fi.mathml.mathml2text.converter.ConverterSettings;
+import cz.muni.fi.mathml.mathml2text.converter.ConversionContext;
 import cz.muni.fi.mathml.mathml2text.converter.Node;
 import cz.muni.fi.mathml.mathml2text.numbers.NumberFormat;
 import cz.muni.fi.mathml.mathml2text.converter.tree.MathMLNode;
@@ -16,19 +16,18 @@ public final class Mroot {
     /**
      * Processes input node.
      * @param node Input node.
-     * @param settings Converter settings.
+     * @param context Conversion context.
      * @return Content of the input node converted to string.
      */
-    public static String process(final MathMLNode node, final ConverterSettings settings) {
+    public static String process(final MathMLNode node, final ConversionContext context) {
         if (node.getChildren().size() != 2) {
             throw new IllegalArgumentException("[mroot] should have two children.");
         }
         final StringBuilder builder = new StringBuilder();
-        settings.setNumberFormat(NumberFormat.ORDINAL);
-        builder.append(Node.process(node.getChildren().get(1), settings));
-        settings.setNumberFormat(NumberFormat.CARDINAL);
-        builder.append(settings.getProperty("root"));
-        builder.append(Node.process(node.getChildren().get(0), settings));
+        // degree is an ordinal number, radicand is not
+        builder.append(Node.process(node.getChildren().get(1), context.withNumberFormat(NumberFormat.ORDINAL)));
+        builder.append(context.getProperty("root"));
+        builder.append(Node.process(node.getChildren().get(0), context.withNumberFormat(NumberFormat.CARDINAL)));
         
         return builder.toString();
     }
@@ -1,6 +1,6 @@
 package cz.muni.fi.mathml.mathml2text.converter.presentation;
 
-import cz.muni.fi.mathml.mathml2text.converter.ConverterSettings;
+import cz.muni.fi.mathml.mathml2text.converter.ConversionContext;
 import cz.muni.fi.mathml.mathml2text.converter.Node;
 import cz.muni.fi.mathml.mathml2text.converter.tree.MathMLNode;
 
@@ -15,16 +15,16 @@ public final class Msqrt {
     /**
      * Processes input node.
      * @param node Input node.
-     * @param settings Converter settings.
+     * @param context Conversion context.
      * @return Content of the input node converted to string.
      */
-    public static String process(final MathMLNode node, final ConverterSettings settings) {
+    public static String process(final MathMLNode node, final ConversionContext context) {
         if (node.getChildren().size() != 1) {
             throw new IllegalStateException("[msqrt] should have one child.");
         }
         final StringBuilder builder = new StringBuilder();
-        builder.append(settings.getProperty("square_root"));
-        builder.append(Node.process(node.getChildren().get(0), settings));
+        builder.append(context.getProperty("square_root"));
+        builder.append(Node.process(node.getChildren().get(0), context));
         return builder.toString();
     }
 }
\ No newline at end of file
@@ -1,6 +1,6 @@
 package cz.muni.fi.mathml.mathml2text.converter.presentation;
 
-import cz.muni.fi.mathml.mathml2text.converter.ConverterSettings;
+import cz.muni.fi.mathml.mathml2text.converter.ConversionContext;
 import cz.muni.fi.mathml.mathml2text.converter.Node;
 import cz.muni.fi.mathml.mathml2text.converter.operation.Operation;
 import cz.muni.fi.mathml.mathml2text.converter.tree.MathMLNode;
@@ -16,23 +16,23 @@ public final class Msub {
     /**
      * Processes input node.
      * @param node Input node.
-     * @param settings Converter settings.
+     * @param context Conversion context.
      * @return Content of the input node converted to string.
      */
-    public static String process(final MathMLNode node, final ConverterSettings settings) {
+    public static String process(final MathMLNode node, final ConversionContext context) {
         if (node.getChildren().size() != 2) {
             throw new IllegalArgumentException("[msub] should have two children.");
         }
         final StringBuilder builder = new StringBuilder();
         // if first child is operation logarithm
         if (Operation.LOGARITHM.getSymbols().contains(node.getChildren().get(0).getValue())) {
-            builder.append(settings.getProperty("logarithm"));
-            builder.append(Node.process(node.getChildren().get(1), settings));
-            builder.append(settings.getProperty("logarithm_from"));
+            builder.append(context.getProperty("logarithm"));
+            builder.append(Node.process(node.getChildren().get(1), context));
+            builder.append(context.getProperty("logarithm_from"));
         } else {
-            builder.append(Node.process(node.getChildren().get(0), settings));
-            builder.append(settings.getProperty("subscript"));
-            builder.append(Node.process(node.getChildren().get(1), settings));
+            builder.append(Node.process(node.getChildren().get(0), context));
+            builder.append(context.getProperty("subscript"));
+            builder.append(Node.process(node.getChildren().get(1), context));
         }
         return builder.toString();
     }
@@ -1,6 +1,6 @@
 package cz.muni.fi.mathml.mathml2text.converter.presentation;
 
-import cz.muni.fi.mathml.mathml2text.converter.ConverterSettings;
+import cz.muni.fi.mathml.mathml2text.converter.ConversionContext;
 import cz.muni.fi.mathml.mathml2text.converter.Node;
 import cz.muni.fi.mathml.mathml2text.converter.operation.Operation;
 import cz.muni.fi.mathml.mathml2text.converter.tree.MathMLNode;
@@ -16,20 +16,20 @@ public final class Msup {
     /**
      * Processes input node.
      * @param node Input node.
-     * @param settings Converter settings.
+     * @param context Conversion context.
      * @return Content of the input node converted to string.
      */
-    public static String process(final MathMLNode node, final ConverterSettings settings) {
+    public static String process(final MathMLNode node, final ConversionContext context) {
         if (node.getChildren().size() != 2) {
             throw new IllegalArgumentException("[msup] should have two children.");
         }
         final StringBuilder builder = new StringBuilder();
-        builder.append(Node.process(node.getChildren().get(0), settings));
+        builder.append(Node.process(node.getChildren().get(0), context));
         if (Operation.SQUARE.getSymbols().contains(node.getChildren().get(1).getValue())) {
-            builder.append(settings.getProperty("squared"));
+            builder.append(context.getProperty("squared"));
         } else {
-            builder.append(settings.getProperty("superscript"));
-            builder.append(Node.process(node.getChildren().get(1), settings));
+            builder.append(context.getProperty("superscript"));
+            builder.append(Node.process(node.getChildren().get(1), context));
             }
         return builder.toString();
     }
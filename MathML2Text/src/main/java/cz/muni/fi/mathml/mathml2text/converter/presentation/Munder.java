@@ -2,7 +2,7 @@ package cz.muni.fi.mathml.mathml2text.converter.presentation;
 
 import org.slf4j.LoggerFactory;
 
-import cz.muni.fi.mathml.mathml2text.converter.ConverterSettings;
+import cz.muni.fi.mathml.mathml2text.converter.ConversionContext;
 import cz.muni.fi.mathml.mathml2text.converter.Node;
 import cz.muni.fi.mathml.mathml2text.converter.operation.Operation;
 import cz.muni.fi.mathml.mathml2text.converter.tree.MathMLNode;
@@ -18,16 +18,16 @@ public final class Munder {
     /**
      * Processes input node.
      * @param node Input node.
-     * @param settings Converter settings.
+     * @param context Conversion context.
      * @return Content of the input node converted to string.
      */
-    public static String process(final MathMLNode node, final ConverterSettings settings) {
+    public static String process(final MathMLNode node, final ConversionContext context) {
         if (node.getChildren().size() != 2) {
             throw new IllegalArgumentException("[munder] should have two children.");
         }
         final StringBuilder builder = new StringBuilder();
         if (Operation.LIMIT.getSymbols().contains(node.getChildren().get(0).getValue())) {
-            builder.append(Node.process(node.getChildren().get(0), settings));
+            builder.append(Node.process(node.getChildren().get(0), context));
             MathMLNode firstSibling = null;
             for (int index = 0; index < node.getParent().getChildren().size(); ++index) {
                 if (node.equals(node.getParent().getChildren().get(index))) {
@@ -39,14 +39,14 @@ public final class Munder {
                 }
             }
             if (firstSibling != null) {
-                builder.append(Node.process(firstSibling, settings));
+                builder.append(Node.process(firstSibling, context));
             }
-            builder.append(settings.getProperty("limit_as"));
-            builder.append(Node.process(node.getChildren().get(1), settings));
+            builder.append(context.getProperty("limit_as"));
+            builder.append(Node.process(node.getChildren().get(1), context));
         } else {
-            builder.append(Node.process(node.getChildren().get(0), settings));
-            builder.append(settings.getProperty("subscript"));
-            builder.append(Node.process(node.getChildren().get(1), settings));
+            builder.append(Node.process(node.getChildren().get(0), context));
+            builder.append(context.getProperty("subscript"));
+            builder.append(Node.process(node.getChildren().get(1), context));
         }
         return builder.toString();
     }
@@ -1,9 +1,8 @@
 package cz.muni.fi.mathml.mathml2text.converter.presentation;
 
-import org.apache.commons.lang3.StringEscapeUtils;
 import org.slf4j.LoggerFactory;
 
-import cz.muni.fi.mathml.mathml2text.converter.ConverterSettings;
+import cz.muni.fi.mathml.mathml2text.converter.ConversionContext;
 import cz.muni.fi.mathml.mathml2text.converter.Node;
 import cz.muni.fi.mathml.mathml2text.converter.operation.Operation;
 import cz.muni.fi.mathml.mathml2text.converter.tree.MathMLNode;
@@ -20,45 +19,45 @@ public final class Munderover {
     /**
      * Processes input node.
      * @param node Input node.
-     * @param settings Converter settings.
+     * @param context Conversion context.
      * @return Content of the input node converted to string.
      */
-    public static String process(final MathMLNode node, final ConverterSettings settings) {
+    public static String process(final MathMLNode node, final ConversionContext context) {
         if (node.getChildren().size() != 3) {
             throw new IllegalArgumentException("[munderover] should have three children.");
         }
         final StringBuilder builder = new StringBuilder();
-        final String possibleOperation = StringEscapeUtils.escapeHtml4(node.getChildren().get(0).getValue());
+        final String possibleOperation = node.getChildren().get(0).getTokenValue().getIdentifier();
         if (Operation.INTEGRAL.getSymbols().contains(possibleOperation)) {
-            builder.append(settings.getProperty("integral_definite"));
-            builder.append(Node.process(node.getChildren().get(0), settings));
-            builder.append(settings.getProperty("from"));
-            builder.append(Node.process(node.getChildren().get(1), settings));
-            builder.append(settings.getProperty("to"));
-            builder.append(Node.process(node.getChildren().get(2), settings));
-            builder.append(settings.getProperty("of"));
+            builder.append(context.getProperty("integral_definite"));
+            builder.append(Node.process(node.getChildren().get(0), context));
+            builder.append(context.getProperty("from"));
+            builder.append(Node.process(node.getChildren().get(1), context));
+            builder.append(context.getProperty("to"));
+            builder.append(Node.process(node.getChildren().get(2), context));
+            builder.append(context.getProperty("of"));
             MathMLNode firstSibling = findFirstSibling(node);
             if (firstSibling != null) {
-                builder.append(Node.process(firstSibling, settings));
+                builder.append(Node.process(firstSibling, context));
             }
         } else if (Operation.SUMMATION.getSymbols().contains(possibleOperation)
                 || Operation.PRODUCT.getSymbols().contains(possibleOperation)) {
-            builder.append(Node.process(node.getChildren().get(0), settings));
-            builder.append(settings.getProperty("from"));
-            builder.append(Node.process(node.getChildren().get(1), settings));
-            builder.append(settings.getProperty("to"));
-            builder.append(Node.process(node.getChildren().get(2), settings));
-            builder.append(settings.getProperty("of"));
+            builder.append(Node.process(node.getChildren().get(0), context));
+            builder.append(context.getProperty("from"));
+            builder.append(Node.process(node.getChildren().get(1), context));
+            builder.append(context.getProperty("to"));
+            builder.append(Node.process(node.getChildren().get(2), context));
+            builder.append(context.getProperty("of"));
             MathMLNode firstSibling = findFirstSibling(node);
             if (firstSibling != null) {
-                builder.append(Node.process(firstSibling, settings));
+                builder.append(Node.process(firstSibling, context));
             }
         } else {
-            builder.append(Node.process(node.getChildren().get(0), settings));
-            builder.append(settings.getProperty("subscript"));
-            builder.append(Node.process(node.getChildren().get(1), settings));
-            builder.append(settings.getProperty("superscript"));
-            builder.append(Node.process(node.getChildren().get(2), settings));
+            builder.append(Node.process(node.getChildren().get(0), context));
+            builder.append(context.getProperty("subscript"));
+            builder.append(Node.process(node.getChildren().get(1), context));
+            builder.append(context.getProperty("superscript"));
+            builder.append(Node.process(node.getChildren().get(2), context));
         }
         return builder.toString();
     }
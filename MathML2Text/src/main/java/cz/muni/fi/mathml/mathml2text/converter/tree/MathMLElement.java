@@ -1,5 +1,8 @@
 package cz.muni.fi.mathml.mathml2text.converter.tree;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Enumeration of MathML elements.
  * 
@@ -581,6 +584,19 @@ public enum MathMLElement {
      */
     UNKNOWN("unknown", MathMLType.OTHER);
     
+    /**
+     * Elements indexed by name, the first element of every name.
+     */
+    private static final Map<String, MathMLElement> BY_ELEMENT_NAME = new HashMap<String, MathMLElement>();
+    
+    static {
+        for (final MathMLElement element : values()) {
+            if (!BY_ELEMENT_NAME.containsKey(element.getElementName())) {
+                BY_ELEMENT_NAME.put(element.getElementName(), element);
+            }
+        }
+    }
+    
     /** Name of this element (name of XML tag). */
     private final String elementName;
     
@@ -603,17 +619,14 @@ public enum MathMLElement {
     }
     
     /**
-     * Returns MathML element of given name or {@code null} if there isn't one.
+     * Returns MathML element of given name or {@link #UNKNOWN} if there isn't one.
+     * Elements are looked up in a table, not by scanning all elements.
      * 
      * @param elementName Name of the MathML element.
-     * @return MathML element of given name or {@code null}.
+     * @return MathML element of given name or {@link #UNKNOWN}.
      */
     public static MathMLElement forElementName(final String elementName) {
-        for (final MathMLElement element : values()) {
-            if (element.getElementName().equals(elementName)) {
-                return element;
-            }
-        }
-        return UNKNOWN;
+        final MathMLElement element = BY_ELEMENT_NAME.get(elementName);
+        return element != null ? element : UNKNOWN;
     }
 }
@@ -14,11 +14,13 @@ import javax.annotation.Nullable;
  * Root element (the only node without a parent)
  * should always be of type {@link MathMLElement#MATH}.
  * There's no checking whether this structure is actually a valid MathML tree.
+ * Subclasses can provide a read-only view of another tree, the converter
+ * uses only getters and {@link #setProcessed()}.
  * 
  * @author Maros Kucbel
  * @date 2012-10-30T20:00:48+0100
  */
-public final class MathMLNode {
+public class MathMLNode {
     /**
      * Type of this node.
      */
@@ -31,6 +33,10 @@ public final class MathMLNode {
      * Text value of this node. {@code null} if there are some child nodes.
      */
     private String value;
+    /**
+     * Normalized text value, {@code null} until first use.
+     */
+    private TokenValue tokenValue;
     /**
      * Parent node.
      */
@@ -104,6 +110,29 @@ public final class MathMLNode {
      */
     public void setValue(String value) {
         this.value = value;
+        this.tokenValue = null;
+    }
+
+    /**
+     * Sets text value of this node, that is already normalized.
+     * @param tokenValue Normalized text value.
+     */
+    public void setValue(@Nonnull TokenValue tokenValue) {
+        this.setValue(tokenValue.getValue());
+        this.tokenValue = tokenValue;
+    }
+
+    /**
+     * Returns normalized text value of this node. If it was not set
+     * when the tree was built, it is created at first request.
+     * @return Normalized text value, {@link TokenValue#NONE} if there is no value.
+     */
+    @Nonnull
+    public TokenValue getTokenValue() {
+        if (this.tokenValue == null) {
+            this.tokenValue = TokenValue.forValue(this.getValue());
+        }
+        return this.tokenValue;
     }
 
     /**
@@ -128,20 +157,20 @@ public final class MathMLNode {
     @Override
     public String toString() {
         final StringBuilder builder = new StringBuilder();
-        builder.append(this.type.getElementName());
-        for (final XmlAttribute attr : this.attributes) {
+        builder.append(this.getType().getElementName());
+        for (final XmlAttribute attr : this.getAttributes()) {
             builder.append("\t");
             builder.append(attr.toString());
         }
-        if (!this.attributes.isEmpty()) {
+        if (!this.getAttributes().isEmpty()) {
             builder.append("\n");
         }
-        if (this.value != null) {
+        if (this.getValue() != null) {
             builder.append("\t");
             builder.append("value=");
-            builder.append(this.value);
+            builder.append(this.getValue());
         } else {
-            for (final MathMLNode node : this.children) {
+            for (final MathMLNode node : this.getChildren()) {
                 builder.append("\n");
                 builder.append("\t");
                 builder.append(node.toString());
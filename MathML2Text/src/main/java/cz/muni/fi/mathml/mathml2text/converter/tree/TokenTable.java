@@ -0,0 +1,37 @@
+package cz.muni.fi.mathml.mathml2text.converter.tree;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Normalized values of a single document. Every distinct value is normalized
+ * only once, nodes with equal values share the same {@link TokenValue}.
+ * <p>
+ * Table is not thread-safe, it is meant to be used by one document only.
+ * 
+ * @author agent
+ * @date 2026-10-18T00:07:42+0000
+ */
+public final class TokenTable {
+    /**
+     * Normalized values by original value.
+     */
+    private final Map<String, TokenValue> values = new HashMap<String, TokenValue>();
+
+    /**
+     * Returns normalized value, it is created at first request.
+     * @param value Original value, can be {@code null}.
+     * @return Normalized value.
+     */
+    public TokenValue get(final String value) {
+        if (value == null) {
+            return TokenValue.NONE;
+        }
+        TokenValue token = this.values.get(value);
+        if (token == null) {
+            token = TokenValue.forValue(value);
+            this.values.put(value, token);
+        }
+        return token;
+    }
+}
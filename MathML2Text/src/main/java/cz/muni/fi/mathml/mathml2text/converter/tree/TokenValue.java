@@ -0,0 +1,133 @@
+package cz.muni.fi.mathml.mathml2text.converter.tree;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+
+import cz.muni.fi.mathml.mathml2text.converter.Strings;
+import cz.muni.fi.mathml.mathml2text.converter.operation.Operation;
+import cz.muni.fi.mathml.mathml2text.converter.operation.Symbol;
+
+/**
+ * Text value of a node normalized for conversion. Escaped form of the value,
+ * number without white space and operation or symbol of the value are resolved
+ * when the value is created, so that token nodes (<code>&lt;mi&gt;</code>, 
+ * <code>&lt;mo&gt;</code>, <code>&lt;mn&gt;</code>, ...) are converted only
+ * by lookups. Values are immutable, equal values of a document share
+ * the same instance (see {@link TokenTable}).
+ * 
+ * @author agent
+ * @date 2026-10-18T00:07:42+0000
+ */
+public final class TokenValue {
+    /**
+     * Value of nodes without text.
+     */
+    public static final TokenValue NONE = new TokenValue(null);
+    /**
+     * Original value.
+     */
+    private final String value;
+    /**
+     * Value with special characters replaced by HTML entities.
+     */
+    private final String identifier;
+    /**
+     * Trimmed value without empty characters, {@code null} if there is no value.
+     */
+    private final String number;
+    /**
+     * Operation of the value, {@code null} if there is none.
+     */
+    private final Operation operation;
+    /**
+     * Symbol of the value, {@code null} if there is none or the value is an operation.
+     */
+    private final Symbol symbol;
+
+    /**
+     * Constructor, resolves all forms of the value.
+     * @param value Original value, can be {@code null}.
+     */
+    private TokenValue(final String value) {
+        this.value = value;
+        this.identifier = StringEscapeUtils.escapeHtml4(value);
+        this.number = value != null ? stripEmptyChars(value.trim()) : null;
+        this.operation = Operation.forSymbol(this.identifier);
+        this.symbol = this.operation == null ? Symbol.forValue(this.identifier) : null;
+    }
+
+    /**
+     * Creates normalized value, it is not shared with other nodes.
+     * @param value Original value, can be {@code null}.
+     * @return Normalized value.
+     */
+    public static TokenValue forValue(final String value) {
+        return value != null ? new TokenValue(value) : NONE;
+    }
+
+    /**
+     * Returns original value.
+     * @return Original value, can be {@code null}.
+     */
+    public String getValue() {
+        return this.value;
+    }
+
+    /**
+     * Returns value with special characters replaced by HTML entities, the form
+     * in which operations and symbols are declared.
+     * @return Escaped value, can be {@code null}.
+     */
+    public String getIdentifier() {
+        return this.identifier;
+    }
+
+    /**
+     * Returns trimmed value without essentially empty characters 
+     * (see {@link Strings#VALUE_EMPTY_CHARS}).
+     * @return Number value, can be {@code null}.
+     */
+    public String getNumber() {
+        return this.number;
+    }
+
+    /**
+     * Returns operation declared by the value.
+     * @return Operation or {@code null} if there is none.
+     */
+    public Operation getOperation() {
+        return this.operation;
+    }
+
+    /**
+     * Returns symbol declared by the value, it is resolved only if the value
+     * is not an operation.
+     * @return Symbol or {@code null} if there is none.
+     */
+    public Symbol getSymbol() {
+        return this.symbol;
+    }
+
+    /**
+     * Removes essentially empty characters from the value.
+     */
+    private static String stripEmptyChars(final String value) {
+        StringBuilder builder = null;
+        for (int index = 0; index < value.length(); ++index) {
+            final char c = value.charAt(index);
+            if (Strings.VALUE_EMPTY_CHARS.contains(c)) {
+                if (builder == null) {
+                    builder = new StringBuilder(value.length());
+                    builder.append(value, 0, index);
+                }
+            } else if (builder != null) {
+                builder.append(c);
+            }
+        }
+        return builder != null ? builder.toString() : value;
+    }
+
+    @Override
+    public String toString() {
+        return this.value;
+    }
+}
@@ -0,0 +1,1391 @@
+package cz.muni.fi.mathml.mathml2text.input;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+
+import javax.annotation.Nonnull;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cz.muni.fi.mathml.mathml2text.converter.ConverterSettings;
+import cz.muni.fi.mathml.mathml2text.converter.tree.MathMLNode;
+
+/**
+ * Base class of {@link XmlParser} implementations, that takes care of input
+ * and output files. Implementations only convert a single document read from
+ * a stream.
+ * Archives (zip, EPUB) are converted entry by entry, every document in the
+ * archive is converted by a separate task. Converted documents are written
+ * either to separate files, or to a new archive (see
+ * {@link ConverterSettings#isRewriteArchives()}).
+ * Input files with suffix <code>.gz</code> are decompressed while they are
+ * read, output files can be compressed (see {@link ConverterSettings#isCompressOutput()}).
+ *
+ * @author agent
+ * @date 2026-10-17T23:29:58+0000
+ */
+public abstract class AbstractXmlParser implements XmlParser {
+
+    private static final Logger logger = LoggerFactory.getLogger(AbstractXmlParser.class);
+
+    protected static final String CONVERTER_NAMESPACE_URI = "http://code.google.com/p/mathml-converter/";
+
+    protected static final String CONVERTER_NAMESPACE_PREFIX = "conv";
+
+    protected static final String CONVERTER_ELEMENT_NAME = "math";
+
+    private final Set<File> originalInputFiles = new HashSet<File>();
+
+    private final AtomicInteger atomicInteger = new AtomicInteger(0);
+    /**
+     * Number of processed files.
+     */
+    private final AtomicInteger fileCount = new AtomicInteger(0);
+    /**
+     * Number of processed files without math elements.
+     */
+    private final AtomicInteger mathFreeFileCount = new AtomicInteger(0);
+    /**
+     * Suffix of gzip compressed files.
+     */
+    private static final String GZIP_SUFFIX = ".gz";
+    /**
+     * Size of buffer used for decompressing and compressing data.
+     */
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+    /**
+     * Assumed ratio of uncompressed to compressed size of a document, used
+     * when the uncompressed size is not known.
+     */
+    private static final int COMPRESSION_RATIO = 5;
+    /**
+     * Maximal number of documents waiting in the queue of a pipeline stage
+     * per thread of the stage.
+     */
+    private static final int QUEUE_CAPACITY_PER_THREAD = 2;
+    /**
+     * Reader of input files ahead of their conversion, {@code null} if files
+     * are not read ahead.
+     */
+    private volatile FilePrefetcher prefetcher;
+    /**
+     * Writer of output files, {@code null} if workers write output files themselves.
+     */
+    private volatile OutputWriter outputWriter;
+    /**
+     * Admission control of documents, {@code null} if memory is not limited.
+     */
+    private volatile MemoryBudget memoryBudget;
+
+    /**
+     * Converts a single document.
+     * @param inputStream Input data.
+     * @param source All input data in a buffer, {@code null} if it is not available.
+     * @param output Output data, the stream is closed by the caller.
+     * @param language Language of conversion.
+     * @throws IOException If reading input or writing output fails, or if
+     *  input is not a well-formed document.
+     */
+    protected abstract void convert(InputStream inputStream, ByteBuffer source, OutputStream output, Locale language)
+            throws IOException;
+
+    /**
+     * Converts a single document read from a character stream.
+     * @param input Input characters.
+     * @param output Output characters, the writer is closed by the caller.
+     * @param language Language of conversion.
+     * @throws IOException If reading input or writing output fails, or if
+     *  input is not a well-formed document.
+     */
+    protected abstract void convert(Reader input, Writer output, Locale language) throws IOException;
+
+    /**
+     * Canonicalizes a document held in a buffer, called by the canonicalize
+     * stage of the pipeline before the document is converted by 
+     * {@link #convertCanonical(java.io.InputStream, java.nio.ByteBuffer, java.io.OutputStream, java.util.Locale) }.
+     * Document is not changed by default.
+     * @param source Document, the buffer must not be modified.
+     * @return Canonicalized document.
+     * @throws IOException If the document can not be read.
+     */
+    protected ByteBuffer canonicalize(final ByteBuffer source) throws IOException {
+        return source;
+    }
+
+    /**
+     * Converts a single document returned by {@link #canonicalize(java.nio.ByteBuffer) },
+     * so it is not canonicalized again. Delegates to {@link #convert(java.io.InputStream, java.nio.ByteBuffer, java.io.OutputStream, java.util.Locale) }
+     * by default.
+     * @param inputStream Input data.
+     * @param source All input data in a buffer.
+     * @param output Output data, the stream is closed by the caller.
+     * @param language Language of conversion.
+     * @throws IOException If reading input or writing output fails.
+     */
+    protected void convertCanonical(final InputStream inputStream, final ByteBuffer source, final OutputStream output,
+            final Locale language) throws IOException {
+        this.convert(inputStream, source, output, language);
+    }
+
+    /**
+     * Indicates whether the conversion needs all input data in a buffer.
+     * If so, input files are read or mapped into memory as a whole.
+     * @return {@code true} if input data should be buffered, {@code false} otherwise.
+     */
+    protected boolean isWholeInputRequired() {
+        return false;
+    }
+
+    /**
+     * Returns parser that converts given input file. This parser converts 
+     * all files by default.
+     * @param file Input file.
+     * @param compressed Indicates whether the file is compressed with gzip.
+     * @return Parser for the file.
+     */
+    protected AbstractXmlParser selectParser(final File file, final boolean compressed) {
+        return this;
+    }
+
+    /**
+     * Returns parser that converts document held in a buffer. This parser
+     * converts all documents by default.
+     * @param source Document, the buffer must not be modified.
+     * @return Parser for the document.
+     */
+    protected AbstractXmlParser selectParser(final ByteBuffer source) {
+        return this;
+    }
+
+    /**
+     * Returns parser that converts given document of an archive. This parser
+     * converts all documents by default.
+     * @param archive Opened archive.
+     * @param entry Entry with document.
+     * @return Parser for the document.
+     */
+    protected AbstractXmlParser selectParser(final Unzipper archive, final ZipEntry entry) {
+        return this;
+    }
+
+    /**
+     * Concurrently converts all input files.
+     * For every file delegates to method {@link #parse(java.io.File, java.util.Locale) },
+     * every document of an archive is converted separately.
+     * The number of possible concurrent conversion is determined with parameter
+     * {@link ConverterSettings#getThreadCount()}.
+     * If {@link ConverterSettings#getPrefetchBudget()} is positive, input files
+     * are read ahead by a {@link FilePrefetcher} while workers convert earlier files.
+     * If {@link ConverterSettings#isWriteBehind()} is set, output files are
+     * written by an {@link OutputWriter}.
+     * If {@link ConverterSettings#getMemoryBudget()} is positive, a document
+     * is converted only when memory estimated for it fits into the budget
+     * (see {@link MemoryBudget}).
+     * If {@link ConverterSettings#isPipeline()} is set, files are converted
+     * by a pipeline of stages instead (see {@link #parsePipelined(java.util.List, java.util.Locale) }).
+     * @param files List of input files.
+     * @param language Language of conversion.
+     * @return List of converted files.
+     * @throws UnsupportedLanguageException
+     */
+    @Override
+    public List<File> parse(@Nonnull final List<File> files, final Locale language) throws UnsupportedLanguageException {
+        final List<File> inputFiles = new ArrayList<File>();
+        for (final File file : files) {
+            this.originalInputFiles.add(file);
+            inputFiles.addAll(this.findFiles(file));
+        }
+        if (ConverterSettings.getInstance().isPipeline()) {
+            try {
+                this.parsePipelined(inputFiles, language);
+            } finally {
+                for (final File file : files) {
+                    this.originalInputFiles.remove(file);
+                }
+            }
+            return null;
+        }
+        final List<File> outputFiles = new ArrayList<File>(inputFiles.size());
+        final FilePrefetcher filePrefetcher = this.createPrefetcher(inputFiles);
+        final OutputWriter writer = ConverterSettings.getInstance().isWriteBehind() ? new OutputWriter() : null;
+        this.outputWriter = writer;
+        final MemoryBudget budget = ConverterSettings.getInstance().getMemoryBudget() > 0
+                                    ? new MemoryBudget(ConverterSettings.getInstance().getMemoryBudget())
+                                    : null;
+        this.memoryBudget = budget;
+        final ExecutorService executorService = Executors.newFixedThreadPool(ConverterSettings.getInstance().getThreadCount());
+        final Collection<Callable<File>> callables = new ArrayList<Callable<File>>(inputFiles.size());
+        // opened archives and their converted entries
+        final Map<Unzipper, Map<String, File>> archives = new LinkedHashMap<Unzipper, Map<String, File>>();
+        for (final File file : inputFiles) {
+            if (Unzipper.isArchive(file)) {
+                final Unzipper archive = this.openArchive(file);
+                if (archive != null) {
+                    final Map<String, File> replacements = Collections.synchronizedMap(new HashMap<String, File>());
+                    archives.put(archive, replacements);
+                    callables.addAll(this.createEntryTasks(archive, replacements, language));
+                }
+                continue;
+            }
+            final long size = file.getName().endsWith(GZIP_SUFFIX) ? file.length() * COMPRESSION_RATIO : file.length();
+            callables.add(this.admit(new Callable<File>() {
+
+                @Override
+                public File call() throws Exception {
+                    return AbstractXmlParser.this.parse(file, language);
+                }
+            }, size));
+        }
+        try {
+            final List<Future<File>> futures = executorService.invokeAll(callables);
+            for (final Future<File> future : futures) {
+                final File result = future.get();
+//                outputFiles.add(result);
+            }
+            logger.debug("Finished converting all files.");
+        } catch (final ExecutionException ex) {
+            logger.warn("The execution of a single callable resulted in an exception.", ex);
+        } catch (final InterruptedException ex) {
+            logger.warn("The execution was interrupted.", ex);
+        } catch (final CancellationException ex) {
+            logger.warn("The execution was cancelled.", ex);
+        } finally {
+            for (final File file : files) {
+                this.originalInputFiles.remove(file);
+            }
+            try {
+                executorService.shutdownNow();
+            } catch (final Exception ex) {
+                logger.warn("Exception while shutting down the executor service.", ex);
+                executorService.shutdownNow();
+            }
+            if (writer != null) {
+                this.outputWriter = null;
+                try {
+                    writer.close();
+                } catch (final IOException ex) {
+                    logger.warn("Interrupted while writing output files.", ex);
+                }
+                logger.info("Writing of output files: {}.", writer.getStatistics());
+            }
+            for (final Map.Entry<Unzipper, Map<String, File>> archive : archives.entrySet()) {
+                this.finishArchive(archive.getKey(), archive.getValue());
+            }
+            logger.info("Usage of stream pools: {}.", StreamPool.getStatistics());
+            if (budget != null) {
+                this.memoryBudget = null;
+                budget.close();
+                logger.info("Memory budget: {}.", budget.getStatistics());
+            }
+            if (filePrefetcher != null) {
+                this.prefetcher = null;
+                filePrefetcher.close();
+                logger.info("Prefetching of input files: {}.", filePrefetcher.getStatistics());
+            }
+        }
+//        return outputFiles;
+        return null;
+    }
+
+    /**
+     * Creates and starts prefetcher of input files, if it is enabled.
+     * Archives and compressed files are not read ahead.
+     * @param inputFiles Input files in the order of conversion.
+     * @return Started prefetcher or {@code null} if files are not read ahead.
+     */
+    private FilePrefetcher createPrefetcher(final List<File> inputFiles) {
+        final ConverterSettings settings = ConverterSettings.getInstance();
+        if (settings.getPrefetchBudget() <= 0) {
+            return null;
+        }
+        final List<File> prefetchedFiles = new ArrayList<File>(inputFiles.size());
+        for (final File file : inputFiles) {
+            if (!Unzipper.isArchive(file) && !file.getName().endsWith(GZIP_SUFFIX)) {
+                prefetchedFiles.add(file);
+            }
+        }
+        if (prefetchedFiles.isEmpty()) {
+            return null;
+        }
+        final FilePrefetcher filePrefetcher = new FilePrefetcher(prefetchedFiles, settings.getPrefetchBudget(), settings.getMappingThreshold());
+        this.prefetcher = filePrefetcher;
+        filePrefetcher.start();
+        return filePrefetcher;
+    }
+
+    /**
+     * Converts all input files by a pipeline of stages. Every stage has its
+     * own threads and takes documents from a bounded queue (see {@link PipelineStage}),
+     * so I/O stages are sized independently of stages using processors:
+     * <ul>
+     *  <li>read - reads input files into buffers (large files are mapped), files
+     *      without math elements are copied or skipped here,</li>
+     *  <li>unzip - decompresses gzip files and reads documents of archives,</li>
+     *  <li>canonicalize - canonicalizes documents, the stage is used only if
+     *      input is canonicalized,</li>
+     *  <li>parse - converts documents into output collected in memory, it has
+     *      {@link ConverterSettings#getThreadCount()} threads,</li>
+     *  <li>convert - converts math elements of documents in parallel (see {@link FormulaReorderBuffer}),
+     *      if {@link ConverterSettings#getFormulaThreadCount()} is positive,</li>
+     *  <li>write - writes output files (see {@link OutputWriter}).</li>
+     * </ul>
+     * Documents of archives enter the pipeline at the unzip stage. Stages are
+     * closed in their order, so every stage is closed after all stages before 
+     * it passed their documents. Statistics of queues are logged at the end.
+     * If memory is limited, memory of a document is reserved before it enters
+     * the pipeline and released when its output is passed to the write stage.
+     * @param inputFiles Input files.
+     * @param language Language of conversion.
+     * @throws UnsupportedLanguageException If the language is not supported.
+     */
+    private void parsePipelined(final List<File> inputFiles, final Locale language) throws UnsupportedLanguageException {
+        this.checkSupportedLanguages(language);
+        final ConverterSettings settings = ConverterSettings.getInstance();
+        final OutputWriter writer = new OutputWriter(settings.getWriteThreadCount());
+        this.outputWriter = writer;
+        final MemoryBudget budget = settings.getMemoryBudget() > 0 ? new MemoryBudget(settings.getMemoryBudget()) : null;
+        final Pipeline pipeline = new Pipeline(language, budget);
+        // opened archives and their converted entries
+        final Map<Unzipper, Map<String, File>> archives = new LinkedHashMap<Unzipper, Map<String, File>>();
+        try {
+            for (final File file : inputFiles) {
+                if (!Unzipper.isArchive(file)) {
+                    final long size = file.getName().endsWith(GZIP_SUFFIX) ? file.length() * COMPRESSION_RATIO : file.length();
+                    pipeline.submit(pipeline.read, new PipelineDocument(file, null, null, null, 0), size);
+                    continue;
+                }
+                final Unzipper archive = this.openArchive(file);
+                if (archive == null) {
+                    continue;
+                }
+                final Map<String, File> replacements = Collections.synchronizedMap(new HashMap<String, File>());
+                archives.put(archive, replacements);
+                final List<ZipEntry> entries = archive.getDocumentEntries();
+                for (final ZipEntry entry : entries) {
+                    final PipelineDocument document = new PipelineDocument(null, archive, entry, replacements, entries.size());
+                    pipeline.submit(pipeline.unzip, document, getEntrySize(entry));
+                }
+            }
+            pipeline.close();
+            logger.debug("Finished converting all files.");
+        } catch (final InterruptedException ex) {
+            logger.warn("The execution was interrupted.", ex);
+            // no document may be passed to the writer after it is closed
+            pipeline.stop();
+        } finally {
+            this.outputWriter = null;
+            try {
+                writer.close();
+            } catch (final IOException ex) {
+                logger.warn("Interrupted while writing output files.", ex);
+            }
+            for (final Map.Entry<Unzipper, Map<String, File>> archive : archives.entrySet()) {
+                this.finishArchive(archive.getKey(), archive.getValue());
+            }
+            for (final PipelineStage stage : pipeline.getStages()) {
+                logger.info("Pipeline stage {}.", stage.getStatistics());
+            }
+            final String conversion = FormulaReorderBuffer.getStatistics();
+            if (conversion != null) {
+                logger.info("Pipeline stage {}.", conversion);
+            }
+            logger.info("Writing of output files: {}.", writer.getStatistics());
+            logger.info("Usage of stream pools: {}.", StreamPool.getStatistics());
+            if (budget != null) {
+                budget.close();
+                logger.info("Memory budget: {}.", budget.getStatistics());
+            }
+        }
+    }
+
+    /**
+     * Parses single file. For every occurrence of math element inside input
+     * XML file new {@link MathMLNode} tree is builded and subsequently converted
+     * to string.
+     * If the file is an archive, all its documents are converted one by one.
+     *
+     * @param file Input XML file or archive.
+     * @param language Language of conversion.
+     * @return A file with every occurence of <code>&lt;math&gt;</code> tag replaced
+     *  with converted string inside <code>&lt;mathconv&gt;</code> tag. For archive
+     *  returns the new archive or directory with converted documents.
+     * @throws UnsupportedLanguageException
+     */
+    @Override
+    public File parse(@Nonnull final File file, final Locale language) throws UnsupportedLanguageException {
+        Validate.isTrue(file != null, "File for transformation should not be null.");
+        this.checkSupportedLanguages(language);
+
+        if (Unzipper.isArchive(file)) {
+            return this.parseArchive(file, language);
+        }
+
+        int executionNumber = this.atomicInteger.incrementAndGet();
+        logger.debug("Processing file [" + executionNumber + "] [" + file.getPath() + "].");
+
+        this.fileCount.incrementAndGet();
+        File outputFile = null;
+        final FilePrefetcher filePrefetcher = file.getName().endsWith(GZIP_SUFFIX) ? null : this.prefetcher;
+        try {
+            final ConverterSettings settings = ConverterSettings.getInstance();
+            final long mappingThreshold = settings.getMappingThreshold();
+            final boolean detectMathFree = settings.isCopyMathFree() || settings.isSkipMathFree();
+            // whole input in a buffer (mapped into memory for large files), if it is needed
+            ByteBuffer source = null;
+            final boolean compressed = file.getName().endsWith(GZIP_SUFFIX);
+            final AbstractXmlParser parser = this.selectParser(file, compressed);
+            // content read ahead is used even if the parser reads a stream
+            final ByteBuffer prefetched = filePrefetcher != null ? filePrefetcher.take(file) : null;
+            final InputStream inputStream;
+            if (compressed) {
+                inputStream = new GZIPInputStream(new FileInputStream(file), GZIP_BUFFER_SIZE);
+            } else if (prefetched != null || detectMathFree || parser.isWholeInputRequired() || FileMapper.isMapped(file, mappingThreshold)) {
+                source = prefetched != null ? prefetched : FileMapper.read(file, mappingThreshold, StreamPool.getInstance());
+                if (detectMathFree && !new MathIslandScanner(source).containsMath()) {
+                    this.mathFreeFileCount.incrementAndGet();
+                    return this.processMathFree(file, source, executionNumber);
+                }
+                inputStream = new ByteBufferInputStream(source);
+            } else {
+                inputStream = new FileInputStream(file);
+            }
+            outputFile = this.createOutputFile(this.getOutputPath(file));
+            try {
+                final OutputStream target = this.openOutput(outputFile);
+                final OutputStream output = compressOutput(target, settings.isCompressOutput());
+                boolean converted = false;
+                try {
+                    parser.convert(inputStream, source, output, language);
+                    converted = true;
+                } finally {
+                    closeOutput(output, target, converted);
+                }
+            } finally {
+                inputStream.close();
+            }
+            logger.debug("Finished conversion of file [" + executionNumber + "] [" + file.getPath() + "]");
+        } catch (final IOException ex) {
+            logger.error("Exception while working with input/output file.", ex);
+        } finally {
+            if (filePrefetcher != null) {
+                filePrefetcher.release(file);
+            }
+        }
+        return outputFile;
+    }
+
+    @Override
+    public void parse(@Nonnull final InputStream input, @Nonnull final OutputStream output, final Locale language)
+            throws UnsupportedLanguageException, IOException {
+        Validate.isTrue(input != null && output != null, "Input and output streams should not be null.");
+        this.checkSupportedLanguages(language);
+        this.convert(input, null, output, language);
+        output.flush();
+    }
+
+    @Override
+    public void parse(@Nonnull final Reader input, @Nonnull final Writer output, final Locale language)
+            throws UnsupportedLanguageException, IOException {
+        Validate.isTrue(input != null && output != null, "Input and output streams should not be null.");
+        this.checkSupportedLanguages(language);
+        this.convert(input, output, language);
+        output.flush();
+    }
+
+    /**
+     * Converts a document held in a buffer. The buffer is used as input data
+     * in memory (see {@link #convert(java.io.InputStream, java.nio.ByteBuffer, java.io.OutputStream, java.util.Locale) }),
+     * so parsers that need whole input (prescanning, splicing) do not copy it.
+     */
+    @Override
+    public void parse(@Nonnull final ByteBuffer input, @Nonnull final WritableByteChannel output, final Locale language)
+            throws UnsupportedLanguageException, IOException {
+        Validate.isTrue(input != null && output != null, "Input buffer and output channel should not be null.");
+        this.checkSupportedLanguages(language);
+        // parsers expect data of the document to start at position 0
+        final ByteBuffer source = input.slice();
+        final OutputStream outputStream = Channels.newOutputStream(output);
+        this.selectParser(source).convert(new ByteBufferInputStream(source), source, outputStream, language);
+        outputStream.flush();
+    }
+
+    /**
+     * Processes file without math elements, it is copied to output or skipped.
+     * @param file Input file.
+     * @param source Content of input file.
+     * @param executionNumber Number of the task.
+     * @return Output file or {@code null} if the file was skipped.
+     * @throws IOException If the file can not be copied.
+     */
+    private File processMathFree(final File file, final ByteBuffer source, final int executionNumber) throws IOException {
+        if (ConverterSettings.getInstance().isSkipMathFree()) {
+            logger.debug("Skipping file without math [" + executionNumber + "] [" + file.getPath() + "]");
+            return null;
+        }
+        final File outputFile = this.createOutputFile(this.getOutputPath(file));
+        if (ConverterSettings.getInstance().isCompressOutput()) {
+            final OutputStream target = this.openOutput(outputFile);
+            final OutputStream output = compressOutput(target, true);
+            boolean copied = false;
+            try {
+                Channels.newChannel(output).write(source.duplicate());
+                copied = true;
+            } finally {
+                closeOutput(output, target, copied);
+            }
+        } else if (this.outputWriter != null) {
+            this.outputWriter.copy(file, outputFile);
+        } else {
+            FileMapper.copy(file, outputFile);
+        }
+        logger.debug("Copied file without math [" + executionNumber + "] [" + file.getPath() + "]");
+        return outputFile;
+    }
+
+    /**
+     * Returns number of input files (documents of archives are counted instead of
+     * archives) processed by this parser.
+     * @return Number of processed files.
+     */
+    public int getFileCount() {
+        return this.fileCount.get();
+    }
+
+    /**
+     * Returns number of input files without math elements, that were copied
+     * to output or skipped instead of being converted
+     * (see {@link ConverterSettings#isCopyMathFree()}, {@link ConverterSettings#isSkipMathFree()}).
+     * @return Number of files without math elements.
+     */
+    public int getMathFreeFileCount() {
+        return this.mathFreeFileCount.get();
+    }
+
+    /**
+     * Converts all documents of an archive one by one.
+     * @param file Input archive.
+     * @param language Language of conversion.
+     * @return New archive or directory with converted documents.
+     */
+    private File parseArchive(final File file, final Locale language) throws UnsupportedLanguageException {
+        final Unzipper archive = this.openArchive(file);
+        if (archive == null) {
+            return null;
+        }
+        final Map<String, File> replacements = new HashMap<String, File>();
+        final List<Callable<File>> callables = this.createEntryTasks(archive, replacements, language);
+        File outputFile = null;
+        try {
+            for (final Callable<File> callable : callables) {
+                outputFile = callable.call();
+            }
+        } catch (final UnsupportedLanguageException ex) {
+            throw ex;
+        } catch (final Exception ex) {
+            logger.warn("The conversion of an archive entry resulted in an exception.", ex);
+        } finally {
+            this.finishArchive(archive, replacements);
+        }
+        if (ConverterSettings.getInstance().isRewriteArchives()) {
+            return this.getArchiveOutputFile(file);
+        }
+        return callables.size() == 1 ? outputFile : new File(this.getEntryOutputDirectoryPath(file));
+    }
+
+    /**
+     * Creates conversion tasks for all documents of an archive.
+     * Output of a document is written to:
+     * <ul>
+     *  <li>a temporary file, if the archive will be rewritten,</li>
+     *  <li>the same file as it would be for unzipped input, if it is the only document in the archive,</li>
+     *  <li>a file in directory named after the archive, with the same path as the entry.</li>
+     * </ul>
+     * Output file of a document is put into replacements only after the
+     * document was converted, so that a rewritten archive keeps the original
+     * entry of a document that could not be converted.
+     * @param archive Opened archive.
+     * @param replacements Map to which output files of converted entries are put.
+     * @param language Language of conversion.
+     * @return Conversion tasks.
+     */
+    private List<Callable<File>> createEntryTasks(final Unzipper archive, final Map<String, File> replacements, final Locale language) {
+        final List<ZipEntry> entries = archive.getDocumentEntries();
+        final List<Callable<File>> callables = new ArrayList<Callable<File>>(entries.size());
+        for (final ZipEntry entry : entries) {
+            final int entryCount = entries.size();
+            final long size = getEntrySize(entry);
+            callables.add(this.admit(new Callable<File>() {
+
+                @Override
+                public File call() throws Exception {
+                    final File outputFile = AbstractXmlParser.this.createEntryOutputFile(archive, entry, entryCount);
+                    if (outputFile == null) {
+                        return null;
+                    }
+                    final File converted = AbstractXmlParser.this.parseEntry(archive, entry, outputFile, language);
+                    AbstractXmlParser.this.entryFinished(entry, outputFile, converted != null, replacements);
+                    return converted;
+                }
+            }, size));
+        }
+        return callables;
+    }
+
+    /**
+     * Records output file of a converted document of an archive. Temporary
+     * output file of a document that could not be converted is deleted.
+     * @param entry Entry with document.
+     * @param outputFile Output file of the document.
+     * @param converted Indicates whether the document was converted.
+     * @param replacements Map to which output files of converted entries are put.
+     */
+    private void entryFinished(final ZipEntry entry, final File outputFile, final boolean converted,
+            final Map<String, File> replacements) {
+        if (converted) {
+            replacements.put(entry.getName(), outputFile);
+        } else if (ConverterSettings.getInstance().isRewriteArchives()) {
+            outputFile.delete();
+            logger.warn("Original entry [{}] is kept in rewritten archive.", entry.getName());
+        }
+    }
+
+    /**
+     * Creates output file of a document of an archive (see 
+     * {@link #createEntryTasks(cz.muni.fi.mathml.mathml2text.input.Unzipper, java.util.Map, java.util.Locale) }).
+     * @param archive Opened archive.
+     * @param entry Entry with document.
+     * @param entryCount Number of documents in the archive.
+     * @return Output file, {@code null} if temporary file can not be created.
+     */
+    private File createEntryOutputFile(final Unzipper archive, final ZipEntry entry, final int entryCount) {
+        if (ConverterSettings.getInstance().isRewriteArchives()) {
+            try {
+                return File.createTempFile("mathml-converter", ".xml");
+            } catch (final IOException ex) {
+                logger.error("Cannot create temporary file.", ex);
+                return null;
+            }
+        }
+        if (entryCount == 1) {
+            return this.createOutputFile(this.getOutputPath(archive.getFile()));
+        }
+        return this.createOutputFile(this.getEntryOutputDirectoryPath(archive.getFile())
+                + System.getProperty("file.separator") + entry.getName());
+    }
+
+    /**
+     * Returns uncompressed size of document of an archive, estimated if it is not known.
+     */
+    private static long getEntrySize(final ZipEntry entry) {
+        return entry.getSize() >= 0 ? entry.getSize() : entry.getCompressedSize() * COMPRESSION_RATIO;
+    }
+
+    /**
+     * Returns memory needed for conversion of a document estimated as
+     * twice its size (input data and converted output are both held in memory),
+     * canonicalization makes two more copies of the document.
+     */
+    private static long estimateMemory(final long documentSize) {
+        return documentSize * (ConverterSettings.getInstance().isCanonicalize() ? 4 : 2);
+    }
+
+    /**
+     * Wraps conversion task, so that memory needed for the conversion is 
+     * reserved in {@link #memoryBudget} before the task starts.
+     * @param task Conversion task.
+     * @param documentSize Uncompressed size of the document in bytes.
+     * @return Task waiting for memory, or the same task if memory is not limited.
+     */
+    private Callable<File> admit(final Callable<File> task, final long documentSize) {
+        final MemoryBudget budget = this.memoryBudget;
+        if (budget == null) {
+            return task;
+        }
+        final long estimate = estimateMemory(documentSize);
+        return new Callable<File>() {
+
+            @Override
+            public File call() throws Exception {
+                final long reserved = budget.reserve(estimate);
+                try {
+                    return task.call();
+                } finally {
+                    budget.release(reserved);
+                }
+            }
+        };
+    }
+
+    /**
+     * Converts a single document of an archive. The entry is read directly
+     * from the archive.
+     * @param archive Opened archive.
+     * @param entry Entry with document.
+     * @param outputFile Output file.
+     * @param language Language of conversion.
+     * @return Output file, {@code null} if the document could not be converted.
+     */
+    private File parseEntry(final Unzipper archive, final ZipEntry entry, final File outputFile, final Locale language)
+            throws UnsupportedLanguageException {
+        this.checkSupportedLanguages(language);
+
+        int executionNumber = this.atomicInteger.incrementAndGet();
+        this.fileCount.incrementAndGet();
+        logger.debug("Processing file [" + executionNumber + "] [" + archive.getFile().getPath() + "!" + entry.getName() + "].");
+
+        try {
+            final AbstractXmlParser parser = this.selectParser(archive, entry);
+            final InputStream inputStream = archive.openEntry(entry);
+            try {
+                final OutputStream target = this.openEntryOutput(outputFile);
+                final OutputStream output = compressOutput(target, isEntryOutputCompressed());
+                boolean converted = false;
+                try {
+                    parser.convert(inputStream, null, output, language);
+                    converted = true;
+                } finally {
+                    closeOutput(output, target, converted);
+                }
+            } finally {
+                inputStream.close();
+            }
+            logger.debug("Finished conversion of file [" + executionNumber + "] [" + archive.getFile().getPath() + "!" + entry.getName() + "]");
+        } catch (final IOException ex) {
+            logger.error("Exception while working with input/output file.", ex);
+            return null;
+        }
+        return outputFile;
+    }
+
+    /**
+     * Opens output file of a document of an archive. Entries of rewritten
+     * archive are written directly to their temporary files (not by
+     * {@link OutputWriter}), so that failed writing is known before the archive
+     * is rewritten.
+     * @param outputFile Output file.
+     * @return Output stream.
+     * @throws IOException If the file can not be opened.
+     */
+    private OutputStream openEntryOutput(final File outputFile) throws IOException {
+        if (ConverterSettings.getInstance().isRewriteArchives()) {
+            return new FileOutputStream(outputFile);
+        }
+        return this.openOutput(outputFile);
+    }
+
+    /**
+     * Indicates whether output of a document of an archive is compressed,
+     * entries of rewritten archive are compressed by the archive.
+     */
+    private static boolean isEntryOutputCompressed() {
+        final ConverterSettings settings = ConverterSettings.getInstance();
+        return settings.isCompressOutput() && !settings.isRewriteArchives();
+    }
+
+    /**
+     * Opens an archive.
+     * @param file Archive file.
+     * @return Opened archive or {@code null} if it can not be opened.
+     */
+    private Unzipper openArchive(final File file) {
+        try {
+            return new Unzipper(file);
+        } catch (final IOException ex) {
+            logger.error("Cannot open archive [" + file.getPath() + "].", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Writes new archive with converted documents (if archives are rewritten)
+     * and closes the archive.
+     * @param archive Opened archive.
+     * @param replacements Output files of converted entries.
+     */
+    private void finishArchive(final Unzipper archive, final Map<String, File> replacements) {
+        try {
+            if (ConverterSettings.getInstance().isRewriteArchives()) {
+                final File outputFile = this.getArchiveOutputFile(archive.getFile());
+                outputFile.getParentFile().mkdirs();
+                archive.rewrite(outputFile, replacements);
+            }
+        } catch (final IOException ex) {
+            logger.error("Cannot write archive [" + archive.getFile().getPath() + "].", ex);
+        } finally {
+            archive.close();
+            if (ConverterSettings.getInstance().isRewriteArchives()) {
+                for (final File file : replacements.values()) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens output file for writing. If output files are written by
+     * {@link OutputWriter}, the file is written after the stream is closed.
+     * @param outputFile Output file.
+     * @return Output stream.
+     * @throws IOException If the file can not be opened.
+     */
+    private OutputStream openOutput(final File outputFile) throws IOException {
+        final OutputWriter writer = this.outputWriter;
+        return writer != null ? writer.open(outputFile) : new FileOutputStream(outputFile);
+    }
+
+    /**
+     * Compresses output with gzip, if it is required.
+     * @param output Output stream, it is closed together with returned stream.
+     * @param compress Indicates whether output should be compressed with gzip.
+     * @return Output stream.
+     * @throws IOException If gzip header can not be written.
+     */
+    private static OutputStream compressOutput(final OutputStream output, final boolean compress) throws IOException {
+        if (!compress) {
+            return output;
+        }
+        if (ConverterSettings.getInstance().isBackgroundCompression()) {
+            return new BackgroundGzipOutputStream(output);
+        }
+        return new GZIPOutputStream(output, GZIP_BUFFER_SIZE);
+    }
+
+    /**
+     * Closes output of a document. Output of a document that was not written
+     * completely is discarded if it is written by {@link OutputWriter}, so 
+     * that a partial document never replaces the output file.
+     * @param output Output stream.
+     * @param target Stream opened by {@link #openOutput(java.io.File) }, 
+     *  it is wrapped by the output stream, if output is compressed.
+     * @param completed Indicates whether the whole document was written.
+     * @throws IOException If the stream can not be closed.
+     */
+    private static void closeOutput(final OutputStream output, final OutputStream target, final boolean completed)
+            throws IOException {
+        if (!completed) {
+            OutputWriter.discard(target);
+        }
+        output.close();
+    }
+
+    /**
+     * Creates output file and its parent directories. If output is compressed,
+     * gzip suffix is appended to the path. If output files are written by
+     * {@link OutputWriter}, nothing is created, the writer creates directories.
+     * @param outputFilePath Path of output file.
+     * @return Output file.
+     */
+    private File createOutputFile(final String outputFilePath) {
+        File outputFile = new File(ConverterSettings.getInstance().isCompressOutput()
+                                   ? outputFilePath + GZIP_SUFFIX
+                                   : outputFilePath);
+        if (this.outputWriter != null) {
+            return outputFile;
+        }
+        outputFile.getParentFile().mkdirs();
+        try {
+            outputFile.createNewFile();
+        } catch (IOException ex) {
+            logger.warn("File [{}] already exists.", outputFile.getPath());
+        }
+        return outputFile;
+    }
+
+    /**
+     * Returns path of output file. If output directory is not set, output file
+     * is placed next to the input file, otherwise it has the same path relative
+     * to the output directory as the input file relative to the input directory.
+     * Gzip suffix of input file is not part of the output path.
+     * @param file Input file.
+     * @return Path of output file.
+     */
+    private String getOutputPath(final File file) {
+        String outputFilePath;
+        if (StringUtils.isBlank(ConverterSettings.getInstance().getOutputDirectory())) {
+            String filePath = StringUtils.removeEnd(file.getPath(), GZIP_SUFFIX);
+            outputFilePath = filePath.substring(0, filePath.lastIndexOf('.')) + "-converted.xml";
+        } else {
+            outputFilePath = StringUtils.removeEnd(this.getRelativeOutputPath(file), GZIP_SUFFIX);
+            if (Unzipper.isArchive(file)) {
+                outputFilePath = outputFilePath.substring(0, outputFilePath.lastIndexOf("."));
+            }
+        }
+        return outputFilePath;
+    }
+
+    /**
+     * Returns path of directory for converted documents of an archive.
+     * @param file Archive file.
+     * @return Path of output directory.
+     */
+    private String getEntryOutputDirectoryPath(final File file) {
+        if (StringUtils.isBlank(ConverterSettings.getInstance().getOutputDirectory())) {
+            String filePath = file.getPath();
+            return filePath.substring(0, filePath.lastIndexOf('.')) + "-converted";
+        }
+        return this.getOutputPath(file);
+    }
+
+    /**
+     * Returns file for rewritten archive.
+     * @param file Archive file.
+     * @return Output archive file.
+     */
+    private File getArchiveOutputFile(final File file) {
+        if (StringUtils.isBlank(ConverterSettings.getInstance().getOutputDirectory())) {
+            String filePath = file.getPath();
+            final int index = filePath.lastIndexOf('.');
+            return new File(filePath.substring(0, index) + "-converted" + filePath.substring(index));
+        }
+        return new File(this.getRelativeOutputPath(file));
+    }
+
+    /**
+     * Returns path of input file relative to its input directory, resolved
+     * against output directory.
+     */
+    private String getRelativeOutputPath(final File file) {
+        String suffix = "";
+        for (final File f : this.originalInputFiles) {
+            if (file.getPath().startsWith(f.getPath())) {
+                suffix = StringUtils.difference(f.getPath(), file.getPath());
+                break;
+            }
+        }
+        if (StringUtils.isBlank(suffix)) {
+            suffix = file.getName();
+        }
+        if (!suffix.startsWith(System.getProperty("file.separator"))) {
+            suffix = System.getProperty("file.separator") + suffix;
+        }
+        return ConverterSettings.getInstance().getOutputDirectory() + suffix;
+    }
+
+    /**
+     * Checks whether the required language is supported by the converter.
+     * @param language Required language.
+     * @throws UnsupportedLanguageException If the required language is not supported.
+     */
+    protected void checkSupportedLanguages(final Locale language) throws UnsupportedLanguageException {
+        if (!ConverterSettings.getInstance().getSupportedLanguages().contains(language.getLanguage())) {
+            throw new UnsupportedLanguageException(String.format("[%1$s] is not supported.", language.getLanguage()));
+        }
+    }
+
+    /**
+     * Find all child files of a given file.
+     * @param file Input file.
+     * @return Always returns nonnull list, if given file is a file (not a directory)
+     *  returns a list that contains only this file.
+     */
+    private List<File> findFiles(final File file) {
+        final List<File> files = new ArrayList<File>();
+        if (file.canRead()) {
+            if (file.isFile()) {
+                files.add(file);
+                return files;
+            } else {
+                for (final File child : file.listFiles()) {
+                    files.addAll(this.findFiles(child));
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Reads all data from input stream into a new heap buffer, that can be
+     * passed to another thread.
+     * @param input Input data stream.
+     * @param sizeHint Expected size of data in bytes.
+     * @return Buffer with all data starting at position 0.
+     * @throws IOException If the stream can not be read.
+     */
+    private static ByteBuffer readFully(final InputStream input, final long sizeHint) throws IOException {
+        byte[] data = new byte[(int) Math.min(Math.max(sizeHint, GZIP_BUFFER_SIZE), Integer.MAX_VALUE / 2)];
+        int length = 0;
+        int count;
+        while ((count = input.read(data, length, data.length - length)) != -1) {
+            length += count;
+            if (length == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+        }
+        return ByteBuffer.wrap(data, 0, length);
+    }
+
+    /**
+     * Document passed between stages of the pipeline. Stages hand the document
+     * over through their queues, so only one thread works with it at a time.
+     */
+    private static final class PipelineDocument {
+        /**
+         * Input file, {@code null} for document of an archive.
+         */
+        private final File file;
+        /**
+         * Opened archive, {@code null} for input file.
+         */
+        private final Unzipper archive;
+        /**
+         * Entry with document, {@code null} for input file.
+         */
+        private final ZipEntry entry;
+        /**
+         * Output files of converted entries of the archive, {@code null} for input file.
+         */
+        private final Map<String, File> replacements;
+        /**
+         * Number of documents in the archive.
+         */
+        private final int entryCount;
+        /**
+         * Output file, it is created when the document is read.
+         */
+        private File outputFile;
+        /**
+         * Indicates whether the document was converted.
+         */
+        private boolean converted;
+        /**
+         * Content of the document, compressed content of gzip file until it is decompressed.
+         */
+        private ByteBuffer source;
+        /**
+         * Parser converting the document, selected when it is first needed.
+         */
+        private AbstractXmlParser parser;
+        /**
+         * Number of the task.
+         */
+        private int executionNumber;
+        /**
+         * Memory reserved for the document.
+         */
+        private long reserved;
+
+        private PipelineDocument(final File file, final Unzipper archive, final ZipEntry entry,
+                final Map<String, File> replacements, final int entryCount) {
+            this.file = file;
+            this.archive = archive;
+            this.entry = entry;
+            this.replacements = replacements;
+            this.entryCount = entryCount;
+        }
+
+        /**
+         * Returns path of the document used in logs.
+         */
+        private String getPath() {
+            return this.file != null ? this.file.getPath() : this.archive.getFile().getPath() + "!" + this.entry.getName();
+        }
+    }
+
+    /**
+     * Stages of the pipeline converting one batch, see {@link AbstractXmlParser#parsePipelined(java.util.List, java.util.Locale) }.
+     * Every stage returns the next stage of the document, the document is
+     * finished when there is none or when the stage fails.
+     */
+    private final class Pipeline {
+        /**
+         * Language of conversion.
+         */
+        private final Locale language;
+        /**
+         * Admission control of documents, {@code null} if memory is not limited.
+         */
+        private final MemoryBudget budget;
+        private final PipelineStage read;
+        private final PipelineStage unzip;
+        /**
+         * Canonicalize stage, {@code null} if input is not canonicalized.
+         */
+        private final PipelineStage canonicalize;
+        private final PipelineStage parse;
+        /**
+         * Indicates whether the pipeline was stopped.
+         */
+        private volatile boolean stopped;
+
+        /**
+         * Creates stages and starts their threads.
+         * @param language Language of conversion.
+         * @param budget Admission control of documents, {@code null} if memory is not limited.
+         */
+        private Pipeline(final Locale language, final MemoryBudget budget) {
+            final ConverterSettings settings = ConverterSettings.getInstance();
+            this.language = language;
+            this.budget = budget;
+            this.read = createStage("read", settings.getReadThreadCount());
+            this.unzip = createStage("unzip", settings.getUnzipThreadCount());
+            this.canonicalize = settings.isCanonicalize() ? createStage("canonicalize", settings.getCanonicalizeThreadCount()) : null;
+            this.parse = createStage("parse", settings.getThreadCount());
+        }
+
+        /**
+         * Reserves memory for a document and passes it to the first stage.
+         * @param stage Read stage for input file, unzip stage for document of an archive.
+         * @param document New document.
+         * @param size Uncompressed size of the document in bytes.
+         * @throws InterruptedException If the thread was interrupted while waiting.
+         */
+        private void submit(final PipelineStage stage, final PipelineDocument document, final long size) throws InterruptedException {
+            if (this.budget != null) {
+                document.reserved = this.budget.reserve(estimateMemory(size));
+            }
+            document.executionNumber = AbstractXmlParser.this.atomicInteger.incrementAndGet();
+            AbstractXmlParser.this.fileCount.incrementAndGet();
+            logger.debug("Processing file [" + document.executionNumber + "] [" + document.getPath() + "].");
+            try {
+                stage.submit(this.createTask(stage, document));
+            } catch (final InterruptedException ex) {
+                this.finish(document);
+                throw ex;
+            }
+        }
+
+        /**
+         * Waits until all documents pass all stages and stops their threads.
+         * @throws InterruptedException If the thread was interrupted while waiting.
+         */
+        private void close() throws InterruptedException {
+            for (final PipelineStage stage : this.getStages()) {
+                stage.close();
+            }
+        }
+
+        /**
+         * Stops the pipeline, documents waiting in stages are dropped. Waits
+         * until documents being processed are finished and stops threads of
+         * the stages, even if the thread is interrupted again.
+         */
+        private void stop() {
+            this.stopped = true;
+            boolean interrupted = false;
+            for (final PipelineStage stage : this.getStages()) {
+                while (true) {
+                    try {
+                        stage.close();
+                        break;
+                    } catch (final InterruptedException ex) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Returns stages in their order, convert and write stages are not included.
+         */
+        private List<PipelineStage> getStages() {
+            final List<PipelineStage> stages = new ArrayList<PipelineStage>(4);
+            stages.add(this.read);
+            stages.add(this.unzip);
+            if (this.canonicalize != null) {
+                stages.add(this.canonicalize);
+            }
+            stages.add(this.parse);
+            return stages;
+        }
+
+        /**
+         * Returns task processing the document in given stage and passing it
+         * to the next stage.
+         */
+        private Runnable createTask(final PipelineStage stage, final PipelineDocument document) {
+            return new Runnable() {
+
+                @Override
+                public void run() {
+                    if (Pipeline.this.stopped) {
+                        Pipeline.this.finish(document);
+                        return;
+                    }
+                    PipelineStage next = null;
+                    try {
+                        next = Pipeline.this.process(stage, document);
+                    } catch (final IOException ex) {
+                        logger.error("Exception while working with input/output file.", ex);
+                    } finally {
+                        if (next != null) {
+                            Pipeline.this.pass(next, document);
+                        } else {
+                            Pipeline.this.finish(document);
+                        }
+                    }
+                }
+            };
+        }
+
+        /**
+         * Processes the document in given stage.
+         * @return Next stage of the document, {@code null} if it is finished.
+         */
+        private PipelineStage process(final PipelineStage stage, final PipelineDocument document) throws IOException {
+            if (stage == this.read) {
+                return this.readDocument(document);
+            }
+            if (stage == this.unzip) {
+                return this.unzipDocument(document);
+            }
+            if (stage == this.canonicalize) {
+                return this.canonicalizeDocument(document);
+            }
+            return this.parseDocument(document);
+        }
+
+        /**
+         * Passes the document to the next stage, waits while its queue is full.
+         */
+        private void pass(final PipelineStage stage, final PipelineDocument document) {
+            try {
+                stage.submit(this.createTask(stage, document));
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                logger.warn("Interrupted while passing file [" + document.getPath() + "] to the next stage.", ex);
+                this.finish(document);
+            }
+        }
+
+        /**
+         * Drops content of the finished document and releases its memory.
+         * Output file of converted document of an archive is recorded.
+         */
+        private void finish(final PipelineDocument document) {
+            document.source = null;
+            if (document.archive != null && document.outputFile != null) {
+                AbstractXmlParser.this.entryFinished(document.entry, document.outputFile, document.converted, document.replacements);
+            }
+            if (this.budget != null && document.reserved > 0) {
+                this.budget.release(document.reserved);
+                document.reserved = 0;
+            }
+        }
+
+        /**
+         * Reads input file. Gzip file is passed to unzip stage, file without
+         * math elements is copied or skipped, if it is required.
+         */
+        private PipelineStage readDocument(final PipelineDocument document) throws IOException {
+            final ConverterSettings settings = ConverterSettings.getInstance();
+            document.source = FileMapper.read(document.file, settings.getMappingThreshold(), null);
+            if (document.file.getName().endsWith(GZIP_SUFFIX)) {
+                return this.unzip;
+            }
+            if ((settings.isCopyMathFree() || settings.isSkipMathFree()) && !new MathIslandScanner(document.source).containsMath()) {
+                AbstractXmlParser.this.mathFreeFileCount.incrementAndGet();
+                AbstractXmlParser.this.processMathFree(document.file, document.source, document.executionNumber);
+                return null;
+            }
+            document.outputFile = AbstractXmlParser.this.createOutputFile(AbstractXmlParser.this.getOutputPath(document.file));
+            return this.canonicalize != null ? this.canonicalize : this.parse;
+        }
+
+        /**
+         * Decompresses content of gzip file or reads document of an archive.
+         */
+        private PipelineStage unzipDocument(final PipelineDocument document) throws IOException {
+            final InputStream input;
+            final long size;
+            if (document.archive != null) {
+                document.outputFile = AbstractXmlParser.this.createEntryOutputFile(document.archive, document.entry, document.entryCount);
+                if (document.outputFile == null) {
+                    return null;
+                }
+                input = document.archive.openEntry(document.entry);
+                size = getEntrySize(document.entry);
+            } else {
+                input = new GZIPInputStream(new ByteBufferInputStream(document.source), GZIP_BUFFER_SIZE);
+                size = (long) document.source.remaining() * COMPRESSION_RATIO;
+                document.outputFile = AbstractXmlParser.this.createOutputFile(AbstractXmlParser.this.getOutputPath(document.file));
+            }
+            try {
+                document.source = readFully(input, size);
+            } finally {
+                input.close();
+            }
+            return this.canonicalize != null ? this.canonicalize : this.parse;
+        }
+
+        /**
+         * Selects parser of the document and canonicalizes it.
+         */
+        private PipelineStage canonicalizeDocument(final PipelineDocument document) throws IOException {
+            document.parser = AbstractXmlParser.this.selectParser(document.source);
+            document.source = document.parser.canonicalize(document.source);
+            return this.parse;
+        }
+
+        /**
+         * Converts the document, output is passed to the write stage when
+         * the output stream is closed, only if the document was converted.
+         */
+        private PipelineStage parseDocument(final PipelineDocument document) throws IOException {
+            if (document.parser == null) {
+                document.parser = AbstractXmlParser.this.selectParser(document.source);
+            }
+            final OutputStream target;
+            final OutputStream output;
+            if (document.archive != null) {
+                target = AbstractXmlParser.this.openEntryOutput(document.outputFile);
+                output = compressOutput(target, isEntryOutputCompressed());
+            } else {
+                target = AbstractXmlParser.this.openOutput(document.outputFile);
+                output = compressOutput(target, ConverterSettings.getInstance().isCompressOutput());
+            }
+            boolean converted = false;
+            try {
+                document.parser.convertCanonical(new ByteBufferInputStream(document.source), document.source, output, this.language);
+                converted = true;
+            } finally {
+                closeOutput(output, target, converted);
+            }
+            document.converted = true;
+            logger.debug("Finished conversion of file [" + document.executionNumber + "] [" + document.getPath() + "]");
+            return null;
+        }
+
+        /**
+         * Creates stage with queue sized by its number of threads.
+         */
+        private PipelineStage createStage(final String name, final int threadCount) {
+            return new PipelineStage(name, threadCount, QUEUE_CAPACITY_PER_THREAD * threadCount);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package cz.muni.fi.mathml.mathml2text.input;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+
+import com.fasterxml.aalto.AsyncXMLInputFactory;
+import com.fasterxml.aalto.AsyncXMLStreamReader;
+
+/**
+ * Reader over Aalto asynchronous (non-blocking) parser. The parser does not
+ * read input itself, chunks of input are fed to it by {@link ReadAheadInput}
+ * whenever it reports that it needs more data, so the parser never blocks
+ * on I/O. This class makes it look like an ordinary {@link XMLStreamReader},
+ * so that conversion code can use it without changes:
+ * <ul>
+ *  <li>incomplete events are never reported, {@link #next()} feeds input
+ *      until a complete event is available,</li>
+ *  <li>text split by chunk boundaries is coalesced into a single
+ *      {@link XMLStreamConstants#CHARACTERS} event (asynchronous parser
+ *      does not support coalescing),</li>
+ *  <li>prolog is parsed on creation, so that encoding and version of the
+ *      document are available.</li>
+ * </ul>
+ * Asynchronous parser does not process DTD, documents have to use only
+ * predefined and character entities.
+ *
+ * @author agent
+ * @date 2026-10-17T23:53:39+0000
+ */
+final class AsyncStreamReader extends StreamReaderDelegate {
+    /**
+     * Class name of factory of asynchronous parsers.
+     */
+    private static final String ASYNC_FACTORY_CLASS_NAME = "com.fasterxml.aalto.AsyncXMLInputFactory";
+    /**
+     * Indicates that no event was read ahead.
+     */
+    private static final int NO_EVENT = -1;
+    /**
+     * Asynchronous parser.
+     */
+    private final AsyncXMLStreamReader reader;
+    /**
+     * Source of input chunks.
+     */
+    private final ReadAheadInput input;
+    /**
+     * Coalesced text of current event.
+     */
+    private final StringBuilder text = new StringBuilder();
+    /**
+     * Current event reported to the caller.
+     */
+    private int eventType;
+    /**
+     * Event read ahead while coalescing text, parser is positioned at it.
+     */
+    private int pendingEvent = NO_EVENT;
+    /**
+     * Indicates whether end of input was fed to the parser.
+     */
+    private boolean inputEnded;
+
+    /**
+     * Constructor, parses prolog of the document.
+     */
+    private AsyncStreamReader(final AsyncXMLStreamReader reader, final ReadAheadInput input) throws XMLStreamException {
+        super(reader);
+        this.reader = reader;
+        this.input = input;
+        final int event = this.nextComplete();
+        if (event != XMLStreamConstants.START_DOCUMENT) {
+            this.pendingEvent = event;
+        }
+        this.eventType = XMLStreamConstants.START_DOCUMENT;
+    }
+
+    /**
+     * Indicates whether the factory creates asynchronous parsers.
+     * @param factory Input factory.
+     * @return {@code true} if {@link #create(javax.xml.stream.XMLInputFactory, java.io.InputStream, java.nio.ByteBuffer) }
+     *         can be used with the factory, {@code false} otherwise.
+     */
+    static boolean isSupported(final XMLInputFactory factory) {
+        try {
+            return Class.forName(ASYNC_FACTORY_CLASS_NAME, false, AsyncStreamReader.class.getClassLoader()).isInstance(factory);
+        } catch (final ClassNotFoundException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates reader over asynchronous parser.
+     * @param factory Input factory, it has to be supported (see {@link #isSupported(javax.xml.stream.XMLInputFactory) }).
+     * @param inputStream Input data stream, used only if data are not in memory.
+     * @param source Input data in memory, can be {@code null}.
+     * @return New reader positioned at the start of document.
+     * @throws XMLStreamException If prolog of the document can not be parsed.
+     */
+    static XMLStreamReader create(final XMLInputFactory factory, final InputStream inputStream, final ByteBuffer source)
+            throws XMLStreamException {
+        final AsyncXMLStreamReader reader = ((AsyncXMLInputFactory) factory).createAsyncXMLStreamReader();
+        final ReadAheadInput input = source != null
+                                     ? new ReadAheadInput(source.duplicate())
+                                     : new ReadAheadInput(inputStream);
+        try {
+            return new AsyncStreamReader(reader, input);
+        } catch (final XMLStreamException ex) {
+            input.close();
+            reader.close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public int next() throws XMLStreamException {
+        int event = this.pendingEvent;
+        this.pendingEvent = NO_EVENT;
+        if (event == NO_EVENT) {
+            event = this.nextComplete();
+        }
+        if (!isText(event)) {
+            this.eventType = event;
+            return event;
+        }
+        this.text.setLength(0);
+        do {
+            this.text.append(this.reader.getTextCharacters(), this.reader.getTextStart(), this.reader.getTextLength());
+            event = this.nextComplete();
+        } while (isText(event));
+        this.pendingEvent = event;
+        this.eventType = XMLStreamConstants.CHARACTERS;
+        return this.eventType;
+    }
+
+    @Override
+    public boolean hasNext() throws XMLStreamException {
+        return this.pendingEvent != NO_EVENT || super.hasNext();
+    }
+
+    @Override
+    public int getEventType() {
+        return this.eventType;
+    }
+
+    @Override
+    public String getText() {
+        return this.isCoalesced() ? this.text.toString() : super.getText();
+    }
+
+    @Override
+    public char[] getTextCharacters() {
+        return this.isCoalesced() ? this.text.toString().toCharArray() : super.getTextCharacters();
+    }
+
+    @Override
+    public int getTextCharacters(final int sourceStart, final char[] target, final int targetStart, final int length)
+            throws XMLStreamException {
+        if (!this.isCoalesced()) {
+            return super.getTextCharacters(sourceStart, target, targetStart, length);
+        }
+        final int count = Math.max(0, Math.min(length, this.text.length() - sourceStart));
+        this.text.getChars(sourceStart, sourceStart + count, target, targetStart);
+        return count;
+    }
+
+    @Override
+    public int getTextStart() {
+        return this.isCoalesced() ? 0 : super.getTextStart();
+    }
+
+    @Override
+    public int getTextLength() {
+        return this.isCoalesced() ? this.text.length() : super.getTextLength();
+    }
+
+    @Override
+    public boolean hasText() {
+        return this.isCoalesced() || super.hasText();
+    }
+
+    @Override
+    public boolean isCharacters() {
+        return this.eventType == XMLStreamConstants.CHARACTERS;
+    }
+
+    @Override
+    public void close() throws XMLStreamException {
+        this.input.close();
+        super.close();
+    }
+
+    /**
+     * Indicates whether current event is coalesced text.
+     */
+    private boolean isCoalesced() {
+        return this.eventType == XMLStreamConstants.CHARACTERS;
+    }
+
+    /**
+     * Returns next complete event of parser, input is fed as needed.
+     */
+    private int nextComplete() throws XMLStreamException {
+        int event;
+        while ((event = this.reader.next()) == AsyncXMLStreamReader.EVENT_INCOMPLETE) {
+            if (this.inputEnded) {
+                throw new XMLStreamException("Unexpected end of input.");
+            }
+            this.inputEnded = !this.input.feed(this.reader.getInputFeeder());
+        }
+        return event;
+    }
+
+    /**
+     * Indicates whether the event carries text content. Ignorable white space
+     * outside of the root element is reported as it is.
+     */
+    private static boolean isText(final int event) {
+        return event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA;
+    }
+}
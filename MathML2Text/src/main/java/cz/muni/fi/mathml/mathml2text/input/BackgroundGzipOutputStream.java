@@ -0,0 +1,234 @@
+package cz.muni.fi.mathml.mathml2text.input;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Output stream compressing data with gzip on a small pool of threads shared
+ * by all streams. Written data are collected into chunks, which are passed
+ * to the pool through a bounded queue of the stream; chunks of one stream
+ * are compressed in order by one thread at a time. The writer is blocked only
+ * if the compression falls behind. An error of the compression is reported
+ * by the next write or by {@link #close()}.
+ *
+ * @author agent
+ * @date 2026-10-17T23:32:03+0000
+ */
+public final class BackgroundGzipOutputStream extends OutputStream {
+    /**
+     * Size of a chunk of data passed to the compressing thread.
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+    /**
+     * Maximal number of chunks waiting for compression.
+     */
+    private static final int QUEUE_CAPACITY = 4;
+    /**
+     * Marks the end of data.
+     */
+    private static final byte[] END = new byte[0];
+    /**
+     * Threads compressing data of all streams, they do not prevent application from exiting.
+     */
+    private static final ExecutorService COMPRESSORS = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "gzip-writer-" + this.count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    /**
+     * Chunks waiting for compression.
+     */
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<byte[]>(QUEUE_CAPACITY);
+    /**
+     * Compressed output.
+     */
+    private final GZIPOutputStream gzip;
+    /**
+     * Task compressing chunks of the queue.
+     */
+    private final Runnable compression = new Runnable() {
+
+        @Override
+        public void run() {
+            BackgroundGzipOutputStream.this.compress();
+        }
+    };
+    /**
+     * Indicates whether the compression task is scheduled or running.
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    /**
+     * Released when all data are compressed and the underlying stream is closed.
+     */
+    private final CountDownLatch finished = new CountDownLatch(1);
+    /**
+     * Error of the compression.
+     */
+    private volatile IOException failure;
+    /**
+     * Chunk being filled.
+     */
+    private byte[] chunk = new byte[CHUNK_SIZE];
+    /**
+     * Number of bytes in {@link #chunk}.
+     */
+    private int count;
+    /**
+     * Indicates whether the stream was closed.
+     */
+    private boolean closed;
+
+    /**
+     * Constructor.
+     * @param output Stream to which compressed data are written, it is closed
+     *  together with this stream.
+     * @throws IOException If gzip header can not be written.
+     */
+    public BackgroundGzipOutputStream(final OutputStream output) throws IOException {
+        this.gzip = new GZIPOutputStream(output, CHUNK_SIZE);
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        if (this.count == this.chunk.length) {
+            this.handOver(this.chunk);
+            this.chunk = new byte[CHUNK_SIZE];
+            this.count = 0;
+        }
+        this.chunk[this.count++] = (byte) b;
+    }
+
+    @Override
+    public void write(final byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (this.count == this.chunk.length) {
+                this.handOver(this.chunk);
+                this.chunk = new byte[CHUNK_SIZE];
+                this.count = 0;
+            }
+            final int length = Math.min(len, this.chunk.length - this.count);
+            System.arraycopy(b, off, this.chunk, this.count, length);
+            this.count += length;
+            off += length;
+            len -= length;
+        }
+    }
+
+    /**
+     * Passes buffered data to the compression.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (this.count > 0) {
+            this.handOver(Arrays.copyOf(this.chunk, this.count));
+            this.count = 0;
+        }
+    }
+
+    /**
+     * Waits until all data are compressed and closes the underlying stream.
+     * @throws IOException If the compression failed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.flush();
+        this.handOver(END);
+        try {
+            this.finished.await();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for compression.");
+        }
+        if (this.failure != null) {
+            throw this.failure;
+        }
+    }
+
+    /**
+     * Puts data into the queue and schedules their compression.
+     */
+    private void handOver(final byte[] data) throws IOException {
+        if (this.failure != null) {
+            throw this.failure;
+        }
+        try {
+            this.queue.put(data);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while passing data for compression.");
+        }
+        this.schedule();
+    }
+
+    /**
+     * Submits the compression task to the pool, unless it is already scheduled.
+     */
+    private void schedule() {
+        if (this.scheduled.compareAndSet(false, true)) {
+            COMPRESSORS.execute(this.compression);
+        }
+    }
+
+    /**
+     * Compresses chunks of the queue until it is empty, the thread is then
+     * returned to the pool. After an error the remaining data are discarded,
+     * so that the writer is never blocked.
+     */
+    private void compress() {
+        byte[] data;
+        while ((data = this.queue.poll()) != null) {
+            if (data == END) {
+                this.finish();
+                return;
+            }
+            if (this.failure == null) {
+                try {
+                    this.gzip.write(data);
+                } catch (final IOException ex) {
+                    this.failure = ex;
+                }
+            }
+        }
+        this.scheduled.set(false);
+        // data put into the queue before the flag was cleared
+        if (!this.queue.isEmpty()) {
+            this.schedule();
+        }
+    }
+
+    /**
+     * Closes the underlying stream after all data were compressed.
+     */
+    private void finish() {
+        try {
+            this.gzip.close();
+        } catch (final IOException ex) {
+            if (this.failure == null) {
+                this.failure = ex;
+            }
+        } finally {
+            this.finished.countDown();
+        }
+    }
+}
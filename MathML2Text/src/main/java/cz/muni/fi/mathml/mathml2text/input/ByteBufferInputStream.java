@@ -0,0 +1,81 @@
+package cz.muni.fi.mathml.mathml2text.input;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link InputStream} reading data from a {@link ByteBuffer}.
+ * Buffer can be backed by an array as well as mapped to a file, data is not 
+ * copied. Bytes between position and limit of the buffer are read, the buffer 
+ * itself is not modified.
+ *
+ * @author agent
+ * @date 2026-10-17T23:25:26+0000
+ */
+public final class ByteBufferInputStream extends InputStream {
+    /**
+     * Source of data.
+     */
+    private final ByteBuffer buffer;
+    /**
+     * Marked position.
+     */
+    private int mark;
+
+    /**
+     * Constructor.
+     * @param buffer Source of data.
+     */
+    public ByteBufferInputStream(final ByteBuffer buffer) {
+        this.buffer = buffer.slice();
+        this.mark = 0;
+    }
+
+    @Override
+    public int read() {
+        if (!this.buffer.hasRemaining()) {
+            return -1;
+        }
+        return this.buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length) {
+        if (length == 0) {
+            return 0;
+        }
+        if (!this.buffer.hasRemaining()) {
+            return -1;
+        }
+        final int count = Math.min(length, this.buffer.remaining());
+        this.buffer.get(bytes, offset, count);
+        return count;
+    }
+
+    @Override
+    public long skip(final long count) {
+        final int skipped = (int) Math.max(0, Math.min(count, this.buffer.remaining()));
+        this.buffer.position(this.buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return this.buffer.remaining();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(final int readLimit) {
+        this.mark = this.buffer.position();
+    }
+
+    @Override
+    public synchronized void reset() {
+        this.buffer.position(this.mark);
+    }
+}
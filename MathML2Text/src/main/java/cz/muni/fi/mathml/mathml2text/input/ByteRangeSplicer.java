@@ -0,0 +1,232 @@
+package cz.muni.fi.mathml.mathml2text.input;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.codehaus.stax2.LocationInfo;
+
+/**
+ * Writes output of a conversion by copying byte ranges of the input directly
+ * to the output channel. Only the ranges occupied by <code>&lt;math&gt;</code>
+ * elements are skipped and replaced with converted text, everything else
+ * keeps its original bytes (and formatting).
+ * <p>
+ * Offsets reported by a stream reader can be either byte or character
+ * offsets. Character offsets are mapped to byte offsets by walking the UTF-8
+ * encoded input, so all offsets passed to this class must be increasing.
+ * The reader has to be created over {@link #getContentStream()}, so that 
+ * its offsets do not depend on whether it counts the byte order mark.
+ *
+ * @author agent
+ * @date 2026-10-17T23:22:03+0000
+ */
+public final class ByteRangeSplicer {
+    /**
+     * Encoding of input and output data.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * Input data.
+     */
+    private final ByteBuffer source;
+    /**
+     * Output channel.
+     */
+    private final WritableByteChannel target;
+    /**
+     * Length of byte order mark at the start of input (offsets reported by reader start after it).
+     */
+    private final int contentOffset;
+    /**
+     * Position in the input up to which the data was already copied or skipped.
+     */
+    private int position;
+    /**
+     * Character offset last mapped to byte offset.
+     */
+    private long mappedCharOffset;
+    /**
+     * Byte offset equivalent to {@link #mappedCharOffset}.
+     */
+    private int mappedByteOffset;
+
+    /**
+     * Constructor.
+     * @param source Input data encoded in UTF-8. Bytes between position and limit are used.
+     * @param target Output channel, can be {@code null} if the splicer is used
+     *  only for mapping offsets of a reader (see {@link #getByteOffset(org.codehaus.stax2.LocationInfo, boolean) }).
+     */
+    public ByteRangeSplicer(final ByteBuffer source, final WritableByteChannel target) {
+        this.source = source.slice();
+        this.target = target;
+        this.contentOffset = this.hasByteOrderMark() ? 3 : 0;
+        this.position = 0;
+        this.mappedCharOffset = 0;
+        this.mappedByteOffset = this.contentOffset;
+    }
+
+    /**
+     * Returns input data without byte order mark.
+     * @return Stream for creating a reader.
+     */
+    public InputStream getContentStream() {
+        final ByteBuffer content = this.source.duplicate();
+        content.position(this.contentOffset);
+        return new ByteBufferInputStream(content);
+    }
+
+    /**
+     * Returns byte offset of the start or the end of the current reader event.
+     * @param location Location of the current event.
+     * @param ending {@code true} for the end of the event, {@code false} for its start.
+     * @return Byte offset in the input.
+     * @throws XMLStreamException If the reader reports neither byte nor character offsets.
+     */
+    public int getByteOffset(final LocationInfo location, final boolean ending) throws XMLStreamException {
+        final long byteOffset = ending ? location.getEndingByteOffset() : location.getStartingByteOffset();
+        if (byteOffset >= 0) {
+            return this.contentOffset + (int) byteOffset;
+        }
+        final long charOffset = ending ? location.getEndingCharOffset() : location.getStartingCharOffset();
+        if (charOffset < 0) {
+            throw new XMLStreamException("Reader does not report input offsets.");
+        }
+        return this.mapCharOffset(charOffset);
+    }
+
+    /**
+     * Copies input bytes up to given offset to the output.
+     * @param byteOffset Byte offset (exclusive).
+     * @throws IOException If writing to output fails.
+     */
+    public void copyTo(final int byteOffset) throws IOException {
+        if (byteOffset > this.position) {
+            final ByteBuffer range = this.source.duplicate();
+            range.limit(byteOffset);
+            range.position(this.position);
+            this.writeFully(range);
+            this.position = byteOffset;
+        }
+    }
+
+    /**
+     * Skips input bytes up to given offset, they will not be copied to the output.
+     * @param byteOffset Byte offset (exclusive).
+     */
+    public void skipTo(final int byteOffset) {
+        this.position = Math.max(this.position, byteOffset);
+    }
+
+    /**
+     * Copies a start tag to the output and appends given text after its last attribute.
+     * @param tagEndOffset Byte offset right after the <code>&gt;</code> character of the start tag.
+     * @param text Text to be appended, e.g. a namespace declaration.
+     * @throws IOException If writing to output fails.
+     */
+    public void appendToStartTag(final int tagEndOffset, final String text) throws IOException {
+        int insertOffset = tagEndOffset - 1;
+        if (insertOffset > 0 && this.source.get(insertOffset - 1) == '/') {
+            // empty element tag
+            --insertOffset;
+        }
+        this.copyTo(insertOffset);
+        this.write(text);
+    }
+
+    /**
+     * Writes markup to the output. No escaping is done.
+     * @param markup Markup.
+     * @throws IOException If writing to output fails.
+     */
+    public void write(final String markup) throws IOException {
+        this.writeFully(UTF_8.encode(markup));
+    }
+
+    /**
+     * Writes text content to the output, characters with special meaning in XML are escaped.
+     * @param text Text.
+     * @throws IOException If writing to output fails.
+     */
+    public void writeCharacters(final String text) throws IOException {
+        final StringBuilder builder = new StringBuilder(text.length());
+        for (int index = 0; index < text.length(); ++index) {
+            final char c = text.charAt(index);
+            switch (c) {
+                case '&': builder.append("&amp;"); break;
+                case '<': builder.append("&lt;"); break;
+                case '>': builder.append("&gt;"); break;
+                default: builder.append(c); break;
+            }
+        }
+        this.write(builder.toString());
+    }
+
+    /**
+     * Copies the rest of the input to the output.
+     * @throws IOException If writing to output fails.
+     */
+    public void finish() throws IOException {
+        this.copyTo(this.source.limit());
+    }
+
+    /**
+     * Maps character offset to byte offset.
+     * Character offsets count UTF-16 code units, so a four byte sequence
+     * counts as two characters.
+     */
+    private int mapCharOffset(final long charOffset) throws XMLStreamException {
+        if (charOffset < this.mappedCharOffset) {
+            throw new XMLStreamException("Offsets must be increasing.");
+        }
+        int byteOffset = this.mappedByteOffset;
+        long current = this.mappedCharOffset;
+        final int limit = this.source.limit();
+        while (current < charOffset && byteOffset < limit) {
+            final int b = this.source.get(byteOffset) & 0xFF;
+            if (b < 0x80) {
+                byteOffset += 1;
+                current += 1;
+            } else if ((b & 0xE0) == 0xC0) {
+                byteOffset += 2;
+                current += 1;
+            } else if ((b & 0xF0) == 0xE0) {
+                byteOffset += 3;
+                current += 1;
+            } else if ((b & 0xF8) == 0xF0) {
+                byteOffset += 4;
+                current += 2;
+            } else {
+                // malformed input, the decoder replaced it with a single character
+                byteOffset += 1;
+                current += 1;
+            }
+        }
+        this.mappedCharOffset = current;
+        this.mappedByteOffset = Math.min(byteOffset, limit);
+        return this.mappedByteOffset;
+    }
+
+    /**
+     * Checks whether input starts with UTF-8 byte order mark.
+     */
+    private boolean hasByteOrderMark() {
+        return this.source.limit() >= 3
+                && (this.source.get(0) & 0xFF) == 0xEF
+                && (this.source.get(1) & 0xFF) == 0xBB
+                && (this.source.get(2) & 0xFF) == 0xBF;
+    }
+
+    /**
+     * Writes whole buffer to the output channel.
+     */
+    private void writeFully(final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            this.target.write(buffer);
+        }
+    }
+}
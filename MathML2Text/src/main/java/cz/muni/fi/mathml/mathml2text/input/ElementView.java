@@ -0,0 +1,152 @@
+package cz.muni.fi.mathml.mathml2text.input;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jdom2.Attribute;
+import org.jdom2.Element;
+
+import cz.muni.fi.mathml.mathml2text.converter.tree.MathMLElement;
+import cz.muni.fi.mathml.mathml2text.converter.tree.MathMLNode;
+import cz.muni.fi.mathml.mathml2text.converter.tree.TokenTable;
+import cz.muni.fi.mathml.mathml2text.converter.tree.TokenValue;
+import cz.muni.fi.mathml.mathml2text.converter.tree.XmlAttribute;
+
+/**
+ * Read-only view of JDOM element as {@link MathMLNode}. Nothing is copied
+ * in advance, properties of the node are read from the element when they
+ * are first requested, children views are created only for traversed nodes.
+ * The element must not be modified while the view is used.
+ *
+ * @author agent
+ * @date 2026-10-17T23:58:06+0000
+ */
+final class ElementView extends MathMLNode {
+    /**
+     * Viewed element.
+     */
+    private final Element element;
+    /**
+     * View of parent element, {@code null} for the root of the tree.
+     */
+    private final ElementView parent;
+    /**
+     * Normalized values of the tree, shared by all views of the tree.
+     */
+    private final TokenTable tokens;
+    /**
+     * Type of the element, {@code null} until first use.
+     */
+    private MathMLElement type;
+    /**
+     * Trimmed text of the element, {@code null} until first use.
+     */
+    private String value;
+    /**
+     * Normalized text of the element, {@code null} until first use.
+     */
+    private TokenValue tokenValue;
+    /**
+     * Views of child elements, {@code null} until first use.
+     */
+    private List<MathMLNode> children;
+    /**
+     * Attributes of the element, {@code null} until first use.
+     */
+    private Set<XmlAttribute> attributes;
+
+    /**
+     * Creates view of an element that is the root of the tree.
+     * @param element Math element.
+     */
+    ElementView(final Element element) {
+        this(element, null, new TokenTable());
+    }
+
+    private ElementView(final Element element, final ElementView parent, final TokenTable tokens) {
+        this.element = element;
+        this.parent = parent;
+        this.tokens = tokens;
+    }
+
+    @Override
+    public MathMLNode getParent() {
+        return this.parent;
+    }
+
+    @Override
+    public MathMLElement getType() {
+        if (this.type == null) {
+            this.type = MathMLElement.forElementName(this.element.getName());
+        }
+        return this.type;
+    }
+
+    @Override
+    public String getValue() {
+        if (this.value == null) {
+            this.value = this.element.getTextTrim();
+        }
+        return StringUtils.isNotBlank(this.value) ? this.value : null;
+    }
+
+    @Override
+    public TokenValue getTokenValue() {
+        if (this.tokenValue == null) {
+            this.tokenValue = this.tokens.get(this.getValue());
+        }
+        return this.tokenValue;
+    }
+
+    @Override
+    public List<MathMLNode> getChildren() {
+        if (this.children == null) {
+            final List<Element> elements = this.element.getChildren();
+            if (elements.isEmpty()) {
+                this.children = Collections.emptyList();
+            } else {
+                final List<MathMLNode> views = new ArrayList<MathMLNode>(elements.size());
+                for (final Element child : elements) {
+                    views.add(new ElementView(child, this, this.tokens));
+                }
+                this.children = Collections.unmodifiableList(views);
+            }
+        }
+        return this.children;
+    }
+
+    @Override
+    public Set<XmlAttribute> getAttributes() {
+        if (this.attributes == null) {
+            if (!this.element.hasAttributes()) {
+                this.attributes = Collections.emptySet();
+            } else {
+                final Set<XmlAttribute> values = new HashSet<XmlAttribute>();
+                for (final Attribute attr : this.element.getAttributes()) {
+                    values.add(new XmlAttribute(attr.getName(), attr.getValue()));
+                }
+                this.attributes = Collections.unmodifiableSet(values);
+            }
+        }
+        return this.attributes;
+    }
+
+    @Override
+    public void setParent(final MathMLNode parent) {
+        throw new UnsupportedOperationException("View of element is read-only.");
+    }
+
+    @Override
+    public void setType(final MathMLElement type) {
+        throw new UnsupportedOperationException("View of element is read-only.");
+    }
+
+    @Override
+    public void setValue(final String value) {
+        throw new UnsupportedOperationException("View of element is read-only.");
+    }
+}
@@ -0,0 +1,221 @@
+package cz.muni.fi.mathml.mathml2text.input;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.parsers.FactoryConfigurationError;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.DeclHandler;
+
+/**
+ * Immutable table of named entities of XHTML 1.1 plus MathML 2.0
+ * (<code>xhtml-math11-f.dtd</code>), shared by all parsers and threads.
+ * The DTD is processed only once, at first use, all later documents resolve
+ * entities from this table:
+ * <ul>
+ *  <li>parsers that allow to define entities directly (Woodstox) use
+ *      {@link #getDeclarations()} and need no DTD processing at all,</li>
+ *  <li>other parsers receive a compact DTD with entity declarations only
+ *      (see {@link #createDTDStream()}), instead of the full DTD with
+ *      element and attribute declarations.</li>
+ * </ul>
+ *
+ * @author agent
+ * @date 2026-10-17T23:37:13+0000
+ */
+public final class EntityTable {
+
+    private static final Logger logger = LoggerFactory.getLogger(EntityTable.class);
+    /**
+     * Full DTD on classpath.
+     */
+    private static final String DTD_RESOURCE = "xhtml-math11-f.dtd";
+    /**
+     * SAX parser of JDK, it reports entity declarations. Default SAX parser 
+     * can be changed by application (e.g. to Woodstox, which does not report them).
+     */
+    private static final String JDK_SAX_PARSER_FACTORY = "com.sun.org.apache.xerces.internal.jaxp.SAXParserFactoryImpl";
+    /**
+     * Encoding of compact DTD.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * Entities with replacement text (name &rarr; text).
+     */
+    private final Map<String, String> entities;
+    /**
+     * Entities with replacement text escaped by character references (name &rarr; text).
+     */
+    private final Map<String, String> declarations;
+    /**
+     * Compact DTD with entity declarations only.
+     */
+    private final byte[] dtd;
+
+    /**
+     * Lazily initialized instance.
+     */
+    private static final class Holder {
+        private static final EntityTable INSTANCE = new EntityTable();
+    }
+
+    /**
+     * Constructor. Processes full DTD and collects its entities.
+     */
+    private EntityTable() {
+        final Map<String, String> values = readEntities();
+        final Map<String, String> escaped = new LinkedHashMap<String, String>(values.size() * 2);
+        final StringBuilder builder = new StringBuilder(values.size() * 32);
+        for (final Map.Entry<String, String> entity : values.entrySet()) {
+            final String value = escape(entity.getValue());
+            escaped.put(entity.getKey(), value);
+            builder.append("<!ENTITY ").append(entity.getKey()).append(" \"").append(value).append("\">\n");
+        }
+        this.entities = Collections.unmodifiableMap(values);
+        this.declarations = Collections.unmodifiableMap(escaped);
+        this.dtd = builder.toString().getBytes(UTF_8);
+        if (values.isEmpty()) {
+            logger.warn("Entity table is empty, named entities will not be resolved.");
+        } else {
+            logger.debug("Entity table created with [{}] entities.", values.size());
+        }
+    }
+
+    /**
+     * Instance of this singleton class. The table is created by the first call.
+     * @return Instance of this singleton class.
+     */
+    public static EntityTable getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Returns entities with their replacement text. Predefined XML entities
+     * (<code>lt</code>, <code>gt</code>, <code>amp</code>, <code>quot</code>,
+     * <code>apos</code>) are not included.
+     * @return Unmodifiable map (name &rarr; replacement text).
+     */
+    public Map<String, String> getEntities() {
+        return this.entities;
+    }
+
+    /**
+     * Returns entities with their replacement text, in which every character
+     * that is not printable ASCII or has special meaning in XML is written as
+     * a character reference. Such text can be parsed as markup.
+     * @return Unmodifiable map (name &rarr; escaped replacement text).
+     */
+    public Map<String, String> getDeclarations() {
+        return this.declarations;
+    }
+
+    /**
+     * Creates a stream with compact DTD, which contains only entity declarations.
+     * @return DTD stream encoded in UTF-8.
+     */
+    public InputStream createDTDStream() {
+        return new ByteArrayInputStream(this.dtd);
+    }
+
+    /**
+     * Processes full DTD and collects declared general entities.
+     */
+    private static Map<String, String> readEntities() {
+        final Map<String, String> values = new LinkedHashMap<String, String>();
+        try {
+            SAXParserFactory factory;
+            try {
+                factory = SAXParserFactory.newInstance(JDK_SAX_PARSER_FACTORY, null);
+            } catch (final FactoryConfigurationError ex) {
+                factory = SAXParserFactory.newInstance();
+            }
+            factory.setNamespaceAware(false);
+            factory.setValidating(false);
+            final SAXParser parser = factory.newSAXParser();
+            final XMLReader reader = parser.getXMLReader();
+            reader.setProperty("http://xml.org/sax/properties/declaration-handler", new DeclHandler() {
+                @Override
+                public void internalEntityDecl(final String name, final String value) {
+                    // parameter entities start with '%', only the first declaration is effective
+                    if (!name.startsWith("%") && !isPredefined(name) && !values.containsKey(name)) {
+                        values.put(name, value);
+                    }
+                }
+
+                @Override
+                public void elementDecl(final String name, final String model) {
+                }
+
+                @Override
+                public void attributeDecl(final String eName, final String aName, final String type, final String mode, final String value) {
+                }
+
+                @Override
+                public void externalEntityDecl(final String name, final String publicId, final String systemId) {
+                }
+            });
+            reader.setEntityResolver(new EntityResolver() {
+                @Override
+                public InputSource resolveEntity(final String publicId, final String systemId) {
+                    if (systemId.endsWith(DTD_RESOURCE)) {
+                        return new InputSource(EntityTable.class.getResourceAsStream(DTD_RESOURCE));
+                    }
+                    // other external entities of the DTD are not needed
+                    return new InputSource(new StringReader(""));
+                }
+            });
+            reader.parse(new InputSource(new StringReader(
+                    "<!DOCTYPE html SYSTEM \"" + DTD_RESOURCE + "\"><html/>")));
+        } catch (final ParserConfigurationException ex) {
+            logger.error("Cannot create parser for reading entities.", ex);
+        } catch (final SAXException ex) {
+            logger.error("Error while reading entities.", ex);
+        } catch (final IOException ex) {
+            logger.error("Cannot read entities.", ex);
+        }
+        return values;
+    }
+
+    /**
+     * Indicates whether the entity is predefined in XML.
+     */
+    private static boolean isPredefined(final String name) {
+        return "lt".equals(name) || "gt".equals(name) || "amp".equals(name)
+                || "quot".equals(name) || "apos".equals(name);
+    }
+
+    /**
+     * Replaces characters that are not printable ASCII or have special meaning
+     * in XML with character references.
+     */
+    private static String escape(final String value) {
+        final StringBuilder builder = new StringBuilder(value.length() * 8);
+        for (int index = 0; index < value.length(); ++index) {
+            final int c = value.codePointAt(index);
+            if (c > 0x20 && c < 0x7F && c != '&' && c != '<' && c != '>' && c != '"' && c != '\'' && c != '%') {
+                builder.append((char) c);
+            } else {
+                builder.append("&#x").append(Integer.toHexString(c).toUpperCase()).append(';');
+            }
+            if (Character.isSupplementaryCodePoint(c)) {
+                ++index;
+            }
+        }
+        return builder.toString();
+    }
+}
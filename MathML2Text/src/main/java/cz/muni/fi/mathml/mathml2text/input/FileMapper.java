@@ -0,0 +1,110 @@
+package cz.muni.fi.mathml.mathml2text.input;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Helper class for reading whole input files into buffers.
+ * Large files are mapped into memory, so that their content is read directly
+ * from the page cache and is kept off the Java heap. Small files are read 
+ * into a heap buffer, because mapping has a fixed cost and mapped memory is 
+ * released only when the buffer is garbage collected.
+ * Files that need no conversion are copied by the kernel, without passing
+ * their content through Java buffers.
+ *
+ * @author agent
+ * @date 2026-10-17T23:25:26+0000
+ */
+public final class FileMapper {
+
+    /**
+     * Indicates whether the file will be mapped into memory by {@link #read(java.io.File, long) }.
+     * @param file Input file.
+     * @param mappingThreshold Minimal size of file (in bytes) that is mapped, 
+     *  value lower than <code>1</code> disables mapping.
+     * @return {@code true} if the file will be mapped, {@code false} otherwise.
+     */
+    public static boolean isMapped(final File file, final long mappingThreshold) {
+        final long length = file.length();
+        return mappingThreshold > 0 && length >= mappingThreshold && length <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * Reads whole file into a buffer. If the file is at least as big as the 
+     * threshold, it is mapped into memory, otherwise it is read into a heap buffer.
+     * @param file Input file.
+     * @param mappingThreshold Minimal size of file (in bytes) that is mapped,
+     *  value lower than <code>1</code> disables mapping.
+     * @return Buffer with the content of the file.
+     * @throws IOException If the file can not be read.
+     */
+    public static ByteBuffer read(final File file, final long mappingThreshold) throws IOException {
+        return read(file, mappingThreshold, null);
+    }
+
+    /**
+     * Reads whole file into a buffer. If the file is at least as big as the 
+     * threshold, it is mapped into memory, otherwise it is read into a heap 
+     * buffer of the pool.
+     * @param file Input file.
+     * @param mappingThreshold Minimal size of file (in bytes) that is mapped,
+     *  value lower than <code>1</code> disables mapping.
+     * @param pool Pool of the current thread, {@code null} if a new heap buffer
+     *  should be allocated.
+     * @return Buffer with the content of the file, buffer of the pool is valid
+     *  until the next buffer is requested from the pool.
+     * @throws IOException If the file can not be read.
+     */
+    public static ByteBuffer read(final File file, final long mappingThreshold, final StreamPool pool) throws IOException {
+        final FileInputStream input = new FileInputStream(file);
+        try {
+            final FileChannel channel = input.getChannel();
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(String.format("File [%1$s] is too large to be read into a buffer.", file.getPath()));
+            }
+            if (isMapped(file, mappingThreshold)) {
+                // mapping stays valid after the channel is closed
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            final ByteBuffer buffer = pool != null ? pool.getBuffer((int) size) : ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                // read until the buffer is full
+            }
+            buffer.flip();
+            return buffer;
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Copies file using {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel) }.
+     * @param file Input file.
+     * @param target Output file, it is overwritten.
+     * @throws IOException If the file can not be copied.
+     */
+    public static void copy(final File file, final File target) throws IOException {
+        final FileInputStream input = new FileInputStream(file);
+        try {
+            final FileOutputStream output = new FileOutputStream(target);
+            try {
+                final FileChannel inputChannel = input.getChannel();
+                final FileChannel outputChannel = output.getChannel();
+                final long size = inputChannel.size();
+                long position = 0;
+                while (position < size) {
+                    position += inputChannel.transferTo(position, size - position, outputChannel);
+                }
+            } finally {
+                output.close();
+            }
+        } finally {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package cz.muni.fi.mathml.mathml2text.input;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads input files of a batch ahead of their conversion. A single I/O thread
+ * reads files in the order in which they are converted (the order of directory
+ * listing), so the disk is read sequentially while worker threads convert
+ * earlier files. Content of files is kept in heap buffers of a pool owned by
+ * the prefetcher, total capacity of the buffers never exceeds the byte budget.
+ * When the budget is exhausted, the I/O thread waits until converted files
+ * release their buffers, released buffers are reused for the next files.
+ * <p>
+ * Files that are mapped into memory (see {@link FileMapper}) or do not fit
+ * into the budget are not read ahead. A worker that asks for a file the I/O
+ * thread has not reached yet reads the file itself, the file is then skipped
+ * by the I/O thread.
+ *
+ * @author agent
+ * @date 2026-10-18T00:16:20+0000
+ */
+final class FilePrefetcher implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(FilePrefetcher.class);
+
+    /**
+     * Prefetched file.
+     */
+    private static final class Entry {
+        /**
+         * Content of the file, {@code null} while it is read or if it was not read.
+         */
+        private ByteBuffer buffer;
+        /**
+         * Indicates whether the I/O thread is reading the file.
+         */
+        private boolean reading;
+    }
+    /**
+     * Files in the order of conversion.
+     */
+    private final List<File> files;
+    /**
+     * Maximal total capacity of buffers in bytes.
+     */
+    private final long budget;
+    /**
+     * Minimal size of file that is mapped instead of being read.
+     */
+    private final long mappingThreshold;
+    /**
+     * Files reached by the I/O thread or requested by workers, guarded by this.
+     */
+    private final Map<File, Entry> entries = new HashMap<File, Entry>();
+    /**
+     * Released buffers that can be reused, guarded by this.
+     */
+    private final List<ByteBuffer> freeBuffers = new ArrayList<ByteBuffer>();
+    /**
+     * Total capacity of all buffers of the pool, guarded by this.
+     */
+    private long allocated;
+    /**
+     * Indicates whether the prefetcher was closed, guarded by this.
+     */
+    private boolean closed;
+    /**
+     * Number of files that were read ahead when a worker requested them.
+     */
+    private int hits;
+    /**
+     * Number of files that workers had to read themselves.
+     */
+    private int misses;
+    /**
+     * Number of requests that waited for the I/O thread to finish reading.
+     */
+    private int waits;
+    /**
+     * Number of bytes read ahead.
+     */
+    private long bytesRead;
+    /**
+     * Number of buffers allocated by the pool.
+     */
+    private int allocations;
+
+    /**
+     * Creates prefetcher, reading starts with {@link #start() }.
+     * @param files Files in the order in which they are converted.
+     * @param budget Maximal total size of buffers in bytes.
+     * @param mappingThreshold Minimal size of file that is mapped into memory,
+     *  such files are not read ahead.
+     */
+    FilePrefetcher(final List<File> files, final long budget, final long mappingThreshold) {
+        this.files = files;
+        this.budget = budget;
+        this.mappingThreshold = mappingThreshold;
+    }
+
+    /**
+     * Starts the I/O thread, it does not prevent application from exiting.
+     */
+    void start() {
+        final Thread thread = new Thread(this, "file-prefetcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        for (final File file : this.files) {
+            final long size = file.length();
+            if (size == 0 || size > this.budget || FileMapper.isMapped(file, this.mappingThreshold)) {
+                continue;
+            }
+            final Entry entry;
+            final ByteBuffer buffer;
+            synchronized (this) {
+                if (this.entries.containsKey(file)) {
+                    // worker was faster
+                    continue;
+                }
+                buffer = this.acquire((int) size);
+                if (buffer == null) {
+                    return;
+                }
+                if (this.entries.containsKey(file)) {
+                    this.freeBuffers.add(buffer);
+                    continue;
+                }
+                entry = new Entry();
+                entry.reading = true;
+                this.entries.put(file, entry);
+            }
+            boolean read = false;
+            try {
+                read = this.read(file, buffer);
+            } catch (final IOException ex) {
+                logger.debug("Could not read file [" + file.getPath() + "] ahead.", ex);
+            }
+            synchronized (this) {
+                entry.reading = false;
+                if (read && !this.closed) {
+                    entry.buffer = buffer;
+                    this.bytesRead += buffer.remaining();
+                } else {
+                    this.freeBuffers.add(buffer);
+                }
+                this.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Returns content of file, if it was read ahead. Waits if the file is
+     * being read. Every call has to be followed by {@link #release(java.io.File) }
+     * when the content is no longer used.
+     * @param file Input file.
+     * @return Content of the file, or {@code null} if the file was not read ahead.
+     */
+    synchronized ByteBuffer take(final File file) {
+        Entry entry = this.entries.get(file);
+        if (entry == null) {
+            // the I/O thread will skip the file
+            this.entries.put(file, new Entry());
+            ++this.misses;
+            return null;
+        }
+        if (entry.reading) {
+            ++this.waits;
+            while (entry.reading && !this.closed) {
+                try {
+                    this.wait();
+                } catch (final InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        if (entry.buffer == null) {
+            ++this.misses;
+            return null;
+        }
+        ++this.hits;
+        return entry.buffer;
+    }
+
+    /**
+     * Returns buffer with content of the file to the pool.
+     * @param file Input file passed to {@link #take(java.io.File) }.
+     */
+    synchronized void release(final File file) {
+        final Entry entry = this.entries.remove(file);
+        if (entry != null && entry.buffer != null && !this.closed) {
+            this.freeBuffers.add(entry.buffer);
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * Stops reading ahead and drops all buffers.
+     */
+    synchronized void close() {
+        this.closed = true;
+        this.entries.clear();
+        this.freeBuffers.clear();
+        this.notifyAll();
+    }
+
+    /**
+     * Returns statistics of prefetching.
+     * @return Human readable statistics.
+     */
+    synchronized String getStatistics() {
+        final int requests = this.hits + this.misses;
+        return String.format("%1$d of %2$d files read ahead (hit rate %3$.1f %%), %4$d waited for reading, "
+                + "%5$d bytes read ahead, %6$d buffers allocated",
+                this.hits, requests, requests == 0 ? 0.0 : 100.0 * this.hits / requests, this.waits,
+                this.bytesRead, this.allocations);
+    }
+
+    /**
+     * Returns a buffer of given size, waits until the budget allows it.
+     * A free buffer is reused if it is large enough, otherwise free buffers
+     * are dropped to make room for a new one.
+     * @param size Size of the buffer.
+     * @return Buffer with limit set to the size, {@code null} if the prefetcher was closed.
+     */
+    private ByteBuffer acquire(final int size) {
+        while (!this.closed) {
+            int best = -1;
+            for (int index = 0; index < this.freeBuffers.size(); ++index) {
+                final int capacity = this.freeBuffers.get(index).capacity();
+                if (capacity >= size && (best == -1 || capacity < this.freeBuffers.get(best).capacity())) {
+                    best = index;
+                }
+            }
+            if (best != -1) {
+                final ByteBuffer buffer = this.freeBuffers.remove(best);
+                buffer.clear();
+                buffer.limit(size);
+                return buffer;
+            }
+            if (this.allocated + size <= this.budget) {
+                this.allocated += size;
+                ++this.allocations;
+                return ByteBuffer.allocate(size);
+            }
+            if (!this.freeBuffers.isEmpty()) {
+                // free buffers are too small, drop one of them
+                this.allocated -= this.freeBuffers.remove(this.freeBuffers.size() - 1).capacity();
+                continue;
+            }
+            try {
+                this.wait();
+            } catch (final InterruptedException ex) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads file into the buffer.
+     * @param file Input file.
+     * @param buffer Buffer with limit set to the size of the file.
+     * @return {@code true} if the file was read, {@code false} if its size changed.
+     * @throws IOException If the file can not be read.
+     */
+    private boolean read(final File file, final ByteBuffer buffer) throws IOException {
+        final FileInputStream input = new FileInputStream(file);
+        try {
+            final FileChannel channel = input.getChannel();
+            if (channel.size() != buffer.limit()) {
+                return false;
+            }
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                // read until the buffer is full
+            }
+            buffer.flip();
+            return true;
+        } finally {
+            input.close();
+        }
+    }
+}
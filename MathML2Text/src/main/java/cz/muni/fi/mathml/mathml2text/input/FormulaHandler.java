@@ -0,0 +1,16 @@
+package cz.muni.fi.mathml.mathml2text.input;
+
+/**
+ * Receives results of conversion of math elements one by one, as soon as
+ * every element is converted (see {@link XmlParserStAX#parseFormulas(java.io.InputStream, java.util.Locale, FormulaHandler) }).
+ *
+ * @author agent
+ * @date 2026-10-18T00:12:19+0000
+ */
+public interface FormulaHandler {
+    /**
+     * Called for every converted math element, in document order.
+     * @param result Result of conversion of the element.
+     */
+    void formulaConverted(FormulaResult result);
+}
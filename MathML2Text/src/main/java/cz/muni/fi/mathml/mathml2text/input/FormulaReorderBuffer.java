@@ -0,0 +1,189 @@
+package cz.muni.fi.mathml.mathml2text.input;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import cz.muni.fi.mathml.mathml2text.converter.ConversionContext;
+import cz.muni.fi.mathml.mathml2text.converter.MathMLConverter;
+import cz.muni.fi.mathml.mathml2text.converter.tree.MathMLNode;
+
+/**
+ * Converts math elements of a single document in parallel. The parsing
+ * thread passes built trees to a pool of converting threads and continues
+ * reading, converted values are written in the order of the document: writing
+ * of a math element (and of everything that follows it) waits until all
+ * preceding elements are written. The number of elements converted or waiting
+ * for writing is bounded, when the buffer is full, the parsing thread writes
+ * the oldest element first.
+ * <p>
+ * Converting threads are shared by all documents, they only convert trees,
+ * so they never wait for a document. They form the convert stage of the
+ * pipeline (see {@link PipelineStage}), its queue is measured in the same way
+ * as queues of other stages. Buffer is used by one parsing thread.
+ *
+ * @author agent
+ * @date 2026-10-18T00:30:24+0000
+ */
+final class FormulaReorderBuffer {
+
+    /**
+     * Writer of a converted math element, called in the order of the document.
+     */
+    interface Sink {
+        /**
+         * Writes converted math element and input preceding it.
+         * @param converted Converted value.
+         * @throws IOException If writing to output fails.
+         */
+        void write(String converted) throws IOException;
+    }
+
+    /**
+     * Converted math element waiting for writing.
+     */
+    private static final class Pending {
+        private final Future<String> conversion;
+        private final Sink sink;
+
+        private Pending(final Future<String> conversion, final Sink sink) {
+            this.conversion = conversion;
+            this.sink = sink;
+        }
+    }
+    /**
+     * Maximal number of pending elements per converting thread.
+     */
+    private static final int PENDING_PER_THREAD = 4;
+    /**
+     * Converting threads, {@code null} until first use.
+     */
+    private static PipelineStage converters;
+    /**
+     * Number of converting threads.
+     */
+    private static int converterCount;
+    /**
+     * Converter of trees, it is shared by converting threads.
+     */
+    private final MathMLConverter converter;
+    /**
+     * Language and options of conversion.
+     */
+    private final ConversionContext context;
+    /**
+     * Converting threads.
+     */
+    private final PipelineStage pool;
+    /**
+     * Maximal number of pending elements.
+     */
+    private final int capacity;
+    /**
+     * Elements in the order of the document.
+     */
+    private final Queue<Pending> pending = new ArrayDeque<Pending>();
+
+    /**
+     * Creates buffer for a document.
+     * @param converter Converter of trees.
+     * @param context Language and options of conversion.
+     * @param threadCount Number of converting threads, the pool is created
+     *  with the count requested first.
+     */
+    FormulaReorderBuffer(final MathMLConverter converter, final ConversionContext context, final int threadCount) {
+        this.converter = converter;
+        this.context = context;
+        this.pool = getConverters(threadCount);
+        this.capacity = PENDING_PER_THREAD * converterCount;
+    }
+
+    /**
+     * Starts conversion of a tree. If the buffer is full, the oldest element
+     * is written first.
+     * @param tree Tree of math element, it must not be modified.
+     * @param sink Writer of the element, it is called on the parsing thread.
+     * @throws IOException If writing of an older element fails.
+     */
+    void add(final MathMLNode tree, final Sink sink) throws IOException {
+        if (this.pending.size() >= this.capacity) {
+            this.writeOldest();
+        }
+        final FutureTask<String> conversion = new FutureTask<String>(new Callable<String>() {
+
+            @Override
+            public String call() {
+                return FormulaReorderBuffer.this.converter.convert(tree, FormulaReorderBuffer.this.context);
+            }
+        });
+        try {
+            this.pool.submit(conversion);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while passing math element for conversion.");
+        }
+        this.pending.add(new Pending(conversion, sink));
+    }
+
+    /**
+     * Writes all elements, waits for their conversion.
+     * @throws IOException If writing fails.
+     */
+    void flush() throws IOException {
+        while (!this.pending.isEmpty()) {
+            this.writeOldest();
+        }
+    }
+
+    /**
+     * Cancels conversion of elements that were not written.
+     */
+    void cancel() {
+        for (final Pending element : this.pending) {
+            element.conversion.cancel(false);
+        }
+        this.pending.clear();
+    }
+
+    /**
+     * Waits for conversion of the oldest element and writes it.
+     */
+    private void writeOldest() throws IOException {
+        final Pending element = this.pending.remove();
+        final String converted;
+        try {
+            converted = element.conversion.get();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for conversion of math element.");
+        } catch (final ExecutionException ex) {
+            throw new IOException("Conversion of math element failed.", ex.getCause());
+        }
+        element.sink.write(converted);
+    }
+
+    /**
+     * Returns statistics of converting threads.
+     * @return Human readable statistics, {@code null} if no math element was
+     *  converted in parallel yet.
+     */
+    static synchronized String getStatistics() {
+        return converters != null ? converters.getStatistics() : null;
+    }
+
+    /**
+     * Returns pool of converting threads, they do not prevent application from exiting.
+     */
+    private static synchronized PipelineStage getConverters(final int threadCount) {
+        if (converters == null) {
+            converterCount = Math.max(1, threadCount);
+            converters = new PipelineStage("convert", converterCount, PENDING_PER_THREAD * converterCount);
+        }
+        return converters;
+    }
+}
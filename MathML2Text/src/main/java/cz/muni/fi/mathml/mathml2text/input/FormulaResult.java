@@ -0,0 +1,171 @@
+package cz.muni.fi.mathml.mathml2text.input;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of conversion of a single <code>&lt;math&gt;</code> element of
+ * a document. Besides the converted text it carries position of the element
+ * in the input, so that the result can be mapped back to the source without
+ * parsing it again.
+ * <p>
+ * Offsets are {@code -1} if the reader does not report them (see
+ * {@link XmlParserStAX#parseFormulas(java.io.InputStream, java.util.Locale, FormulaHandler) }).
+ *
+ * @author agent
+ * @date 2026-10-18T00:12:19+0000
+ */
+public final class FormulaResult {
+    /**
+     * Index of the element in the document, starting at 0.
+     */
+    private final int index;
+    /**
+     * Converted text.
+     */
+    private final String text;
+    /**
+     * Path of the element, e.g. <code>/html[1]/body[1]/p[3]/m:math[1]</code>.
+     */
+    private final String path;
+    /**
+     * Character offset of the start of the element.
+     */
+    private final long startCharOffset;
+    /**
+     * Character offset right after the end of the element.
+     */
+    private final long endCharOffset;
+    /**
+     * Byte offset of the start of the element.
+     */
+    private final long startByteOffset;
+    /**
+     * Byte offset right after the end of the element.
+     */
+    private final long endByteOffset;
+    /**
+     * Time of conversion of the tree in nanoseconds (parsing not included).
+     */
+    private final long conversionTime;
+    /**
+     * Operators not supported by the converter.
+     */
+    private final List<String> unknownOperators;
+
+    /**
+     * Constructor.
+     * @param index Index of the element in the document.
+     * @param text Converted text.
+     * @param path Path of the element.
+     * @param startCharOffset Character offset of the start of the element.
+     * @param endCharOffset Character offset right after the end of the element.
+     * @param startByteOffset Byte offset of the start of the element.
+     * @param endByteOffset Byte offset right after the end of the element.
+     * @param conversionTime Time of conversion in nanoseconds.
+     * @param unknownOperators Operators not supported by the converter.
+     */
+    FormulaResult(final int index, final String text, final String path, final long startCharOffset, 
+            final long endCharOffset, final long startByteOffset, final long endByteOffset, final long conversionTime,
+            final List<String> unknownOperators) {
+        this.index = index;
+        this.text = text;
+        this.path = path;
+        this.startCharOffset = startCharOffset;
+        this.endCharOffset = endCharOffset;
+        this.startByteOffset = startByteOffset;
+        this.endByteOffset = endByteOffset;
+        this.conversionTime = conversionTime;
+        this.unknownOperators = Collections.unmodifiableList(unknownOperators);
+    }
+
+    /**
+     * Returns index of the element among all math elements of the document.
+     * @return Index starting at 0.
+     */
+    public int getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Returns converted text of the element.
+     * @return Converted text.
+     */
+    public String getText() {
+        return this.text;
+    }
+
+    /**
+     * Returns path of the element from the root element. Every step contains
+     * qualified name of an element and its position among siblings of the 
+     * same name, e.g. <code>/html[1]/body[1]/p[3]/m:math[1]</code>.
+     * @return Path of the element.
+     */
+    public String getPath() {
+        return this.path;
+    }
+
+    /**
+     * Returns character offset of the start of the element in the input.
+     * @return Character offset or {@code -1} if it is not known.
+     */
+    public long getStartCharOffset() {
+        return this.startCharOffset;
+    }
+
+    /**
+     * Returns character offset right after the end of the element in the input.
+     * @return Character offset or {@code -1} if it is not known.
+     */
+    public long getEndCharOffset() {
+        return this.endCharOffset;
+    }
+
+    /**
+     * Returns byte offset of the start of the element in the input
+     * encoded in UTF-8.
+     * @return Byte offset or {@code -1} if it is not known.
+     */
+    public long getStartByteOffset() {
+        return this.startByteOffset;
+    }
+
+    /**
+     * Returns byte offset right after the end of the element in the input
+     * encoded in UTF-8.
+     * @return Byte offset or {@code -1} if it is not known.
+     */
+    public long getEndByteOffset() {
+        return this.endByteOffset;
+    }
+
+    /**
+     * Returns time of conversion of the element, parsing is not included.
+     * @return Time in nanoseconds.
+     */
+    public long getConversionTime() {
+        return this.conversionTime;
+    }
+
+    /**
+     * Returns operators of the element that are not supported by the converter,
+     * they are converted as they are.
+     * @return Original values of unsupported operators, empty if there are none.
+     */
+    public List<String> getUnknownOperators() {
+        return this.unknownOperators;
+    }
+
+    /**
+     * Indicates whether the element contains operators not supported by the converter.
+     * @return {@code true} if there are unsupported operators, {@code false} otherwise.
+     */
+    public boolean hasUnknownOperators() {
+        return !this.unknownOperators.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%1$s [%2$d, %3$d): %4$s", this.path, this.startCharOffset, this.endCharOffset, this.text);
+    }
+}
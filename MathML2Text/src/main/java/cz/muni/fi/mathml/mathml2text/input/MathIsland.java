@@ -0,0 +1,63 @@
+package cz.muni.fi.mathml.mathml2text.input;
+
+/**
+ * Immutable location of a single <code>&lt;math&gt;</code> element in raw input data.
+ *
+ * @author agent
+ * @date 2026-10-17T23:24:20+0000
+ */
+public final class MathIsland {
+    /**
+     * Byte offset of the <code>&lt;</code> character of the start tag.
+     */
+    private final int start;
+    /**
+     * Byte offset right after the <code>&gt;</code> character of the end tag.
+     */
+    private final int end;
+    /**
+     * Namespace prefix of the element, empty string if there is none.
+     */
+    private final String prefix;
+
+    /**
+     * Constructor.
+     * @param start Byte offset of the start tag.
+     * @param end Byte offset right after the end tag (exclusive).
+     * @param prefix Namespace prefix of the element.
+     */
+    public MathIsland(final int start, final int end, final String prefix) {
+        this.start = start;
+        this.end = end;
+        this.prefix = prefix;
+    }
+
+    /**
+     * Returns byte offset of the start tag.
+     * @return Byte offset of the start tag.
+     */
+    public int getStart() {
+        return this.start;
+    }
+
+    /**
+     * Returns byte offset right after the end tag.
+     * @return Byte offset right after the end tag.
+     */
+    public int getEnd() {
+        return this.end;
+    }
+
+    /**
+     * Returns namespace prefix of the element.
+     * @return Namespace prefix, empty string if there is none.
+     */
+    public String getPrefix() {
+        return this.prefix;
+    }
+
+    @Override
+    public String toString() {
+        return "math island: " + this.prefix + " [" + this.start + ", " + this.end + ")";
+    }
+}
@@ -0,0 +1,498 @@
+package cz.muni.fi.mathml.mathml2text.input;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fast byte-level scanner that finds <code>&lt;math&gt;</code> elements
+ * (with or without namespace prefix) in raw input data without using XML parser.
+ * Comments, CDATA sections, processing instructions and document type
+ * declaration are skipped. Scanning is lenient, input does not have to be
+ * well-formed XML (e.g. HTML5 pages), only the math elements themselves have
+ * to be well-formed.
+ * <p>
+ * Input has to be encoded in an ASCII compatible encoding (UTF-8).
+ *
+ * @author agent
+ * @date 2026-10-17T23:24:20+0000
+ */
+public final class MathIslandScanner {
+    /**
+     * Namespace of MathML elements, used for prefixes that are not declared in input.
+     */
+    private static final String MATHML_NAMESPACE_URI = "http://www.w3.org/1998/Math/MathML";
+    /**
+     * Name of synthetic root element wrapping all islands.
+     */
+    private static final String ISLANDS_ELEMENT_NAME = "islands";
+    /**
+     * Encoding of input data.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * Input data.
+     */
+    private final ByteBuffer input;
+    /**
+     * Found math elements.
+     */
+    private final List<MathIsland> islands = new ArrayList<MathIsland>();
+    /**
+     * Namespace declarations found in input (prefix &rarr; URI).
+     */
+    private final Map<String, String> namespaces = new HashMap<String, String>();
+    /**
+     * Byte offset of the start tag of root element, <code>-1</code> if there is none.
+     */
+    private int rootStart = -1;
+    /**
+     * Byte offset right after the start tag of root element, <code>-1</code> if there is none.
+     */
+    private int rootTagEnd = -1;
+    /**
+     * Document type declaration, {@code null} if there is none.
+     */
+    private String doctype;
+    /**
+     * Indicates whether a start tag of math element was found (even if the element is not terminated).
+     */
+    private boolean mathFound;
+
+    /**
+     * Constructor.
+     * @param input Input data, bytes between position <code>0</code> and limit are scanned.
+     */
+    public MathIslandScanner(final ByteBuffer input) {
+        this.input = input;
+    }
+
+    /**
+     * Scans input data and returns all math elements found in it.
+     * @return List of math elements in document order.
+     */
+    public List<MathIsland> scan() {
+        this.scan(false);
+        return this.islands;
+    }
+
+    /**
+     * Checks whether input data contain a math element. Scanning stops at
+     * the first start tag of math element. Input in an encoding that is not
+     * ASCII compatible (UTF-16, UTF-32) can not be scanned, it is always
+     * considered to contain math.
+     * @return {@code true} if input contains a math element, {@code false} otherwise.
+     */
+    public boolean containsMath() {
+        if (!this.isAsciiCompatible()) {
+            return true;
+        }
+        this.scan(true);
+        return this.mathFound;
+    }
+
+    /**
+     * Scans input data for math elements.
+     * @param firstOnly Stop at the first math element.
+     */
+    private void scan(final boolean firstOnly) {
+        final int limit = this.input.limit();
+        int index = 0;
+        while ((index = this.indexOf((byte) '<', index)) >= 0 && index + 1 < limit) {
+            if (firstOnly && this.mathFound) {
+                return;
+            }
+            final byte next = this.input.get(index + 1);
+            if (next == '!') {
+                if (this.startsWith(index, "<!--")) {
+                    index = this.skipPast(index + 4, "-->");
+                } else if (this.startsWith(index, "<![CDATA[")) {
+                    index = this.skipPast(index + 9, "]]>");
+                } else {
+                    final int end = this.skipDeclaration(index + 2);
+                    if (this.doctype == null && this.startsWith(index, "<!DOCTYPE")) {
+                        this.doctype = this.decode(index, end);
+                    }
+                    index = end;
+                }
+            } else if (next == '?') {
+                index = this.skipPast(index + 2, "?>");
+            } else if (next == '/') {
+                index = this.skipPast(index + 2, ">");
+            } else {
+                index = this.scanStartTag(index);
+            }
+        }
+    }
+
+    /**
+     * Returns math elements found by {@link #scan()}.
+     * @return List of math elements in document order.
+     */
+    public List<MathIsland> getIslands() {
+        return this.islands;
+    }
+
+    /**
+     * Returns byte offset of the start tag of root element.
+     * @return Byte offset, <code>-1</code> if there is no element in input.
+     */
+    public int getRootStart() {
+        return this.rootStart;
+    }
+
+    /**
+     * Returns byte offset right after the start tag of root element.
+     * @return Byte offset, <code>-1</code> if there is no element in input.
+     */
+    public int getRootTagEnd() {
+        return this.rootTagEnd;
+    }
+
+    /**
+     * Returns a well-formed XML document that contains all found math elements
+     * as children of a synthetic root element. The root element declares
+     * all namespace prefixes found in input, document type declaration of input
+     * is preserved, so that entities can be resolved. Data of the islands 
+     * are not copied.
+     * @return Stream with math elements.
+     */
+    public InputStream createIslandStream() {
+        final StringBuilder header = new StringBuilder();
+        if (this.doctype != null) {
+            header.append(this.doctype);
+        }
+        header.append('<').append(ISLANDS_ELEMENT_NAME);
+        for (final Map.Entry<String, String> namespace : this.namespaces.entrySet()) {
+            this.appendNamespace(header, namespace.getKey(), namespace.getValue());
+        }
+        final Set<String> declared = new HashSet<String>(this.namespaces.keySet());
+        for (final MathIsland island : this.islands) {
+            if (declared.add(island.getPrefix())) {
+                this.appendNamespace(header, island.getPrefix(), MATHML_NAMESPACE_URI);
+            }
+        }
+        header.append('>');
+
+        final List<InputStream> streams = new ArrayList<InputStream>(this.islands.size() + 2);
+        streams.add(new ByteArrayInputStream(header.toString().getBytes(UTF_8)));
+        for (final MathIsland island : this.islands) {
+            final ByteBuffer region = this.input.duplicate();
+            region.limit(island.getEnd());
+            region.position(island.getStart());
+            streams.add(new ByteBufferInputStream(region));
+        }
+        streams.add(new ByteArrayInputStream(("</" + ISLANDS_ELEMENT_NAME + ">").getBytes(UTF_8)));
+        return new SequenceInputStream(Collections.enumeration(streams));
+    }
+
+    /**
+     * Appends namespace declaration to the synthetic root element.
+     */
+    private void appendNamespace(final StringBuilder builder, final String prefix, final String uri) {
+        if (prefix.length() == 0 || "xml".equals(prefix) || "xmlns".equals(prefix)) {
+            // default namespace is not needed, elements are matched by local names
+            return;
+        }
+        builder.append(" xmlns:").append(prefix).append("=\"").append(uri).append('"');
+    }
+
+    /**
+     * Scans start tag beginning at given offset, if it is a math element
+     * skips the whole element.
+     * @return Offset where scanning should continue.
+     */
+    private int scanStartTag(final int start) {
+        final int limit = this.input.limit();
+        int nameEnd = start + 1;
+        int colon = -1;
+        while (nameEnd < limit && this.isNameChar(this.input.get(nameEnd))) {
+            if (this.input.get(nameEnd) == ':') {
+                colon = nameEnd;
+            }
+            ++nameEnd;
+        }
+        if (nameEnd == start + 1) {
+            // not a tag, just a lonely '<'
+            return start + 1;
+        }
+        final int tagEnd = this.scanAttributes(nameEnd);
+        if (this.rootStart < 0) {
+            this.rootStart = start;
+            this.rootTagEnd = tagEnd;
+        }
+        final int localNameStart = colon >= 0 ? colon + 1 : start + 1;
+        if (nameEnd - localNameStart != 4 || !this.startsWith(localNameStart, "math")) {
+            return tagEnd;
+        }
+        this.mathFound = true;
+        final int end;
+        if (this.input.get(tagEnd - 2) == '/') {
+            end = tagEnd;
+        } else {
+            end = this.findEndTag(tagEnd, start + 1, nameEnd);
+            if (end < 0) {
+                // unterminated math element, leave it as it is
+                return tagEnd;
+            }
+        }
+        final String prefix = colon >= 0 ? this.decode(start + 1, colon) : "";
+        this.islands.add(new MathIsland(start, end, prefix));
+        return end;
+    }
+
+    /**
+     * Skips attributes of a start tag and records namespace declarations.
+     * @return Offset right after the end of start tag.
+     */
+    private int scanAttributes(final int from) {
+        final int limit = this.input.limit();
+        int index = from;
+        while (index < limit) {
+            final byte b = this.input.get(index);
+            if (b == '>') {
+                return index + 1;
+            } else if (b == '"' || b == '\'') {
+                index = this.skipPast(index + 1, b);
+            } else if (b == 'x' && this.isWhitespace(this.input.get(index - 1)) && this.startsWith(index, "xmlns")) {
+                index = this.readNamespace(index);
+            } else {
+                ++index;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Reads namespace declaration starting at given offset.
+     * @return Offset right after the declaration.
+     */
+    private int readNamespace(final int start) {
+        final int limit = this.input.limit();
+        int index = start + 5;
+        int prefixEnd = index;
+        if (index < limit && this.input.get(index) == ':') {
+            prefixEnd = ++index;
+            while (prefixEnd < limit && this.isNameChar(this.input.get(prefixEnd))) {
+                ++prefixEnd;
+            }
+        }
+        final String prefix = this.decode(index, prefixEnd);
+        index = prefixEnd;
+        while (index < limit && (this.isWhitespace(this.input.get(index)) || this.input.get(index) == '=')) {
+            ++index;
+        }
+        if (index >= limit || (this.input.get(index) != '"' && this.input.get(index) != '\'')) {
+            // not a namespace declaration after all
+            return prefixEnd;
+        }
+        final int valueEnd = this.skipPast(index + 1, this.input.get(index));
+        this.namespaces.put(prefix, this.decode(index + 1, valueEnd - 1));
+        return valueEnd;
+    }
+
+    /**
+     * Finds the end tag with given qualified name, that closes the element.
+     * Nested elements with the same name are counted, comments, CDATA
+     * sections and processing instructions are skipped.
+     * @return Offset right after the end tag, <code>-1</code> if there is none.
+     */
+    private int findEndTag(final int from, final int nameStart, final int nameEnd) {
+        final int limit = this.input.limit();
+        final int nameLength = nameEnd - nameStart;
+        int depth = 1;
+        int index = from;
+        while ((index = this.indexOf((byte) '<', index)) >= 0 && index + 1 < limit) {
+            final byte next = this.input.get(index + 1);
+            if (next == '!') {
+                if (this.startsWith(index, "<!--")) {
+                    index = this.skipPast(index + 4, "-->");
+                } else if (this.startsWith(index, "<![CDATA[")) {
+                    index = this.skipPast(index + 9, "]]>");
+                } else {
+                    ++index;
+                }
+            } else if (next == '?') {
+                index = this.skipPast(index + 2, "?>");
+            } else if (next == '/') {
+                final int afterName = index + 2 + nameLength;
+                if (afterName < limit && this.regionMatches(index + 2, nameStart, nameLength)
+                        && (this.input.get(afterName) == '>' || this.isWhitespace(this.input.get(afterName)))) {
+                    index = this.skipPast(afterName, ">");
+                    if (--depth == 0) {
+                        return index;
+                    }
+                } else {
+                    index += 2;
+                }
+            } else {
+                final int afterName = index + 1 + nameLength;
+                if (afterName < limit && this.regionMatches(index + 1, nameStart, nameLength)
+                        && (this.input.get(afterName) == '>' || this.input.get(afterName) == '/'
+                            || this.isWhitespace(this.input.get(afterName)))) {
+                    final int tagEnd = this.skipTag(afterName);
+                    if (this.input.get(tagEnd - 2) != '/') {
+                        // nested element with the same name
+                        ++depth;
+                    }
+                    index = tagEnd;
+                } else {
+                    ++index;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Skips attributes of a start tag, respecting quoted values.
+     * @return Offset right after the end of start tag.
+     */
+    private int skipTag(final int from) {
+        final int limit = this.input.limit();
+        int index = from;
+        while (index < limit) {
+            final byte b = this.input.get(index);
+            if (b == '>') {
+                return index + 1;
+            } else if (b == '"' || b == '\'') {
+                index = this.skipPast(index + 1, b);
+            } else {
+                ++index;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Skips markup declaration (e.g. <code>&lt;!DOCTYPE&gt;</code>), respecting
+     * internal subset and quoted values.
+     * @return Offset right after the declaration.
+     */
+    private int skipDeclaration(final int from) {
+        final int limit = this.input.limit();
+        int depth = 0;
+        int index = from;
+        while (index < limit) {
+            final byte b = this.input.get(index);
+            if (b == '"' || b == '\'') {
+                index = this.skipPast(index + 1, b);
+                continue;
+            } else if (b == '[') {
+                ++depth;
+            } else if (b == ']') {
+                --depth;
+            } else if (b == '>' && depth <= 0) {
+                return index + 1;
+            }
+            ++index;
+        }
+        return limit;
+    }
+
+    /**
+     * Returns offset right after the first occurrence of terminator, or limit if there is none.
+     */
+    private int skipPast(final int from, final String terminator) {
+        final int limit = this.input.limit();
+        int index = from;
+        while ((index = this.indexOf((byte) terminator.charAt(0), index)) >= 0) {
+            if (this.startsWith(index, terminator)) {
+                return index + terminator.length();
+            }
+            ++index;
+        }
+        return limit;
+    }
+
+    /**
+     * Returns offset right after the first occurrence of terminator, or limit if there is none.
+     */
+    private int skipPast(final int from, final byte terminator) {
+        final int index = this.indexOf(terminator, from);
+        return index >= 0 ? index + 1 : this.input.limit();
+    }
+
+    /**
+     * Returns offset of the first occurrence of given byte, <code>-1</code> if there is none.
+     */
+    private int indexOf(final byte b, final int from) {
+        final int limit = this.input.limit();
+        for (int index = from; index < limit; ++index) {
+            if (this.input.get(index) == b) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks whether input at given offset starts with given ASCII string.
+     */
+    private boolean startsWith(final int offset, final String prefix) {
+        if (offset + prefix.length() > this.input.limit()) {
+            return false;
+        }
+        for (int index = 0; index < prefix.length(); ++index) {
+            if (this.input.get(offset + index) != prefix.charAt(index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares two regions of input.
+     */
+    private boolean regionMatches(final int offset, final int otherOffset, final int length) {
+        if (offset + length > this.input.limit()) {
+            return false;
+        }
+        for (int index = 0; index < length; ++index) {
+            if (this.input.get(offset + index) != this.input.get(otherOffset + index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes region of input to string.
+     */
+    private String decode(final int start, final int end) {
+        final ByteBuffer region = this.input.duplicate();
+        region.limit(end);
+        region.position(start);
+        return UTF_8.decode(region).toString();
+    }
+
+    /**
+     * Checks the first bytes of input for UTF-16 and UTF-32 encoding.
+     */
+    private boolean isAsciiCompatible() {
+        if (this.input.limit() < 2) {
+            return true;
+        }
+        final int first = this.input.get(0) & 0xFF;
+        final int second = this.input.get(1) & 0xFF;
+        return !((first == 0xFE && second == 0xFF) || (first == 0xFF && second == 0xFE)
+                 || first == 0x00 || second == 0x00);
+    }
+
+    private boolean isWhitespace(final byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private boolean isNameChar(final byte b) {
+        return !this.isWhitespace(b) && b != '>' && b != '/' && b != '=' && b != '<' && b != '"' && b != '\'';
+    }
+}
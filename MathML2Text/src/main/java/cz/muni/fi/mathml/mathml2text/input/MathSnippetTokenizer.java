@@ -0,0 +1,551 @@
+package cz.muni.fi.mathml.mathml2text.input;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
+import cz.muni.fi.mathml.mathml2text.converter.ConversionContext;
+import cz.muni.fi.mathml.mathml2text.converter.MathMLConverter;
+import cz.muni.fi.mathml.mathml2text.converter.tree.MathMLElement;
+import cz.muni.fi.mathml.mathml2text.converter.tree.MathMLNode;
+import cz.muni.fi.mathml.mathml2text.converter.tree.TokenTable;
+import cz.muni.fi.mathml.mathml2text.converter.tree.XmlAttribute;
+
+/**
+ * Lightweight tokenizer of short XML snippets (usually a single formula),
+ * that builds {@link MathMLNode} tree of every <code>&lt;math&gt;</code>
+ * element in one pass over the string, without XML parser and without
+ * encoding the string to bytes. Trees are the same as trees built by
+ * {@link XmlParserStAX#parse(java.lang.String, java.util.Locale)}.
+ * <p>
+ * Only a subset of XML is supported: elements, attributes, comments,
+ * processing instructions, XML declaration, character references, predefined
+ * entities and named entities of {@link EntityTable}. Input that uses anything
+ * else (document type declaration, CDATA section, undeclared namespace
+ * prefix, an unknown entity) or that is not well-formed is not tokenized,
+ * {@link #tokenize()} returns {@code null} and the input has to be parsed
+ * by an XML parser.
+ *
+ * @author agent
+ * @date 2026-10-17T23:56:03+0000
+ */
+public final class MathSnippetTokenizer {
+    /**
+     * Name of math element.
+     */
+    private static final String MATH_ELEMENT_NAME = MathMLElement.MATH.getElementName();
+    /**
+     * Maximal length of entity reference (including <code>&amp;</code> and <code>;</code>).
+     */
+    private static final int MAX_REFERENCE_LENGTH = 48;
+    /**
+     * Signals input that can not be tokenized, it is thrown without stack trace.
+     */
+    private static final UnsupportedSnippetException UNSUPPORTED = new UnsupportedSnippetException();
+    /**
+     * Input snippet.
+     */
+    private final String input;
+    /**
+     * Context of conversion of the trees, it decides which content is skipped.
+     */
+    private final ConversionContext context;
+    /**
+     * Trees of math elements.
+     */
+    private final List<MathMLNode> trees = new ArrayList<MathMLNode>();
+    /**
+     * Qualified names of open elements.
+     */
+    private final List<String> openElements = new ArrayList<String>();
+    /**
+     * Namespace prefixes declared by open elements.
+     */
+    private final List<String> prefixes = new ArrayList<String>();
+    /**
+     * Number of prefixes declared by every open element.
+     */
+    private final List<Integer> prefixCounts = new ArrayList<Integer>();
+    /**
+     * Text since the last markup, collected only inside math element.
+     */
+    private final StringBuilder text = new StringBuilder();
+    /**
+     * Normalized values of the snippet.
+     */
+    private final TokenTable tokens = new TokenTable();
+    /**
+     * Current node, {@code null} outside of math element.
+     */
+    private MathMLNode currentNode;
+    /**
+     * Depth inside of skipped element, 0 if no element is skipped.
+     * Content of skipped element is checked, but no nodes are created.
+     */
+    private int skippedDepth;
+    /**
+     * Indicates whether the root element was found.
+     */
+    private boolean rootFound;
+
+    /**
+     * Constructor.
+     * @param input Input snippet.
+     * @param context Context in which the trees will be converted.
+     */
+    public MathSnippetTokenizer(final String input, final ConversionContext context) {
+        this.input = input;
+        this.context = context;
+    }
+
+    /**
+     * Tokenizes input and returns trees of all math elements in it.
+     * @return Trees in document order, {@code null} if input is not supported.
+     */
+    public List<MathMLNode> tokenize() {
+        try {
+            this.tokenizeDocument();
+            return this.trees;
+        } catch (final UnsupportedSnippetException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Tokenizes whole input.
+     */
+    private void tokenizeDocument() throws UnsupportedSnippetException {
+        final int length = this.input.length();
+        int index = 0;
+        while (index < length) {
+            final char c = this.input.charAt(index);
+            if (c == '<') {
+                this.flushText();
+                if (this.input.startsWith("<!--", index)) {
+                    index = this.skipPast(index + 4, "-->");
+                } else if (this.input.startsWith("<?", index)) {
+                    if (index > 0 && this.isXmlDeclaration(index)) {
+                        // XML declaration is allowed only at the start
+                        throw UNSUPPORTED;
+                    }
+                    index = this.skipPast(index + 2, "?>");
+                } else if (this.input.startsWith("<!", index)) {
+                    throw UNSUPPORTED;
+                } else if (this.input.startsWith("</", index)) {
+                    index = this.readEndTag(index + 2);
+                } else {
+                    index = this.readStartTag(index + 1);
+                }
+            } else if (this.openElements.isEmpty()) {
+                // only white space is allowed outside of root element
+                if (!this.isWhitespace(c)) {
+                    throw UNSUPPORTED;
+                }
+                ++index;
+            } else if (c == '&') {
+                index = this.readReference(index, this.isCollectingText() ? this.text : null);
+            } else {
+                if (this.isCollectingText()) {
+                    this.appendNormalized(c, index);
+                }
+                ++index;
+            }
+        }
+        if (!this.rootFound || !this.openElements.isEmpty()) {
+            throw UNSUPPORTED;
+        }
+    }
+
+    /**
+     * Reads start tag, the name starts at given offset.
+     * @return Offset right after the tag.
+     */
+    private int readStartTag(final int start) throws UnsupportedSnippetException {
+        if (this.openElements.isEmpty()) {
+            if (this.rootFound) {
+                throw UNSUPPORTED;
+            }
+            this.rootFound = true;
+        }
+        final int nameEnd = this.readName(start);
+        final String name = this.input.substring(start, nameEnd);
+        final String localName = this.getLocalName(name);
+        MathMLNode node = null;
+        if (this.skippedDepth == 0 && (this.currentNode != null || MATH_ELEMENT_NAME.equals(localName))) {
+            node = new MathMLNode();
+            node.setType(MathMLElement.forElementName(localName));
+        }
+        final int prefixCount = this.prefixes.size();
+        final List<String> attributeNames = new ArrayList<String>();
+        int index = nameEnd;
+        while (true) {
+            final int afterWhitespace = this.skipWhitespace(index);
+            if (afterWhitespace >= this.input.length()) {
+                throw UNSUPPORTED;
+            }
+            final char c = this.input.charAt(afterWhitespace);
+            if (c == '>' || (c == '/' && this.input.startsWith("/>", afterWhitespace))) {
+                index = afterWhitespace + (c == '>' ? 1 : 2);
+                this.openElement(name, node, this.prefixes.size() - prefixCount, attributeNames);
+                if (c == '/') {
+                    this.closeElement();
+                }
+                return index;
+            }
+            if (afterWhitespace == index) {
+                // attributes have to be separated by white space
+                throw UNSUPPORTED;
+            }
+            index = this.readAttribute(afterWhitespace, node, attributeNames);
+        }
+    }
+
+    /**
+     * Reads attribute and adds it to the node.
+     * @param node Node of the element, {@code null} outside of math element.
+     * @param attributeNames Names of attributes already read from the tag.
+     * @return Offset right after the attribute value.
+     */
+    private int readAttribute(final int start, final MathMLNode node, final List<String> attributeNames)
+            throws UnsupportedSnippetException {
+        final int nameEnd = this.readName(start);
+        final String name = this.input.substring(start, nameEnd);
+        if (attributeNames.contains(name)) {
+            throw UNSUPPORTED;
+        }
+        attributeNames.add(name);
+        int index = this.skipWhitespace(nameEnd);
+        if (index >= this.input.length() || this.input.charAt(index) != '=') {
+            throw UNSUPPORTED;
+        }
+        index = this.skipWhitespace(index + 1);
+        if (index >= this.input.length()) {
+            throw UNSUPPORTED;
+        }
+        final char quote = this.input.charAt(index);
+        if (quote != '"' && quote != '\'') {
+            throw UNSUPPORTED;
+        }
+        final StringBuilder value = new StringBuilder();
+        ++index;
+        while (true) {
+            if (index >= this.input.length()) {
+                throw UNSUPPORTED;
+            }
+            final char c = this.input.charAt(index);
+            if (c == quote) {
+                break;
+            }
+            if (c == '<') {
+                throw UNSUPPORTED;
+            }
+            if (c == '&') {
+                index = this.readReference(index, value);
+            } else {
+                // attribute value normalization
+                if (c == '\r' && index + 1 < this.input.length() && this.input.charAt(index + 1) == '\n') {
+                    ++index;
+                }
+                value.append(this.isWhitespace(c) ? ' ' : c);
+                ++index;
+            }
+        }
+        if ("xmlns".equals(name)) {
+            return index + 1;
+        }
+        if (name.startsWith("xmlns:")) {
+            this.prefixes.add(name.substring(6));
+            return index + 1;
+        }
+        if (node != null && !node.getAttributes().add(new XmlAttribute(this.getLocalName(name), value.toString()))) {
+            // attributes with different prefixes and the same local name
+            throw UNSUPPORTED;
+        }
+        return index + 1;
+    }
+
+    /**
+     * Reads end tag, the name starts at given offset.
+     * @return Offset right after the tag.
+     */
+    private int readEndTag(final int start) throws UnsupportedSnippetException {
+        final int nameEnd = this.readName(start);
+        if (this.openElements.isEmpty()
+                || !this.openElements.get(this.openElements.size() - 1).equals(this.input.substring(start, nameEnd))) {
+            throw UNSUPPORTED;
+        }
+        final int index = this.skipWhitespace(nameEnd);
+        if (index >= this.input.length() || this.input.charAt(index) != '>') {
+            throw UNSUPPORTED;
+        }
+        this.closeElement();
+        return index + 1;
+    }
+
+    /**
+     * Pushes element to the stack of open elements. Math element starts a new tree.
+     * @param node Node of the element, {@code null} outside of math element.
+     * @param prefixCount Number of prefixes declared by the element.
+     * @param attributeNames Names of attributes of the element.
+     */
+    private void openElement(final String name, final MathMLNode node, final int prefixCount, final List<String> attributeNames)
+            throws UnsupportedSnippetException {
+        this.openElements.add(name);
+        this.prefixCounts.add(prefixCount);
+        this.checkPrefix(name);
+        for (final String attributeName : attributeNames) {
+            if (!attributeName.startsWith("xmlns:")) {
+                this.checkPrefix(attributeName);
+            }
+        }
+        if (this.skippedDepth > 0) {
+            ++this.skippedDepth;
+            return;
+        }
+        if (node == null) {
+            return;
+        }
+        if (this.currentNode == null) {
+            this.trees.add(node);
+        } else {
+            // skip content that will not be converted
+            final boolean ignored = MathMLConverter.isContentIgnored(this.currentNode, node.getType(), this.context);
+            node.setParent(this.currentNode);
+            this.currentNode.getChildren().add(node);
+            if (ignored) {
+                this.skippedDepth = 1;
+                return;
+            }
+        }
+        this.currentNode = node;
+    }
+
+    /**
+     * Pops element from the stack of open elements. End of math element
+     * finishes current tree.
+     */
+    private void closeElement() {
+        final String name = this.openElements.remove(this.openElements.size() - 1);
+        final int prefixCount = this.prefixCounts.remove(this.prefixCounts.size() - 1);
+        for (int count = 0; count < prefixCount; ++count) {
+            this.prefixes.remove(this.prefixes.size() - 1);
+        }
+        if (this.skippedDepth > 0) {
+            --this.skippedDepth;
+            return;
+        }
+        if (this.currentNode == null) {
+            return;
+        }
+        if (MATH_ELEMENT_NAME.equals(this.getLocalName(name))) {
+            // the same as StAX parser, end of any math element finishes the tree
+            this.currentNode = null;
+        } else {
+            this.currentNode = this.currentNode.getParent();
+        }
+    }
+
+    /**
+     * Checks that namespace prefix of the name is declared, prefix
+     * <code>xml</code> is declared implicitly.
+     */
+    private void checkPrefix(final String name) throws UnsupportedSnippetException {
+        final int colon = name.indexOf(':');
+        if (colon >= 0 && !this.prefixes.contains(name.substring(0, colon)) && !name.startsWith("xml:")) {
+            throw UNSUPPORTED;
+        }
+    }
+
+    /**
+     * Indicates whether text is collected, i.e. it is inside math element
+     * and not inside skipped element.
+     */
+    private boolean isCollectingText() {
+        return this.currentNode != null && this.skippedDepth == 0;
+    }
+
+    /**
+     * Sets text collected since the last markup as value of current node,
+     * unless it is blank.
+     */
+    private void flushText() {
+        if (this.text.length() == 0) {
+            return;
+        }
+        final String value = this.text.toString();
+        if (StringUtils.isNotBlank(value)) {
+            this.currentNode.setValue(this.tokens.get(value));
+        }
+        this.text.setLength(0);
+    }
+
+    /**
+     * Appends text character with line ends normalized to <code>\n</code>.
+     */
+    private void appendNormalized(final char c, final int index) {
+        if (c != '\r') {
+            this.text.append(c);
+        } else if (index + 1 >= this.input.length() || this.input.charAt(index + 1) != '\n') {
+            this.text.append('\n');
+        }
+    }
+
+    /**
+     * Reads character or entity reference and appends its replacement text.
+     * @param target Builder for replacement text, {@code null} if it is not needed.
+     * @return Offset right after the reference.
+     */
+    private int readReference(final int start, final StringBuilder target) throws UnsupportedSnippetException {
+        final int end = this.input.indexOf(';', start + 1);
+        if (end < 0 || end - start > MAX_REFERENCE_LENGTH || end == start + 1) {
+            throw UNSUPPORTED;
+        }
+        final String value;
+        if (this.input.charAt(start + 1) == '#') {
+            value = this.readCharacterReference(start + 2, end);
+        } else {
+            final String name = this.input.substring(start + 1, end);
+            if ("lt".equals(name)) {
+                value = "<";
+            } else if ("gt".equals(name)) {
+                value = ">";
+            } else if ("amp".equals(name)) {
+                value = "&";
+            } else if ("quot".equals(name)) {
+                value = "\"";
+            } else if ("apos".equals(name)) {
+                value = "'";
+            } else {
+                value = EntityTable.getInstance().getEntities().get(name);
+                // replacement text with markup would have to be parsed
+                if (value == null || value.indexOf('<') >= 0 || value.indexOf('&') >= 0) {
+                    throw UNSUPPORTED;
+                }
+            }
+        }
+        if (target != null) {
+            target.append(value);
+        }
+        return end + 1;
+    }
+
+    /**
+     * Returns character of character reference.
+     * @param start Offset of the code point (after <code>&amp;#</code>).
+     * @param end Offset of terminating <code>;</code>.
+     */
+    private String readCharacterReference(final int start, final int end) throws UnsupportedSnippetException {
+        final boolean hexadecimal = start < end && this.input.charAt(start) == 'x';
+        final int digitsStart = hexadecimal ? start + 1 : start;
+        if (digitsStart == end) {
+            throw UNSUPPORTED;
+        }
+        int codePoint = 0;
+        for (int index = digitsStart; index < end; ++index) {
+            final int digit = Character.digit(this.input.charAt(index), hexadecimal ? 16 : 10);
+            if (digit < 0) {
+                throw UNSUPPORTED;
+            }
+            codePoint = codePoint * (hexadecimal ? 16 : 10) + digit;
+            if (codePoint > Character.MAX_CODE_POINT) {
+                throw UNSUPPORTED;
+            }
+        }
+        if (!this.isXmlCharacter(codePoint)) {
+            throw UNSUPPORTED;
+        }
+        return new String(Character.toChars(codePoint));
+    }
+
+    /**
+     * Reads XML name starting at given offset.
+     * @return Offset right after the name.
+     */
+    private int readName(final int start) throws UnsupportedSnippetException {
+        final int length = this.input.length();
+        if (start >= length || !this.isNameStartChar(this.input.charAt(start))) {
+            throw UNSUPPORTED;
+        }
+        int index = start + 1;
+        while (index < length && this.isNameChar(this.input.charAt(index))) {
+            ++index;
+        }
+        final String name = this.input.substring(start, index);
+        final int colon = name.indexOf(':');
+        if (colon == 0 || colon == name.length() - 1 || (colon > 0 && name.indexOf(':', colon + 1) >= 0)) {
+            throw UNSUPPORTED;
+        }
+        return index;
+    }
+
+    /**
+     * Returns name without namespace prefix.
+     */
+    private String getLocalName(final String name) {
+        final int colon = name.indexOf(':');
+        return colon >= 0 ? name.substring(colon + 1) : name;
+    }
+
+    /**
+     * Indicates whether the processing instruction at given offset is XML declaration.
+     */
+    private boolean isXmlDeclaration(final int start) {
+        final int end = start + 5;
+        return this.input.startsWith("<?xml", start)
+                && (end >= this.input.length() || this.isWhitespace(this.input.charAt(end)) || this.input.charAt(end) == '?');
+    }
+
+    /**
+     * Returns offset right after the first occurence of terminator.
+     */
+    private int skipPast(final int from, final String terminator) throws UnsupportedSnippetException {
+        final int index = this.input.indexOf(terminator, from);
+        if (index < 0) {
+            throw UNSUPPORTED;
+        }
+        return index + terminator.length();
+    }
+
+    /**
+     * Returns offset of the first character that is not white space.
+     */
+    private int skipWhitespace(final int from) {
+        int index = from;
+        while (index < this.input.length() && this.isWhitespace(this.input.charAt(index))) {
+            ++index;
+        }
+        return index;
+    }
+
+    private boolean isWhitespace(final char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private boolean isNameStartChar(final char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == ':' || c >= 0xC0;
+    }
+
+    private boolean isNameChar(final char c) {
+        return this.isNameStartChar(c) || (c >= '0' && c <= '9') || c == '-' || c == '.' || c == 0xB7;
+    }
+
+    private boolean isXmlCharacter(final int codePoint) {
+        return codePoint == 0x9 || codePoint == 0xA || codePoint == 0xD
+                || (codePoint >= 0x20 && codePoint <= 0xD7FF)
+                || (codePoint >= 0xE000 && codePoint <= 0xFFFD)
+                || (codePoint >= 0x10000 && codePoint <= 0x10FFFF);
+    }
+
+    /**
+     * Signals input that can not be tokenized.
+     */
+    private static final class UnsupportedSnippetException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
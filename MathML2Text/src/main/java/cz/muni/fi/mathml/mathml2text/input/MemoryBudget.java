@@ -0,0 +1,170 @@
+package cz.muni.fi.mathml.mathml2text.input;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Admission control of documents converted by a batch. Before a document is
+ * converted, memory needed for its conversion is estimated and reserved,
+ * the worker waits while the total reserved memory would exceed the budget.
+ * A document larger than the budget is admitted when nothing else is
+ * converted, so that it does not wait forever.
+ * <p>
+ * The budget adapts to occupancy of heap: collection usage threshold is set
+ * on heap pools (see {@link MemoryPoolMXBean#setCollectionUsageThreshold(long)}),
+ * while heap occupied after garbage collection exceeds the threshold of any
+ * pool, only half of the budget is available. The thresholds are shared by
+ * the whole JVM, so they are restored by {@link #close()} when the batch ends.
+ *
+ * @author agent
+ * @date 2026-10-18T00:21:01+0000
+ */
+final class MemoryBudget {
+
+    private static final Logger logger = LoggerFactory.getLogger(MemoryBudget.class);
+
+    /**
+     * Part of maximal size of heap pool, above which the budget is reduced.
+     */
+    private static final double OCCUPANCY_THRESHOLD = 0.75;
+    /**
+     * Maximal total size of reserved memory in bytes.
+     */
+    private final long budget;
+    /**
+     * Heap pools with collection usage threshold.
+     */
+    private final List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+    /**
+     * Previous collection usage thresholds of pools, whose threshold was set.
+     */
+    private final Map<MemoryPoolMXBean, Long> previousThresholds = new LinkedHashMap<MemoryPoolMXBean, Long>();
+    /**
+     * Currently reserved memory in bytes, guarded by this.
+     */
+    private long reserved;
+    /**
+     * Maximal reserved memory in bytes.
+     */
+    private long peak;
+    /**
+     * Number of reservations.
+     */
+    private int reservations;
+    /**
+     * Number of reservations that had to wait.
+     */
+    private int waits;
+    /**
+     * Number of reservations made while the budget was reduced.
+     */
+    private int reductions;
+
+    /**
+     * Constructor. Sets collection usage threshold of heap pools, that do
+     * not have it set yet, the budget has to be closed after use.
+     * @param budget Maximal total size of reserved memory in bytes.
+     */
+    MemoryBudget(final long budget) {
+        this.budget = budget;
+        for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP || !pool.isCollectionUsageThresholdSupported()) {
+                continue;
+            }
+            final long max = pool.getUsage().getMax();
+            if (max <= 0) {
+                continue;
+            }
+            final long threshold = pool.getCollectionUsageThreshold();
+            if (threshold == 0) {
+                pool.setCollectionUsageThreshold((long) (max * OCCUPANCY_THRESHOLD));
+                this.previousThresholds.put(pool, threshold);
+            }
+            this.pools.add(pool);
+        }
+        logger.debug("Memory budget of {} bytes watches {} heap pools.", budget, this.pools.size());
+    }
+
+    /**
+     * Reserves memory for a document, waits until it is available.
+     * @param bytes Estimated memory needed for conversion of the document.
+     * @return Reserved memory, that has to be passed to {@link #release(long) }.
+     * @throws InterruptedException If the thread was interrupted while waiting.
+     */
+    synchronized long reserve(final long bytes) throws InterruptedException {
+        final long size = Math.min(bytes, this.budget);
+        ++this.reservations;
+        boolean waited = false;
+        long available;
+        while (this.reserved > 0 && this.reserved + size > (available = this.getAvailable())) {
+            if (!waited) {
+                waited = true;
+                ++this.waits;
+            }
+            if (available < this.budget) {
+                // occupancy of heap is checked again after a while
+                this.wait(100);
+            } else {
+                this.wait();
+            }
+        }
+        if (this.getAvailable() < this.budget) {
+            ++this.reductions;
+        }
+        this.reserved += size;
+        this.peak = Math.max(this.peak, this.reserved);
+        return size;
+    }
+
+    /**
+     * Releases memory reserved by {@link #reserve(long) }.
+     * @param bytes Reserved memory.
+     */
+    synchronized void release(final long bytes) {
+        this.reserved -= bytes;
+        this.notifyAll();
+    }
+
+    /**
+     * Restores collection usage thresholds of heap pools set by the constructor.
+     */
+    synchronized void close() {
+        for (final Map.Entry<MemoryPoolMXBean, Long> threshold : this.previousThresholds.entrySet()) {
+            threshold.getKey().setCollectionUsageThreshold(threshold.getValue());
+        }
+        // the restored thresholds do not apply to the budget
+        this.pools.removeAll(this.previousThresholds.keySet());
+        this.previousThresholds.clear();
+    }
+
+    /**
+     * Returns statistics of reservations.
+     * @return Human readable statistics.
+     */
+    synchronized String getStatistics() {
+        return String.format("%1$d documents admitted, %2$d waited, %3$d admitted with reduced budget, "
+                + "peak %4$d of %5$d bytes reserved",
+                this.reservations, this.waits, this.reductions, this.peak, this.budget);
+    }
+
+    /**
+     * Returns currently available budget, it is halved while occupancy of heap
+     * after garbage collection is above the threshold.
+     */
+    private long getAvailable() {
+        for (final MemoryPoolMXBean pool : this.pools) {
+            if (pool.isCollectionUsageThresholdExceeded()) {
+                return this.budget / 2;
+            }
+        }
+        return this.budget;
+    }
+}
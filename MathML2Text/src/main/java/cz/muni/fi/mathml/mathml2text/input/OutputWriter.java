@@ -0,0 +1,337 @@
+package cz.muni.fi.mathml.mathml2text.input;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes output files on separate threads. Conversion workers write into
+ * streams collecting data in memory, a document is passed to the writing
+ * threads when its stream is closed. The worker is blocked only if the writing
+ * falls behind by more than a few documents. Writing threads form the write
+ * stage of the pipeline (see {@link PipelineStage}).
+ * <p>
+ * A writing thread writes every document into a temporary file in the
+ * output directory with large writes and renames it to the output file when
+ * it is complete, so an output file is never seen partially written.
+ * A document whose conversion failed is discarded before its stream is
+ * closed (see {@link #discard(OutputStream)}), so it is never written.
+ * Directories created by the writing threads are remembered, so that
+ * directories of the output tree are created only once. Errors are logged,
+ * the failed document is skipped.
+ *
+ * @author agent
+ * @date 2026-10-18T00:19:18+0000
+ */
+final class OutputWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutputWriter.class);
+
+    /**
+     * Size of a chunk of collected data.
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+    /**
+     * Maximal number of documents waiting to be written.
+     */
+    private static final int QUEUE_CAPACITY = 16;
+    /**
+     * Suffix of temporary files.
+     */
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    /**
+     * Output file waiting to be written.
+     */
+    private static final class Document {
+        /**
+         * Output file.
+         */
+        private final File target;
+        /**
+         * Content of the file, the last chunk is filled up to {@link #length}.
+         */
+        private final List<byte[]> chunks;
+        /**
+         * Number of bytes in the last chunk.
+         */
+        private final int length;
+        /**
+         * File that is copied to the output file, {@code null} if chunks are written.
+         */
+        private final File copied;
+
+        private Document(final File target, final List<byte[]> chunks, final int length, final File copied) {
+            this.target = target;
+            this.chunks = chunks;
+            this.length = length;
+            this.copied = copied;
+        }
+    }
+    /**
+     * Writing threads with queue of documents waiting to be written.
+     */
+    private final PipelineStage stage;
+    /**
+     * Directories known to exist.
+     */
+    private final Set<File> directories = Collections.synchronizedSet(new HashSet<File>());
+    /**
+     * Number of written files.
+     */
+    private final AtomicInteger fileCount = new AtomicInteger();
+    /**
+     * Number of written bytes.
+     */
+    private final AtomicLong byteCount = new AtomicLong();
+    /**
+     * Number of files that could not be written.
+     */
+    private final AtomicInteger failureCount = new AtomicInteger();
+    /**
+     * Number of output files whose directory was already known to exist.
+     */
+    private final AtomicInteger directoryHits = new AtomicInteger();
+
+    /**
+     * Constructor. Starts a single writing thread.
+     */
+    OutputWriter() {
+        this(1);
+    }
+
+    /**
+     * Constructor. Starts the writing threads, they do not prevent application
+     * from exiting.
+     * @param threadCount Number of writing threads.
+     */
+    OutputWriter(final int threadCount) {
+        this.stage = new PipelineStage("write", threadCount, QUEUE_CAPACITY);
+    }
+
+    /**
+     * Opens stream collecting content of an output file. The file is written
+     * after the stream is closed.
+     * @param target Output file, it is overwritten.
+     * @return Output stream.
+     */
+    OutputStream open(final File target) {
+        return new DocumentOutputStream(target);
+    }
+
+    /**
+     * Discards document collected by a stream opened by {@link #open(File)},
+     * it is not written when the stream is closed. Data written to the stream
+     * afterwards are dropped.
+     * @param output Stream opened by {@link #open(File)}, other streams are ignored.
+     */
+    static void discard(final OutputStream output) {
+        if (output instanceof DocumentOutputStream) {
+            ((DocumentOutputStream) output).discard();
+        }
+    }
+
+    /**
+     * Copies a file to an output file on a writing thread. The output file
+     * is replaced only after the whole file was copied.
+     * @param file Input file.
+     * @param target Output file, it is overwritten.
+     * @throws IOException If the thread was interrupted while waiting.
+     */
+    void copy(final File file, final File target) throws IOException {
+        this.handOver(new Document(target, null, 0, file));
+    }
+
+    /**
+     * Waits until all documents are written and stops the writing threads.
+     * @throws IOException If the thread was interrupted while waiting.
+     */
+    void close() throws IOException {
+        try {
+            this.stage.close();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for output files.");
+        }
+    }
+
+    /**
+     * Returns statistics of written files, valid after {@link #close() }.
+     * @return Human readable statistics.
+     */
+    String getStatistics() {
+        return String.format("%1$d files written (%2$d bytes), %3$d failed, %4$d directories created, "
+                + "%5$d files placed into known directories; %6$s",
+                this.fileCount.get(), this.byteCount.get(), this.failureCount.get(), this.directories.size(),
+                this.directoryHits.get(), this.stage.getStatistics());
+    }
+
+    /**
+     * Puts document into the queue of the writing threads.
+     */
+    private void handOver(final Document document) throws IOException {
+        try {
+            this.stage.submit(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        OutputWriter.this.write(document);
+                        OutputWriter.this.fileCount.incrementAndGet();
+                    } catch (final IOException ex) {
+                        OutputWriter.this.failureCount.incrementAndGet();
+                        logger.error("Cannot write output file [" + document.target.getPath() + "].", ex);
+                    }
+                }
+            });
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while passing output file for writing.");
+        }
+    }
+
+    /**
+     * Writes document into a temporary file and renames it to the output file.
+     */
+    private void write(final Document document) throws IOException {
+        final File directory = document.target.getAbsoluteFile().getParentFile();
+        if (this.directories.contains(directory)) {
+            this.directoryHits.incrementAndGet();
+        } else {
+            if (!directory.mkdirs() && !directory.isDirectory()) {
+                throw new IOException(String.format("Cannot create directory [%1$s].", directory.getPath()));
+            }
+            this.directories.add(directory);
+        }
+        final File temporary = new File(directory, "." + document.target.getName() + TEMPORARY_SUFFIX);
+        try {
+            if (document.copied != null) {
+                FileMapper.copy(document.copied, temporary);
+                this.byteCount.addAndGet(temporary.length());
+            } else {
+                final FileOutputStream output = new FileOutputStream(temporary);
+                try {
+                    final int last = document.chunks.size() - 1;
+                    for (int index = 0; index < last; ++index) {
+                        output.write(document.chunks.get(index));
+                        this.byteCount.addAndGet(CHUNK_SIZE);
+                    }
+                    output.write(document.chunks.get(last), 0, document.length);
+                    this.byteCount.addAndGet(document.length);
+                } finally {
+                    output.close();
+                }
+            }
+            // rename does not replace existing file on some platforms
+            if (!temporary.renameTo(document.target) && !(document.target.delete() && temporary.renameTo(document.target))) {
+                throw new IOException(String.format("Cannot rename [%1$s] to [%2$s].", temporary.getPath(), document.target.getPath()));
+            }
+        } finally {
+            if (temporary.exists()) {
+                temporary.delete();
+            }
+        }
+    }
+
+    /**
+     * Stream collecting content of output file into chunks.
+     */
+    private final class DocumentOutputStream extends OutputStream {
+        /**
+         * Output file.
+         */
+        private final File target;
+        /**
+         * Filled chunks.
+         */
+        private final List<byte[]> chunks = new ArrayList<byte[]>();
+        /**
+         * Chunk being filled.
+         */
+        private byte[] chunk = new byte[CHUNK_SIZE];
+        /**
+         * Number of bytes in {@link #chunk}.
+         */
+        private int count;
+        /**
+         * Indicates whether the stream was closed.
+         */
+        private boolean closed;
+
+        private DocumentOutputStream(final File target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            if (this.chunk == null) {
+                return;
+            }
+            if (this.count == CHUNK_SIZE) {
+                this.nextChunk();
+            }
+            this.chunk[this.count++] = (byte) b;
+        }
+
+        @Override
+        public void write(final byte[] b, int off, int len) throws IOException {
+            if (this.chunk == null) {
+                return;
+            }
+            while (len > 0) {
+                if (this.count == CHUNK_SIZE) {
+                    this.nextChunk();
+                }
+                final int length = Math.min(len, CHUNK_SIZE - this.count);
+                System.arraycopy(b, off, this.chunk, this.count, length);
+                this.count += length;
+                off += length;
+                len -= length;
+            }
+        }
+
+        /**
+         * Passes the document to the writing threads.
+         */
+        @Override
+        public void close() throws IOException {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.chunks.add(this.chunk);
+            OutputWriter.this.handOver(new Document(this.target, this.chunks, this.count, null));
+            this.chunk = null;
+        }
+
+        /**
+         * Drops collected data, the document will not be written.
+         */
+        private void discard() {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.chunks.clear();
+            this.chunk = null;
+        }
+
+        private void nextChunk() {
+            this.chunks.add(this.chunk);
+            this.chunk = new byte[CHUNK_SIZE];
+            this.count = 0;
+        }
+    }
+}
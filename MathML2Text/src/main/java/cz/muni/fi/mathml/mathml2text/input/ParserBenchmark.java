@@ -0,0 +1,244 @@
+package cz.muni.fi.mathml.mathml2text.input;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Micro-benchmark that calibrates {@link ParserProfile} on the current machine.
+ * Synthetic documents of several sizes are converted by every available
+ * parser implementation (with current converter settings) and the fastest
+ * implementation is chosen for every kind of document.
+ * Implementations can be also compared on a corpus of input files, 
+ * see {@link #compare(java.util.List)}.
+ *
+ * @author agent
+ * @date 2026-10-17T23:46:40+0000
+ */
+public final class ParserBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParserBenchmark.class);
+    /**
+     * Sizes (in bytes) of measured documents, in ascending order.
+     */
+    private static final int[] SIZES = {4 * 1024, 32 * 1024, 128 * 1024, 512 * 1024};
+    /**
+     * Size (in bytes) of measured document with DTD.
+     */
+    private static final int DTD_SIZE = 32 * 1024;
+    /**
+     * Minimal duration of measurement of a single implementation and document.
+     */
+    private static final long MEASUREMENT_NANOS = 100L * 1000 * 1000;
+    /**
+     * Minimal number of measured conversions of a single implementation and document.
+     */
+    private static final int MEASUREMENT_COUNT = 3;
+    /**
+     * Encoding of documents.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * Output of measured conversions, all data are discarded.
+     */
+    private static final OutputStream NULL_OUTPUT = new OutputStream() {
+        @Override
+        public void write(final int b) {
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+        }
+    };
+
+    private ParserBenchmark() {
+    }
+
+    /**
+     * Measures all available implementations and creates profile from results.
+     * Documents from the size at which the fastest implementation changes are
+     * considered large.
+     * @return Calibrated profile.
+     */
+    public static ParserProfile calibrate() {
+        final Map<ParserImplementation, AbstractXmlParser> parsers = new EnumMap<ParserImplementation, AbstractXmlParser>(ParserImplementation.class);
+        for (final ParserImplementation implementation : ParserImplementation.values()) {
+            if (implementation.isAvailable()) {
+                parsers.put(implementation, implementation.createParser());
+            }
+        }
+        final byte[][] documents = new byte[SIZES.length][];
+        for (int index = 0; index < SIZES.length; ++index) {
+            documents[index] = createDocument(SIZES[index], false);
+        }
+        final byte[] dtdDocument = createDocument(DTD_SIZE, true);
+        // warm-up, so that no implementation is measured before it is compiled
+        for (final AbstractXmlParser parser : parsers.values()) {
+            for (final byte[] document : documents) {
+                convert(parser, document);
+            }
+            convert(parser, dtdDocument);
+        }
+        final ParserImplementation[] fastest = new ParserImplementation[SIZES.length];
+        for (int index = 0; index < SIZES.length; ++index) {
+            fastest[index] = findFastest(parsers, documents[index]);
+        }
+        final ParserImplementation small = fastest[0];
+        final ParserImplementation large = fastest[SIZES.length - 1];
+        long smallSizeLimit = Long.MAX_VALUE;
+        for (int index = 1; index < SIZES.length; ++index) {
+            if (fastest[index] != small) {
+                smallSizeLimit = SIZES[index];
+                break;
+            }
+        }
+        final Map<ParserImplementation, AbstractXmlParser> dtdParsers = new EnumMap<ParserImplementation, AbstractXmlParser>(ParserImplementation.class);
+        for (final Map.Entry<ParserImplementation, AbstractXmlParser> entry : parsers.entrySet()) {
+            if (entry.getKey().isSupportingDTD()) {
+                dtdParsers.put(entry.getKey(), entry.getValue());
+            }
+        }
+        final ParserImplementation dtd = dtdParsers.isEmpty()
+                                         ? large
+                                         : findFastest(dtdParsers, dtdDocument);
+        // compressed documents are streamed, their size is not known in advance
+        return new ParserProfile(smallSizeLimit, small, large, large, dtd);
+    }
+
+    /**
+     * Measures all available implementations on input files. Files are read
+     * into memory first, output is discarded, so only parsing and conversion
+     * is measured. Archives and compressed files are ignored.
+     * @param files Input files or directories.
+     * @return Duration (in nanoseconds) of converting all files by every implementation.
+     */
+    public static Map<ParserImplementation, Long> compare(final List<File> files) {
+        final List<byte[]> documents = new ArrayList<byte[]>();
+        for (final File file : files) {
+            readDocuments(file, documents);
+        }
+        final Map<ParserImplementation, Long> results = new EnumMap<ParserImplementation, Long>(ParserImplementation.class);
+        for (final ParserImplementation implementation : ParserImplementation.values()) {
+            if (!implementation.isAvailable()) {
+                continue;
+            }
+            final AbstractXmlParser parser = implementation.createParser();
+            // warm-up
+            for (final byte[] document : documents) {
+                convert(parser, document);
+            }
+            long shortest = Long.MAX_VALUE;
+            for (int count = 0; count < MEASUREMENT_COUNT; ++count) {
+                final long start = System.nanoTime();
+                for (final byte[] document : documents) {
+                    convert(parser, document);
+                }
+                shortest = Math.min(shortest, System.nanoTime() - start);
+            }
+            results.put(implementation, shortest);
+        }
+        return results;
+    }
+
+    /**
+     * Reads the file or all files in the directory.
+     */
+    private static void readDocuments(final File file, final List<byte[]> documents) {
+        if (file.isDirectory()) {
+            final File[] children = file.listFiles();
+            if (children != null) {
+                for (final File child : children) {
+                    readDocuments(child, documents);
+                }
+            }
+        } else if (!Unzipper.isArchive(file) && !file.getName().endsWith(".gz")) {
+            try {
+                final ByteBuffer buffer = FileMapper.read(file, 0);
+                final byte[] document = new byte[buffer.remaining()];
+                buffer.get(document);
+                documents.add(document);
+            } catch (final IOException ex) {
+                logger.warn("Cannot read file [" + file.getPath() + "].", ex);
+            }
+        }
+    }
+
+    /**
+     * Returns implementation that converts the document in the shortest time.
+     */
+    private static ParserImplementation findFastest(final Map<ParserImplementation, AbstractXmlParser> parsers, final byte[] document) {
+        ParserImplementation fastest = null;
+        long fastestNanos = Long.MAX_VALUE;
+        for (final Map.Entry<ParserImplementation, AbstractXmlParser> entry : parsers.entrySet()) {
+            final long nanos = measure(entry.getValue(), document);
+            logger.debug("Parser [{}] converts [{}] B in [{}] us.",
+                    new Object[] {entry.getKey().getName(), document.length, nanos / 1000});
+            if (nanos < fastestNanos) {
+                fastest = entry.getKey();
+                fastestNanos = nanos;
+            }
+        }
+        return fastest;
+    }
+
+    /**
+     * Returns the shortest duration of conversion of the document, it is
+     * the least affected by garbage collection and other threads.
+     */
+    private static long measure(final AbstractXmlParser parser, final byte[] document) {
+        long shortest = Long.MAX_VALUE;
+        int count = 0;
+        final long start = System.nanoTime();
+        do {
+            final long conversionStart = System.nanoTime();
+            convert(parser, document);
+            shortest = Math.min(shortest, System.nanoTime() - conversionStart);
+            ++count;
+        } while (count < MEASUREMENT_COUNT || System.nanoTime() - start < MEASUREMENT_NANOS);
+        return shortest;
+    }
+
+    /**
+     * Converts the document, output is discarded.
+     */
+    private static void convert(final AbstractXmlParser parser, final byte[] document) {
+        try {
+            parser.convert(new ByteArrayInputStream(document), ByteBuffer.wrap(document), NULL_OUTPUT, Locale.ENGLISH);
+        } catch (final IOException ex) {
+            logger.warn("Error while measuring parser.", ex);
+        }
+    }
+
+    /**
+     * Creates XHTML document with math elements.
+     * @param size Approximate size of the document in bytes.
+     * @param declaresDTD Indicates whether the document declares DTD and uses named entities.
+     */
+    private static byte[] createDocument(final int size, final boolean declaresDTD) {
+        final StringBuilder builder = new StringBuilder(size + 512);
+        builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        if (declaresDTD) {
+            builder.append("<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.1 plus MathML 2.0//EN\" \"xhtml-math11-f.dtd\">\n");
+        }
+        builder.append("<html xmlns=\"http://www.w3.org/1999/xhtml\"><body>\n");
+        while (builder.length() < size) {
+            builder.append("<p>Paragraph of text with a formula ")
+                    .append("<math xmlns=\"http://www.w3.org/1998/Math/MathML\"><mrow><mi>")
+                    .append(declaresDTD ? "&alpha;" : "x")
+                    .append("</mi><mo>+</mo><mfrac><mn>1</mn><mi>y</mi></mfrac></mrow></math></p>\n");
+        }
+        builder.append("</body></html>\n");
+        return builder.toString().getBytes(UTF_8);
+    }
+}
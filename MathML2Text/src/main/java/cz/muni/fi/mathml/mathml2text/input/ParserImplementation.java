@@ -0,0 +1,184 @@
+package cz.muni.fi.mathml.mathml2text.input;
+
+import java.lang.reflect.InvocationTargetException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+
+/**
+ * Parser implementations available for conversion. Factories of an
+ * implementation are instantiated directly, no system properties are set,
+ * so that parsers of several implementations can be used at the same time.
+ *
+ * @author agent
+ * @date 2026-10-17T23:46:40+0000
+ */
+public enum ParserImplementation {
+    /**
+     * StAX parser of JDK.
+     */
+    STAX("stax", "com.sun.xml.internal.stream.XMLInputFactoryImpl", "com.sun.xml.internal.stream.XMLOutputFactoryImpl",
+            "com.sun.org.apache.xerces.internal.jaxp.SAXParserFactoryImpl", true),
+    /**
+     * JDOM built by SAX parser of JDK.
+     */
+    DOM("dom", "com.sun.xml.internal.stream.XMLInputFactoryImpl", "com.sun.xml.internal.stream.XMLOutputFactoryImpl",
+            "com.sun.org.apache.xerces.internal.jaxp.SAXParserFactoryImpl", true),
+    /**
+     * SAX parser of JDK, output is written directly by the event handler.
+     */
+    SAX("sax", "com.sun.xml.internal.stream.XMLInputFactoryImpl", "com.sun.xml.internal.stream.XMLOutputFactoryImpl",
+            "com.sun.org.apache.xerces.internal.jaxp.SAXParserFactoryImpl", true),
+    /**
+     * Aalto StAX parser.
+     */
+    AALTO("aalto", "com.fasterxml.aalto.stax.InputFactoryImpl", "com.fasterxml.aalto.stax.OutputFactoryImpl",
+            "com.fasterxml.aalto.sax.SAXParserFactoryImpl", true),
+    /**
+     * Woodstox StAX parser, DTD processing is disabled (named entities are
+     * resolved from {@link EntityTable}).
+     */
+    WOODSTOX("woodstox", "com.ctc.wstx.stax.WstxInputFactory", "com.ctc.wstx.stax.WstxOutputFactory",
+            "com.ctc.wstx.sax.WstxSAXParserFactory", false);
+
+    /**
+     * Name used on command line.
+     */
+    private final String name;
+    /**
+     * Class name of input factory.
+     */
+    private final String inputFactoryClassName;
+    /**
+     * Class name of output factory.
+     */
+    private final String outputFactoryClassName;
+    /**
+     * Class name of SAX parser factory.
+     */
+    private final String saxParserFactoryClassName;
+    /**
+     * Indicates whether documents are parsed with DTD processing.
+     */
+    private final boolean supportingDTD;
+
+    private ParserImplementation(final String name, final String inputFactoryClassName,
+            final String outputFactoryClassName, final String saxParserFactoryClassName, final boolean supportingDTD) {
+        this.name = name;
+        this.inputFactoryClassName = inputFactoryClassName;
+        this.outputFactoryClassName = outputFactoryClassName;
+        this.saxParserFactoryClassName = saxParserFactoryClassName;
+        this.supportingDTD = supportingDTD;
+    }
+
+    /**
+     * Returns implementation with given name.
+     * @param name Name used on command line.
+     * @return Implementation or {@code null} if there is no such implementation.
+     */
+    public static ParserImplementation forName(final String name) {
+        for (final ParserImplementation implementation : values()) {
+            if (implementation.getName().equals(name)) {
+                return implementation;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns name used on command line.
+     * @return Name of the implementation.
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Indicates whether documents are parsed with DTD processing, so that
+     * entities declared in documents are resolved.
+     * @return {@code true} if DTD is processed, {@code false} otherwise.
+     */
+    public boolean isSupportingDTD() {
+        return this.supportingDTD;
+    }
+
+    /**
+     * Indicates whether classes of the implementation are on class path.
+     * @return {@code true} if the implementation can be used, {@code false} otherwise.
+     */
+    public boolean isAvailable() {
+        final String className = this == DOM || this == SAX ? this.saxParserFactoryClassName : this.inputFactoryClassName;
+        try {
+            Class.forName(className, false, ParserImplementation.class.getClassLoader());
+            return true;
+        } catch (final ClassNotFoundException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates a parser of this implementation.
+     * @return New parser.
+     * @throws IllegalStateException If the implementation is not available.
+     */
+    public AbstractXmlParser createParser() {
+        if (this == DOM) {
+            return new XmlParserDOM(this.saxParserFactoryClassName);
+        }
+        if (this == SAX) {
+            return new XmlParserSAX(this.saxParserFactoryClassName);
+        }
+        return new XmlParserStAX(this.createInputFactory(), this.createOutputFactory(), this.supportingDTD);
+    }
+
+    /**
+     * Creates a new input factory of this implementation.
+     * @return New input factory.
+     * @throws IllegalStateException If the factory can not be created.
+     */
+    public XMLInputFactory createInputFactory() {
+        return createInstance(XMLInputFactory.class, this.inputFactoryClassName);
+    }
+
+    /**
+     * Creates a new output factory of this implementation.
+     * @return New output factory.
+     * @throws IllegalStateException If the factory can not be created.
+     */
+    public XMLOutputFactory createOutputFactory() {
+        return createInstance(XMLOutputFactory.class, this.outputFactoryClassName);
+    }
+
+    /**
+     * Instantiates a factory class using its public no-argument constructor.
+     * Factories of JDK are internal classes, that are not accessible since 
+     * Java 9. Default factory of JDK is created instead (by method 
+     * <code>newDefaultFactory()</code> of the factory type).
+     */
+    private static <T> T createInstance(final Class<T> type, final String className) {
+        try {
+            return type.cast(Class.forName(className, true, ParserImplementation.class.getClassLoader()).newInstance());
+        } catch (final ClassNotFoundException ex) {
+            throw new IllegalStateException("Class [" + className + "] not found.", ex);
+        } catch (final InstantiationException ex) {
+            throw new IllegalStateException("Cannot create instance of [" + className + "].", ex);
+        } catch (final IllegalAccessException ex) {
+            return createDefaultInstance(type, className, ex);
+        }
+    }
+
+    /**
+     * Creates default factory of JDK.
+     */
+    private static <T> T createDefaultInstance(final Class<T> type, final String className, final IllegalAccessException cause) {
+        try {
+            return type.cast(type.getMethod("newDefaultFactory").invoke(null));
+        } catch (final NoSuchMethodException ex) {
+            throw new IllegalStateException("Cannot create instance of [" + className + "].", cause);
+        } catch (final IllegalAccessException ex) {
+            throw new IllegalStateException("Cannot create instance of [" + className + "].", cause);
+        } catch (final InvocationTargetException ex) {
+            throw new IllegalStateException("Cannot create instance of [" + className + "].", ex.getCause());
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package cz.muni.fi.mathml.mathml2text.input;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.EnumSet;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Rules for choosing parser implementation for an input document, used by
+ * {@link XmlParserAuto}. The implementation is chosen based on:
+ * <ul>
+ *  <li>whether the document declares a DTD,</li>
+ *  <li>whether the document is compressed (or its size is unknown),</li>
+ *  <li>size of the document (small and large documents).</li>
+ * </ul>
+ * A profile is either calibrated on the current machine by {@link ParserBenchmark},
+ * or loaded from a properties file.
+ *
+ * @author agent
+ * @date 2026-10-17T23:46:40+0000
+ */
+public final class ParserProfile {
+    /**
+     * Keys of properties file.
+     */
+    private static final String SMALL_SIZE_LIMIT_KEY = "small.size.limit";
+    private static final String SMALL_KEY = "small";
+    private static final String LARGE_KEY = "large";
+    private static final String COMPRESSED_KEY = "compressed";
+    private static final String DTD_KEY = "dtd";
+    /**
+     * Size (in bytes) from which documents are considered large.
+     */
+    private final long smallSizeLimit;
+    /**
+     * Implementation for small documents.
+     */
+    private final ParserImplementation small;
+    /**
+     * Implementation for large documents.
+     */
+    private final ParserImplementation large;
+    /**
+     * Implementation for compressed documents and documents of unknown size.
+     */
+    private final ParserImplementation compressed;
+    /**
+     * Implementation for documents that declare a DTD.
+     */
+    private final ParserImplementation dtd;
+
+    /**
+     * Constructor.
+     * @param smallSizeLimit Size (in bytes) from which documents are considered large.
+     * @param small Implementation for small documents.
+     * @param large Implementation for large documents.
+     * @param compressed Implementation for compressed documents and documents of unknown size.
+     * @param dtd Implementation for documents that declare a DTD.
+     */
+    public ParserProfile(final long smallSizeLimit, final ParserImplementation small, final ParserImplementation large,
+            final ParserImplementation compressed, final ParserImplementation dtd) {
+        Validate.notNull(small);
+        Validate.notNull(large);
+        Validate.notNull(compressed);
+        Validate.notNull(dtd);
+        this.smallSizeLimit = smallSizeLimit;
+        this.small = small;
+        this.large = large;
+        this.compressed = compressed;
+        this.dtd = dtd;
+    }
+
+    /**
+     * Loads profile from a properties file.
+     * @param file Properties file.
+     * @return Loaded profile.
+     * @throws IOException If the file can not be read or it is not a valid profile.
+     */
+    public static ParserProfile load(final File file) throws IOException {
+        final Properties properties = new Properties();
+        final InputStream input = new FileInputStream(file);
+        try {
+            properties.load(input);
+        } finally {
+            input.close();
+        }
+        final long smallSizeLimit;
+        try {
+            smallSizeLimit = Long.parseLong(getProperty(properties, SMALL_SIZE_LIMIT_KEY));
+        } catch (final NumberFormatException ex) {
+            throw new IOException("Invalid value of [" + SMALL_SIZE_LIMIT_KEY + "] in parser profile.");
+        }
+        return new ParserProfile(smallSizeLimit,
+                getImplementation(properties, SMALL_KEY),
+                getImplementation(properties, LARGE_KEY),
+                getImplementation(properties, COMPRESSED_KEY),
+                getImplementation(properties, DTD_KEY));
+    }
+
+    /**
+     * Stores profile to a properties file.
+     * @param file Properties file, it is overwritten.
+     * @throws IOException If the file can not be written.
+     */
+    public void store(final File file) throws IOException {
+        final Properties properties = new Properties();
+        properties.setProperty(SMALL_SIZE_LIMIT_KEY, String.valueOf(this.smallSizeLimit));
+        properties.setProperty(SMALL_KEY, this.small.getName());
+        properties.setProperty(LARGE_KEY, this.large.getName());
+        properties.setProperty(COMPRESSED_KEY, this.compressed.getName());
+        properties.setProperty(DTD_KEY, this.dtd.getName());
+        final OutputStream output = new FileOutputStream(file);
+        try {
+            properties.store(output, "Parser profile of MathML converter");
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Returns implementation for a document.
+     * @param size Size of the document in bytes, negative if it is not known.
+     * @param compressed Indicates whether the document is compressed.
+     * @param declaresDTD Indicates whether the document declares a DTD.
+     * @return Implementation for the document.
+     */
+    public ParserImplementation select(final long size, final boolean compressed, final boolean declaresDTD) {
+        if (declaresDTD) {
+            return this.dtd;
+        }
+        if (compressed || size < 0) {
+            return this.compressed;
+        }
+        return size < this.smallSizeLimit ? this.small : this.large;
+    }
+
+    /**
+     * Returns all implementations used by this profile.
+     * @return Set of implementations.
+     */
+    public Set<ParserImplementation> getImplementations() {
+        return EnumSet.of(this.small, this.large, this.compressed, this.dtd);
+    }
+
+    /**
+     * Returns size (in bytes) from which documents are considered large.
+     * @return Size in bytes.
+     */
+    public long getSmallSizeLimit() {
+        return this.smallSizeLimit;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("small (< %1$d B): %2$s, large: %3$s, compressed: %4$s, dtd: %5$s",
+                this.smallSizeLimit, this.small.getName(), this.large.getName(),
+                this.compressed.getName(), this.dtd.getName());
+    }
+
+    /**
+     * Returns value of a required property.
+     */
+    private static String getProperty(final Properties properties, final String key) throws IOException {
+        final String value = properties.getProperty(key);
+        if (value == null) {
+            throw new IOException("Missing [" + key + "] in parser profile.");
+        }
+        return value.trim();
+    }
+
+    /**
+     * Returns implementation named by a required property.
+     */
+    private static ParserImplementation getImplementation(final Properties properties, final String key) throws IOException {
+        final ParserImplementation implementation = ParserImplementation.forName(getProperty(properties, key));
+        if (implementation == null || !implementation.isAvailable()) {
+            throw new IOException("Unknown parser implementation for [" + key + "] in parser profile.");
+        }
+        return implementation;
+    }
+}
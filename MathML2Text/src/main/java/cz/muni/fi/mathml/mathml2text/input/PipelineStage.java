@@ -0,0 +1,217 @@
+package cz.muni.fi.mathml.mathml2text.input;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stage of the conversion pipeline, a pool of threads taking tasks from
+ * a bounded queue. A stage passes documents to the next stage by submitting
+ * tasks to it, when the queue of the next stage is full, the submitting
+ * thread waits, so a slow stage holds back the stages before it instead of
+ * collecting documents in memory.
+ * <p>
+ * The queue is measured: its depth when a task is submitted, time spent by
+ * submitting threads waiting for room in the queue, time from submission
+ * of a task until a thread takes it and time spent by threads running tasks, see
+ * {@link #getStatistics()}. A stage with deep queue and long waits of tasks
+ * needs more threads, a stage whose producers wait needs more threads or
+ * holds back faster stages before it.
+ *
+ * @author agent
+ * @date 2026-10-18T00:39:22+0000
+ */
+final class PipelineStage {
+
+    private static final Logger logger = LoggerFactory.getLogger(PipelineStage.class);
+
+    /**
+     * Task waiting in the queue.
+     */
+    private static final class Task {
+        private final Runnable runnable;
+        /**
+         * Time when the task was submitted.
+         */
+        private final long queued;
+
+        private Task(final Runnable runnable, final long queued) {
+            this.runnable = runnable;
+            this.queued = queued;
+        }
+    }
+    /**
+     * Marks the end of tasks for one thread.
+     */
+    private static final Task END = new Task(null, 0);
+    /**
+     * Name of the stage.
+     */
+    private final String name;
+    /**
+     * Tasks waiting for a thread.
+     */
+    private final BlockingQueue<Task> queue;
+    /**
+     * Threads of the stage.
+     */
+    private final Thread[] threads;
+    /**
+     * Number of end marks put into the queue.
+     */
+    private int endCount;
+    /**
+     * Number of submitted tasks.
+     */
+    private final AtomicInteger taskCount = new AtomicInteger();
+    /**
+     * Number of tasks that failed with an exception.
+     */
+    private final AtomicInteger failureCount = new AtomicInteger();
+    /**
+     * Sum of queue depths seen by submitted tasks.
+     */
+    private final AtomicLong depthSum = new AtomicLong();
+    /**
+     * Maximal queue depth seen by a submitted task.
+     */
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    /**
+     * Number of submissions that waited for room in the queue.
+     */
+    private final AtomicInteger blockedCount = new AtomicInteger();
+    /**
+     * Time in nanoseconds spent by submitting threads waiting for room in the queue.
+     */
+    private final AtomicLong blockedTime = new AtomicLong();
+    /**
+     * Time in nanoseconds from submission of tasks until threads took them.
+     */
+    private final AtomicLong queuedTime = new AtomicLong();
+    /**
+     * Maximal time in nanoseconds from submission of a task until a thread took it.
+     */
+    private final AtomicLong maxQueuedTime = new AtomicLong();
+    /**
+     * Time in nanoseconds spent by threads running tasks, it includes waiting
+     * for room in the queue of the next stage.
+     */
+    private final AtomicLong busyTime = new AtomicLong();
+
+    /**
+     * Creates the stage and starts its threads, they do not prevent
+     * application from exiting.
+     * @param name Name of the stage, threads are named after it.
+     * @param threadCount Number of threads, at least one thread is started.
+     * @param capacity Maximal number of tasks waiting in the queue.
+     */
+    PipelineStage(final String name, final int threadCount, final int capacity) {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<Task>(Math.max(1, capacity));
+        this.threads = new Thread[Math.max(1, threadCount)];
+        for (int index = 0; index < this.threads.length; ++index) {
+            this.threads[index] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    PipelineStage.this.work();
+                }
+            }, name + "-" + (index + 1));
+            this.threads[index].setDaemon(true);
+            this.threads[index].start();
+        }
+    }
+
+    /**
+     * Puts task into the queue, waits while the queue is full.
+     * @param task Task, exceptions thrown by it are logged.
+     * @throws InterruptedException If the thread was interrupted while waiting.
+     */
+    void submit(final Runnable task) throws InterruptedException {
+        final int depth = this.queue.size();
+        this.taskCount.incrementAndGet();
+        this.depthSum.addAndGet(depth);
+        updateMaximum(this.maxDepth, depth);
+        final long start = System.nanoTime();
+        if (!this.queue.offer(new Task(task, start))) {
+            this.blockedCount.incrementAndGet();
+            this.queue.put(new Task(task, start));
+            this.blockedTime.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Waits until all submitted tasks are finished and stops the threads.
+     * No task can be submitted after the stage is closed. If the waiting
+     * was interrupted, the stage can be closed again.
+     * @throws InterruptedException If the thread was interrupted while waiting.
+     */
+    synchronized void close() throws InterruptedException {
+        while (this.endCount < this.threads.length) {
+            this.queue.put(END);
+            ++this.endCount;
+        }
+        for (final Thread thread : this.threads) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Returns statistics of the queue and threads of the stage.
+     * @return Human readable statistics.
+     */
+    String getStatistics() {
+        final int tasks = this.taskCount.get();
+        return String.format("%1$s (%2$d threads): %3$d tasks, %4$d failed; queue depth average %5$.1f, maximum %6$d; "
+                + "%7$d submissions waited %8$d ms; tasks waited in queue %9$d ms, maximum %10$d ms; threads busy %11$d ms",
+                this.name, this.threads.length, tasks, this.failureCount.get(),
+                tasks == 0 ? 0.0 : (double) this.depthSum.get() / tasks, this.maxDepth.get(),
+                this.blockedCount.get(), this.blockedTime.get() / 1000000,
+                this.queuedTime.get() / 1000000, this.maxQueuedTime.get() / 1000000,
+                this.busyTime.get() / 1000000);
+    }
+
+    /**
+     * Runs tasks of the queue until the end mark is taken. A failed task
+     * does not stop the thread.
+     */
+    private void work() {
+        try {
+            Task task;
+            while ((task = this.queue.take()) != END) {
+                final long start = System.nanoTime();
+                final long queued = start - task.queued;
+                this.queuedTime.addAndGet(queued);
+                updateMaximum(this.maxQueuedTime, queued);
+                try {
+                    task.runnable.run();
+                } catch (final Throwable ex) {
+                    this.failureCount.incrementAndGet();
+                    logger.error("Task of stage [" + this.name + "] failed.", ex);
+                } finally {
+                    this.busyTime.addAndGet(System.nanoTime() - start);
+                }
+            }
+        } catch (final InterruptedException ex) {
+            logger.warn("Thread of stage [" + this.name + "] was interrupted.", ex);
+        }
+    }
+
+    private static void updateMaximum(final AtomicInteger maximum, final int value) {
+        int current;
+        while (value > (current = maximum.get()) && !maximum.compareAndSet(current, value)) {
+            // another thread changed the maximum
+        }
+    }
+
+    private static void updateMaximum(final AtomicLong maximum, final long value) {
+        long current;
+        while (value > (current = maximum.get()) && !maximum.compareAndSet(current, value)) {
+            // another thread changed the maximum
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package cz.muni.fi.mathml.mathml2text.input;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.stream.XMLStreamException;
+
+import com.fasterxml.aalto.AsyncInputFeeder;
+
+import cz.muni.fi.mathml.mathml2text.converter.ConverterSettings;
+
+/**
+ * Source of input chunks for asynchronous parser (see {@link AsyncStreamReader}).
+ * Input stream is read ahead by a pool of I/O threads shared by all
+ * documents, it has a thread for every conversion thread (see
+ * {@link ConverterSettings#getThreadCount()}), so that read-ahead of a document
+ * never waits for other documents: while the parser processes one chunk,
+ * the next chunk is read into the second buffer. Worker threads wait for I/O only when the parser
+ * is faster than the input.
+ * Input already in memory is fed to the parser directly.
+ *
+ * @author agent
+ * @date 2026-10-17T23:53:39+0000
+ */
+final class ReadAheadInput {
+    /**
+     * Size of a chunk in bytes.
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+    /**
+     * Creates threads reading input streams, they do not prevent application from exiting.
+     */
+    private static final ThreadFactory READER_FACTORY = new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "input-reader-" + this.count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+    /**
+     * Threads reading input streams, created with the first stream.
+     */
+    private static ThreadPoolExecutor readers;
+    /**
+     * Input stream, {@code null} if input is in memory.
+     */
+    private final InputStream input;
+    /**
+     * Input in memory, {@code null} if input is a stream.
+     */
+    private final ByteBuffer source;
+    /**
+     * Two buffers, one is fed to the parser, the other one is being read.
+     */
+    private final byte[][] buffers;
+    /**
+     * Index of buffer that is read next.
+     */
+    private int current;
+    /**
+     * Pending read of the next chunk, {@code null} if none was started.
+     */
+    private Future<Integer> pending;
+
+    /**
+     * Creates input reading a stream ahead, the first chunk is read immediately.
+     * @param input Input data stream, it is not closed.
+     */
+    ReadAheadInput(final InputStream input) {
+        this.input = input;
+        this.source = null;
+        this.buffers = new byte[][] {new byte[CHUNK_SIZE], new byte[CHUNK_SIZE]};
+        this.pending = this.readAhead();
+    }
+
+    /**
+     * Creates input feeding data in memory.
+     * @param source Input data, its position is moved as data are fed.
+     */
+    ReadAheadInput(final ByteBuffer source) {
+        this.input = null;
+        this.source = source;
+        // heap buffer is fed without copying
+        this.buffers = source.hasArray() ? null : new byte[][] {new byte[CHUNK_SIZE]};
+    }
+
+    /**
+     * Feeds next chunk of input to the parser. Has to be called only when
+     * the parser needs more input.
+     * @param feeder Feeder of asynchronous parser.
+     * @return {@code true} if data were fed, {@code false} if end of input was reached.
+     * @throws XMLStreamException If input can not be read or parser rejects data.
+     */
+    boolean feed(final AsyncInputFeeder feeder) throws XMLStreamException {
+        if (this.input != null) {
+            return this.feedStream(feeder);
+        }
+        final int length = Math.min(this.source.remaining(), this.buffers == null ? Integer.MAX_VALUE : CHUNK_SIZE);
+        if (length == 0) {
+            feeder.endOfInput();
+            return false;
+        }
+        if (this.buffers == null) {
+            feeder.feedInput(this.source.array(), this.source.arrayOffset() + this.source.position(), length);
+            this.source.position(this.source.position() + length);
+        } else {
+            this.source.get(this.buffers[0], 0, length);
+            feeder.feedInput(this.buffers[0], 0, length);
+        }
+        return true;
+    }
+
+    /**
+     * Waits for pending read to finish, so that the stream can be closed.
+     */
+    void close() {
+        if (this.pending != null) {
+            try {
+                this.pending.get();
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (final ExecutionException ex) {
+                // input is not used anymore
+            }
+            this.pending = null;
+        }
+    }
+
+    /**
+     * Feeds chunk read ahead and starts reading the next one into the buffer
+     * consumed by parser.
+     */
+    private boolean feedStream(final AsyncInputFeeder feeder) throws XMLStreamException {
+        if (this.pending == null) {
+            feeder.endOfInput();
+            return false;
+        }
+        final int length;
+        try {
+            length = this.pending.get();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new XMLStreamException("Interrupted while reading input.", ex);
+        } catch (final ExecutionException ex) {
+            throw new XMLStreamException("Cannot read input.", ex.getCause());
+        }
+        if (length <= 0) {
+            this.pending = null;
+            feeder.endOfInput();
+            return false;
+        }
+        final byte[] chunk = this.buffers[this.current];
+        this.current = 1 - this.current;
+        // the other buffer was already consumed by parser
+        this.pending = this.readAhead();
+        feeder.feedInput(chunk, 0, length);
+        return true;
+    }
+
+    /**
+     * Starts reading next chunk into current buffer.
+     * @return Number of bytes read, <code>-1</code> at the end of input.
+     */
+    private Future<Integer> readAhead() {
+        final byte[] buffer = this.buffers[this.current];
+        return getReaders().submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws IOException {
+                int length = 0;
+                int count;
+                while (length < buffer.length && (count = input.read(buffer, length, buffer.length - length)) != -1) {
+                    length += count;
+                }
+                return length == 0 ? -1 : length;
+            }
+        });
+    }
+
+    /**
+     * Returns pool of threads reading input streams. The pool is enlarged
+     * if the number of conversion threads was increased.
+     */
+    private static synchronized ExecutorService getReaders() {
+        final int threadCount = ConverterSettings.getInstance().getThreadCount();
+        if (readers == null) {
+            readers = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), READER_FACTORY);
+        } else if (readers.getMaximumPoolSize() < threadCount) {
+            readers.setMaximumPoolSize(threadCount);
+            readers.setCorePoolSize(threadCount);
+        }
+        return readers;
+    }
+}
@@ -0,0 +1,258 @@
+package cz.muni.fi.mathml.mathml2text.input;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-thread pool of objects used for reading and writing documents. Every
+ * worker thread has its own pool, so objects are reused by the documents
+ * converted on the same thread one after another and no locking is needed.
+ * <p>
+ * Stax2 API does not allow to point an existing reader or writer to a new
+ * input, so they are always created by the factory. Their buffers and symbol
+ * tables are recycled by the parser implementation (Woodstox keeps them for
+ * the current thread) when the reader or writer is closed, so the pool makes
+ * sure that every reader and writer is closed, even after an error.
+ * Buffers holding whole input are kept by the pool itself. A buffer is valid
+ * only until the next buffer is requested on the same thread.
+ * <p>
+ * Usage of all pools is counted, see {@link #getStatistics()}. Reuse is
+ * counted only for buffers of the pool, the parser implementation does not
+ * report whether a reader or writer got recycled buffers, so readers and
+ * writers are counted as created and closed.
+ *
+ * @author agent
+ * @date 2026-10-17T23:41:26+0000
+ */
+public final class StreamPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamPool.class);
+    /**
+     * Maximal capacity of a buffer kept by the pool. Larger buffers are
+     * allocated for a single document only.
+     */
+    private static final int MAX_POOLED_CAPACITY = 1024 * 1024;
+    /**
+     * Size of buffer used for reading streams.
+     */
+    private static final int READ_BUFFER_SIZE = 8192;
+    /**
+     * Pools of worker threads.
+     */
+    private static final ThreadLocal<StreamPool> POOLS = new ThreadLocal<StreamPool>() {
+        @Override
+        protected StreamPool initialValue() {
+            return new StreamPool();
+        }
+    };
+    private static final AtomicLong readersCreated = new AtomicLong();
+    private static final AtomicLong readersClosed = new AtomicLong();
+    private static final AtomicLong writersCreated = new AtomicLong();
+    private static final AtomicLong writersClosed = new AtomicLong();
+    private static final AtomicLong buffersAllocated = new AtomicLong();
+    private static final AtomicLong buffersReused = new AtomicLong();
+    /**
+     * Buffer for whole input, {@code null} until first use.
+     */
+    private ByteBuffer buffer;
+    /**
+     * Buffer for reading streams.
+     */
+    private final byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+
+    /**
+     * Constructor.
+     */
+    private StreamPool() {
+    }
+
+    /**
+     * Returns pool of the current thread.
+     * @return Pool of the current thread.
+     */
+    public static StreamPool getInstance() {
+        return POOLS.get();
+    }
+
+    /**
+     * Creates a reader. It has to be passed to {@link #release(javax.xml.stream.XMLStreamReader) }
+     * after use.
+     * @param factory Input factory.
+     * @param input Input data stream encoded in UTF-8.
+     * @return New reader.
+     * @throws XMLStreamException If the reader can not be created.
+     */
+    public XMLStreamReader createReader(final XMLInputFactory factory, final InputStream input) throws XMLStreamException {
+        final XMLStreamReader reader = factory.createXMLStreamReader(input, "UTF-8");
+        readersCreated.incrementAndGet();
+        return reader;
+    }
+
+    /**
+     * Creates a reader of character input. It has to be passed to 
+     * {@link #release(javax.xml.stream.XMLStreamReader) } after use.
+     * @param factory Input factory.
+     * @param input Input characters.
+     * @return New reader.
+     * @throws XMLStreamException If the reader can not be created.
+     */
+    public XMLStreamReader createReader(final XMLInputFactory factory, final Reader input) throws XMLStreamException {
+        final XMLStreamReader reader = factory.createXMLStreamReader(input);
+        readersCreated.incrementAndGet();
+        return reader;
+    }
+
+    /**
+     * Creates a reader over asynchronous parser fed from read-ahead input 
+     * (see {@link AsyncStreamReader}). It has to be passed to 
+     * {@link #release(javax.xml.stream.XMLStreamReader) } after use.
+     * @param factory Input factory creating asynchronous parsers.
+     * @param input Input data stream, used only if data are not in memory.
+     * @param source Input data in memory, can be {@code null}.
+     * @return New reader.
+     * @throws XMLStreamException If the reader can not be created.
+     */
+    public XMLStreamReader createAsyncReader(final XMLInputFactory factory, final InputStream input, final ByteBuffer source) 
+            throws XMLStreamException {
+        final XMLStreamReader reader = AsyncStreamReader.create(factory, input, source);
+        readersCreated.incrementAndGet();
+        return reader;
+    }
+
+    /**
+     * Closes the reader, so that its buffers can be used by the next reader.
+     * @param reader Reader, can be {@code null}.
+     */
+    public void release(final XMLStreamReader reader) {
+        if (reader == null) {
+            return;
+        }
+        try {
+            reader.close();
+            readersClosed.incrementAndGet();
+        } catch (final XMLStreamException ex) {
+            logger.warn("Error while closing reader.", ex);
+        }
+    }
+
+    /**
+     * Creates a writer. It has to be passed to {@link #release(javax.xml.stream.XMLStreamWriter) }
+     * after use.
+     * @param factory Output factory.
+     * @param output Output data stream, it is not closed by the writer.
+     * @return New writer.
+     * @throws XMLStreamException If the writer can not be created.
+     */
+    public XMLStreamWriter createWriter(final XMLOutputFactory factory, final OutputStream output) throws XMLStreamException {
+        final XMLStreamWriter writer = factory.createXMLStreamWriter(output, "UTF-8");
+        writersCreated.incrementAndGet();
+        return writer;
+    }
+
+    /**
+     * Creates a writer of character output. It has to be passed to 
+     * {@link #release(javax.xml.stream.XMLStreamWriter) } after use.
+     * @param factory Output factory.
+     * @param output Output characters, the writer is not closed by the stream writer.
+     * @return New writer.
+     * @throws XMLStreamException If the writer can not be created.
+     */
+    public XMLStreamWriter createWriter(final XMLOutputFactory factory, final Writer output) throws XMLStreamException {
+        final XMLStreamWriter writer = factory.createXMLStreamWriter(output);
+        writersCreated.incrementAndGet();
+        return writer;
+    }
+
+    /**
+     * Closes the writer, so that its buffers can be used by the next writer.
+     * Buffered data are flushed to the output stream.
+     * @param writer Writer, can be {@code null}.
+     */
+    public void release(final XMLStreamWriter writer) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+            writersClosed.incrementAndGet();
+        } catch (final XMLStreamException ex) {
+            logger.warn("Error while closing writer.", ex);
+        }
+    }
+
+    /**
+     * Returns an empty buffer with given capacity. The content of the buffer
+     * returned by previous call on the same thread is overwritten.
+     * @param capacity Required capacity, it is also the limit of the buffer.
+     * @return Heap buffer with position <code>0</code> and limit equal to capacity.
+     */
+    public ByteBuffer getBuffer(final int capacity) {
+        if (this.buffer != null && this.buffer.capacity() >= capacity) {
+            buffersReused.incrementAndGet();
+            this.buffer.clear();
+            this.buffer.limit(capacity);
+            return this.buffer;
+        }
+        buffersAllocated.incrementAndGet();
+        if (capacity > MAX_POOLED_CAPACITY) {
+            return ByteBuffer.allocate(capacity);
+        }
+        // grow at least twice, so that the number of allocations stays small
+        final int pooledCapacity = this.buffer == null
+                                   ? capacity
+                                   : Math.min(MAX_POOLED_CAPACITY, Math.max(capacity, this.buffer.capacity() * 2));
+        this.buffer = ByteBuffer.allocate(pooledCapacity);
+        this.buffer.limit(capacity);
+        return this.buffer;
+    }
+
+    /**
+     * Reads all data from input stream into a buffer of this pool.
+     * @param input Input data stream.
+     * @return Buffer backed by an array containing all data, valid until
+     *  the next buffer is requested on the same thread.
+     * @throws IOException If the stream can not be read.
+     */
+    public ByteBuffer readFully(final InputStream input) throws IOException {
+        ByteBuffer result = this.getBuffer(this.buffer == null ? READ_BUFFER_SIZE : this.buffer.capacity());
+        int count;
+        while ((count = input.read(this.readBuffer)) != -1) {
+            if (result.remaining() < count) {
+                // larger buffer is always a new one, the current one is still valid
+                final ByteBuffer larger = this.getBuffer(Math.max(result.capacity() * 2, result.position() + count));
+                result.flip();
+                larger.limit(larger.capacity());
+                larger.put(result);
+                result = larger;
+            }
+            result.put(this.readBuffer, 0, count);
+        }
+        result.flip();
+        return result;
+    }
+
+    /**
+     * Returns usage of pools of all threads.
+     * @return Human readable statistics.
+     */
+    public static String getStatistics() {
+        return String.format("readers: %1$d created, %2$d closed; writers: %3$d created, %4$d closed; "
+                + "buffers: %5$d allocated, %6$d reused",
+                readersCreated.get(), readersClosed.get(), writersCreated.get(), writersClosed.get(),
+                buffersAllocated.get(), buffersReused.get());
+    }
+}
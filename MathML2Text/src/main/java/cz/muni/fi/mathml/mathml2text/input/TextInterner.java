@@ -0,0 +1,98 @@
+package cz.muni.fi.mathml.mathml2text.input;
+
+/**
+ * Table of text values of a single document. Values are looked up directly
+ * in the character buffer of a reader, so that a string is allocated only
+ * for the first occurrence of a value, all later occurrences share it.
+ * Leaf values of MathML (identifiers, numbers, operators) repeat a lot,
+ * only short values are kept in the table.
+ * <p>
+ * Table is not thread-safe, it is meant to be used by one document only.
+ *
+ * @author agent
+ * @date 2026-10-17T23:59:06+0000
+ */
+final class TextInterner {
+    /**
+     * Maximal length of a value kept in the table.
+     */
+    private static final int MAX_LENGTH = 32;
+    /**
+     * Initial capacity of the table, power of two.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+    /**
+     * Open addressing table, empty slots are {@code null}.
+     */
+    private String[] values = new String[INITIAL_CAPACITY];
+    /**
+     * Number of values in the table.
+     */
+    private int size;
+
+    /**
+     * Returns string with given characters. Equal values share the same instance.
+     * @param buffer Character buffer.
+     * @param start Offset of the first character.
+     * @param length Number of characters.
+     * @return String value.
+     */
+    String intern(final char[] buffer, final int start, final int length) {
+        if (length > MAX_LENGTH) {
+            return new String(buffer, start, length);
+        }
+        int hash = 0;
+        for (int index = start; index < start + length; ++index) {
+            hash = 31 * hash + buffer[index];
+        }
+        final int mask = this.values.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        String value;
+        while ((value = this.values[slot]) != null) {
+            if (value.hashCode() == hash && equals(value, buffer, start, length)) {
+                return value;
+            }
+            slot = (slot + 1) & mask;
+        }
+        value = new String(buffer, start, length);
+        this.values[slot] = value;
+        if (++this.size * 2 > this.values.length) {
+            this.resize();
+        }
+        return value;
+    }
+
+    /**
+     * Doubles capacity of the table.
+     */
+    private void resize() {
+        final String[] old = this.values;
+        this.values = new String[old.length * 2];
+        final int mask = this.values.length - 1;
+        for (final String value : old) {
+            if (value != null) {
+                final int hash = value.hashCode();
+                int slot = (hash ^ (hash >>> 16)) & mask;
+                while (this.values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                this.values[slot] = value;
+            }
+        }
+    }
+
+    /**
+     * Compares string with characters of buffer.
+     */
+    private static boolean equals(final String value, final char[] buffer, final int start, final int length) {
+        if (value.length() != length) {
+            return false;
+        }
+        for (int index = 0; index < length; ++index) {
+            if (value.charAt(index) != buffer[start + index]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,65 +1,97 @@
 package cz.muni.fi.mathml.mathml2text.input;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.lang3.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Helper class for unzipping files.
- * 
+ * Helper class for reading archives (zip, EPUB).
+ * Entries are streamed directly from the archive, they are never buffered
+ * in memory. An opened archive can be shared by multiple threads, every
+ * thread reading its own entry.
+ *
  * @author Maros Kucbel
  * @date 2013-05-12T20:58:03+0100
  */
 public final class Unzipper {
 
     private static final Logger logger = LoggerFactory.getLogger(Unzipper.class);
-    
     /**
-     * Unzips a single file.
-     * 
+     * Extensions of archive files.
+     */
+    private static final String[] ARCHIVE_EXTENSIONS = {"zip", "epub"};
+    /**
+     * Extensions of archive entries that contain documents for conversion.
+     */
+    private static final String[] DOCUMENT_EXTENSIONS = {".xml", ".xhtml", ".html", ".htm", ".mml"};
+    /**
+     * Size of buffer used for copying entries.
+     */
+    private static final int BUFFER_SIZE = 8192;
+    /**
+     * Archive file.
+     */
+    private final File file;
+    /**
+     * Opened archive.
+     */
+    private final ZipFile zipFile;
+
+    /**
+     * Opens an archive.
+     * @param file Archive file.
+     * @throws IOException If the file is not a valid archive.
+     */
+    public Unzipper(final File file) throws IOException {
+        Validate.isTrue(isArchive(file), "Input file is not an archive.");
+        this.file = file;
+        this.zipFile = new ZipFile(file);
+    }
+
+    /**
+     * Unzips a single file. Only the first entry is read.
+     * The returned stream reads directly from the archive, which is closed
+     * together with the stream.
+     *
      * @param zipFile Input zipped file.
      * @return {@link InputStream} containing unzipped file or {@code null} if there
      * was an error during unzipping.
      */
     public static InputStream unzip(final File zipFile) {
-        Validate.isTrue(zipFile.getName().endsWith("zip"), "Input file is not zipped.");
-        int bufferSize = 2048;
-
+        Validate.isTrue(isArchive(zipFile), "Input file is not zipped.");
         try {
-            ZipFile zip = new ZipFile(zipFile);
-            Enumeration zipFileEntries = zip.entries();
-            // Process each entry
+            final ZipFile zip = new ZipFile(zipFile);
+            Enumeration<? extends ZipEntry> zipFileEntries = zip.entries();
             while (zipFileEntries.hasMoreElements()) {
-                // grab a zip file entry
-                ZipEntry entry = (ZipEntry) zipFileEntries.nextElement();
+                ZipEntry entry = zipFileEntries.nextElement();
                 if (!entry.isDirectory()) {
-                    final BufferedInputStream is = new BufferedInputStream(zip.getInputStream(entry));
-                    int currentByte;
-                    // establish buffer for writing file
-                    byte data[] = new byte[bufferSize];
-
-                    // write the current file to disk
-                    ByteArrayOutputStream out = new ByteArrayOutputStream();
-
-                    // read and write until last byte is encountered
-                    while ((currentByte = is.read(data, 0, bufferSize)) != -1) {
-                        out.write(data, 0, currentByte);
-                    }
-                    is.close();
-                    return new ByteArrayInputStream(out.toByteArray());
+                    return new FilterInputStream(zip.getInputStream(entry)) {
+                        @Override
+                        public void close() throws IOException {
+                            super.close();
+                            zip.close();
+                        }
+                    };
                 }
             }
+            zip.close();
         } catch (final ZipException ex) {
             logger.warn("Error while unzipping file.", ex);
         } catch (final IOException ex) {
@@ -67,4 +99,147 @@ public final class Unzipper {
         }
         return null;
     }
-}
\ No newline at end of file
+
+    /**
+     * Indicates whether the file is an archive (based on its extension).
+     * @param file File.
+     * @return {@code true} if the file is an archive, {@code false} otherwise.
+     */
+    public static boolean isArchive(final File file) {
+        for (final String extension : ARCHIVE_EXTENSIONS) {
+            if (file.getName().endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns archive file.
+     * @return Archive file.
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Returns entries that contain documents for conversion (XML, XHTML and HTML
+     * files outside of <code>META-INF</code> directory). If there is no such
+     * entry, returns the first file in the archive.
+     * Entries with a path leading outside of the archive are ignored.
+     * @return List of entries in the order of the archive.
+     */
+    public List<ZipEntry> getDocumentEntries() {
+        final List<ZipEntry> entries = new ArrayList<ZipEntry>();
+        ZipEntry firstFile = null;
+        final Enumeration<? extends ZipEntry> zipFileEntries = this.zipFile.entries();
+        while (zipFileEntries.hasMoreElements()) {
+            final ZipEntry entry = zipFileEntries.nextElement();
+            if (entry.isDirectory()) {
+                continue;
+            }
+            if (entry.getName().startsWith("/") || entry.getName().contains("..")) {
+                logger.warn("Ignoring entry [{}] of archive [{}].", entry.getName(), this.file.getPath());
+                continue;
+            }
+            if (firstFile == null) {
+                firstFile = entry;
+            }
+            if (isDocument(entry)) {
+                entries.add(entry);
+            }
+        }
+        if (entries.isEmpty() && firstFile != null) {
+            entries.add(firstFile);
+        }
+        return entries;
+    }
+
+    /**
+     * Opens a stream reading the entry directly from the archive.
+     * @param entry Archive entry.
+     * @return Stream with the content of the entry.
+     * @throws IOException If the entry can not be read.
+     */
+    public InputStream openEntry(final ZipEntry entry) throws IOException {
+        return this.zipFile.getInputStream(entry);
+    }
+
+    /**
+     * Writes a copy of this archive in which some entries are replaced.
+     * Order of the entries and their compression method are preserved
+     * (EPUB requires uncompressed <code>mimetype</code> entry to be the first).
+     * @param output Output archive.
+     * @param replacements Files with new content of entries (entry name &rarr; file).
+     * @throws IOException If the archive can not be written.
+     */
+    public void rewrite(final File output, final Map<String, File> replacements) throws IOException {
+        final ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(output));
+        try {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            final Enumeration<? extends ZipEntry> zipFileEntries = this.zipFile.entries();
+            while (zipFileEntries.hasMoreElements()) {
+                final ZipEntry entry = zipFileEntries.nextElement();
+                final File replacement = replacements.get(entry.getName());
+                final InputStream input;
+                if (replacement != null) {
+                    final ZipEntry newEntry = new ZipEntry(entry.getName());
+                    newEntry.setTime(entry.getTime());
+                    zip.putNextEntry(newEntry);
+                    input = new FileInputStream(replacement);
+                } else {
+                    final ZipEntry newEntry = new ZipEntry(entry);
+                    // compressed size depends on the compressor
+                    newEntry.setCompressedSize(-1);
+                    zip.putNextEntry(newEntry);
+                    input = this.zipFile.getInputStream(entry);
+                }
+                try {
+                    copy(input, zip, buffer);
+                } finally {
+                    input.close();
+                }
+                zip.closeEntry();
+            }
+        } finally {
+            zip.close();
+        }
+    }
+
+    /**
+     * Closes the archive.
+     */
+    public void close() {
+        try {
+            this.zipFile.close();
+        } catch (final IOException ex) {
+            logger.warn("Error while closing archive.", ex);
+        }
+    }
+
+    /**
+     * Indicates whether the entry contains a document for conversion.
+     */
+    private static boolean isDocument(final ZipEntry entry) {
+        final String name = entry.getName().toLowerCase(Locale.ENGLISH);
+        if (name.startsWith("meta-inf/")) {
+            return false;
+        }
+        for (final String extension : DOCUMENT_EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copies all data from input to output.
+     */
+    private static void copy(final InputStream input, final OutputStream output, final byte[] buffer) throws IOException {
+        int count;
+        while ((count = input.read(buffer)) != -1) {
+            output.write(buffer, 0, count);
+        }
+    }
+}
@@ -1,6 +1,13 @@
 package cz.muni.fi.mathml.mathml2text.input;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.List;
 import java.util.Locale;
 
@@ -52,4 +59,50 @@ public interface XmlParser {
      * @throws UnsupportedLanguageException
      */
     File parse(@Nonnull File file, Locale language) throws UnsupportedLanguageException;
+    /**
+     * Converts a single document read from a stream. Output is the same as
+     * output file of {@link #parse(java.io.File, java.util.Locale) }, it is
+     * encoded in UTF-8. Streams are not closed.
+     * 
+     * @param input Input XML document.
+     * @param output Output for the document with every occurence of 
+     *  <code>&lt;math&gt;</code> tag replaced with converted string 
+     *  inside <code>&lt;mathconv&gt;</code> tag.
+     * @param language Language of conversion.
+     * @throws UnsupportedLanguageException
+     * @throws IOException If reading input or writing output fails.
+     */
+    void parse(@Nonnull InputStream input, @Nonnull OutputStream output, Locale language) 
+            throws UnsupportedLanguageException, IOException;
+    /**
+     * Converts a single document read from a character stream. Output is the 
+     * same as output file of {@link #parse(java.io.File, java.util.Locale) },
+     * its encoding is chosen by the writer. Streams are not closed.
+     * 
+     * @param input Input XML document.
+     * @param output Output for the document with every occurence of 
+     *  <code>&lt;math&gt;</code> tag replaced with converted string 
+     *  inside <code>&lt;mathconv&gt;</code> tag.
+     * @param language Language of conversion.
+     * @throws UnsupportedLanguageException
+     * @throws IOException If reading input or writing output fails.
+     */
+    void parse(@Nonnull Reader input, @Nonnull Writer output, Locale language) 
+            throws UnsupportedLanguageException, IOException;
+    /**
+     * Converts a single document held in a buffer. Bytes between position and
+     * limit of the buffer are converted, the buffer is not modified. Output 
+     * is the same as output file of {@link #parse(java.io.File, java.util.Locale) },
+     * it is encoded in UTF-8. The channel is not closed.
+     * 
+     * @param input Input XML document.
+     * @param output Output for the document with every occurence of 
+     *  <code>&lt;math&gt;</code> tag replaced with converted string 
+     *  inside <code>&lt;mathconv&gt;</code> tag.
+     * @param language Language of conversion.
+     * @throws UnsupportedLanguageException
+     * @throws IOException If writing output fails.
+     */
+    void parse(@Nonnull ByteBuffer input, @Nonnull WritableByteChannel output, Locale language) 
+            throws UnsupportedLanguageException, IOException;
 }
@@ -0,0 +1,173 @@
+package cz.muni.fi.mathml.mathml2text.input;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parser that chooses implementation for every input document separately,
+ * according to {@link ParserProfile}. Parsers of all implementations used
+ * by the profile are created in advance and they convert documents at the
+ * same time.
+ *
+ * @author agent
+ * @date 2026-10-17T23:46:40+0000
+ */
+public final class XmlParserAuto extends AbstractXmlParser {
+
+    private static final Logger logger = LoggerFactory.getLogger(XmlParserAuto.class);
+    /**
+     * Number of bytes at the start of a document in which DTD declaration is searched.
+     */
+    private static final int PROLOG_LENGTH = 1024;
+    /**
+     * Encoding used for searching the prolog, it maps every byte to a character.
+     */
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    /**
+     * Rules for choosing implementation.
+     */
+    private final ParserProfile profile;
+    /**
+     * Parsers of implementations used by the profile.
+     */
+    private final Map<ParserImplementation, AbstractXmlParser> parsers;
+    /**
+     * Number of documents converted by every implementation.
+     */
+    private final Map<ParserImplementation, AtomicInteger> selections;
+
+    /**
+     * Constructor.
+     * @param profile Rules for choosing implementation.
+     */
+    public XmlParserAuto(final ParserProfile profile) {
+        this.profile = profile;
+        this.parsers = new EnumMap<ParserImplementation, AbstractXmlParser>(ParserImplementation.class);
+        this.selections = new EnumMap<ParserImplementation, AtomicInteger>(ParserImplementation.class);
+        for (final ParserImplementation implementation : profile.getImplementations()) {
+            this.parsers.put(implementation, implementation.createParser());
+            this.selections.put(implementation, new AtomicInteger(0));
+        }
+    }
+
+    /**
+     * Converts input string by parser for small documents.
+     */
+    @Override
+    public String parse(@Nonnull final String inputString, final Locale language) throws UnsupportedLanguageException {
+        return this.parsers.get(this.profile.select(inputString.length(), false, false)).parse(inputString, language);
+    }
+
+    /**
+     * Converts document of unknown kind by parser for compressed documents.
+     * Documents of input files and archives are converted by parser chosen
+     * for them.
+     */
+    @Override
+    protected void convert(final InputStream inputStream, final ByteBuffer source, final OutputStream output, final Locale language)
+            throws IOException {
+        this.select(this.profile.select(-1, true, false)).convert(inputStream, source, output, language);
+    }
+
+    /**
+     * Converts character input by parser for compressed documents.
+     */
+    @Override
+    protected void convert(final Reader input, final Writer output, final Locale language) throws IOException {
+        this.select(this.profile.select(-1, true, false)).convert(input, output, language);
+    }
+
+    @Override
+    protected AbstractXmlParser selectParser(final ByteBuffer source) {
+        boolean declaresDTD = false;
+        try {
+            declaresDTD = declaresDTD(new ByteBufferInputStream(source));
+        } catch (final IOException ex) {
+            logger.warn("Cannot read prolog of document.", ex);
+        }
+        return this.select(this.profile.select(source.remaining(), false, declaresDTD));
+    }
+
+    @Override
+    protected AbstractXmlParser selectParser(final File file, final boolean compressed) {
+        if (compressed) {
+            return this.select(this.profile.select(-1, true, false));
+        }
+        boolean declaresDTD = false;
+        try {
+            declaresDTD = declaresDTD(new FileInputStream(file));
+        } catch (final IOException ex) {
+            logger.warn("Cannot read prolog of file [" + file.getPath() + "].", ex);
+        }
+        return this.select(this.profile.select(file.length(), false, declaresDTD));
+    }
+
+    @Override
+    protected AbstractXmlParser selectParser(final Unzipper archive, final ZipEntry entry) {
+        boolean declaresDTD = false;
+        try {
+            declaresDTD = declaresDTD(archive.openEntry(entry));
+        } catch (final IOException ex) {
+            logger.warn("Cannot read prolog of entry [" + entry.getName() + "].", ex);
+        }
+        return this.select(this.profile.select(entry.getSize(), false, declaresDTD));
+    }
+
+    /**
+     * Returns number of documents converted by every implementation.
+     * @return Human readable statistics.
+     */
+    public String getStatistics() {
+        final StringBuilder builder = new StringBuilder();
+        for (final Map.Entry<ParserImplementation, AtomicInteger> entry : this.selections.entrySet()) {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append(entry.getKey().getName()).append(": ").append(entry.getValue().get());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns parser of the implementation and counts its selection.
+     */
+    private AbstractXmlParser select(final ParserImplementation implementation) {
+        this.selections.get(implementation).incrementAndGet();
+        return this.parsers.get(implementation);
+    }
+
+    /**
+     * Indicates whether the prolog of the document contains document type declaration.
+     * @param input Document, the stream is closed.
+     */
+    private static boolean declaresDTD(final InputStream input) throws IOException {
+        try {
+            final byte[] prolog = new byte[PROLOG_LENGTH];
+            int length = 0;
+            int count;
+            while (length < prolog.length && (count = input.read(prolog, length, prolog.length - length)) != -1) {
+                length += count;
+            }
+            return new String(prolog, 0, length, ISO_8859_1).contains("<!DOCTYPE");
+        } finally {
+            input.close();
+        }
+    }
+}
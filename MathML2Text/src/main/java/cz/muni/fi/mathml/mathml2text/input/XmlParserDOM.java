@@ -1,37 +1,24 @@
 package cz.muni.fi.mathml.mathml2text.input;
 
-import java.io.ByteArrayInputStream;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.List;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.util.Locale;
-import java.util.Set;
-import java.util.concurrent.Callable;
-import java.util.concurrent.CancellationException;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.atomic.AtomicInteger;
-
-import javax.annotation.Nonnull;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
-import org.jdom2.Attribute;
 import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.JDOMException;
 import org.jdom2.Namespace;
 import org.jdom2.input.SAXBuilder;
+import org.jdom2.input.sax.XMLReaderJAXPFactory;
+import org.jdom2.input.sax.XMLReaderJDOMFactory;
 import org.jdom2.input.sax.XMLReaders;
 import org.jdom2.output.Format;
 import org.jdom2.output.XMLOutputter;
@@ -41,48 +28,91 @@ import org.xml.sax.EntityResolver;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
+import cz.muni.fi.mathml.mathml2text.converter.ConversionContext;
 import cz.muni.fi.mathml.mathml2text.converter.ConverterSettings;
 import cz.muni.fi.mathml.mathml2text.converter.MathMLConverter;
+import cz.muni.fi.mathml.mathml2text.converter.OutputFormat;
 import cz.muni.fi.mathml.mathml2text.converter.Strings;
-import cz.muni.fi.mathml.mathml2text.converter.tree.MathMLElement;
 import cz.muni.fi.mathml.mathml2text.converter.tree.MathMLNode;
-import cz.muni.fi.mathml.mathml2text.converter.tree.XmlAttribute;
 
 /**
  * An {@link XmlParser} implementation using JDOM2.
+ * Math elements are converted over a read-only view of the JDOM tree
+ * (see {@link ElementView}), they are not copied. Every thread reuses its 
+ * own {@link SAXBuilder}. Output is written in format set by 
+ * {@link ConverterSettings#getOutputFormat()}.
  * 
  * @author Maros Kucbel
  * @date 2013-05-12T21:53:03+0100
  */
-public final class XmlParserDOM implements XmlParser {
+public final class XmlParserDOM extends AbstractXmlParser {
 
     private static final Logger logger = LoggerFactory.getLogger(XmlParserDOM.class);
     
-    private final Set<File> originalInputFiles = new HashSet<File>();
-    
-    private final AtomicInteger atomicInteger = new AtomicInteger(0);
-    
     final XMLOutputter outputter;
     /**
      * Responsible for converting MathML tree to string.
      */
     private final MathMLConverter converter;
+    /**
+     * Factory of SAX parsers used for building documents.
+     */
+    private final XMLReaderJDOMFactory readerFactory;
+    /**
+     * Builder of the current thread.
+     */
+    private final ThreadLocal<SAXBuilder> builder = new ThreadLocal<SAXBuilder>();
     
-    private static final String CONVERTER_NAMESPACE_URI = "http://code.google.com/p/mathml-converter/";
-    
-    private static final String CONVERTER_NAMESPACE_PREFIX = "conv";
+    public XmlParserDOM() {
+        this(XMLReaders.NONVALIDATING);
+    }
     
-    private static final String CONVERTER_ELEMENT_NAME = "math";
+    /**
+     * Constructor.
+     * @param saxParserFactoryClassName Class name of SAX parser factory, 
+     *  which is instantiated directly instead of being looked up by JAXP.
+     */
+    public XmlParserDOM(final String saxParserFactoryClassName) {
+        this(new XMLReaderJAXPFactory(saxParserFactoryClassName, null, false));
+    }
     
-    public XmlParserDOM() {
+    private XmlParserDOM(final XMLReaderJDOMFactory readerFactory) {
+        this.readerFactory = readerFactory;
         this.converter = new MathMLConverter();
-        this.outputter = new XMLOutputter();
-        this.outputter.setFormat(Format.getPrettyFormat());
+        this.outputter = new XMLOutputter(createFormat(ConverterSettings.getInstance().getOutputFormat()));
+    }
+    
+    /**
+     * Returns JDOM format of output documents.
+     */
+    private static Format createFormat(final OutputFormat outputFormat) {
+        switch (outputFormat) {
+            case COMPACT:
+                return Format.getCompactFormat();
+            case RAW:
+                return Format.getRawFormat();
+            default:
+                return Format.getPrettyFormat();
+        }
+    }
+    
+    /**
+     * Returns builder of the current thread, it is created by the first call.
+     * Builder reuses its SAX parser for all documents.
+     */
+    private SAXBuilder getSAXBuilder() {
+        SAXBuilder saxBuilder = this.builder.get();
+        if (saxBuilder == null) {
+            saxBuilder = this.createSAXBuilder();
+            this.builder.set(saxBuilder);
+        }
+        return saxBuilder;
     }
     
     private SAXBuilder createSAXBuilder() {
         final SAXBuilder saxBuilder = new SAXBuilder();
-        saxBuilder.setXMLReaderFactory(XMLReaders.NONVALIDATING);
+        saxBuilder.setXMLReaderFactory(this.readerFactory);
+        saxBuilder.setReuseParser(true);
         saxBuilder.setFeature("http://xml.org/sax/features/validation", false);
         saxBuilder.setFeature("http://apache.org/xml/features/nonvalidating/load-dtd-grammar", true);
         saxBuilder.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", true);
@@ -90,7 +120,8 @@ public final class XmlParserDOM implements XmlParser {
             @Override
             public InputSource resolveEntity(String publicId, String systemId) throws SAXException, IOException {
                 if (systemId.endsWith("dtd")) { 
-                    return new InputSource(XmlParserDOM.class.getResourceAsStream("xhtml-math11-f.dtd"));
+                    // compact DTD with entity declarations only
+                    return new InputSource(EntityTable.getInstance().createDTDStream());
                 }
                 return null;
             }
@@ -99,213 +130,72 @@ public final class XmlParserDOM implements XmlParser {
     }
     
     /**
-     * Concurrently converts all input files.
-     * For every file delegates to method {@link #parse(java.io.File, java.util.Locale) }.
-     * The number of possible concurrent conversion is determined with parameter
-     * {@link ConverterSettings#getThreadCount()}. 
-     * @param files List of input files.
+     * Builds a document from input data. Every occurrence of math element
+     * is converted to string over a {@link MathMLNode} view of the element.
+     * 
+     * @param inputStream Input data.
+     * @param source All input data in a buffer, not used.
+     * @param output Output data with every occurence of <code>&lt;math&gt;</code>
+     *  tag replaced with converted string inside <code>&lt;mathconv&gt;</code> tag.
      * @param language Language of conversion.
-     * @return List of converted files.
-     * @throws UnsupportedLanguageException
      */
     @Override
-    public List<File> parse(@Nonnull final List<File> files, final Locale language) throws UnsupportedLanguageException {
-        final List<File> inputFiles = new ArrayList<File>();
-        for (final File file : files) {
-            this.originalInputFiles.add(file);
-            inputFiles.addAll(this.findFiles(file));
-        }
-        final List<File> outputFiles = new ArrayList<File>(inputFiles.size());
-        final ExecutorService executorService = Executors.newFixedThreadPool(ConverterSettings.getInstance().getThreadCount());
-        final Collection<Callable<File>> callables = new ArrayList<Callable<File>>(inputFiles.size());
-        for (final File file : inputFiles) {
-            callables.add(new Callable<File>() {
-
-                @Override
-                public File call() throws Exception {
-                    return XmlParserDOM.this.parse(file, language);
-                }
-            });
-        }
+    protected void convert(final InputStream inputStream, final ByteBuffer source, final OutputStream output, final Locale language)
+            throws IOException {
         try {
-            final List<Future<File>> futures = executorService.invokeAll(callables);
-            for (final Future<File> future : futures) {
-                final File result = future.get();
-//                outputFiles.add(result);
-            }
-            logger.debug("Finished converting all files.");
-        } catch (final ExecutionException ex) {
-            logger.warn("The execution of a single callable resulted in an exception.", ex);
-        } catch (final InterruptedException ex) {
-            logger.warn("The execution was interrupted.", ex);
-        } catch (final CancellationException ex) {
-            logger.warn("The execution was cancelled.", ex);
-        } finally {
-            for (final File file : files) {
-                this.originalInputFiles.remove(file);
-            }
-            try {
-                executorService.shutdownNow();
-            } catch (final Exception ex) {
-                logger.warn("Exception while shutting down the executor service.", ex);
-                executorService.shutdownNow();
-            }
+            final Document document = this.getSAXBuilder().build(inputStream);
+            final Element root = document.getRootElement();
+            root.addNamespaceDeclaration(Namespace.getNamespace(CONVERTER_NAMESPACE_PREFIX, CONVERTER_NAMESPACE_URI));
+            this.processMath(root, ConversionContext.forSettings(language));
+            this.outputter.output(document, output);
+            output.flush();
+        } catch (final JDOMException ex) {
+            throw new IOException("Error while creating DOM document.", ex);
         }
-//        return outputFiles;
-        return null;
     }
     
     /**
-     * Parses single file. For every occurrence of math element inside input 
-     * XML file new {@link MathMLNode} tree is builded and subsequently converted
-     * to string.
-     * 
-     * @param file Input XML file.
-     * @param language Language of conversion.
-     * @return A file with every occurence of <code>&lt;math&gt;</code> tag replaced
-     *  with converted string inside <code>&lt;mathconv&gt;</code> tag.
-     * @throws UnsupportedLanguageException
+     * Builds a document from input characters, see
+     * {@link #convert(java.io.InputStream, java.nio.ByteBuffer, java.io.OutputStream, java.util.Locale) }.
+     * Output declares encoding set by output format (UTF-8).
      */
     @Override
-    public File parse(@Nonnull final File file, final Locale language) throws UnsupportedLanguageException {
-        Validate.isTrue(file != null, "File for transformation should not be null.");
-        this.checkSupportedLanguages(language);
-        
-        int executionNumber = this.atomicInteger.incrementAndGet();
-        logger.debug("Processing file [" + executionNumber + "] [" + file.getPath() + "].");
-        
-        String outputFilePath;
-        if (StringUtils.isBlank(ConverterSettings.getInstance().getOutputDirectory())) {
-            String filePath = file.getPath();
-            outputFilePath = filePath.substring(0, filePath.lastIndexOf('.')) + "-converted.xml";
-        } else {
-            String suffix = "";
-            for (final File f : this.originalInputFiles) {
-                if (file.getPath().startsWith(f.getPath())) {
-                    suffix = StringUtils.difference(f.getPath(), file.getPath());
-                    break;
-                }
-            }
-            if (StringUtils.isBlank(suffix)) {
-                suffix = file.getName();
-            }
-            if (!suffix.startsWith(System.getProperty("file.separator"))) {
-                suffix = System.getProperty("file.separator") + suffix;
-            }
-            outputFilePath = ConverterSettings.getInstance().getOutputDirectory() + suffix;
-            if (outputFilePath.endsWith("zip")) {
-                outputFilePath = outputFilePath.substring(0, outputFilePath.lastIndexOf("."));
-            }
-        }
-        
-        File outputFile = new File(outputFilePath);
-        outputFile.getParentFile().mkdirs();
+    protected void convert(final Reader input, final Writer output, final Locale language) throws IOException {
         try {
-            outputFile.createNewFile();
-        } catch (IOException ex) {
-            logger.warn("File [{}] already exists.", outputFile.getPath());
-        }
-    
-        try {
-            InputStream inputStream;
-            if (file.getName().endsWith("zip")) {
-                inputStream = Unzipper.unzip(file);
-            } else {
-                inputStream = new FileInputStream(file);
-            }
-            final Document document = this.createSAXBuilder().build(inputStream);
+            final Document document = this.getSAXBuilder().build(input);
             final Element root = document.getRootElement();
             root.addNamespaceDeclaration(Namespace.getNamespace(CONVERTER_NAMESPACE_PREFIX, CONVERTER_NAMESPACE_URI));
-            this.processMath(root, language);
-            final OutputStream output = new FileOutputStream(outputFile);
+            this.processMath(root, ConversionContext.forSettings(language));
             this.outputter.output(document, output);
             output.flush();
-            output.close();
-            inputStream.close();
-        } catch (final FileNotFoundException ex) {
-            logger.error("Input file not found.", ex);
         } catch (final JDOMException ex) {
-            logger.error("Error while creating DOM document", ex);
-        } catch (final IOException ex) {
-            logger.error("IO error.", ex);
+            throw new IOException("Error while creating DOM document.", ex);
         }
-        return null;
     }
     
-    private void processMath(final Element element, final Locale language) {
+    private void processMath(final Element element, final ConversionContext context) {
         if ("math".equals(element.getName())) {
-            final MathMLNode tree = this.createTree(element);
+            final MathMLNode tree = new ElementView(element);
             element.setNamespace(Namespace.getNamespace(CONVERTER_NAMESPACE_PREFIX, CONVERTER_NAMESPACE_URI));
             element.setName(CONVERTER_ELEMENT_NAME);
-            final String converted = this.converter.convert(tree, language);
+            final String converted = this.converter.convert(tree, context);
             element.removeContent();
             element.setText(converted);
         } else {
             for (final Element child : element.getChildren()) {
-                this.processMath(child, language);
+                this.processMath(child, context);
             }
         }
     }
     
-    private MathMLNode createTree(final Element element) {
-        final MathMLNode node = new MathMLNode();
-        node.setType(MathMLElement.forElementName(element.getName()));
-        final String value = element.getText().trim();
-        if (StringUtils.isNotBlank(value)) {
-            node.setValue(value);
-        }
-        for (final Attribute attr : element.getAttributes()) {
-            node.getAttributes().add(new XmlAttribute(attr.getName(), attr.getValue()));
-        }
-        for (final Element child : element.getChildren()) {
-            final MathMLNode childTree = this.createTree(child);
-            childTree.setParent(node);
-            node.getChildren().add(childTree);
-        }
-        return node;
-    }
-    
-    /**
-     * Checks whether the required language is supported by the converter.
-     * @param language Required language.
-     * @throws UnsupportedLanguageException If the required language is not supported. 
-     */
-    private void checkSupportedLanguages(final Locale language) throws UnsupportedLanguageException {
-        if (!ConverterSettings.getInstance().getSupportedLanguages().contains(language.getLanguage())) {
-            throw new UnsupportedLanguageException(String.format("[%1$s] is not supported.", language.getLanguage()));
-        }
-    }
-    
-    /**
-     * Find all child files of a given file.
-     * @param file Input file.
-     * @return Always returns nonnull list, if given file is a file (not a directory)
-     *  returns a list that contains only this file.
-     */
-    private List<File> findFiles(final File file) {
-        final List<File> files = new ArrayList<File>();
-        if (file.canRead()) {
-            if (file.isFile()) {
-                files.add(file);
-                return files;
-            } else {
-                for (final File child : file.listFiles()) {
-                    files.addAll(this.findFiles(child));
-                }
-            }
-        }
-        return files;
-    }
-
     @Override
     public String parse(String inputString, Locale language) throws UnsupportedLanguageException {
         Validate.isTrue(StringUtils.isNotBlank(inputString), "Input string cant be null nor blank.");
         try {
-            InputStream inputStream = new ByteArrayInputStream(inputString.getBytes());
-            final Document document = this.createSAXBuilder().build(inputStream);
+            final Document document = this.getSAXBuilder().build(new StringReader(inputString));
             final Element root = document.getRootElement();
             root.addNamespaceDeclaration(Namespace.getNamespace(CONVERTER_NAMESPACE_PREFIX, CONVERTER_NAMESPACE_URI));
-            String converted = this.processMathAsString(root, language);
+            String converted = this.processMathAsString(root, ConversionContext.forSettings(language));
             return converted;
         } catch (final FileNotFoundException ex) {
             logger.error("Input file not found.", ex);
@@ -317,15 +207,15 @@ public final class XmlParserDOM implements XmlParser {
         return null;
     }
     
-    private String processMathAsString(final Element element, final Locale language) {
+    private String processMathAsString(final Element element, final ConversionContext context) {
         final StringBuilder builder = new StringBuilder();
         if ("math".equals(element.getName())) {
-            final MathMLNode tree = this.createTree(element);
-            final String converted = this.converter.convert(tree, language);
+            final MathMLNode tree = new ElementView(element);
+            final String converted = this.converter.convert(tree, context);
             builder.append(converted).append(Strings.SPACE);
         } else {
             for (final Element child : element.getChildren()) {
-                builder.append(processMathAsString(child, language));
+                builder.append(processMathAsString(child, context));
             }
         }
         return builder.toString();
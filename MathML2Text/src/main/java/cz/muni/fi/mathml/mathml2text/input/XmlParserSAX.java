@@ -0,0 +1,548 @@
+package cz.muni.fi.mathml.mathml2text.input;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.annotation.Nonnull;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.DefaultHandler;
+
+import cz.muni.fi.mathml.mathml2text.converter.ConversionContext;
+import cz.muni.fi.mathml.mathml2text.converter.MathMLConverter;
+import cz.muni.fi.mathml.mathml2text.converter.Strings;
+import cz.muni.fi.mathml.mathml2text.converter.tree.MathMLElement;
+import cz.muni.fi.mathml.mathml2text.converter.tree.MathMLNode;
+import cz.muni.fi.mathml.mathml2text.converter.tree.TokenTable;
+import cz.muni.fi.mathml.mathml2text.converter.tree.XmlAttribute;
+
+/**
+ * Parser driven by SAX events. {@link MathMLNode} trees are built directly
+ * from events inside <code>&lt;math&gt;</code> elements, everything else
+ * is written to the output as soon as it is received, without building any
+ * intermediate objects. Markup is written by this parser, no serializer is used.
+ * <p>
+ * Every thread reuses its own {@link SAXParser}. Named entities are resolved
+ * from {@link EntityTable}.
+ *
+ * @author agent
+ * @date 2026-10-17T23:48:37+0000
+ */
+public final class XmlParserSAX extends AbstractXmlParser {
+
+    private static final Logger logger = LoggerFactory.getLogger(XmlParserSAX.class);
+    /**
+     * Encoding of output.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * Property of {@link XMLReader} for setting {@link LexicalHandler}.
+     */
+    private static final String LEXICAL_HANDLER_PROPERTY = "http://xml.org/sax/properties/lexical-handler";
+    /**
+     * Responsible for converting MathML tree to string.
+     */
+    private final MathMLConverter converter;
+    /**
+     * Factory of SAX parsers.
+     */
+    private final SAXParserFactory factory;
+    /**
+     * SAX parser of the current thread.
+     */
+    private final ThreadLocal<SAXParser> parser = new ThreadLocal<SAXParser>();
+
+    /**
+     * Constructor. Uses default SAX parser factory.
+     */
+    public XmlParserSAX() {
+        this(SAXParserFactory.newInstance());
+    }
+
+    /**
+     * Constructor.
+     * @param saxParserFactoryClassName Class name of SAX parser factory,
+     *  which is instantiated directly instead of being looked up by JAXP.
+     */
+    public XmlParserSAX(final String saxParserFactoryClassName) {
+        this(SAXParserFactory.newInstance(saxParserFactoryClassName, null));
+    }
+
+    private XmlParserSAX(final SAXParserFactory factory) {
+        this.converter = new MathMLConverter();
+        this.factory = factory;
+        this.factory.setNamespaceAware(true);
+        this.factory.setValidating(false);
+    }
+
+    /**
+     * Parses input string and converts every occurence of math element into
+     * plain text. Returned string is a concatenation of every such converted
+     * element.
+     * @param inputString Input.
+     * @param language Language of conversion.
+     * @return Input converted to plain text.
+     * @throws UnsupportedLanguageException
+     */
+    @Override
+    public String parse(@Nonnull final String inputString, final Locale language) throws UnsupportedLanguageException {
+        Validate.isTrue(StringUtils.isNotBlank(inputString));
+        this.checkSupportedLanguages(language);
+        final ConversionHandler handler = new ConversionHandler(null, ConversionContext.forSettings(language));
+        try {
+            this.parse(new InputSource(new ByteArrayInputStream(inputString.getBytes())), handler);
+            return handler.getConverted();
+        } catch (final SAXException ex) {
+            logger.error("Error while parsing input string.", ex);
+        } catch (final IOException ex) {
+            logger.error("IO error.", ex);
+        }
+        return Strings.EMPTY;
+    }
+
+    /**
+     * Converts a document. Canonicalization is not supported by this parser.
+     * @param inputStream Input data.
+     * @param source All input data in a buffer, not used.
+     * @param output Output data.
+     * @param language Language of conversion.
+     */
+    @Override
+    protected void convert(final InputStream inputStream, final ByteBuffer source, final OutputStream output, final Locale language)
+            throws IOException {
+        final Writer writer = new OutputStreamWriter(output, UTF_8);
+        try {
+            this.parse(new InputSource(inputStream), new ConversionHandler(writer, ConversionContext.forSettings(language)));
+        } catch (final SAXException ex) {
+            throw new IOException("Error while parsing input file.", ex);
+        } finally {
+            writer.flush();
+        }
+    }
+
+    /**
+     * Converts a document read from characters. Output declares UTF-8 encoding.
+     * @param input Input characters.
+     * @param output Output characters.
+     * @param language Language of conversion.
+     */
+    @Override
+    protected void convert(final Reader input, final Writer output, final Locale language) throws IOException {
+        try {
+            this.parse(new InputSource(input), new ConversionHandler(output, ConversionContext.forSettings(language)));
+        } catch (final SAXException ex) {
+            throw new IOException("Error while parsing input document.", ex);
+        } finally {
+            output.flush();
+        }
+    }
+
+    /**
+     * Parses input by SAX parser of the current thread.
+     */
+    private void parse(final InputSource input, final ConversionHandler handler) throws SAXException, IOException {
+        final SAXParser saxParser = this.getParser();
+        try {
+            final XMLReader reader = saxParser.getXMLReader();
+            reader.setContentHandler(handler);
+            reader.setErrorHandler(handler);
+            reader.setProperty(LEXICAL_HANDLER_PROPERTY, handler);
+            reader.setEntityResolver(new EntityResolver() {
+                @Override
+                public InputSource resolveEntity(final String publicId, final String systemId) {
+                    if (systemId != null && systemId.endsWith("dtd")) {
+                        // compact DTD with entity declarations only
+                        return new InputSource(EntityTable.getInstance().createDTDStream());
+                    }
+                    return null;
+                }
+            });
+            reader.parse(input);
+        } finally {
+            saxParser.reset();
+        }
+    }
+
+    /**
+     * Returns SAX parser of the current thread, it is created by the first call.
+     */
+    private SAXParser getParser() throws SAXException {
+        SAXParser saxParser = this.parser.get();
+        if (saxParser == null) {
+            try {
+                saxParser = this.factory.newSAXParser();
+            } catch (final ParserConfigurationException ex) {
+                throw new SAXException("Cannot create SAX parser.", ex);
+            }
+            this.parser.set(saxParser);
+        }
+        return saxParser;
+    }
+
+    /**
+     * Handler of SAX events of a single document. Content outside of math
+     * elements is written to the output, math elements are converted.
+     */
+    private final class ConversionHandler extends DefaultHandler implements LexicalHandler {
+        /**
+         * Output, {@code null} if only converted values are collected.
+         */
+        private final Writer writer;
+        /**
+         * Context of conversion of the document.
+         */
+        private final ConversionContext context;
+        /**
+         * Converted values, if output is not written.
+         */
+        private final StringBuilder converted = new StringBuilder();
+        /**
+         * Namespace declarations of the next element (prefix, URI).
+         */
+        private final List<String> namespaces = new ArrayList<String>();
+        /**
+         * Text of the current node of math tree.
+         */
+        private final StringBuilder text = new StringBuilder();
+        /**
+         * Normalized values of the document.
+         */
+        private final TokenTable tokens = new TokenTable();
+        /**
+         * Indicates whether the next element is the root element.
+         */
+        private boolean isRoot = true;
+        /**
+         * Indicates whether the last start tag was not closed yet (it will be
+         * closed as empty element tag, if the element has no content).
+         */
+        private boolean startTagOpen;
+        /**
+         * Indicates whether DTD is being parsed.
+         */
+        private boolean inDTD;
+        /**
+         * Root of math tree, {@code null} outside of math element.
+         */
+        private MathMLNode tree;
+        /**
+         * Current node of math tree.
+         */
+        private MathMLNode currentNode;
+        /**
+         * Depth inside of skipped element, 0 if no element is skipped.
+         */
+        private int skippedDepth;
+
+        ConversionHandler(final Writer writer, final ConversionContext context) {
+            this.writer = writer;
+            this.context = context;
+        }
+
+        /**
+         * Returns concatenation of converted values.
+         */
+        String getConverted() {
+            return this.converted.toString();
+        }
+
+        @Override
+        public void startDocument() throws SAXException {
+            this.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        }
+
+        @Override
+        public void endDocument() throws SAXException {
+            this.closeStartTag();
+        }
+
+        @Override
+        public void startPrefixMapping(final String prefix, final String uri) {
+            if (this.tree == null) {
+                this.namespaces.add(prefix);
+                this.namespaces.add(uri);
+            }
+        }
+
+        @Override
+        public void startElement(final String uri, final String localName, final String qName, final Attributes attributes)
+                throws SAXException {
+            if (this.tree != null) {
+                if (this.skippedDepth > 0) {
+                    ++this.skippedDepth;
+                    return;
+                }
+                this.setNodeValue();
+                final MathMLNode node = createNode(localName, attributes);
+                // skip content that will not be converted
+                final boolean ignored = MathMLConverter.isContentIgnored(this.currentNode, node.getType(), this.context);
+                node.setParent(this.currentNode);
+                this.currentNode.getChildren().add(node);
+                if (ignored) {
+                    this.skippedDepth = 1;
+                } else {
+                    this.currentNode = node;
+                }
+                return;
+            }
+            if (MathMLElement.MATH.getElementName().equals(localName)) {
+                this.namespaces.clear();
+                this.tree = createNode(localName, attributes);
+                this.currentNode = this.tree;
+                return;
+            }
+            this.closeStartTag();
+            this.write("<");
+            this.write(qName);
+            for (int index = 0; index < attributes.getLength(); ++index) {
+                this.writeAttribute(attributes.getQName(index), attributes.getValue(index));
+            }
+            for (int index = 0; index < this.namespaces.size(); index += 2) {
+                final String prefix = this.namespaces.get(index);
+                this.writeAttribute(prefix.isEmpty() ? "xmlns" : "xmlns:" + prefix, this.namespaces.get(index + 1));
+            }
+            this.namespaces.clear();
+            if (this.isRoot) {
+                this.writeAttribute("xmlns:" + CONVERTER_NAMESPACE_PREFIX, CONVERTER_NAMESPACE_URI);
+                this.isRoot = false;
+            }
+            this.startTagOpen = true;
+        }
+
+        @Override
+        public void endElement(final String uri, final String localName, final String qName) throws SAXException {
+            if (this.tree == null) {
+                if (this.startTagOpen) {
+                    this.write("/>");
+                    this.startTagOpen = false;
+                } else {
+                    this.write("</");
+                    this.write(qName);
+                    this.write(">");
+                }
+                return;
+            }
+            if (this.skippedDepth > 0) {
+                --this.skippedDepth;
+                return;
+            }
+            this.setNodeValue();
+            // we are going "one level up" inside the tree
+            this.currentNode = this.currentNode.getParent();
+            if (this.currentNode == null) {
+                this.writeConverted(XmlParserSAX.this.converter.convert(this.tree, this.context));
+                this.tree = null;
+            }
+        }
+
+        @Override
+        public void characters(final char[] ch, final int start, final int length) throws SAXException {
+            if (this.tree != null) {
+                if (this.skippedDepth == 0) {
+                    this.text.append(ch, start, length);
+                }
+                return;
+            }
+            this.closeStartTag();
+            this.writeEscaped(ch, start, length, false);
+        }
+
+        @Override
+        public void ignorableWhitespace(final char[] ch, final int start, final int length) throws SAXException {
+            this.characters(ch, start, length);
+        }
+
+        @Override
+        public void processingInstruction(final String target, final String data) throws SAXException {
+            if (this.tree == null) {
+                this.closeStartTag();
+                this.write("<?");
+                this.write(target);
+                if (StringUtils.isNotEmpty(data)) {
+                    this.write(" ");
+                    this.write(data);
+                }
+                this.write("?>");
+            }
+        }
+
+        @Override
+        public void startDTD(final String name, final String publicId, final String systemId) throws SAXException {
+            this.inDTD = true;
+            this.write("<!DOCTYPE ");
+            this.write(name);
+            if (publicId != null) {
+                this.write(" PUBLIC \"");
+                this.write(publicId);
+                this.write("\" \"");
+                this.write(systemId);
+                this.write("\"");
+            } else if (systemId != null) {
+                this.write(" SYSTEM \"");
+                this.write(systemId);
+                this.write("\"");
+            }
+            this.write(">");
+        }
+
+        @Override
+        public void endDTD() {
+            this.inDTD = false;
+        }
+
+        @Override
+        public void comment(final char[] ch, final int start, final int length) throws SAXException {
+            if (this.tree == null && !this.inDTD) {
+                this.closeStartTag();
+                this.write("<!--");
+                this.write(new String(ch, start, length));
+                this.write("-->");
+            }
+        }
+
+        @Override
+        public void startEntity(final String name) {
+        }
+
+        @Override
+        public void endEntity(final String name) {
+        }
+
+        @Override
+        public void startCDATA() {
+        }
+
+        @Override
+        public void endCDATA() {
+        }
+
+        /**
+         * Writes converted math element.
+         */
+        private void writeConverted(final String value) throws SAXException {
+            if (this.writer == null) {
+                this.converted.append(value);
+                return;
+            }
+            this.closeStartTag();
+            if (this.isRoot) {
+                this.write("<" + CONVERTER_ELEMENT_NAME + " xmlns=\"" + CONVERTER_NAMESPACE_URI + "\">");
+                this.writeEscaped(value.toCharArray(), 0, value.length(), false);
+                this.write("</" + CONVERTER_ELEMENT_NAME + ">");
+                this.isRoot = false;
+            } else {
+                this.write("<" + CONVERTER_NAMESPACE_PREFIX + ":" + CONVERTER_ELEMENT_NAME + ">");
+                this.writeEscaped(value.toCharArray(), 0, value.length(), false);
+                this.write("</" + CONVERTER_NAMESPACE_PREFIX + ":" + CONVERTER_ELEMENT_NAME + ">");
+            }
+        }
+
+        /**
+         * Sets collected text to the current node of math tree, if it is not blank.
+         */
+        private void setNodeValue() {
+            if (this.text.length() > 0) {
+                final String value = this.text.toString();
+                if (StringUtils.isNotBlank(value)) {
+                    this.currentNode.setValue(this.tokens.get(value));
+                }
+                this.text.setLength(0);
+            }
+        }
+
+        /**
+         * Finishes start tag of the previous element, it has some content.
+         */
+        private void closeStartTag() throws SAXException {
+            if (this.startTagOpen) {
+                this.write(">");
+                this.startTagOpen = false;
+            }
+        }
+
+        private void writeAttribute(final String name, final String value) throws SAXException {
+            this.write(" ");
+            this.write(name);
+            this.write("=\"");
+            this.writeEscaped(value.toCharArray(), 0, value.length(), true);
+            this.write("\"");
+        }
+
+        /**
+         * Writes text, characters with special meaning in XML are escaped.
+         */
+        private void writeEscaped(final char[] ch, final int start, final int length, final boolean attribute)
+                throws SAXException {
+            if (this.writer == null) {
+                return;
+            }
+            try {
+                int written = start;
+                final int end = start + length;
+                for (int index = start; index < end; ++index) {
+                    final String replacement;
+                    switch (ch[index]) {
+                        case '&': replacement = "&amp;"; break;
+                        case '<': replacement = "&lt;"; break;
+                        case '>': replacement = "&gt;"; break;
+                        case '"': replacement = attribute ? "&quot;" : null; break;
+                        default: replacement = null; break;
+                    }
+                    if (replacement != null) {
+                        this.writer.write(ch, written, index - written);
+                        this.writer.write(replacement);
+                        written = index + 1;
+                    }
+                }
+                this.writer.write(ch, written, end - written);
+            } catch (final IOException ex) {
+                throw new SAXException(ex);
+            }
+        }
+
+        private void write(final String markup) throws SAXException {
+            if (this.writer == null) {
+                return;
+            }
+            try {
+                this.writer.write(markup);
+            } catch (final IOException ex) {
+                throw new SAXException(ex);
+            }
+        }
+    }
+
+    /**
+     * Creates a node of math tree.
+     */
+    private static MathMLNode createNode(final String localName, final Attributes attributes) {
+        final MathMLNode node = new MathMLNode();
+        node.setType(MathMLElement.forElementName(localName));
+        for (int index = 0; index < attributes.getLength(); ++index) {
+            node.getAttributes().add(new XmlAttribute(attributes.getLocalName(index), attributes.getValue(index)));
+        }
+        return node;
+    }
+}
@@ -2,26 +2,20 @@ package cz.muni.fi.mathml.mathml2text.input;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Set;
-import java.util.concurrent.Callable;
-import java.util.concurrent.CancellationException;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Map;
 
 import javax.annotation.Nonnull;
 import javax.xml.stream.XMLInputFactory;
@@ -31,17 +25,25 @@ import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.XMLStreamWriter;
 
+import com.ctc.wstx.api.WstxInputProperties;
+
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
+import org.codehaus.stax2.LocationInfo;
+import org.codehaus.stax2.XMLInputFactory2;
+import org.codehaus.stax2.XMLOutputFactory2;
+import org.codehaus.stax2.XMLStreamReader2;
 import org.jdom2.JDOMException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import cz.muni.fi.mathml.mathml2text.converter.ConversionContext;
 import cz.muni.fi.mathml.mathml2text.converter.ConverterSettings;
 import cz.muni.fi.mathml.mathml2text.converter.MathMLConverter;
 import cz.muni.fi.mathml.mathml2text.converter.Strings;
 import cz.muni.fi.mathml.mathml2text.converter.tree.MathMLElement;
 import cz.muni.fi.mathml.mathml2text.converter.tree.MathMLNode;
+import cz.muni.fi.mathml.mathml2text.converter.tree.TokenTable;
 import cz.muni.fi.mathml.mathml2text.converter.tree.XmlAttribute;
 import cz.muni.fi.mir.mathmlcanonicalization.MathMLCanonizer;
 import cz.muni.fi.mir.mathmlcanonicalization.modules.ElementMinimizer;
@@ -74,7 +76,7 @@ import cz.muni.fi.mir.mathmlcanonicalization.modules.OperatorNormalizer;
  * @author Maros Kucbel Oct 31, 2012, 19:07:12 PM
  * @date 2012-10-31T19:07:12+0100
  */
-public final class XmlParserStAX implements XmlParser {
+public final class XmlParserStAX extends AbstractXmlParser {
 
     /**
      * Logger.
@@ -93,17 +95,23 @@ public final class XmlParserStAX implements XmlParser {
      */
     private final XMLOutputFactory xmlOutputFactory;
     
-    private static final String CONVERTER_NAMESPACE_URI = "http://code.google.com/p/mathml-converter/";
-    
-    private static final String CONVERTER_NAMESPACE_PREFIX = "conv";
-    
-    private static final String CONVERTER_ELEMENT_NAME = "math";
-    
     private final MathMLCanonizer canonicalizer;
-    
-    private final Set<File> originalInputFiles = new HashSet<File>();
-    
-    private final AtomicInteger atomicInteger = new AtomicInteger(0);
+    /**
+     * Length of input buffer (in characters) of Woodstox reader configured for speed.
+     */
+    private static final int SPEED_INPUT_BUFFER_LENGTH = 16000;
+    /**
+     * Encoding of input strings passed to StAX reader.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * Length of buffer for reading character input.
+     */
+    private static final int READ_BUFFER_LENGTH = 8192;
+    /**
+     * Indicates whether documents are parsed by asynchronous parser fed from read-ahead input.
+     */
+    private final boolean asyncInput;
     
     /**
      * Constructor.
@@ -113,6 +121,17 @@ public final class XmlParserStAX implements XmlParser {
         this(true);
     }
     
+    /**
+     * Constructor.
+     * Delegates to {@link #XmlParserStAX(javax.xml.stream.XMLInputFactory, javax.xml.stream.XMLOutputFactory, boolean) }
+     * with default factories of StAX API.
+     * 
+     * @param supportDTD Enable DTD processing.
+     */
+    public XmlParserStAX(final boolean supportDTD) {
+        this(XMLInputFactory.newInstance(), XMLOutputFactory.newInstance(), supportDTD);
+    }
+    
     /**
      * Constructor.
      * {@link XMLInputFactory} is configured with values:
@@ -123,34 +142,100 @@ public final class XmlParserStAX implements XmlParser {
      *  <li>{@link XMLInputFactory#IS_VALIDATING} &rarr <code>false</code></li>
      *  <li>{@link XMLInputFactory#SUPPORT_DTD} &rarr <code>true</code></li>
      * </ul>
+     * Named entities are resolved from {@link EntityTable}. If the factory
+     * supports custom entities (Woodstox), they are passed to it directly, 
+     * otherwise DTD declared by input is replaced with compact DTD containing
+     * only entity declarations.
+     * If {@link ConverterSettings#isSpeedProfile()} is set, factories are
+     * further configured for speed (see {@link #configureForSpeed()}).
+     * If {@link ConverterSettings#isAsyncInput()} is set and the factory creates
+     * asynchronous parsers (Aalto), documents are rewritten by asynchronous
+     * parser (see {@link AsyncStreamReader}).
      * 
+     * @param inputFactory Input factory of the parser implementation, it is configured by this parser.
+     * @param outputFactory Output factory of the parser implementation.
      * @param supportDTD Enable DTD processing.
      */
-    public XmlParserStAX(final boolean supportDTD) {
+    public XmlParserStAX(final XMLInputFactory inputFactory, final XMLOutputFactory outputFactory, final boolean supportDTD) {
         this.converter = new MathMLConverter();
-        this.xmlInputFactory = XMLInputFactory.newInstance();
+        this.xmlInputFactory = inputFactory;
         this.xmlInputFactory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, true);
         this.xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, true);
         this.xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
         this.xmlInputFactory.setProperty(XMLInputFactory.IS_VALIDATING, Boolean.FALSE);
         this.xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, supportDTD);
+        declareEntities(this.xmlInputFactory);
         this.xmlInputFactory.setProperty(XMLInputFactory.RESOLVER, new XMLResolver() {
             @Override
             public Object resolveEntity(String publicID, String systemID, String baseURI, String namespace) throws XMLStreamException {
                 if (systemID.endsWith("dtd")) { 
-                    return XmlParserStAX.class.getResourceAsStream("xhtml-math11-f.dtd");
+                    return EntityTable.getInstance().createDTDStream();
                 }
                 return null;
             }
         });
-        this.xmlOutputFactory = XMLOutputFactory.newInstance();
+        this.xmlOutputFactory = outputFactory;
         this.canonicalizer = new MathMLCanonizer()//
                 .addModule(new ElementMinimizer())//
                 .addModule(new MfencedReplacer())//
                 .addModule(new MrowNormalizer())//
                 .addModule(new OperatorNormalizer());
+        if (ConverterSettings.getInstance().isSpeedProfile()) {
+            this.configureForSpeed();
+        }
+        this.asyncInput = ConverterSettings.getInstance().isAsyncInput() && AsyncStreamReader.isSupported(inputFactory);
+        if (ConverterSettings.getInstance().isAsyncInput() && !this.asyncInput) {
+            this.getLogger().warn("Parser does not support asynchronous input, blocking reader is used.");
+        }
+    }
+    
+    /**
+     * Applies Stax2 speed profile to the factories 
+     * ({@link XMLInputFactory2#configureForSpeed()}, {@link XMLOutputFactory2#configureForSpeed()}).
+     * The profile is adjusted to the needs of conversion:
+     * <ul>
+     *  <li>{@link XMLInputFactory#IS_COALESCING} stays <code>true</code>, 
+     *      the text of an element is read as a single event,</li>
+     *  <li>{@link XMLInputFactory2#P_PRESERVE_LOCATION} is <code>true</code>
+     *      only if output is spliced, other modes do not use locations,</li>
+     *  <li>{@link XMLInputFactory2#P_INTERN_NAMES} is <code>true</code>, element
+     *      names are shared by all documents,</li>
+     *  <li>input buffer of Woodstox reader is enlarged, so that it is refilled less often.</li>
+     * </ul>
+     * Factories which do not implement Stax2 API are left unchanged.
+     */
+    private void configureForSpeed() {
+        if (this.xmlInputFactory instanceof XMLInputFactory2) {
+            ((XMLInputFactory2) this.xmlInputFactory).configureForSpeed();
+            this.xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+            this.xmlInputFactory.setProperty(XMLInputFactory2.P_PRESERVE_LOCATION, 
+                    ConverterSettings.getInstance().isSpliceOutput());
+            if (this.xmlInputFactory.isPropertySupported(XMLInputFactory2.P_INTERN_NAMES)) {
+                this.xmlInputFactory.setProperty(XMLInputFactory2.P_INTERN_NAMES, Boolean.TRUE);
+            }
+            if (this.xmlInputFactory.isPropertySupported(WstxInputProperties.P_INPUT_BUFFER_LENGTH)) {
+                this.xmlInputFactory.setProperty(WstxInputProperties.P_INPUT_BUFFER_LENGTH, SPEED_INPUT_BUFFER_LENGTH);
+            }
+        }
+        if (this.xmlOutputFactory instanceof XMLOutputFactory2) {
+            ((XMLOutputFactory2) this.xmlOutputFactory).configureForSpeed();
+        }
     }
     
+    /**
+     * Declares entities of {@link EntityTable} directly, if the factory
+     * supports it (Woodstox), so that no DTD has to be processed.
+     * @param inputFactory Input factory.
+     */
+    // Woodstox has no other way to declare entities without DTD
+    @SuppressWarnings("deprecation")
+    private static void declareEntities(final XMLInputFactory inputFactory) {
+        if (inputFactory.isPropertySupported(WstxInputProperties.P_CUSTOM_INTERNAL_ENTITIES)) {
+            inputFactory.setProperty(WstxInputProperties.P_CUSTOM_INTERNAL_ENTITIES, 
+                    EntityTable.getInstance().getDeclarations());
+        }
+    }
+
     /**
      * Returns logger for this class.
      */
@@ -162,6 +247,9 @@ public final class XmlParserStAX implements XmlParser {
      * Parses input string and converts every occurence of math element into 
      * plain text. Returned string is a concatenation of every such converted
      * element.
+     * Input is tokenized by {@link MathSnippetTokenizer}, StAX reader is used
+     * only if the tokenizer does not support the input or if input should be
+     * canonicalized.
      * @param inputString Input.
      * @param language Language of conversion.
      * @return Input converted to plain text.
@@ -172,8 +260,26 @@ public final class XmlParserStAX implements XmlParser {
             throws UnsupportedLanguageException {
         Validate.isTrue(StringUtils.isNotBlank(inputString));
         this.checkSupportedLanguages(language);
+        final ConversionContext context = ConversionContext.forSettings(language);
         
-        XMLStreamReader reader;
+        if (!ConverterSettings.getInstance().isCanonicalize()) {
+            final List<MathMLNode> trees = new MathSnippetTokenizer(inputString, context).tokenize();
+            if (trees != null) {
+                final StringBuilder output = new StringBuilder();
+                for (final MathMLNode tree : trees) {
+                    output.append(this.converter.convert(tree, context));
+                }
+                return output.toString();
+            }
+            this.getLogger().debug("Input string is not supported by tokenizer, it is parsed by StAX reader.");
+        }
+        
+        final StreamPool pool = StreamPool.getInstance();
+        XMLStreamReader reader = null;
+        /** text values of the document */
+        final TextInterner texts = new TextInterner();
+        /** normalized values of the document */
+        final TokenTable tokens = new TokenTable();
         
         /** root node */
         MathMLNode tree = null;
@@ -187,10 +293,10 @@ public final class XmlParserStAX implements XmlParser {
         try {
             // canonicalize
             InputStream inputStream = ConverterSettings.getInstance().isCanonicalize()
-                                      ? this.canonicalize(new ByteArrayInputStream(inputString.getBytes()))
-                                      : new ByteArrayInputStream(inputString.getBytes());
+                                      ? this.canonicalize(new ByteArrayInputStream(inputString.getBytes(UTF_8)))
+                                      : new ByteArrayInputStream(inputString.getBytes(UTF_8));
             // create stream reader from input file
-            reader = this.xmlInputFactory.createXMLStreamReader(inputStream, "UTF-8");
+            reader = pool.createReader(this.xmlInputFactory, inputStream);
             StringBuilder output = new StringBuilder();
             // indicates whether we are inside a math element
             boolean processingMathMLElement = false;
@@ -228,11 +334,18 @@ public final class XmlParserStAX implements XmlParser {
                                     new XmlAttribute(reader.getAttributeLocalName(index), 
                                                      reader.getAttributeValue(index)));
                         }
+                        // skip content that will not be converted
+                        final boolean ignored = MathMLConverter.isContentIgnored(parentNode, currentElement, context);
                         // if parent node was set, set it to current node
                         if (parentNode != null) {
                             currentNode.setParent(parentNode);
                             parentNode.getChildren().add(currentNode);
                         }
+                        if (ignored) {
+                            skipElement(reader);
+                            currentNode = parentNode;
+                            break;
+                        }
 
                         // if we are just at math element initialize new tree
                         if (tree == null) {
@@ -253,7 +366,7 @@ public final class XmlParserStAX implements XmlParser {
                         switch (element) {
                             case MATH: {
                                 // transform created tree and write to output
-                                String converted = this.converter.convert(tree, language);
+                                String converted = this.converter.convert(tree, context);
                                 output.append(converted);
                                 processingMathMLElement = false;
                                 currentElement = null;
@@ -269,16 +382,18 @@ public final class XmlParserStAX implements XmlParser {
                         break;
                     }
                     case CHARACTERS: {
-                        final String value = reader.getText();
-                        if (currentElement != null && StringUtils.isNotBlank(value)) {
-                            currentNode.setValue(value);
+                        if (currentElement != null) {
+                            final String value = getNonBlankText(reader, texts);
+                            if (value != null) {
+                                currentNode.setValue(tokens.get(value));
+                            }
                         }
                         break;
                     }  
                     case ENTITY_REFERENCE: {
                         final String value = reader.getLocalName();
                         if (currentElement != null && StringUtils.isNotBlank(value)) {
-                            currentNode.setValue(value);
+                            currentNode.setValue(tokens.get(value));
                         }
                         break;
                     }
@@ -286,102 +401,280 @@ public final class XmlParserStAX implements XmlParser {
                         break;
                 }
             }
-            reader.close();
             return output.toString();
         } catch (final XMLStreamException ex) {
             this.getLogger().error("Cannot open xml file for reading.", ex);
+        } finally {
+            pool.release(reader);
         }
         return Strings.EMPTY;
     }
     
-    @Override
-    public List<File> parse(@Nonnull final List<File> files, final Locale language) throws UnsupportedLanguageException {
-        final List<File> inputFiles = new ArrayList<File>();
-        for (final File file : files) {
-            this.originalInputFiles.add(file);
-            inputFiles.addAll(this.findFiles(file));
-        }
-        final List<File> outputFiles = new ArrayList<File>(inputFiles.size());
-        final ExecutorService executorService = Executors.newFixedThreadPool(ConverterSettings.getInstance().getThreadCount());
-        final Collection<Callable<File>> callables = new ArrayList<Callable<File>>(inputFiles.size());
-        for (final File file : inputFiles) {
-            callables.add(new Callable<File>() {
-
+    /**
+     * Converts every math element of input string separately, see
+     * {@link #parseFormulas(java.io.InputStream, java.util.Locale, FormulaHandler) }.
+     * Character offsets of results are offsets in the string (unless it starts 
+     * with byte order mark), byte offsets are offsets in the string encoded in UTF-8.
+     * @param inputString Input. Can not be <code>null</code> or blank (consisting of only whitespace characters).
+     * @param language Language of conversion.
+     * @return Results of all math elements in document order.
+     * @throws UnsupportedLanguageException
+     */
+    public List<FormulaResult> parseFormulas(@Nonnull final String inputString, final Locale language)
+            throws UnsupportedLanguageException {
+        Validate.isTrue(StringUtils.isNotBlank(inputString), "Input string cant be null nor blank.");
+        final List<FormulaResult> results = new ArrayList<FormulaResult>();
+        try {
+            this.parseFormulas(new ByteArrayInputStream(inputString.getBytes(UTF_8)), language, new FormulaHandler() {
                 @Override
-                public File call() throws Exception {
-                    return XmlParserStAX.this.parse(file, language);
+                public void formulaConverted(final FormulaResult result) {
+                    results.add(result);
                 }
             });
+        } catch (final IOException ex) {
+            this.getLogger().error("IO error.", ex);
         }
+        return results;
+    }
+    
+    /**
+     * Converts every math element of input document separately. Result of every
+     * element is passed to the handler as soon as the element is converted, 
+     * together with its path and its position in the input. 
+     * Offsets are reported only by Stax2 readers that preserve locations
+     * (not by readers configured for speed, unless output is spliced), 
+     * otherwise they are <code>-1</code>. Input is read into memory as a whole,
+     * so that character offsets can be mapped to byte offsets.
+     * @param input Input data encoded in UTF-8, the stream is not closed.
+     * @param language Language of conversion.
+     * @param handler Receiver of results.
+     * @throws UnsupportedLanguageException
+     * @throws IOException If reading input fails.
+     */
+    public void parseFormulas(@Nonnull final InputStream input, final Locale language, @Nonnull final FormulaHandler handler)
+            throws UnsupportedLanguageException, IOException {
+        Validate.isTrue(input != null && handler != null, "Input stream and handler should not be null.");
+        this.checkSupportedLanguages(language);
+        final StreamPool pool = StreamPool.getInstance();
+        // splicer only maps offsets of the reader to bytes, nothing is written
+        final ByteRangeSplicer offsets = new ByteRangeSplicer(pool.readFully(input), null);
+        XMLStreamReader reader = null;
         try {
-            final List<Future<File>> futures = executorService.invokeAll(callables);
-            for (final Future<File> future : futures) {
-                final File result = future.get();
-//                outputFiles.add(result);
-            }
-            logger.debug("Finished converting all files.");
-        } catch (final ExecutionException ex) {
-            logger.warn("The execution of a single callable resulted in an exception.", ex);
-        } catch (final InterruptedException ex) {
-            logger.warn("The execution was interrupted.", ex);
-        } catch (final CancellationException ex) {
-            logger.warn("The execution was cancelled.", ex);
+            reader = pool.createReader(this.xmlInputFactory, offsets.getContentStream());
+            this.convertFormulas(reader, this.isLocationPreserved(reader) ? offsets : null, 
+                    ConversionContext.forSettings(language), handler);
+        } catch (final XMLStreamException ex) {
+            this.getLogger().error("Cannot open xml file for reading.", ex);
         } finally {
-            for (final File file : files) {
-                this.originalInputFiles.remove(file);
+            pool.release(reader);
+        }
+    }
+    
+    /**
+     * Indicates whether the reader reports offsets of events.
+     */
+    private boolean isLocationPreserved(final XMLStreamReader reader) {
+        return reader instanceof XMLStreamReader2
+                && !Boolean.FALSE.equals(this.xmlInputFactory.getProperty(XMLInputFactory2.P_PRESERVE_LOCATION));
+    }
+    
+    /**
+     * Converts math elements of a document one by one and passes their 
+     * results to the handler.
+     * @param reader Reader positioned at the start of document.
+     * @param offsets Splicer mapping offsets of the reader to bytes, 
+     *  {@code null} if the reader does not report offsets.
+     * @param context Context of conversion.
+     * @param handler Receiver of results.
+     */
+    private void convertFormulas(final XMLStreamReader reader, final ByteRangeSplicer offsets, final ConversionContext context,
+            final FormulaHandler handler) throws XMLStreamException {
+        final TextInterner texts = new TextInterner();
+        final TokenTable tokens = new TokenTable();
+        // steps of path to the current element and numbers of children of open elements by name
+        final List<String> steps = new ArrayList<String>();
+        final List<Map<String, Integer>> children = new ArrayList<Map<String, Integer>>();
+        children.add(new HashMap<String, Integer>());
+        int index = 0;
+        while (reader.hasNext()) {
+            final int eventCode = reader.next();
+            if (eventCode == XMLStreamReader.END_ELEMENT) {
+                steps.remove(steps.size() - 1);
+                children.remove(children.size() - 1);
+                continue;
             }
-            try {
-                executorService.shutdownNow();
-            } catch (final Exception ex) {
-                logger.warn("Exception while shutting down the executor service.", ex);
-                executorService.shutdownNow();
+            if (eventCode != XMLStreamReader.START_ELEMENT) {
+                continue;
             }
+            final String prefix = reader.getPrefix();
+            final String name = StringUtils.isEmpty(prefix) ? reader.getLocalName() : prefix + ":" + reader.getLocalName();
+            final Map<String, Integer> siblings = children.get(children.size() - 1);
+            final Integer count = siblings.get(name);
+            final int position = count == null ? 1 : count + 1;
+            siblings.put(name, position);
+            final String step = name + "[" + position + "]";
+            if (!MathMLElement.MATH.getElementName().equals(reader.getLocalName())) {
+                steps.add(step);
+                children.add(new HashMap<String, Integer>());
+                continue;
+            }
+            long startCharOffset = -1;
+            long startByteOffset = -1;
+            if (offsets != null) {
+                final LocationInfo location = ((XMLStreamReader2) reader).getLocationInfo();
+                startCharOffset = location.getStartingCharOffset();
+                startByteOffset = offsets.getByteOffset(location, false);
+            }
+            final MathMLNode tree = this.readTree(reader, texts, tokens, context);
+            long endCharOffset = -1;
+            long endByteOffset = -1;
+            if (offsets != null) {
+                final LocationInfo location = ((XMLStreamReader2) reader).getLocationInfo();
+                endCharOffset = location.getEndingCharOffset();
+                endByteOffset = offsets.getByteOffset(location, true);
+            }
+            final List<String> unknownOperators = new ArrayList<String>();
+            final long start = System.nanoTime();
+            final String converted = this.converter.convert(tree, context, unknownOperators);
+            final long conversionTime = System.nanoTime() - start;
+            final StringBuilder path = new StringBuilder();
+            for (final String ancestor : steps) {
+                path.append('/').append(ancestor);
+            }
+            path.append('/').append(step);
+            handler.formulaConverted(new FormulaResult(index++, converted, path.toString(), startCharOffset, endCharOffset,
+                    startByteOffset, endByteOffset, conversionTime, unknownOperators));
         }
-//        return outputFiles;
-        return null;
     }
     
     @Override
-    public File parse(@Nonnull final File file, final Locale language) throws UnsupportedLanguageException {
-        Validate.isTrue(file != null, "File for transformation should not be null.");
-        this.checkSupportedLanguages(language);
-        
-        int executionNumber = this.atomicInteger.incrementAndGet();
-        logger.debug("Processing file [" + executionNumber + "] [" + file.getPath() + "].");
-        
-        XMLStreamReader reader;
-        XMLStreamWriter writer;
-        String outputFilePath;
-        if (StringUtils.isBlank(ConverterSettings.getInstance().getOutputDirectory())) {
-            String filePath = file.getPath();
-            outputFilePath = filePath.substring(0, filePath.lastIndexOf('.')) + "-converted.xml";
-        } else {
-            String suffix = "";
-            for (final File f : this.originalInputFiles) {
-                if (file.getPath().startsWith(f.getPath())) {
-                    suffix = StringUtils.difference(f.getPath(), file.getPath());
-                    break;
-                }
-            }
-            if (StringUtils.isBlank(suffix)) {
-                suffix = file.getName();
+    protected boolean isWholeInputRequired() {
+        final ConverterSettings settings = ConverterSettings.getInstance();
+        return settings.isPrescan() || settings.isSpliceOutput();
+    }
+    
+    @Override
+    protected void convert(final InputStream inputStream, final ByteBuffer source, final OutputStream output, final Locale language)
+            throws IOException {
+        this.convert(inputStream, source, output, language, ConverterSettings.getInstance().isCanonicalize());
+    }
+    
+    /**
+     * Canonicalizes document in the canonicalize stage of the pipeline, if
+     * input should be canonicalized.
+     */
+    @Override
+    protected ByteBuffer canonicalize(final ByteBuffer source) {
+        if (!ConverterSettings.getInstance().isCanonicalize()) {
+            return source;
+        }
+        return ByteBuffer.wrap(this.canonicalizeData(new ByteBufferInputStream(source)));
+    }
+    
+    @Override
+    protected void convertCanonical(final InputStream inputStream, final ByteBuffer source, final OutputStream output, final Locale language)
+            throws IOException {
+        this.convert(inputStream, source, output, language, false);
+    }
+    
+    /**
+     * Converts a document.
+     * @param inputStream Input data.
+     * @param source All input data in a buffer, {@code null} if it is not available.
+     * @param output Output data.
+     * @param language Language of conversion.
+     * @param canonicalize Indicates whether input should be canonicalized first.
+     */
+    private void convert(InputStream inputStream, ByteBuffer source, final OutputStream output, final Locale language,
+            final boolean canonicalize) throws IOException {
+        final ConversionContext context = ConversionContext.forSettings(language);
+        final StreamPool pool = StreamPool.getInstance();
+        XMLStreamReader reader = null;
+        XMLStreamWriter writer = null;
+        try {
+            final ConverterSettings settings = ConverterSettings.getInstance();
+            // canonicalize
+            if (canonicalize) {
+                inputStream = this.canonicalize(inputStream);
+                source = null;
             }
-            if (!suffix.startsWith(System.getProperty("file.separator"))) {
-                suffix = System.getProperty("file.separator") + suffix;
+            // only math elements found by prescanner are parsed
+            if (settings.isPrescan()) {
+                if (source == null) {
+                    source = pool.readFully(inputStream);
+                }
+                this.convertIslands(new MathIslandScanner(source), new ByteRangeSplicer(source, Channels.newChannel(output)), context);
+                return;
             }
-            outputFilePath = ConverterSettings.getInstance().getOutputDirectory() + suffix;
-            if (outputFilePath.endsWith("zip")) {
-                outputFilePath = outputFilePath.substring(0, outputFilePath.lastIndexOf("."));
+            // splicing needs input offsets, which are available only in Stax2 readers
+            if (settings.isSpliceOutput() && this.xmlInputFactory instanceof XMLInputFactory2) {
+                if (source == null) {
+                    source = pool.readFully(inputStream);
+                }
+                final ByteRangeSplicer splicer = new ByteRangeSplicer(source, Channels.newChannel(output));
+                reader = pool.createReader(this.xmlInputFactory, splicer.getContentStream());
+                this.splice((XMLStreamReader2) reader, splicer, context);
+                return;
             }
+            
+            // create stream reader from input file
+            reader = this.asyncInput
+                     ? pool.createAsyncReader(this.xmlInputFactory, inputStream, source)
+                     : pool.createReader(this.xmlInputFactory, inputStream);
+            // create stream writer
+            writer = pool.createWriter(this.xmlOutputFactory, output);
+            this.rewrite(reader, writer, reader.getEncoding(), context);
+        } catch (final XMLStreamException ex) {
+            throw new IOException("Cannot convert xml document.", ex);
+        } finally {
+            pool.release(reader);
+            pool.release(writer);
         }
-        
-        File outputFile = new File(outputFilePath);
-        outputFile.getParentFile().mkdirs();
+    }
+    
+    /**
+     * Converts character input. Prescanning, splicing and asynchronous input
+     * work with bytes, so character input is always parsed as a whole by 
+     * a blocking reader. Output declares UTF-8 encoding, encoding of
+     * the writer is not known.
+     */
+    @Override
+    protected void convert(final Reader input, final Writer output, final Locale language) throws IOException {
+        final StreamPool pool = StreamPool.getInstance();
+        XMLStreamReader reader = null;
+        XMLStreamWriter writer = null;
         try {
-            outputFile.createNewFile();
-        } catch (IOException ex) {
-            this.getLogger().warn("File [{}] already exists.", outputFile.getPath());
+            if (ConverterSettings.getInstance().isCanonicalize()) {
+                // canonicalizer reads bytes
+                final byte[] data = readText(input).getBytes(UTF_8);
+                reader = pool.createReader(this.xmlInputFactory, this.canonicalize(new ByteArrayInputStream(data)));
+            } else {
+                reader = pool.createReader(this.xmlInputFactory, input);
+            }
+            writer = pool.createWriter(this.xmlOutputFactory, output);
+            this.rewrite(reader, writer, UTF_8.name(), ConversionContext.forSettings(language));
+        } catch (final XMLStreamException ex) {
+            throw new IOException("Cannot convert xml document.", ex);
+        } finally {
+            pool.release(reader);
+            pool.release(writer);
         }
+    }
+    
+    /**
+     * Copies document from reader to writer and replaces every 
+     * <code>&lt;math&gt;</code> element with its converted value.
+     * @param reader Reader positioned at the start of document.
+     * @param writer Writer.
+     * @param encoding Encoding declared by output document.
+     * @param context Context of conversion.
+     */
+    private void rewrite(final XMLStreamReader reader, final XMLStreamWriter writer, final String encoding, 
+            final ConversionContext context) throws XMLStreamException {
+        /** text values of the document */
+        final TextInterner texts = new TextInterner();
+        /** normalized values of the document */
+        final TokenTable tokens = new TokenTable();
     
         /** root node */
         MathMLNode tree = null;
@@ -392,188 +685,443 @@ public final class XmlParserStAX implements XmlParser {
         /** type of current element */
         MathMLElement currentElement = null;
         
-        try {
-            InputStream inputStream;
-            if (file.getName().endsWith("zip")) {
-                inputStream = Unzipper.unzip(file);
-            } else {
-                inputStream = new FileInputStream(file);
+        writer.writeStartDocument(encoding, reader.getVersion());
+        
+        // is this the root element
+        boolean isRoot = true;
+        // indicates whether we are inside a math element
+        boolean processingMathMLElement = false;
+        while (reader.hasNext()) {
+            // pull next event code
+            final int eventCode = reader.next();
+            // determine type of event
+            final XmlStreamConstant constant = XmlStreamConstant.forEventCode(eventCode);
+
+            // check whether we are inside math element, if not and current event is not
+            // START_ELEMENT continue to the next event
+            if (!processingMathMLElement && !XmlStreamConstant.START_ELEMENT.equals(constant)) {
+                switch (constant) {
+                    case END_ELEMENT: {
+                        writer.writeEndElement();
+                        break;
+                    }
+                    case CHARACTERS: {
+                        writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        break;
+                    }
+                    case DTD: {
+                        writer.writeDTD(reader.getText());
+                        break;
+                    }
+                    default:
+                        break;
+                }
+                continue;
             }
-            // canonicalize
-            inputStream = ConverterSettings.getInstance().isCanonicalize()
-                          ? this.canonicalize(inputStream)
-                          : inputStream;
-            
-            // create stream reader from input file
-            reader = this.xmlInputFactory.createXMLStreamReader(inputStream, "UTF-8");
-            OutputStream output = new FileOutputStream(outputFile);
-            // create stream writer
-            writer = this.xmlOutputFactory.createXMLStreamWriter(output, "UTF-8");
-            writer.writeStartDocument(reader.getEncoding(), reader.getVersion());
-            
-            // is this the root element
-            boolean isRoot = true;
-            // indicates whether we are inside a math element
-            boolean processingMathMLElement = false;
-            while (reader.hasNext()) {
-                // pull next event code
-                final int eventCode = reader.next();
-                // determine type of event
-                final XmlStreamConstant constant = XmlStreamConstant.forEventCode(eventCode);
 
-                // check whether we are inside math element, if not and current event is not
-                // START_ELEMENT continue to the next event
-                if (!processingMathMLElement && !XmlStreamConstant.START_ELEMENT.equals(constant)) {
-                    switch (constant) {
-                        case END_ELEMENT: {
-                            writer.writeEndElement();
-                            break;
+            switch (constant) {
+                case START_ELEMENT: {
+                    // retrieve element name
+                    final String elementName = reader.getLocalName();
+                    // if we are not inside math element continue to the next event
+                    if (!processingMathMLElement && !MathMLElement.MATH.getElementName().equals(elementName)) {
+                        writer.writeStartElement(reader.getName().getPrefix(), reader.getLocalName(), reader.getName().getNamespaceURI());
+                        for (int index = 0; index < reader.getAttributeCount(); ++index) {
+                            writer.writeAttribute(reader.getAttributeLocalName(index), reader.getAttributeValue(index));
                         }
-                        case CHARACTERS: {
-                            writer.writeCharacters(reader.getText());
-                            break;
+                        for (int index = 0; index < reader.getNamespaceCount(); ++index) {
+                            writer.writeNamespace(reader.getNamespacePrefix(index), reader.getNamespaceURI(index));
                         }
-                        case DTD: {
-                            writer.writeDTD(reader.getText());
-                            break;
+                        if (isRoot) {
+                            writer.writeNamespace(CONVERTER_NAMESPACE_PREFIX, CONVERTER_NAMESPACE_URI);
+                            isRoot = false;
                         }
-                        default:
-                            break;
+                        continue;
                     }
-                    continue;
+                    
+                    // now we are surely inside math element, we can determine type of math element
+                    currentElement = MathMLElement.forElementName(elementName);
+                    processingMathMLElement = true;
+                    // set new current node
+                    currentNode = new MathMLNode();
+                    // set its name
+                    currentNode.setType(currentElement);
+                    // set its attributes if there are any
+                    for (int index = 0; index < reader.getAttributeCount(); ++index) {
+                        currentNode.getAttributes().add(
+                                new XmlAttribute(reader.getAttributeLocalName(index), 
+                                                 reader.getAttributeValue(index)));
+                    }
+                    // skip content that will not be converted
+                    final boolean ignored = MathMLConverter.isContentIgnored(parentNode, currentElement, context);
+                    // if parent node was set, set it to current node
+                    if (parentNode != null) {
+                        currentNode.setParent(parentNode);
+                        parentNode.getChildren().add(currentNode);
+                    }
+                    if (ignored) {
+                        skipElement(reader);
+                        currentNode = parentNode;
+                        break;
+                    }
+
+                    // if we are just at math element initialize new tree
+                    if (tree == null) {
+                        tree = currentNode;
+                    }
+
+                    parentNode = currentNode;
+                    break;
                 }
+                case END_ELEMENT: {
+                    // we are going "one level up" inside the tree
+                    parentNode = currentNode.getParent();
+                    currentNode = parentNode;
 
-                switch (constant) {
-                    case START_ELEMENT: {
-                        // retrieve element name
-                        final String elementName = reader.getLocalName();
-                        // if we are not inside math element continue to the next event
-                        if (!processingMathMLElement && !MathMLElement.MATH.getElementName().equals(elementName)) {
-                            writer.writeStartElement(reader.getName().getPrefix(), reader.getLocalName(), reader.getName().getNamespaceURI());
-                            for (int index = 0; index < reader.getAttributeCount(); ++index) {
-                                writer.writeAttribute(reader.getAttributeLocalName(index), reader.getAttributeValue(index));
-                            }
-                            for (int index = 0; index < reader.getNamespaceCount(); ++index) {
-                                writer.writeNamespace(reader.getNamespacePrefix(index), reader.getNamespaceURI(index));
-                            }
+                    //@todo it should be enough to check whether currentNode is not null
+                    final String elementName = reader.getLocalName();
+                    final MathMLElement element = MathMLElement.forElementName(elementName);
+                    switch (element) {
+                        case MATH: {
+                            // transform created tree and write to output
+                            String converted = this.converter.convert(tree, context);
                             if (isRoot) {
-                                writer.writeNamespace(CONVERTER_NAMESPACE_PREFIX, CONVERTER_NAMESPACE_URI);
+                                writer.writeStartElement(CONVERTER_ELEMENT_NAME);
+                                writer.writeDefaultNamespace(CONVERTER_NAMESPACE_URI);
                                 isRoot = false;
+                            } else {
+                                writer.writeStartElement(CONVERTER_NAMESPACE_URI, CONVERTER_ELEMENT_NAME);
                             }
-                            continue;
-                        }
-                        
-                        // now we are surely inside math element, we can determine type of math element
-                        currentElement = MathMLElement.forElementName(elementName);
-                        processingMathMLElement = true;
-                        // set new current node
-                        currentNode = new MathMLNode();
-                        // set its name
-                        currentNode.setType(currentElement);
-                        // set its attributes if there are any
-                        for (int index = 0; index < reader.getAttributeCount(); ++index) {
-                            currentNode.getAttributes().add(
-                                    new XmlAttribute(reader.getAttributeLocalName(index), 
-                                                     reader.getAttributeValue(index)));
-                        }
-                        // if parent node was set, set it to current node
-                        if (parentNode != null) {
-                            currentNode.setParent(parentNode);
-                            parentNode.getChildren().add(currentNode);
+                            writer.writeCharacters(converted);
+                            writer.writeEndElement();
+                            processingMathMLElement = false;
+                            currentElement = null;
+                            tree = null;
+                            currentNode = null;
+                            parentNode = null;
+                            break;
                         }
+                        default:
+                            break;
+                    }
 
-                        // if we are just at math element initialize new tree
-                        if (tree == null) {
-                            tree = currentNode;
+                    break;
+                }
+                case CHARACTERS: {
+                    if (currentElement != null) {
+                        final String value = getNonBlankText(reader, texts);
+                        if (value != null) {
+                            currentNode.setValue(tokens.get(value));
                         }
+                    }
+                    break;
+                }  
+                case ENTITY_REFERENCE: {
+                    final String value = reader.getLocalName();
+                    if (currentElement != null && StringUtils.isNotBlank(value)) {
+                        currentNode.setValue(tokens.get(value));
+                    }
+                    break;
+                }
+                case COMMENT: {
+                    // comment in input file is ignored, no comment event is received...
+                    writer.writeComment(reader.getText());
+                    break;
+                }    
+                case DTD: {
+                    writer.writeDTD(reader.getText());
+                }
+                default:
+                    break;
+            }
+        }
+        writer.flush();
+    }
+    
+    /**
+     * Reads all characters of the input.
+     */
+    private static String readText(final Reader input) throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        final char[] buffer = new char[READ_BUFFER_LENGTH];
+        int count;
+        while ((count = input.read(buffer)) != -1) {
+            builder.append(buffer, 0, count);
+        }
+        return builder.toString();
+    }
+    
+    /**
+     * Copies input to output and replaces every <code>&lt;math&gt;</code> element
+     * with its converted value. Content outside of math elements is not 
+     * re-serialized, its bytes are copied from input as they are, so the output 
+     * keeps original formatting. Math elements can be converted in parallel
+     * (see {@link FormulaReorderBuffer}).
+     * @param reader Reader created over the same data as the splicer.
+     * @param splicer Splicer copying input data to output.
+     * @param context Context of conversion.
+     */
+    private void splice(final XMLStreamReader2 reader, final ByteRangeSplicer splicer, final ConversionContext context)
+            throws XMLStreamException, IOException {
+        // is this the root element
+        boolean isRoot = true;
+        final TextInterner texts = new TextInterner();
+        final TokenTable tokens = new TokenTable();
+        final FormulaReorderBuffer formulas = this.createReorderBuffer(context);
+        try {
+            while (reader.hasNext()) {
+                if (!XmlStreamConstant.START_ELEMENT.equals(XmlStreamConstant.forEventCode(reader.next()))) {
+                    continue;
+                }
+                if (!MathMLElement.MATH.getElementName().equals(reader.getLocalName())) {
+                    if (isRoot) {
+                        splicer.appendToStartTag(splicer.getByteOffset(reader.getLocationInfo(), true),
+                                String.format(" xmlns:%1$s=\"%2$s\"", CONVERTER_NAMESPACE_PREFIX, CONVERTER_NAMESPACE_URI));
+                        isRoot = false;
+                    }
+                    continue;
+                }
+                final int start = splicer.getByteOffset(reader.getLocationInfo(), false);
+                final MathMLNode tree = this.readTree(reader, texts, tokens, context);
+                final int end = splicer.getByteOffset(reader.getLocationInfo(), true);
+                final boolean mathIsRoot = isRoot;
+                this.convertTree(formulas, tree, context, new FormulaReorderBuffer.Sink() {
 
-                        parentNode = currentNode;
-                        break;
+                    @Override
+                    public void write(final String converted) throws IOException {
+                        splicer.copyTo(start);
+                        splicer.skipTo(end);
+                        XmlParserStAX.this.writeConverted(splicer, converted, mathIsRoot);
                     }
-                    case END_ELEMENT: {
-                        // we are going "one level up" inside the tree
-                        parentNode = currentNode.getParent();
-                        currentNode = parentNode;
+                });
+                isRoot = false;
+            }
+            if (formulas != null) {
+                formulas.flush();
+            }
+        } finally {
+            if (formulas != null) {
+                formulas.cancel();
+            }
+        }
+        splicer.finish();
+    }
+    
+    /**
+     * Converts math elements found by {@link MathIslandScanner}. Only these
+     * elements are parsed, they are read by a single reader from a synthetic 
+     * document created by the scanner. The rest of the input is copied to 
+     * the output as it is. If there are no math elements, the input is just
+     * copied. Math elements can be converted in parallel (see {@link FormulaReorderBuffer}).
+     * @param scanner Scanner over the same data as the splicer.
+     * @param splicer Splicer copying input data to output.
+     * @param context Context of conversion.
+     */
+    private void convertIslands(final MathIslandScanner scanner, final ByteRangeSplicer splicer, final ConversionContext context)
+            throws XMLStreamException, IOException {
+        final List<MathIsland> islands = scanner.scan();
+        if (!islands.isEmpty()) {
+            final boolean mathIsRoot = islands.get(0).getStart() == scanner.getRootStart();
+            if (!mathIsRoot) {
+                splicer.appendToStartTag(scanner.getRootTagEnd(),
+                        String.format(" xmlns:%1$s=\"%2$s\"", CONVERTER_NAMESPACE_PREFIX, CONVERTER_NAMESPACE_URI));
+            }
+            final StreamPool pool = StreamPool.getInstance();
+            final XMLStreamReader reader = pool.createReader(this.xmlInputFactory, scanner.createIslandStream());
+            final TextInterner texts = new TextInterner();
+            final TokenTable tokens = new TokenTable();
+            final FormulaReorderBuffer formulas = this.createReorderBuffer(context);
+            try {
+                int index = 0;
+                while (reader.hasNext()) {
+                    if (XmlStreamConstant.START_ELEMENT.equals(XmlStreamConstant.forEventCode(reader.next()))
+                            && MathMLElement.MATH.getElementName().equals(reader.getLocalName())) {
+                        final MathIsland island = islands.get(index++);
+                        final MathMLNode tree = this.readTree(reader, texts, tokens, context);
+                        this.convertTree(formulas, tree, context, new FormulaReorderBuffer.Sink() {
 
-                        //@todo it should be enough to check whether currentNode is not null
-                        final String elementName = reader.getLocalName();
-                        final MathMLElement element = MathMLElement.forElementName(elementName);
-                        switch (element) {
-                            case MATH: {
-                                // transform created tree and write to output
-                                String converted = this.converter.convert(tree, language);
-                                if (isRoot) {
-                                    writer.writeStartElement(CONVERTER_ELEMENT_NAME);
-                                    writer.writeDefaultNamespace(CONVERTER_NAMESPACE_URI);
-                                    isRoot = false;
-                                } else {
-                                    writer.writeStartElement(CONVERTER_NAMESPACE_URI, CONVERTER_ELEMENT_NAME);
-                                }
-                                writer.writeCharacters(converted);
-                                writer.writeEndElement();
-                                processingMathMLElement = false;
-                                currentElement = null;
-                                tree = null;
-                                currentNode = null;
-                                parentNode = null;
-                                break;
+                            @Override
+                            public void write(final String converted) throws IOException {
+                                splicer.copyTo(island.getStart());
+                                splicer.skipTo(island.getEnd());
+                                XmlParserStAX.this.writeConverted(splicer, converted, mathIsRoot);
                             }
-                            default:
-                                break;
-                        }
-
-                        break;
+                        });
                     }
-                    case CHARACTERS: {
-                        final String value = reader.getText();
-                        if (currentElement != null && StringUtils.isNotBlank(value)) {
-                            currentNode.setValue(value);
-                        }
-                        break;
-                    }  
-                    case ENTITY_REFERENCE: {
-                        final String value = reader.getLocalName();
-                        if (currentElement != null && StringUtils.isNotBlank(value)) {
-                            currentNode.setValue(value);
-                        }
-                        break;
+                }
+                if (formulas != null) {
+                    formulas.flush();
+                }
+            } finally {
+                if (formulas != null) {
+                    formulas.cancel();
+                }
+                pool.release(reader);
+            }
+        }
+        splicer.finish();
+    }
+    
+    /**
+     * Creates buffer for converting math elements of a document in parallel,
+     * if it is enabled (see {@link ConverterSettings#getFormulaThreadCount()}).
+     * @param context Context of conversion.
+     * @return Buffer or {@code null} if math elements are converted on the parsing thread.
+     */
+    private FormulaReorderBuffer createReorderBuffer(final ConversionContext context) {
+        final int threadCount = ConverterSettings.getInstance().getFormulaThreadCount();
+        return threadCount > 0 
+               ? new FormulaReorderBuffer(this.converter, context, threadCount) 
+               : null;
+    }
+    
+    /**
+     * Converts tree of math element and passes the value to the sink. 
+     * If there is a buffer, the tree is converted in parallel and the sink 
+     * is called later, in the order of the document.
+     * @param formulas Buffer of the document, {@code null} if the tree is converted immediately.
+     * @param tree Tree of math element.
+     * @param context Context of conversion.
+     * @param sink Writer of converted value.
+     */
+    private void convertTree(final FormulaReorderBuffer formulas, final MathMLNode tree, final ConversionContext context,
+            final FormulaReorderBuffer.Sink sink) throws IOException {
+        if (formulas == null) {
+            sink.write(this.converter.convert(tree, context));
+        } else {
+            formulas.add(tree, sink);
+        }
+    }
+    
+    /**
+     * Writes converted math element to the output.
+     * @param splicer Splicer copying input data to output.
+     * @param converted Converted value.
+     * @param isRoot Indicates whether the math element is the root element of document.
+     */
+    private void writeConverted(final ByteRangeSplicer splicer, final String converted, final boolean isRoot) throws IOException {
+        if (isRoot) {
+            splicer.write(String.format("<%1$s xmlns=\"%2$s\">", CONVERTER_ELEMENT_NAME, CONVERTER_NAMESPACE_URI));
+            splicer.writeCharacters(converted);
+            splicer.write(String.format("</%1$s>", CONVERTER_ELEMENT_NAME));
+        } else {
+            splicer.write(String.format("<%1$s:%2$s>", CONVERTER_NAMESPACE_PREFIX, CONVERTER_ELEMENT_NAME));
+            splicer.writeCharacters(converted);
+            splicer.write(String.format("</%1$s:%2$s>", CONVERTER_NAMESPACE_PREFIX, CONVERTER_ELEMENT_NAME));
+        }
+    }
+    
+    /**
+     * Builds {@link MathMLNode} tree of a math element.
+     * Reader has to be positioned at the start of <code>&lt;math&gt;</code> 
+     * element, after return it is positioned at its end.
+     * @param reader Reader.
+     * @param texts Text values of current document.
+     * @param tokens Normalized values of current document.
+     * @param context Context of conversion, it decides which content is skipped.
+     * @return Root of the tree.
+     */
+    private MathMLNode readTree(final XMLStreamReader reader, final TextInterner texts, final TokenTable tokens,
+            final ConversionContext context) throws XMLStreamException {
+        final MathMLNode tree = this.createNode(reader);
+        MathMLNode currentNode = tree;
+        while (currentNode != null) {
+            switch (XmlStreamConstant.forEventCode(reader.next())) {
+                case START_ELEMENT: {
+                    final MathMLNode node = this.createNode(reader);
+                    // skip content that will not be converted
+                    final boolean ignored = MathMLConverter.isContentIgnored(currentNode, node.getType(), context);
+                    node.setParent(currentNode);
+                    currentNode.getChildren().add(node);
+                    if (ignored) {
+                        skipElement(reader);
+                    } else {
+                        currentNode = node;
                     }
-                    case COMMENT: {
-                        // comment in input file is ignored, no comment event is received...
-                        writer.writeComment(reader.getText());
-                        break;
-                    }    
-                    case DTD: {
-                        writer.writeDTD(reader.getText());
+                    break;
+                }
+                case END_ELEMENT: {
+                    // we are going "one level up" inside the tree
+                    currentNode = currentNode.getParent();
+                    break;
+                }
+                case CHARACTERS: {
+                    final String value = getNonBlankText(reader, texts);
+                    if (value != null) {
+                        currentNode.setValue(tokens.get(value));
                     }
-                    default:
-                        break;
+                    break;
+                }
+                case ENTITY_REFERENCE: {
+                    final String value = reader.getLocalName();
+                    if (StringUtils.isNotBlank(value)) {
+                        currentNode.setValue(tokens.get(value));
+                    }
+                    break;
                 }
+                default:
+                    break;
+            }
+        }
+        return tree;
+    }
+    
+    /**
+     * Skips content of current element. Reader has to be positioned at 
+     * the start of the element, after return it is positioned at its end.
+     * Stax2 readers skip the content without reporting its events.
+     * @param reader Reader.
+     */
+    private static void skipElement(final XMLStreamReader reader) throws XMLStreamException {
+        if (reader instanceof XMLStreamReader2) {
+            ((XMLStreamReader2) reader).skipElement();
+            return;
+        }
+        int depth = 1;
+        while (depth > 0) {
+            final int eventCode = reader.next();
+            if (eventCode == XMLStreamReader.START_ELEMENT) {
+                ++depth;
+            } else if (eventCode == XMLStreamReader.END_ELEMENT) {
+                --depth;
             }
-            inputStream.close();
-            reader.close();
-            writer.flush();
-            writer.close();
-            output.flush();
-            output.close();
-            logger.debug("Finished conversion of file [" + executionNumber + "] [" + file.getPath() + "]");
-        } catch (final IOException ex) {
-            this.getLogger().error("Exception while working with input/output file.", ex);
-        } catch (final XMLStreamException ex) {
-            this.getLogger().error("Cannot open xml file for reading.", ex);
         }
-        return outputFile;
     }
     
     /**
-     * Checks whether the required language is supported by the converter.
-     * @param language Required language.
-     * @throws UnsupportedLanguageException If the required language is not supported. 
+     * Returns text of current character event, unless it is blank. Text is
+     * checked in the character buffer of the reader, a string is created only
+     * for non-blank text and it is shared by equal values of the document.
+     * @param reader Reader positioned at character event.
+     * @param texts Text values of current document.
+     * @return Text or {@code null} if it is blank.
      */
-    private void checkSupportedLanguages(final Locale language) throws UnsupportedLanguageException {
-        if (!ConverterSettings.getInstance().getSupportedLanguages().contains(language.getLanguage())) {
-            throw new UnsupportedLanguageException(String.format("[%1$s] is not supported.", language.getLanguage()));
+    private static String getNonBlankText(final XMLStreamReader reader, final TextInterner texts) {
+        final char[] buffer = reader.getTextCharacters();
+        final int start = reader.getTextStart();
+        final int end = start + reader.getTextLength();
+        for (int index = start; index < end; ++index) {
+            if (!Character.isWhitespace(buffer[index])) {
+                return texts.intern(buffer, start, end - start);
+            }
         }
+        return null;
+    }
+    
+    /**
+     * Creates a node for element at current reader position.
+     * @param reader Reader positioned at start element.
+     * @return New node with type and attributes set.
+     */
+    private MathMLNode createNode(final XMLStreamReader reader) {
+        final MathMLNode node = new MathMLNode();
+        node.setType(MathMLElement.forElementName(reader.getLocalName()));
+        for (int index = 0; index < reader.getAttributeCount(); ++index) {
+            node.getAttributes().add(
+                    new XmlAttribute(reader.getAttributeLocalName(index), 
+                                     reader.getAttributeValue(index)));
+        }
+        return node;
     }
     
     /**
@@ -584,6 +1132,15 @@ public final class XmlParserStAX implements XmlParser {
      * @return {@link InputStream} instance that contains canonicalized data.
      */
     private InputStream canonicalize(final InputStream input) {
+        return new ByteArrayInputStream(this.canonicalizeData(input));
+    }
+    
+    /**
+     * Uses {@link MathMLCanonizer} to canonicalize input data.
+     * @param input Input data stream.
+     * @return Canonicalized data, empty if canonicalization failed.
+     */
+    private byte[] canonicalizeData(final InputStream input) {
         ByteArrayOutputStream output = new ByteArrayOutputStream();
         try {
             logger.trace("Starting canonicalization.");
@@ -596,29 +1153,7 @@ public final class XmlParserStAX implements XmlParser {
         } catch (IOException ex) {
             logger.error("General IO exception.", ex);
         }
-        final InputStream result = new ByteArrayInputStream(output.toByteArray());
-        return result;
-    }
-    
-    /**
-     * Find all child files of a given file.
-     * @param file Input file.
-     * @return Always returns nonnull list, if given file is a file (not a directory)
-     *  returns a list that contains only this file.
-     */
-    private List<File> findFiles(final File file) {
-        final List<File> files = new ArrayList<File>();
-        if (file.canRead()) {
-            if (file.isFile()) {
-                files.add(file);
-                return files;
-            } else {
-                for (final File child : file.listFiles()) {
-                    files.addAll(this.findFiles(child));
-                }
-            }
-        }
-        return files;
+        return output.toByteArray();
     }
     
 }
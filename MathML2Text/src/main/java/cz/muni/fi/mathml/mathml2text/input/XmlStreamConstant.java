@@ -103,6 +103,22 @@ public enum XmlStreamConstant {
      */
     ENTITY_DECLARATION(15);
     
+    /**
+     * Constants indexed by event code, {@code null} for codes without constant.
+     */
+    private static final XmlStreamConstant[] BY_EVENT_CODE;
+    
+    static {
+        int maxEventCode = 0;
+        for (final XmlStreamConstant constant : values()) {
+            maxEventCode = Math.max(maxEventCode, constant.getEventCode());
+        }
+        BY_EVENT_CODE = new XmlStreamConstant[maxEventCode + 1];
+        for (final XmlStreamConstant constant : values()) {
+            BY_EVENT_CODE[constant.getEventCode()] = constant;
+        }
+    }
+    
     /**
      * Event code for constant.
      */
@@ -132,11 +148,9 @@ public enum XmlStreamConstant {
      * @return Constant equivalent to given event code.
      */
     public static XmlStreamConstant forEventCode(final int eventCode) {
-        for (final XmlStreamConstant constant : XmlStreamConstant.values()) {
-            if (constant.getEventCode() == eventCode) {
-                return constant;
-            }
+        if (eventCode < 0 || eventCode >= BY_EVENT_CODE.length) {
+            return null;
         }
-        return null;
+        return BY_EVENT_CODE[eventCode];
     }
 }
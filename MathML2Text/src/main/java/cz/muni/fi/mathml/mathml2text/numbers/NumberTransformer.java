@@ -67,7 +67,19 @@ public final class NumberTransformer {
      * @return Number converted to string (spoken form).
      */
     public String transform(final String value) {
-        switch (this.getNumberFormat()) {
+        return this.transform(value, this.getNumberFormat());
+    }
+    
+    /**
+     * Converts given number to its spoken form in given number format.
+     * Current number format of the transformer is not used, so the
+     * transformer can be shared by threads.
+     * @param value Number.
+     * @param numberFormat Cardinal or ordinal form.
+     * @return Number converted to string (spoken form).
+     */
+    public String transform(final String value, final NumberFormat numberFormat) {
+        switch (numberFormat) {
             case CARDINAL: {
                 return this.transformNumber(value);
             }